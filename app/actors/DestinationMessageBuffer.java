@@ -0,0 +1,127 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Bounded buffer of destination messages awaiting delivery to an originator.
+ * When the buffer is full the oldest metric report is dropped to make room;
+ * other messages are never dropped and are refused instead if the buffer
+ * holds nothing but such messages. Not thread safe; owned by a single actor.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+/* package private */ final class DestinationMessageBuffer {
+
+    /**
+     * Package private constructor.
+     *
+     * @param capacity The maximum number of buffered messages.
+     */
+    DestinationMessageBuffer(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("Capacity must be positive; capacity=%d", capacity));
+        }
+        _capacity = capacity;
+        _messages = new ArrayDeque<>(Math.min(capacity, INITIAL_CAPACITY));
+    }
+
+    /**
+     * Add a message to the buffer, dropping the oldest metric report if the
+     * buffer is full.
+     *
+     * @param message The message to add.
+     * @return False if and only if the buffer is full and contains no metric
+     * report to drop; the message is not added.
+     */
+    public boolean offer(final ProxyHub.DestinationMessage message) {
+        if (_messages.size() >= _capacity) {
+            if (!dropOldestReport()) {
+                return false;
+            }
+        }
+        _messages.addLast(message);
+        return true;
+    }
+
+    /**
+     * Remove the oldest message in the buffer.
+     *
+     * @return The oldest message or <code>null</code> if the buffer is empty.
+     */
+    public ProxyHub.DestinationMessage poll() {
+        return _messages.pollFirst();
+    }
+
+    /**
+     * Return and reset the number of metric reports dropped since the last
+     * call.
+     *
+     * @return The number of metric reports dropped.
+     */
+    public int drainDropped() {
+        final int dropped = _dropped;
+        _dropped = 0;
+        return dropped;
+    }
+
+    public int size() {
+        return _messages.size();
+    }
+
+    public boolean isEmpty() {
+        return _messages.isEmpty();
+    }
+
+    public boolean isFull() {
+        return _messages.size() >= _capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("Capacity", _capacity)
+                .add("Size", _messages.size())
+                .add("Dropped", _dropped)
+                .toString();
+    }
+
+    private boolean dropOldestReport() {
+        final Iterator<ProxyHub.DestinationMessage> iterator = _messages.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isReport()) {
+                iterator.remove();
+                ++_dropped;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final int _capacity;
+    private final Deque<ProxyHub.DestinationMessage> _messages;
+    private int _dropped = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+}
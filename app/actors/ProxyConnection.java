@@ -15,24 +15,46 @@
  */
 package actors;
 
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.PoisonPill;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.actor.UntypedActor;
+import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.base.Utf8;
 import models.messages.ProxyConnectDestination;
 import models.messages.ProxyConnectOriginator;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
+import play.Configuration;
 import play.mvc.WebSocket;
+import scala.concurrent.duration.FiniteDuration;
 
 import java.net.URI;
 import java.util.LinkedList;
+import java.util.Locale;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Actor to proxy between two Web Socket connections.
+ * Actor to proxy between an originator Web Socket connection and the
+ * <code>ProxyHub</code> which owns the shared connection to the destination.
+ *
+ * Messages from the destination are written to the originator at most
+ * <code>proxy.connection.maxFramesPerFlush</code> per flush interval and the
+ * rest wait in a bounded buffer which drops its oldest metric reports when
+ * full. The originator is disconnected if the buffer cannot accept a message
+ * or stays full for longer than the slow consumer timeout.
+ *
+ * Optionally, metric reports are coalesced between flushes and written as a
+ * single <code>reportMetrics</code> frame per flush with one report for each
+ * series; see <code>ReportCoalescer</code>.
+ *
+ * Metrics are recorded over <code>proxy.metricsInterval</code>, the same
+ * interval as the <code>ProxyHub</code>, rather than over each flush.
  *
  * @author Ville Koskela (vkoskela at groupon dot com)
  */
@@ -41,22 +63,69 @@ public class ProxyConnection extends UntypedActor {
     /**
      * Public constructor.
      *
+     * @param configuration Play app configuration.
      * @param metricsFactory The <code>MetricsFactory</code> instance.
+     * @param hubManager The <code>ProxyHubManager</code> actor.
      */
-    public ProxyConnection(final MetricsFactory metricsFactory) {
+    public ProxyConnection(
+            final Configuration configuration,
+            final MetricsFactory metricsFactory,
+            final ActorRef hubManager) {
         _metricsFactory = metricsFactory;
+        _hubManager = hubManager;
+        _bufferSize = configuration.getInt("proxy.connection.bufferSize");
+        _flushInterval = ConfigurationHelper.getFiniteDuration(configuration, "proxy.connection.flushInterval");
+        _maxFramesPerFlush = configuration.getInt("proxy.connection.maxFramesPerFlush");
+        _slowConsumerTimeout = ConfigurationHelper.getFiniteDuration(configuration, "proxy.connection.slowConsumerTimeout");
+        _metricsInterval = ConfigurationHelper.getFiniteDuration(configuration, "proxy.metricsInterval");
+        _destinationMessageBuffer = new DestinationMessageBuffer(_bufferSize);
+        if (configuration.getBoolean("proxy.connection.coalesce.enabled", false)) {
+            _reportCoalescer = new ReportCoalescer(ReportCoalescer.Mode.valueOf(
+                    configuration.getString("proxy.connection.coalesce.mode").toUpperCase(Locale.ENGLISH)));
+        } else {
+            _reportCoalescer = null;
+        }
     }
 
     /**
      * Factory for creating a <code>Props</code> with strong typing.
      *
+     * @param configuration Play app configuration.
      * @param metricsFactory Instance of <code>MetricsFactory</code>.
+     * @param hubManager The <code>ProxyHubManager</code> actor.
      * @return a new Props object to create a <code>ProxyConnection</code>.
      */
-    public static Props props(final MetricsFactory metricsFactory) {
+    public static Props props(
+            final Configuration configuration,
+            final MetricsFactory metricsFactory,
+            final ActorRef hubManager) {
         return Props.create(
                 ProxyConnection.class,
-                metricsFactory);
+                configuration,
+                metricsFactory,
+                hubManager);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preStart() {
+        _startedAtNanos = System.nanoTime();
+        _flushCancellable = getContext().system().scheduler().schedule(
+                _flushInterval,
+                _flushInterval,
+                self(),
+                new Flush(),
+                getContext().dispatcher(),
+                self());
+        _metricsCancellable = getContext().system().scheduler().schedule(
+                _metricsInterval,
+                _metricsInterval,
+                self(),
+                new RecordMetrics(),
+                getContext().dispatcher(),
+                self());
     }
 
     /**
@@ -64,12 +133,14 @@ public class ProxyConnection extends UntypedActor {
      */
     @Override
     public void postStop() throws Exception {
+        // The hub watches this actor and detaches it
+        _flushCancellable.cancel();
+        _metricsCancellable.cancel();
         if (_originatorOut != null) {
             _originatorOut.close();
         }
-        if (_destinationClient != null) {
-            _destinationClient.close();
-        }
+        getMetrics().incrementCounter(CLOSED_METRIC_PREFIX + _closeReason);
+        _metrics.close();
     }
 
     /**
@@ -90,45 +161,76 @@ public class ProxyConnection extends UntypedActor {
             _originatorOut = proxyConnectOriginator.getOut();
 
             // Add handler for close
-            _originatorIn.onClose(() -> {
-                LOGGER.info()
-                        .setMessage("Originator connection closed")
-                        .addData("actor", self())
-                        .log();
-                getSelf().tell(PoisonPill.getInstance(), getSelf());
-            });
+            final ActorRef self = self();
+            _originatorIn.onClose(() -> self.tell(new OriginatorClosed(), self));
 
             // Add handler for data
-            _originatorIn.onMessage(m -> self().tell(new OriginatorMessage(m), self()));
+            _originatorIn.onMessage(m -> self.tell(new ProxyHub.OriginatorMessage(m), self));
 
             // If we have both connections tie them together and flush buffers
-            if (_destinationClient != null && org.java_websocket.WebSocket.READYSTATE.OPEN.equals(_destinationClient.getReadyState())) {
+            if (_hub != null) {
                 establishProxy();
             }
         } else if (message instanceof ProxyConnectDestination) {
-            // Destination connection
+            // Destination connection; shared with all other connections to the same destination
             final ProxyConnectDestination proxyConnectDestination = (ProxyConnectDestination) message;
-            _destinationClient = new ProxyWebSocketClient(proxyConnectDestination.getUri());
-            _destinationClient.connect();
-        } else if (message instanceof DestinationConnected) {
+            _hubManager.tell(new ProxyHub.Attach(proxyConnectDestination.getUri()), self());
+        } else if (message instanceof ProxyHub.Attached) {
+            _hub = sender();
+            _destination = ((ProxyHub.Attached) message).getUri();
+            context().watch(_hub);
+
             // If we have both connections tie them together and flush buffers
             if (_originatorIn != null && _originatorOut != null) {
                 establishProxy();
             }
-        } else if (message instanceof OriginatorMessage) {
-            final OriginatorMessage originatorMessage = (OriginatorMessage) message;
+        } else if (message instanceof OriginatorClosed) {
+            LOGGER.info()
+                    .setMessage("Originator connection closed")
+                    .addData("actor", self())
+                    .log();
+            _closeReason = ORIGINATOR_CLOSED;
+            getSelf().tell(PoisonPill.getInstance(), getSelf());
+        } else if (message instanceof Terminated) {
+            LOGGER.info()
+                    .setMessage("Destination connection closed")
+                    .addData("actor", self())
+                    .addData("destination", _destination)
+                    .log();
+            _closeReason = DESTINATION_CLOSED;
+            getSelf().tell(PoisonPill.getInstance(), getSelf());
+        } else if (message instanceof ProxyHub.OriginatorMessage) {
+            final Metrics metrics = getMetrics();
+            metrics.incrementCounter(FROM_ORIGINATOR_MESSAGES_METRIC);
+            metrics.incrementCounter(
+                    FROM_ORIGINATOR_BYTES_METRIC,
+                    Utf8.encodedLength(((ProxyHub.OriginatorMessage) message).getMessage()));
             if (_isProxied) {
-                _destinationClient.send(originatorMessage.getMessage());
+                _hub.tell(message, self());
+            } else if (_originatorMessageQueue.size() < _bufferSize) {
+                _originatorMessageQueue.add((ProxyHub.OriginatorMessage) message);
             } else {
-                _originatorMessageQueue.add(originatorMessage.getMessage());
+                // Originator messages are commands and are never dropped
+                disconnect("Originator buffer overflow", OVERFLOW);
             }
-        } else if (message instanceof DestinationMessage) {
-            final DestinationMessage destinationMessage = (DestinationMessage) message;
-            if (_isProxied) {
-                _originatorOut.write(destinationMessage.getMessage());
+        } else if (message instanceof ProxyHub.DestinationMessage) {
+            final ProxyHub.DestinationMessage destinationMessage = (ProxyHub.DestinationMessage) message;
+            if (_reportCoalescer != null && destinationMessage.isReport()) {
+                // Sent as part of a single frame on the next flush
+                _reportCoalescer.add(destinationMessage.getReport(), destinationMessage.getReceivedAtNanos());
             } else {
-                _destinationMessageQueue.add(destinationMessage.getMessage());
+                deliver(destinationMessage);
             }
+        } else if (message instanceof Flush) {
+            flush();
+        } else if (message instanceof RecordMetrics) {
+            // Samples are collected per interval; an idle connection records nothing
+            if (_metrics != null) {
+                _metrics.close();
+                _metrics = null;
+            }
+        } else {
+            unhandled(message);
         }
     }
 
@@ -136,7 +238,8 @@ public class ProxyConnection extends UntypedActor {
         LOGGER.info()
                 .setMessage("Established proxy connection")
                 .addData("actor", self())
-                .addData("destination", _destinationClient.getURI())
+                .addData("destination", _destination)
+                .addData("hub", _hub)
                 .log();
 
         // Proxy connection established
@@ -144,89 +247,151 @@ public class ProxyConnection extends UntypedActor {
             throw new IllegalStateException("Connection is already proxied");
         }
         _isProxied = true;
+        final Metrics metrics = getMetrics();
+        metrics.setTimer(ESTABLISH_LATENCY_METRIC, System.nanoTime() - _startedAtNanos, TimeUnit.NANOSECONDS);
+        metrics.incrementCounter(BUFFERED_FROM_ORIGINATOR_METRIC, _originatorMessageQueue.size());
+        metrics.incrementCounter(BUFFERED_TO_ORIGINATOR_METRIC, _destinationMessageBuffer.size());
 
         // Send any buffered messages from the originator to the destination
         while (!_originatorMessageQueue.isEmpty()) {
-            _destinationClient.send(_originatorMessageQueue.remove());
+            _hub.tell(_originatorMessageQueue.remove(), self());
         }
 
-        // Send any buffered messages from the destination to the originator
-        while (!_destinationMessageQueue.isEmpty()) {
-            ProxyConnection.this._originatorOut.write(_destinationMessageQueue.remove());
-        }
+        // Buffered messages from the destination are sent to the originator on flush
     }
 
-    private final MetricsFactory _metricsFactory;
-    private final Queue<String> _originatorMessageQueue = new LinkedList<>();
-    private final Queue<String> _destinationMessageQueue = new LinkedList<>();
-    private boolean _isProxied = false;
-    private WebSocket.In<String> _originatorIn;
-    private WebSocket.Out<String> _originatorOut;
-    private ProxyWebSocketClient _destinationClient;
-
-    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyConnection.class);
-
-    private static final class DestinationConnected {}
-
-    private static final class OriginatorMessage {
-        OriginatorMessage(final String message) {
-            _message = message;
+    private void flush() {
+        // The originator's output accepts writes without limit and gives no
+        // indication of how quickly they are delivered; instead of letting it
+        // buffer an unbounded backlog the writes are paced and the remainder
+        // is held in the bounded buffer
+        _framesWritten = 0;
+        if (_isProxied) {
+            while (_framesWritten < _maxFramesPerFlush && !_destinationMessageBuffer.isEmpty()) {
+                write(_destinationMessageBuffer.poll());
+            }
+        }
+        int coalesced = 0;
+        if (_reportCoalescer != null) {
+            final ProxyHub.DestinationMessage reports = _reportCoalescer.drain();
+            if (reports != null && !deliver(reports)) {
+                return;
+            }
+            coalesced = _reportCoalescer.drainCoalesced();
         }
 
-        public String getMessage() {
-            return _message;
+        // An idle connection records nothing
+        final int dropped = _destinationMessageBuffer.drainDropped();
+        final int buffered = _destinationMessageBuffer.size();
+        if (coalesced > 0 || dropped > 0 || buffered > 0) {
+            final Metrics metrics = getMetrics();
+            metrics.incrementCounter(COALESCED_REPORTS_METRIC, coalesced);
+            metrics.incrementCounter(DROPPED_REPORTS_METRIC, dropped);
+            metrics.setGauge(BUFFER_SIZE_METRIC, buffered);
         }
 
-        private final String _message;
+        // An originator which cannot keep up has a buffer that stays full
+        if (_isProxied && _destinationMessageBuffer.isFull()) {
+            final long now = System.nanoTime();
+            if (_fullSinceNanos == null) {
+                _fullSinceNanos = now;
+            } else if (now - _fullSinceNanos >= _slowConsumerTimeout.toNanos()) {
+                disconnect("Slow originator", SLOW_CONSUMER);
+            }
+        } else {
+            _fullSinceNanos = null;
+        }
     }
 
-    private static final class DestinationMessage {
-        DestinationMessage(final String message) {
-            _message = message;
+    private boolean deliver(final ProxyHub.DestinationMessage message) {
+        if (_isProxied && _destinationMessageBuffer.isEmpty() && _framesWritten < _maxFramesPerFlush) {
+            write(message);
+        } else if (!_destinationMessageBuffer.offer(message)) {
+            disconnect("Destination buffer overflow", OVERFLOW);
+            return false;
         }
+        return true;
+    }
 
-        public String getMessage() {
-            return _message;
-        }
+    private void write(final ProxyHub.DestinationMessage message) {
+        _originatorOut.write(message.getMessage());
+        ++_framesWritten;
 
-        private final String _message;
+        final Metrics metrics = getMetrics();
+        metrics.incrementCounter(TO_ORIGINATOR_MESSAGES_METRIC);
+        metrics.incrementCounter(TO_ORIGINATOR_BYTES_METRIC, Utf8.encodedLength(message.getMessage()));
+        metrics.setTimer(
+                TO_ORIGINATOR_RELAY_LATENCY_METRIC,
+                System.nanoTime() - message.getReceivedAtNanos(),
+                TimeUnit.NANOSECONDS);
     }
 
-    private final class ProxyWebSocketClient extends WebSocketClient {
-
-        ProxyWebSocketClient(final URI uri) {
-            super(uri);
+    private Metrics getMetrics() {
+        if (_metrics == null) {
+            _metrics = _metricsFactory.create();
         }
+        return _metrics;
+    }
 
-        @Override
-        public void onOpen(final ServerHandshake handshakedata) {
-            ProxyConnection.this.getSelf().tell(new DestinationConnected(), ProxyConnection.this.getSelf());
-        }
+    private void disconnect(final String reason, final String closeReason) {
+        LOGGER.warn()
+                .setMessage("Disconnecting originator")
+                .addData("actor", self())
+                .addData("destination", _destination)
+                .addData("reason", reason)
+                .addData("originatorQueueSize", _originatorMessageQueue.size())
+                .addData("destinationBuffer", _destinationMessageBuffer)
+                .log();
+        _closeReason = closeReason;
+        context().stop(self());
+    }
 
-        @Override
-        public void onMessage(final String message) {
-            ProxyConnection.this.getSelf().tell(new DestinationMessage(message), ProxyConnection.this.getSelf());
-        }
+    private final MetricsFactory _metricsFactory;
+    private final ActorRef _hubManager;
+    private final int _bufferSize;
+    private final FiniteDuration _flushInterval;
+    private final int _maxFramesPerFlush;
+    private final FiniteDuration _slowConsumerTimeout;
+    private final FiniteDuration _metricsInterval;
+    private final Queue<ProxyHub.OriginatorMessage> _originatorMessageQueue = new LinkedList<>();
+    private final DestinationMessageBuffer _destinationMessageBuffer;
+    private final ReportCoalescer _reportCoalescer;
+    private boolean _isProxied = false;
+    private int _framesWritten = 0;
+    private Long _fullSinceNanos;
+    private long _startedAtNanos;
+    private String _closeReason = STOPPED;
+    private Metrics _metrics;
+    private Cancellable _flushCancellable;
+    private Cancellable _metricsCancellable;
+    private WebSocket.In<String> _originatorIn;
+    private WebSocket.Out<String> _originatorOut;
+    private ActorRef _hub;
+    private URI _destination;
 
-        @Override
-        public void onClose(final int code, final String reason, final boolean remote) {
-            LOGGER.info()
-                    .setMessage("Destination connection closed")
-                    .addData("actor", self())
-                    .addData("destination", getURI())
-                    .log();
-            ProxyConnection.this.getSelf().tell(PoisonPill.getInstance(), ProxyConnection.this.getSelf());
-        }
+    private static final String TO_ORIGINATOR_MESSAGES_METRIC = "proxy/connection/to_originator/messages";
+    private static final String TO_ORIGINATOR_BYTES_METRIC = "proxy/connection/to_originator/bytes";
+    private static final String TO_ORIGINATOR_RELAY_LATENCY_METRIC = "proxy/connection/to_originator/relay_latency";
+    private static final String FROM_ORIGINATOR_MESSAGES_METRIC = "proxy/connection/from_originator/messages";
+    private static final String FROM_ORIGINATOR_BYTES_METRIC = "proxy/connection/from_originator/bytes";
+    private static final String ESTABLISH_LATENCY_METRIC = "proxy/connection/establish_latency";
+    private static final String BUFFERED_FROM_ORIGINATOR_METRIC = "proxy/connection/buffered_before_proxy/from_originator";
+    private static final String BUFFERED_TO_ORIGINATOR_METRIC = "proxy/connection/buffered_before_proxy/to_originator";
+    private static final String COALESCED_REPORTS_METRIC = "proxy/connection/coalesced_reports";
+    private static final String DROPPED_REPORTS_METRIC = "proxy/connection/dropped_reports";
+    private static final String BUFFER_SIZE_METRIC = "proxy/connection/buffer_size";
+    // Close reasons are a fixed set so that the closed counters have bounded cardinality
+    private static final String CLOSED_METRIC_PREFIX = "proxy/connection/closed/";
+    private static final String ORIGINATOR_CLOSED = "originator_closed";
+    private static final String DESTINATION_CLOSED = "destination_closed";
+    private static final String OVERFLOW = "overflow";
+    private static final String SLOW_CONSUMER = "slow_consumer";
+    private static final String STOPPED = "stopped";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyConnection.class);
 
-        @Override
-        public void onError(final Exception ex) {
-            LOGGER.warn()
-                    .setMessage("Destination connection error")
-                    .addData("actor", self())
-                    .addData("destination", getURI())
-                    .setThrowable(ex)
-                    .log();
-            ProxyConnection.this.getSelf().tell(PoisonPill.getInstance(), ProxyConnection.this.getSelf());
-        }
-    }
+    private static final class Flush {}
+
+    private static final class RecordMetrics {}
+
+    private static final class OriginatorClosed {}
 }
@@ -0,0 +1,691 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.actor.UntypedActor;
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.arpnetworking.websocket.NioWebSocketClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Utf8;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actor which owns the single upstream Web Socket connection to a proxy
+ * destination and shares it among every <code>ProxyConnection</code> attached
+ * to that destination.
+ *
+ * Subscriptions, to metrics with either version of the protocol and to
+ * logs, are reference counted across the attached connections so the
+ * destination sees the union of their subscriptions; a subscription is sent
+ * upstream when its first subscriber arrives and unsubscribed when its last
+ * subscriber leaves or detaches. Reported metric values are delivered only to
+ * the connections subscribed to the metric. A reply to a request, such as the
+ * metrics list requested by <code>getMetrics</code> or the response to a
+ * <code>heartbeat</code>, is delivered only to the connection which sent the
+ * oldest unanswered request; the destination answers the requests on the
+ * shared connection in order. All other destination messages, for example
+ * the announcement of a new metric or a log line, are delivered to every
+ * attached connection.
+ *
+ * Once the last connection detaches the hub asks its parent
+ * <code>ProxyHubManager</code> to stop it. When the destination connection
+ * closes the hub tells its parent so that no further connections are
+ * attached to it and the parent stops it after any attaches already
+ * forwarded; the attached connections watch the hub and close with it.
+ *
+ * Messages for the destination sent before it is connected are queued up to
+ * the buffer size. They are commands and are never dropped; if the queue
+ * overflows the hub closes as if the destination connection had closed.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class ProxyHub extends UntypedActor {
+
+    /**
+     * Public constructor.
+     *
+     * @param metricsFactory The <code>MetricsFactory</code> instance.
+     * @param client The <code>NioWebSocketClient</code> to connect to the destination with.
+     * @param uri The destination's uri.
+     * @param metricsInterval The interval to record metrics over.
+     * @param bufferSize The maximum number of messages queued until the destination is connected.
+     */
+    public ProxyHub(
+            final MetricsFactory metricsFactory,
+            final NioWebSocketClient client,
+            final URI uri,
+            final FiniteDuration metricsInterval,
+            final int bufferSize) {
+        _metricsFactory = metricsFactory;
+        _client = client;
+        _uri = uri;
+        _metricsInterval = metricsInterval;
+        _bufferSize = bufferSize;
+    }
+
+    /**
+     * Factory for creating a <code>Props</code> with strong typing.
+     *
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
+     * @param client The <code>NioWebSocketClient</code> to connect to the destination with.
+     * @param uri The destination's uri.
+     * @param metricsInterval The interval to record metrics over.
+     * @param bufferSize The maximum number of messages queued until the destination is connected.
+     * @return a new Props object to create a <code>ProxyHub</code>.
+     */
+    public static Props props(
+            final MetricsFactory metricsFactory,
+            final NioWebSocketClient client,
+            final URI uri,
+            final FiniteDuration metricsInterval,
+            final int bufferSize) {
+        return Props.create(
+                ProxyHub.class,
+                metricsFactory,
+                client,
+                uri,
+                metricsInterval,
+                bufferSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preStart() throws Exception {
+        _metricsCancellable = getContext().system().scheduler().schedule(
+                _metricsInterval,
+                _metricsInterval,
+                self(),
+                new RecordMetrics(),
+                getContext().dispatcher(),
+                self());
+        _connectStartedAtNanos = System.nanoTime();
+        _destination = _client.connect(_uri, new DestinationListener());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postStop() throws Exception {
+        if (_metricsCancellable != null) {
+            _metricsCancellable.cancel();
+        }
+        if (_destination != null) {
+            _destination.close();
+        }
+        if (_metrics != null) {
+            _metrics.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onReceive(final Object message) throws Exception {
+        LOGGER.trace()
+                .setMessage("Received message")
+                .addData("actor", self())
+                .addData("data", message)
+                .log();
+
+        if (message instanceof Attach) {
+            attach(sender());
+        } else if (message instanceof Terminated) {
+            detach(((Terminated) message).getActor());
+        } else if (message instanceof OriginatorMessage) {
+            final Set<Subscription> subscriptions = _connections.get(sender());
+            if (subscriptions != null) {
+                processOriginatorMessage((OriginatorMessage) message, sender(), subscriptions);
+            }
+        } else if (message instanceof DestinationConnected) {
+            LOGGER.info()
+                    .setMessage("Destination connection established")
+                    .addData("actor", self())
+                    .addData("destination", _uri)
+                    .addData("connections", _connections.size())
+                    .log();
+            _isConnected = true;
+            getMetrics().setTimer(CONNECT_LATENCY_METRIC, System.nanoTime() - _connectStartedAtNanos, TimeUnit.NANOSECONDS);
+            while (!_destinationMessageQueue.isEmpty()) {
+                send(_destinationMessageQueue.remove());
+            }
+        } else if (message instanceof DestinationMessage) {
+            final DestinationMessage destinationMessage = (DestinationMessage) message;
+            final Metrics metrics = getMetrics();
+            metrics.incrementCounter(FROM_DESTINATION_MESSAGES_METRIC);
+            metrics.incrementCounter(FROM_DESTINATION_BYTES_METRIC, Utf8.encodedLength(destinationMessage.getMessage()));
+            processDestinationMessage(destinationMessage);
+        } else if (message instanceof DestinationClosed) {
+            if (!_isClosed) {
+                if (!_isConnected) {
+                    getMetrics().incrementCounter(CONNECT_FAILURES_METRIC);
+                }
+                close();
+            }
+        } else if (message instanceof RecordMetrics) {
+            // Samples are collected per interval; an idle hub records nothing
+            if (_metrics != null) {
+                _metrics.close();
+                _metrics = null;
+            }
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void attach(final ActorRef connection) {
+        ++_attaches;
+        if (!_connections.containsKey(connection)) {
+            _connections.put(connection, Sets.newHashSet());
+            context().watch(connection);
+            context().parent().tell(new Connections(_connections.size()), self());
+        }
+        connection.tell(new Attached(_uri), self());
+        LOGGER.debug()
+                .setMessage("Connection attached")
+                .addData("actor", self())
+                .addData("destination", _uri)
+                .addData("connection", connection)
+                .addData("connections", _connections.size())
+                .log();
+    }
+
+    private void detach(final ActorRef connection) {
+        final Set<Subscription> subscriptions = _connections.remove(connection);
+        if (subscriptions == null) {
+            return;
+        }
+        for (final Subscription subscription : subscriptions) {
+            unsubscribe(subscription, connection, subscription.createUnsubscribeMessage());
+        }
+        context().parent().tell(new Connections(_connections.size()), self());
+        LOGGER.debug()
+                .setMessage("Connection detached")
+                .addData("actor", self())
+                .addData("destination", _uri)
+                .addData("connection", connection)
+                .addData("connections", _connections.size())
+                .log();
+        if (_connections.isEmpty()) {
+            // The manager may have forwarded attaches which have not arrived yet
+            context().parent().tell(new Idle(_attaches), self());
+        }
+    }
+
+    private void processOriginatorMessage(
+            final OriginatorMessage message,
+            final ActorRef connection,
+            final Set<Subscription> subscriptions) {
+        final JsonNode command = parse(message.getMessage());
+        final String commandName = command == null ? null : command.path("command").asText();
+        if (SUBSCRIBE_COMMANDS.containsKey(commandName)) {
+            final Subscription subscription = new Subscription(commandName, command);
+            if (subscriptions.add(subscription)) {
+                subscribe(subscription, connection, message);
+            }
+        } else if (SUBSCRIBE_COMMANDS.containsValue(commandName)) {
+            final Subscription subscription = new Subscription(SUBSCRIBE_COMMANDS.inverse().get(commandName), command);
+            if (subscriptions.remove(subscription)) {
+                unsubscribe(subscription, connection, message);
+            }
+        } else {
+            final String replyName = REPLY_COMMANDS.get(commandName);
+            if (replyName != null) {
+                Queue<ActorRef> requesters = _requesters.get(replyName);
+                if (requesters == null) {
+                    requesters = new LinkedList<>();
+                    _requesters.put(replyName, requesters);
+                }
+                requesters.add(connection);
+            }
+            sendToDestination(message);
+        }
+    }
+
+    private void processDestinationMessage(final DestinationMessage message) {
+        final JsonNode command = parse(message.getMessage());
+        final String commandName = command == null ? null : command.path("command").asText();
+        final String reportedSubscription = REPORT_COMMANDS.get(commandName);
+        final Queue<ActorRef> requesters = _requesters.get(getReplyName(command));
+        if (reportedSubscription != null) {
+            final JsonNode report = command.path("data");
+            final Set<ActorRef> subscribers = _subscribers.get(new Subscription(reportedSubscription, report));
+            if (subscribers == null) {
+                return;
+            }
+            if (REPORT_METRIC_COMMAND.equals(commandName)) {
+                tellAll(subscribers, new DestinationMessage(message.getMessage(), report, message.getReceivedAtNanos()));
+            } else {
+                // Version one reports cannot be coalesced into a reportMetrics frame
+                tellAll(subscribers, message);
+            }
+        } else if (requesters != null && !requesters.isEmpty()) {
+            // A requester which detached keeps its place so later replies still reach their requesters
+            final ActorRef requester = requesters.remove();
+            if (_connections.containsKey(requester)) {
+                requester.tell(message, self());
+            }
+        } else {
+            tellAll(_connections.keySet(), message);
+        }
+    }
+
+    private void subscribe(final Subscription subscription, final ActorRef connection, final OriginatorMessage message) {
+        Set<ActorRef> subscribers = _subscribers.get(subscription);
+        if (subscribers == null) {
+            subscribers = Sets.newHashSet();
+            _subscribers.put(subscription, subscribers);
+            sendToDestination(message);
+        }
+        subscribers.add(connection);
+    }
+
+    private void unsubscribe(final Subscription subscription, final ActorRef connection, final OriginatorMessage message) {
+        final Set<ActorRef> subscribers = _subscribers.get(subscription);
+        if (subscribers != null && subscribers.remove(connection) && subscribers.isEmpty()) {
+            _subscribers.remove(subscription);
+            sendToDestination(message);
+        }
+    }
+
+    private void sendToDestination(final OriginatorMessage message) {
+        if (_isClosed) {
+            return;
+        }
+        if (_isConnected) {
+            send(message);
+        } else if (_destinationMessageQueue.size() < _bufferSize) {
+            _destinationMessageQueue.add(message);
+        } else {
+            LOGGER.warn()
+                    .setMessage("Closing hub")
+                    .addData("actor", self())
+                    .addData("destination", _uri)
+                    .addData("reason", "Destination buffer overflow")
+                    .addData("destinationQueueSize", _destinationMessageQueue.size())
+                    .log();
+            getMetrics().incrementCounter(OVERFLOW_METRIC);
+            close();
+        }
+    }
+
+    private void close() {
+        _isClosed = true;
+        _isConnected = false;
+        _destinationMessageQueue.clear();
+        _destination.close();
+        context().parent().tell(new Closed(), self());
+    }
+
+    private void send(final OriginatorMessage message) {
+        _destination.send(message.getMessage());
+
+        final Metrics metrics = getMetrics();
+        metrics.incrementCounter(TO_DESTINATION_MESSAGES_METRIC);
+        metrics.incrementCounter(TO_DESTINATION_BYTES_METRIC, Utf8.encodedLength(message.getMessage()));
+        metrics.setTimer(
+                TO_DESTINATION_RELAY_LATENCY_METRIC,
+                System.nanoTime() - message.getReceivedAtNanos(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    private Metrics getMetrics() {
+        if (_metrics == null) {
+            _metrics = _metricsFactory.create();
+        }
+        return _metrics;
+    }
+
+    private void tellAll(final Collection<ActorRef> connections, final DestinationMessage message) {
+        for (final ActorRef connection : connections) {
+            connection.tell(message, self());
+        }
+    }
+
+    private static String getReplyName(final JsonNode message) {
+        if (message == null) {
+            return null;
+        }
+        if (message.has("command")) {
+            return message.path("command").asText();
+        }
+        // Replies without a command, such as the response to a heartbeat, are named by their response field
+        return message.has("response") ? RESPONSE_REPLY : null;
+    }
+
+    private static JsonNode parse(final String message) {
+        try {
+            return OBJECT_MAPPER.readTree(message);
+        } catch (final IOException e) {
+            LOGGER.debug()
+                    .setMessage("Unable to parse proxied message")
+                    .addData("message", message)
+                    .setThrowable(e)
+                    .log();
+            return null;
+        }
+    }
+
+    private final MetricsFactory _metricsFactory;
+    private final NioWebSocketClient _client;
+    private final URI _uri;
+    private final FiniteDuration _metricsInterval;
+    private final int _bufferSize;
+    private final Map<ActorRef, Set<Subscription>> _connections = Maps.newHashMap();
+    private final Map<Subscription, Set<ActorRef>> _subscribers = Maps.newHashMap();
+    private final Map<String, Queue<ActorRef>> _requesters = Maps.newHashMap();
+    private final Queue<OriginatorMessage> _destinationMessageQueue = new LinkedList<>();
+    private boolean _isConnected = false;
+    private boolean _isClosed = false;
+    private int _attaches = 0;
+    private long _connectStartedAtNanos;
+    private NioWebSocketClient.Connection _destination;
+    private Cancellable _metricsCancellable;
+    private Metrics _metrics;
+
+    private static final String SUBSCRIBE_METRIC_COMMAND = "subscribeMetric";
+    private static final String SUBSCRIBE_V1_COMMAND = "subscribe";
+    private static final String REPORT_METRIC_COMMAND = "reportMetric";
+    private static final String RESPONSE_REPLY = "response";
+    // Subscribe commands mapped to the commands which cancel them
+    private static final ImmutableBiMap<String, String> SUBSCRIBE_COMMANDS = ImmutableBiMap.of(
+            SUBSCRIBE_METRIC_COMMAND, "unsubscribeMetric",
+            SUBSCRIBE_V1_COMMAND, "unsubscribe",
+            "subscribeLog", "unsubscribeLog");
+    // Subscriptions identified by the service, metric and statistic only; these are also the fields of their reports
+    private static final Set<String> METRIC_SUBSCRIBE_COMMANDS = ImmutableSet.of(SUBSCRIBE_METRIC_COMMAND, SUBSCRIBE_V1_COMMAND);
+    // Reports delivered only to their subscribers mapped to the command of the subscription
+    private static final Map<String, String> REPORT_COMMANDS = ImmutableMap.of(
+            REPORT_METRIC_COMMAND, SUBSCRIBE_METRIC_COMMAND,
+            "report", SUBSCRIBE_V1_COMMAND);
+    // Requests answered only to their sender mapped to the name of their reply
+    private static final Map<String, String> REPLY_COMMANDS = ImmutableMap.of(
+            "getMetrics", "metricsList",
+            "getLogs", "logsList",
+            "heartbeat", RESPONSE_REPLY);
+    private static final String CONNECT_LATENCY_METRIC = "proxy/hub/connect_latency";
+    private static final String CONNECT_FAILURES_METRIC = "proxy/hub/connect_failures";
+    private static final String OVERFLOW_METRIC = "proxy/hub/overflow";
+    private static final String TO_DESTINATION_MESSAGES_METRIC = "proxy/hub/to_destination/messages";
+    private static final String TO_DESTINATION_BYTES_METRIC = "proxy/hub/to_destination/bytes";
+    private static final String TO_DESTINATION_RELAY_LATENCY_METRIC = "proxy/hub/to_destination/relay_latency";
+    private static final String FROM_DESTINATION_MESSAGES_METRIC = "proxy/hub/from_destination/messages";
+    private static final String FROM_DESTINATION_BYTES_METRIC = "proxy/hub/from_destination/bytes";
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getInstance();
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyHub.class);
+
+    /**
+     * Message sent by a <code>ProxyConnection</code> to attach to the hub for
+     * a destination. The <code>ProxyHubManager</code> forwards it to the hub.
+     */
+    static final class Attach {
+        Attach(final URI uri) {
+            _uri = uri;
+        }
+
+        public URI getUri() {
+            return _uri;
+        }
+
+        private final URI _uri;
+    }
+
+    /**
+     * Message sent by the hub to a <code>ProxyConnection</code> once attached.
+     */
+    static final class Attached {
+        Attached(final URI uri) {
+            _uri = uri;
+        }
+
+        public URI getUri() {
+            return _uri;
+        }
+
+        private final URI _uri;
+    }
+
+    /**
+     * Message sent by the hub to its parent when no connections remain
+     * attached; carries the number of attaches the hub has received.
+     */
+    static final class Idle {
+        Idle(final int attaches) {
+            _attaches = attaches;
+        }
+
+        public int getAttaches() {
+            return _attaches;
+        }
+
+        private final int _attaches;
+    }
+
+    /**
+     * Message sent by the hub to its parent when the destination connection
+     * closes. The hub must not be attached to again.
+     */
+    static final class Closed {}
+
+    /**
+     * Message sent by the hub to its parent when the number of attached
+     * connections changes.
+     */
+    static final class Connections {
+        Connections(final int count) {
+            _count = count;
+        }
+
+        public int getCount() {
+            return _count;
+        }
+
+        private final int _count;
+    }
+
+    /**
+     * Message from the originator, sent by a <code>ProxyConnection</code> to
+     * the hub. Stamped when received from the originator to measure the
+     * relay latency.
+     */
+    static final class OriginatorMessage {
+        OriginatorMessage(final String message) {
+            _message = message;
+            _receivedAtNanos = System.nanoTime();
+        }
+
+        public String getMessage() {
+            return _message;
+        }
+
+        public long getReceivedAtNanos() {
+            return _receivedAtNanos;
+        }
+
+        private final String _message;
+        private final long _receivedAtNanos;
+    }
+
+    /**
+     * Message from the destination, sent by the hub to each
+     * <code>ProxyConnection</code> it is delivered to. Only metric reports
+     * may be dropped on the way to a slow originator; every other message is
+     * a command or a response the originator depends on. Metric reports
+     * carry their parsed data, which is shared by all recipients and must
+     * not be modified. Stamped when received from the destination to measure
+     * the relay latency.
+     */
+    static final class DestinationMessage {
+        DestinationMessage(final String message) {
+            this(message, null, System.nanoTime());
+        }
+
+        DestinationMessage(final String message, final JsonNode report, final long receivedAtNanos) {
+            _message = message;
+            _report = report;
+            _receivedAtNanos = receivedAtNanos;
+        }
+
+        public String getMessage() {
+            return _message;
+        }
+
+        public long getReceivedAtNanos() {
+            return _receivedAtNanos;
+        }
+
+        public boolean isReport() {
+            return _report != null;
+        }
+
+        public JsonNode getReport() {
+            return _report;
+        }
+
+        private final String _message;
+        private final JsonNode _report;
+        private final long _receivedAtNanos;
+    }
+
+    private static final class DestinationConnected {}
+
+    private static final class DestinationClosed {}
+
+    private static final class RecordMetrics {}
+
+    /**
+     * An originator's subscription identified by its subscribe command and
+     * its arguments. The arguments of a metric subscription are its service,
+     * metric and statistic; those of any other subscription are all the
+     * fields of the command except the command itself.
+     */
+    private static final class Subscription {
+        Subscription(final String subscribeCommand, final JsonNode node) {
+            _subscribeCommand = subscribeCommand;
+            if (METRIC_SUBSCRIBE_COMMANDS.contains(subscribeCommand)) {
+                _arguments = OBJECT_MAPPER.createObjectNode();
+                _arguments.put("service", node.path("service").asText());
+                _arguments.put("metric", node.path("metric").asText());
+                _arguments.put("statistic", node.path("statistic").asText());
+            } else {
+                _arguments = ((ObjectNode) node).deepCopy();
+                _arguments.remove("command");
+            }
+        }
+
+        public OriginatorMessage createUnsubscribeMessage() {
+            final ObjectNode command = OBJECT_MAPPER.createObjectNode();
+            command.put("command", SUBSCRIBE_COMMANDS.get(_subscribeCommand));
+            command.setAll(_arguments);
+            return new OriginatorMessage(command.toString());
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Subscription)) {
+                return false;
+            }
+            final Subscription otherSubscription = (Subscription) other;
+            return Objects.equals(_subscribeCommand, otherSubscription._subscribeCommand)
+                    && Objects.equals(_arguments, otherSubscription._arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_subscribeCommand, _arguments);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("SubscribeCommand", _subscribeCommand)
+                    .add("Arguments", _arguments)
+                    .toString();
+        }
+
+        private final String _subscribeCommand;
+        private final ObjectNode _arguments;
+    }
+
+    private final class DestinationListener implements NioWebSocketClient.Listener {
+
+        @Override
+        public void onOpen() {
+            _self.tell(new DestinationConnected(), _self);
+        }
+
+        @Override
+        public void onMessage(final String message) {
+            _self.tell(new DestinationMessage(message), _self);
+        }
+
+        @Override
+        public void onClose() {
+            LOGGER.info()
+                    .setMessage("Destination connection closed")
+                    .addData("actor", _self)
+                    .addData("destination", _uri)
+                    .log();
+            _self.tell(new DestinationClosed(), _self);
+        }
+
+        @Override
+        public void onError(final Throwable cause) {
+            LOGGER.warn()
+                    .setMessage("Destination connection error")
+                    .addData("actor", _self)
+                    .addData("destination", _uri)
+                    .setThrowable(cause)
+                    .log();
+            _self.tell(new DestinationClosed(), _self);
+        }
+
+        // Invoked on the client's threads where the actor context is not available
+        private final ActorRef _self = self();
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.PoisonPill;
+import akka.actor.Terminated;
+import akka.actor.UntypedActor;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.arpnetworking.websocket.NioWebSocketClient;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import play.Configuration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Actor which creates and supervises one <code>ProxyHub</code> per proxy
+ * destination. Attaches from <code>ProxyConnection</code> actors are forwarded
+ * to the hub for their destination, creating the hub if necessary.
+ *
+ * A hub reports when its last connection detaches together with the number
+ * of attaches it has received. The hub is only stopped if that matches the
+ * number forwarded to it; otherwise an attach is still in flight to the hub
+ * and it remains in use.
+ *
+ * A hub whose destination connection closed is removed at once so that
+ * later attaches create a new hub. It is stopped with a
+ * <code>PoisonPill</code> which, unlike <code>stop</code>, is queued behind
+ * the attaches already forwarded to it; those connections are attached and
+ * then closed with the hub instead of waiting on an attach that is never
+ * answered.
+ *
+ * The number of hubs and of connections attached to them are recorded every
+ * <code>proxy.metricsInterval</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class ProxyHubManager extends UntypedActor {
+
+    /**
+     * Public constructor.
+     *
+     * @param configuration Play app configuration.
+     * @param metricsFactory The <code>MetricsFactory</code> instance.
+     * @param client The <code>NioWebSocketClient</code> shared by all hubs.
+     */
+    @Inject
+    public ProxyHubManager(
+            final Configuration configuration,
+            final MetricsFactory metricsFactory,
+            final NioWebSocketClient client) {
+        _metricsFactory = metricsFactory;
+        _client = client;
+        _metricsInterval = ConfigurationHelper.getFiniteDuration(configuration, "proxy.metricsInterval");
+        _bufferSize = configuration.getInt("proxy.hub.bufferSize");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preStart() {
+        _metricsCancellable = getContext().system().scheduler().schedule(
+                _metricsInterval,
+                _metricsInterval,
+                self(),
+                new RecordMetrics(),
+                getContext().dispatcher(),
+                self());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postStop() {
+        _metricsCancellable.cancel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onReceive(final Object message) throws Exception {
+        LOGGER.trace()
+                .setMessage("Received message")
+                .addData("actor", self())
+                .addData("data", message)
+                .log();
+
+        if (message instanceof ProxyHub.Attach) {
+            final URI uri = ((ProxyHub.Attach) message).getUri();
+            ActorRef hub = _hubs.get(uri);
+            if (hub == null) {
+                hub = context().actorOf(ProxyHub.props(_metricsFactory, _client, uri, _metricsInterval, _bufferSize));
+                context().watch(hub);
+                _hubs.put(uri, hub);
+                _attaches.put(hub, 0);
+                LOGGER.info()
+                        .setMessage("Created proxy hub")
+                        .addData("actor", self())
+                        .addData("destination", uri)
+                        .addData("hub", hub)
+                        .addData("hubs", _hubs.size())
+                        .log();
+            }
+            _attaches.put(hub, _attaches.get(hub) + 1);
+            hub.forward(message, context());
+        } else if (message instanceof ProxyHub.Idle) {
+            final Integer attaches = _attaches.get(sender());
+            if (attaches != null && attaches == ((ProxyHub.Idle) message).getAttaches()) {
+                remove(sender());
+                context().stop(sender());
+            }
+        } else if (message instanceof ProxyHub.Closed) {
+            if (_attaches.containsKey(sender())) {
+                remove(sender());
+                sender().tell(PoisonPill.getInstance(), self());
+            }
+        } else if (message instanceof ProxyHub.Connections) {
+            if (_attaches.containsKey(sender())) {
+                _connections.put(sender(), ((ProxyHub.Connections) message).getCount());
+            }
+        } else if (message instanceof Terminated) {
+            remove(((Terminated) message).getActor());
+        } else if (message instanceof RecordMetrics) {
+            int connections = 0;
+            for (final int count : _connections.values()) {
+                connections += count;
+            }
+            final Metrics metrics = _metricsFactory.create();
+            metrics.setGauge(ACTIVE_HUBS_METRIC, _hubs.size());
+            metrics.setGauge(ACTIVE_CONNECTIONS_METRIC, connections);
+            metrics.close();
+        } else {
+            unhandled(message);
+        }
+    }
+
+    private void remove(final ActorRef hub) {
+        if (_attaches.remove(hub) != null) {
+            _hubs.values().remove(hub);
+            _connections.remove(hub);
+            LOGGER.info()
+                    .setMessage("Removed proxy hub")
+                    .addData("actor", self())
+                    .addData("hub", hub)
+                    .addData("hubs", _hubs.size())
+                    .log();
+        }
+    }
+
+    private final MetricsFactory _metricsFactory;
+    private final NioWebSocketClient _client;
+    private final FiniteDuration _metricsInterval;
+    private final int _bufferSize;
+    private final Map<URI, ActorRef> _hubs = Maps.newHashMap();
+    private final Map<ActorRef, Integer> _attaches = Maps.newHashMap();
+    private final Map<ActorRef, Integer> _connections = Maps.newHashMap();
+    private Cancellable _metricsCancellable;
+
+    private static final String ACTIVE_HUBS_METRIC = "proxy/hubs/active";
+    private static final String ACTIVE_CONNECTIONS_METRIC = "proxy/connections/active";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyHubManager.class);
+
+    private static final class RecordMetrics {}
+}
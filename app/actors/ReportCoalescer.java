@@ -0,0 +1,188 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Coalesces metric reports for a single originator. Between drains only one
+ * report is kept per service, metric, statistic and server; which one is
+ * decided by the <code>Mode</code>. Draining produces a single
+ * <code>reportMetrics</code> frame carrying the kept reports in the order
+ * their series were first reported. Not thread safe; owned by a single actor.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+/* package private */ final class ReportCoalescer {
+
+    /**
+     * Package private constructor.
+     *
+     * @param mode The <code>Mode</code> for choosing the report to keep.
+     */
+    ReportCoalescer(final Mode mode) {
+        _mode = mode;
+    }
+
+    /**
+     * Add a metric report.
+     *
+     * @param report The data of the <code>reportMetric</code> frame.
+     * @param receivedAtNanos When the report was received from the destination.
+     */
+    public void add(final JsonNode report, final long receivedAtNanos) {
+        if (_reports.isEmpty() || receivedAtNanos - _oldestReceivedAtNanos < 0) {
+            _oldestReceivedAtNanos = receivedAtNanos;
+        }
+        final SeriesKey key = new SeriesKey(report);
+        final JsonNode kept = _reports.get(key);
+        if (kept == null) {
+            _reports.put(key, report);
+            return;
+        }
+        ++_coalesced;
+        if (_mode.isPreferred(report, kept)) {
+            _reports.put(key, report);
+        }
+    }
+
+    /**
+     * Remove the kept reports as a single <code>reportMetrics</code> frame.
+     * The frame is stamped with the time the oldest report added since the
+     * last drain was received.
+     *
+     * @return The frame or <code>null</code> if there are no reports.
+     */
+    public ProxyHub.DestinationMessage drain() {
+        if (_reports.isEmpty()) {
+            return null;
+        }
+        final ObjectNode frame = JsonNodeFactory.instance.objectNode();
+        frame.put("command", REPORT_METRICS_COMMAND);
+        final ArrayNode data = frame.putArray("data");
+        data.addAll(_reports.values());
+        _reports.clear();
+        return new ProxyHub.DestinationMessage(frame.toString(), data, _oldestReceivedAtNanos);
+    }
+
+    /**
+     * Return and reset the number of reports replaced or discarded since the
+     * last call.
+     *
+     * @return The number of reports coalesced away.
+     */
+    public int drainCoalesced() {
+        final int coalesced = _coalesced;
+        _coalesced = 0;
+        return coalesced;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("Mode", _mode)
+                .add("Series", _reports.size())
+                .add("Coalesced", _coalesced)
+                .toString();
+    }
+
+    private final Mode _mode;
+    private final Map<SeriesKey, JsonNode> _reports = Maps.newLinkedHashMap();
+    private int _coalesced = 0;
+    private long _oldestReceivedAtNanos;
+
+    private static final String REPORT_METRICS_COMMAND = "reportMetrics";
+
+    /**
+     * The report kept for a series when several arrive between drains.
+     */
+    public enum Mode {
+        /**
+         * Keep the most recent report.
+         */
+        LAST {
+            @Override
+            boolean isPreferred(final JsonNode report, final JsonNode kept) {
+                return true;
+            }
+        },
+        /**
+         * Keep the report with the smallest value.
+         */
+        MIN {
+            @Override
+            boolean isPreferred(final JsonNode report, final JsonNode kept) {
+                return report.path("data").asDouble() < kept.path("data").asDouble();
+            }
+        },
+        /**
+         * Keep the report with the largest value.
+         */
+        MAX {
+            @Override
+            boolean isPreferred(final JsonNode report, final JsonNode kept) {
+                return report.path("data").asDouble() > kept.path("data").asDouble();
+            }
+        };
+
+        abstract boolean isPreferred(JsonNode report, JsonNode kept);
+    }
+
+    private static final class SeriesKey {
+        SeriesKey(final JsonNode report) {
+            _service = report.path("service").asText();
+            _metric = report.path("metric").asText();
+            _statistic = report.path("statistic").asText();
+            _server = report.path("server").asText();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof SeriesKey)) {
+                return false;
+            }
+            final SeriesKey otherKey = (SeriesKey) other;
+            return Objects.equals(_service, otherKey._service)
+                    && Objects.equals(_metric, otherKey._metric)
+                    && Objects.equals(_statistic, otherKey._statistic)
+                    && Objects.equals(_server, otherKey._server);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_service, _metric, _statistic, _server);
+        }
+
+        private final String _service;
+        private final String _metric;
+        private final String _statistic;
+        private final String _server;
+    }
+}
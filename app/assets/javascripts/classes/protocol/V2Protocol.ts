@@ -46,6 +46,12 @@ class V2Protocol extends BaseProtocol {
             var rdCommand:Command<ReportData> = data;
             this.graphViewModel.reportData(rdCommand.data, cvm);
         }
+        else if (data.command == "reportMetrics") {
+            var rdsCommand:Command<ReportData[]> = data;
+            rdsCommand.data.forEach((report: ReportData) => {
+                this.graphViewModel.reportData(report, cvm);
+            });
+        }
         else if (data.response == "ok") {
             this.connectionModel.onHeartbeat();
         }
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.database;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for blocking database calls. Both the number of threads
+ * and the number of waiting calls are bounded; once the queue is full further
+ * calls fail immediately with a <code>RejectedExecutionException</code>
+ * rather than queueing without limit. Idle threads are released so an
+ * executor that is no longer used holds no resources.
+ *
+ * Each repository owns its executor so that it acts as a bulkhead: a
+ * saturated repository rejects its own calls without consuming the threads
+ * of any other. If a <code>MetricsFactory</code> is provided the queue depth
+ * at submission, the time each call waits for a thread and the number of
+ * rejected calls are recorded under <code>database_executor/&lt;name&gt;/</code>.
+ *
+ * The owner shuts the executor down when it closes; waiting calls then fail
+ * and later calls are rejected.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class DatabaseExecutor {
+
+    /**
+     * Public constructor.
+     *
+     * @param name The name of the executor; used to name its threads.
+     * @param poolSize The maximum number of concurrent calls.
+     * @param queueSize The maximum number of calls waiting for a thread.
+     */
+    public DatabaseExecutor(final String name, final int poolSize, final int queueSize) {
+        this(name, poolSize, queueSize, Optional.empty());
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param name The name of the executor; used to name its threads and metrics.
+     * @param poolSize The maximum number of concurrent calls.
+     * @param queueSize The maximum number of calls waiting for a thread.
+     * @param metricsFactory The <code>MetricsFactory</code> to record executor metrics with.
+     */
+    public DatabaseExecutor(final String name, final int poolSize, final int queueSize, final MetricsFactory metricsFactory) {
+        this(name, poolSize, queueSize, Optional.of(metricsFactory));
+    }
+
+    private DatabaseExecutor(
+            final String name,
+            final int poolSize,
+            final int queueSize,
+            final Optional<MetricsFactory> metricsFactory) {
+        _name = name;
+        _metricsFactory = metricsFactory;
+        _metricsPrefix = "database_executor/" + name + "/";
+        _executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(name + "-%d")
+                        .setDaemon(true)
+                        .build());
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Execute a blocking call on the executor.
+     *
+     * @param supplier The blocking call.
+     * @param <T> The type of the result.
+     * @return <code>CompletionStage</code> completed with the result of the call; or failed with a
+     * <code>RejectedExecutionException</code> if the executor is saturated.
+     */
+    public <T> CompletionStage<T> supply(final Supplier<T> supplier) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (_executor.isShutdown()) {
+            future.completeExceptionally(createShutdownException());
+            return future;
+        }
+        final Optional<Metrics> metrics = _metricsFactory.map(MetricsFactory::create);
+        final long submittedAt = System.nanoTime();
+        metrics.ifPresent(m -> m.setGauge(_metricsPrefix + "queue_depth", _executor.getQueue().size()));
+        try {
+            _executor.execute(new Call<>(
+                    future,
+                    () -> {
+                        metrics.ifPresent(m -> m.setTimer(
+                                _metricsPrefix + "wait_time",
+                                System.nanoTime() - submittedAt,
+                                TimeUnit.NANOSECONDS));
+                        try {
+                            return supplier.get();
+                        } finally {
+                            metrics.ifPresent(Metrics::close);
+                        }
+                    }));
+        } catch (final RejectedExecutionException e) {
+            metrics.ifPresent(m -> {
+                m.incrementCounter(_metricsPrefix + "rejected");
+                m.close();
+            });
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Shut down the executor. Calls waiting for a thread fail with a
+     * <code>RejectedExecutionException</code>, running calls are interrupted
+     * and later calls are rejected.
+     */
+    public void shutdown() {
+        for (final Runnable call : _executor.shutdownNow()) {
+            ((Call<?>) call).reject(createShutdownException());
+        }
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("name", _name)
+                .put("poolSize", _executor.getMaximumPoolSize())
+                .put("activeCount", _executor.getActiveCount())
+                .put("queueSize", _executor.getQueue().size())
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private RejectedExecutionException createShutdownException() {
+        return new RejectedExecutionException(String.format("Executor is shut down; name=%s", _name));
+    }
+
+    private final String _name;
+    private final Optional<MetricsFactory> _metricsFactory;
+    private final String _metricsPrefix;
+    private final ThreadPoolExecutor _executor;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final class Call<T> implements Runnable {
+
+        Call(final CompletableFuture<T> future, final Supplier<T> supplier) {
+            _future = future;
+            _supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            try {
+                _future.complete(_supplier.get());
+                // CHECKSTYLE.OFF: IllegalCatch - The failure is delivered to the caller
+            } catch (final Throwable t) {
+                // CHECKSTYLE.ON: IllegalCatch
+                _future.completeExceptionally(t);
+            }
+        }
+
+        public void reject(final RejectedExecutionException exception) {
+            _future.completeExceptionally(exception);
+        }
+
+        private final CompletableFuture<T> _future;
+        private final Supplier<T> _supplier;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.database;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Cache of values computed from a table keyed by the normalized query that
+ * produced them. Each value is tagged with the value of the table's etag
+ * sequence at the time it was computed and is recomputed once the etag
+ * changes. Since the etag sequence is advanced on every insert, update and
+ * delete a cached value is exact as of the etag it was computed for. The
+ * least recently used entries are evicted once the cache is full.
+ *
+ * The etag must be read before computing the value; a concurrent write then
+ * at worst causes the next lookup to recompute an already current value.
+ *
+ * Keys are compared with <code>equals</code> and <code>hashCode</code>; a key
+ * should therefore be a value, such as a list of the query's fields, rather
+ * than a rendering of them which two distinct queries may share.
+ *
+ * @param <K> The type of normalized query.
+ * @param <V> The type of cached value.
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class EtagCache<K, V> {
+
+    /**
+     * Public constructor.
+     *
+     * @param maximumSize The maximum number of distinct queries to cache values for.
+     */
+    public EtagCache(final long maximumSize) {
+        _cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Retrieve the value for the query or compute it if the cached value
+     * is absent or was computed for a different etag.
+     *
+     * @param key The normalized representation of the query.
+     * @param etag The current value of the table's etag.
+     * @param supplier Computes the value if it is not cached.
+     * @return The value.
+     */
+    public V get(final K key, final String etag, final Supplier<V> supplier) {
+        final Entry<V> entry = _cache.getIfPresent(key);
+        if (entry != null && entry.getEtag().equals(etag)) {
+            return entry.getValue();
+        }
+        final V value = supplier.get();
+        _cache.put(key, new Entry<>(etag, value));
+        return value;
+    }
+
+    /**
+     * Retrieve the value for the query if it was computed for the current etag.
+     *
+     * @param key The normalized representation of the query.
+     * @param etag The current value of the table's etag.
+     * @return The cached value or <code>Optional.empty()</code> if it is absent or stale.
+     */
+    public Optional<V> getIfCurrent(final K key, final String etag) {
+        final Entry<V> entry = _cache.getIfPresent(key);
+        if (entry != null && entry.getEtag().equals(etag)) {
+            return Optional.of(entry.getValue());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Cache the value computed for the query at the specified etag.
+     *
+     * @param key The normalized representation of the query.
+     * @param etag The value of the table's etag read before computing the value.
+     * @param value The value.
+     */
+    public void put(final K key, final String etag, final V value) {
+        _cache.put(key, new Entry<>(etag, value));
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("size", _cache.size())
+                .put("stats", _cache.stats())
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private final Cache<K, Entry<V>> _cache;
+
+    private static final class Entry<V> {
+
+        Entry(final String etag, final V value) {
+            _etag = etag;
+            _value = value;
+        }
+
+        public String getEtag() {
+            return _etag;
+        }
+
+        public V getValue() {
+            return _value;
+        }
+
+        private final String _etag;
+        private final V _value;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.database;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Extracts the distinct trigrams (substrings of three characters) of a value.
+ * Any value containing a search term contains every trigram of the term; so
+ * a table of trigrams can narrow a substring search to the rows which have
+ * all of the term's trigrams before the exact match is applied. Trigrams are
+ * case sensitive like the <code>LIKE</code> operator they accelerate.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class Trigrams {
+
+    /**
+     * Extract the distinct trigrams of a value.
+     *
+     * @param value The value.
+     * @return The <code>Set</code> of trigrams; empty if the value is shorter than a trigram.
+     */
+    public static Set<String> of(final String value) {
+        if (value == null || value.length() < LENGTH) {
+            return Collections.emptySet();
+        }
+        final Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + LENGTH <= value.length(); ++i) {
+            trigrams.add(value.substring(i, i + LENGTH));
+        }
+        return trigrams;
+    }
+
+    /**
+     * The length of a trigram.
+     */
+    public static final int LENGTH = 3;
+
+    private Trigrams() {}
+}
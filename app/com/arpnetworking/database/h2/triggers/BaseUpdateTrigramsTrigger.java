@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.database.h2.triggers;
+
+import com.arpnetworking.database.Trigrams;
+import org.h2.api.Trigger;
+
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Base class for H2 triggers maintaining a table of the trigrams of the
+ * searchable columns of each row. The trigram table has a column referencing
+ * the row's id and a <code>trigram</code> column. Trigrams of deleted rows are
+ * expected to be removed by the foreign key.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public abstract class BaseUpdateTrigramsTrigger implements Trigger {
+
+    /**
+     * Public constructor.
+     *
+     * @param trigramTableName Name of the table of trigrams.
+     * @param referenceColumnName Name of the column in the table of trigrams referencing the row's id.
+     * @param columnNames Names of the searchable columns.
+     */
+    public BaseUpdateTrigramsTrigger(
+            final String trigramTableName,
+            final String referenceColumnName,
+            final String... columnNames) {
+        _columnNames = Arrays.asList(columnNames);
+        _columnIndexes = new int[columnNames.length];
+        Arrays.fill(_columnIndexes, -1);
+        _deleteStatement = String.format("DELETE FROM %s WHERE %s = ?", trigramTableName, referenceColumnName);
+        _insertStatement = String.format("INSERT INTO %s (%s, trigram) VALUES (?, ?)", trigramTableName, referenceColumnName);
+        _existsStatement = String.format("SELECT 1 FROM %s WHERE %s = ? LIMIT 1", trigramTableName, referenceColumnName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(
+            final Connection conn,
+            final String schemaName,
+            final String triggerName,
+            final String tableName,
+            final boolean before,
+            final int type) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(null, schemaName, tableName, null)) {
+            while (columns.next()) {
+                final String columnName = columns.getString("COLUMN_NAME");
+                final int index = columns.getInt("ORDINAL_POSITION") - 1;
+                if (ID_COLUMN.equalsIgnoreCase(columnName)) {
+                    _idIndex = index;
+                }
+                for (int i = 0; i < _columnNames.size(); ++i) {
+                    if (_columnNames.get(i).equalsIgnoreCase(columnName)) {
+                        _columnIndexes[i] = index;
+                    }
+                }
+            }
+        }
+        if (_idIndex < 0 || Arrays.stream(_columnIndexes).anyMatch(i -> i < 0)) {
+            throw new SQLException(String.format(
+                    "Table does not have the id and searchable columns; schema=%s, table=%s, columns=%s",
+                    schemaName,
+                    tableName,
+                    _columnNames));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fire(final Connection conn, final Object[] oldRow, final Object[] newRow) throws SQLException {
+        if (newRow == null) {
+            return;
+        }
+        final Object id = newRow[_idIndex];
+        if (oldRow != null && isUnchanged(oldRow, newRow) && hasTrigrams(conn, id)) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(_deleteStatement)) {
+            stmt.setObject(1, id);
+            stmt.executeUpdate();
+        }
+        final Set<String> trigrams = new LinkedHashSet<>();
+        for (final int index : _columnIndexes) {
+            trigrams.addAll(Trigrams.of(asString(newRow[index])));
+        }
+        if (!trigrams.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(_insertStatement)) {
+                for (final String trigram : trigrams) {
+                    stmt.setObject(1, id);
+                    stmt.setString(2, trigram);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        // ignore
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        // ignore
+    }
+
+    private boolean isUnchanged(final Object[] oldRow, final Object[] newRow) {
+        for (final int index : _columnIndexes) {
+            if (!Objects.equals(oldRow[index], newRow[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasTrigrams(final Connection conn, final Object id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(_existsStatement)) {
+            stmt.setObject(1, id);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private static String asString(final Object value) throws SQLException {
+        // NOTE: Text columns are presented to triggers as character large objects
+        if (value instanceof Clob) {
+            final Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        }
+        return Objects.toString(value, null);
+    }
+
+    private final List<String> _columnNames;
+    private final int[] _columnIndexes;
+    private final String _deleteStatement;
+    private final String _insertStatement;
+    private final String _existsStatement;
+    private int _idIndex = -1;
+
+    private static final String ID_COLUMN = "id";
+}
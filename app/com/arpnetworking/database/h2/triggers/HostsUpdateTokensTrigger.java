@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.database.h2.triggers;
+
+import com.arpnetworking.metrics.portal.hosts.impl.HostnameTokenizer;
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Trigger to maintain the host name tokens after every insert or update. The
+ * tokens of a deleted host are removed by the foreign key.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class HostsUpdateTokensTrigger implements Trigger {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(
+            final Connection conn,
+            final String schemaName,
+            final String triggerName,
+            final String tableName,
+            final boolean before,
+            final int type) throws SQLException {
+        // Locate the columns by name rather than assuming the table layout
+        try (ResultSet columns = conn.getMetaData().getColumns(null, schemaName, tableName, null)) {
+            while (columns.next()) {
+                final String columnName = columns.getString("COLUMN_NAME");
+                if (ID_COLUMN.equalsIgnoreCase(columnName)) {
+                    _idIndex = columns.getInt("ORDINAL_POSITION") - 1;
+                } else if (NAME_COLUMN.equalsIgnoreCase(columnName)) {
+                    _nameIndex = columns.getInt("ORDINAL_POSITION") - 1;
+                }
+            }
+        }
+        if (_idIndex < 0 || _nameIndex < 0) {
+            throw new SQLException(String.format(
+                    "Table does not have id and name columns; schema=%s, table=%s",
+                    schemaName,
+                    tableName));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fire(final Connection conn, final Object[] oldRow, final Object[] newRow) throws SQLException {
+        if (newRow == null) {
+            return;
+        }
+        final Object id = newRow[_idIndex];
+        final String name = (String) newRow[_nameIndex];
+        if (oldRow != null && Objects.equals(oldRow[_nameIndex], name) && hasTokens(conn, id)) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM portal.host_tokens WHERE host_id = ?")) {
+            stmt.setObject(1, id);
+            stmt.executeUpdate();
+        }
+        final Set<String> tokens = new LinkedHashSet<>(HostnameTokenizer.tokenize(name));
+        if (!tokens.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO portal.host_tokens (host_id, token) VALUES (?, ?)")) {
+                for (final String token : tokens) {
+                    stmt.setObject(1, id);
+                    stmt.setString(2, token);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        // ignore
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        // ignore
+    }
+
+    private static boolean hasTokens(final Connection conn, final Object id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM portal.host_tokens WHERE host_id = ? LIMIT 1")) {
+            stmt.setObject(1, id);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private int _idIndex = -1;
+    private int _nameIndex = -1;
+
+    private static final String ID_COLUMN = "id";
+    private static final String NAME_COLUMN = "name";
+}
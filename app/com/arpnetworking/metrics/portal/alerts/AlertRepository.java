@@ -21,9 +21,12 @@ import models.internal.QueryResult;
 
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
- * Interface for repository of alerts.
+ * Interface for repository of alerts. The asynchronous variants complete on
+ * the calling thread unless overridden by implementations that perform I/O.
  *
  * @author Ville Koskela (vkoskela at groupon dot com)
  */
@@ -47,6 +50,16 @@ public interface AlertRepository {
      */
     Optional<Alert> get(final UUID identifier);
 
+    /**
+     * Asynchronously get the <code>Alert</code> by identifier.
+     *
+     * @param identifier The <code>Alert</code> identifier.
+     * @return <code>CompletionStage</code> completed with the matching <code>Alert</code> if found.
+     */
+    default CompletionStage<Optional<Alert>> getAsync(final UUID identifier) {
+        return CompletableFuture.supplyAsync(() -> get(identifier), Runnable::run);
+    }
+
     /**
      * Create a query against the alerts repository.
      *
@@ -62,6 +75,34 @@ public interface AlertRepository {
      */
     QueryResult<Alert> query(AlertQuery query);
 
+    /**
+     * Asynchronously query alerts.
+     *
+     * @param query Instance of <code>AlertQuery</code>.
+     * @return <code>CompletionStage</code> completed with the <code>QueryResult</code>.
+     */
+    default CompletionStage<QueryResult<Alert>> queryAsync(final AlertQuery query) {
+        return CompletableFuture.supplyAsync(() -> query(query), Runnable::run);
+    }
+
+    /**
+     * Retrieve the etag of the repository's contents without executing a
+     * query. While the contents are unchanged this matches the etag of any
+     * <code>QueryResult</code> returned by the repository.
+     *
+     * @return The current etag or <code>Optional.empty()</code> if it cannot be determined cheaply.
+     */
+    Optional<String> getEtag();
+
+    /**
+     * Asynchronously retrieve the etag of the repository's contents.
+     *
+     * @return <code>CompletionStage</code> completed with the current etag.
+     */
+    default CompletionStage<Optional<String>> getEtagAsync() {
+        return CompletableFuture.supplyAsync(this::getEtag, Runnable::run);
+    }
+
     /**
      * Retrieve the total number of alerts in the repository.
      *
@@ -75,4 +116,17 @@ public interface AlertRepository {
      * @param alert The alert to add to the repository.
      */
     void addOrUpdateAlert(Alert alert);
+
+    /**
+     * Asynchronously add a new alert or update an existing one in the repository.
+     *
+     * @param alert The alert to add to the repository.
+     * @return <code>CompletionStage</code> completed once the alert is written.
+     */
+    default CompletionStage<Void> addOrUpdateAlertAsync(final Alert alert) {
+        return CompletableFuture.supplyAsync(() -> {
+            addOrUpdateAlert(alert);
+            return null;
+        }, Runnable::run);
+    }
 }
@@ -15,6 +15,10 @@
  */
 package com.arpnetworking.metrics.portal.alerts.impl;
 
+import com.arpnetworking.database.DatabaseExecutor;
+import com.arpnetworking.database.EtagCache;
+import com.arpnetworking.database.Trigrams;
+import com.arpnetworking.metrics.MetricsFactory;
 import com.arpnetworking.metrics.portal.alerts.AlertRepository;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
@@ -22,10 +26,12 @@ import com.arpnetworking.steno.LoggerFactory;
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Junction;
-import com.avaje.ebean.PagedList;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.SqlUpdate;
 import com.avaje.ebean.Transaction;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import models.ebean.NagiosExtension;
 import models.internal.Alert;
@@ -41,10 +47,16 @@ import play.Environment;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import javax.persistence.PersistenceException;
 
 /**
@@ -59,16 +71,25 @@ public class DatabaseAlertRepository implements AlertRepository {
      *
      * @param environment Play's <code>Environment</code> instance.
      * @param config Play's <code>Configuration</code> instance.
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
      * @throws Exception If the configuration is invalid.
      */
     @Inject
-    public DatabaseAlertRepository(final Environment environment, final Configuration config) throws Exception {
+    public DatabaseAlertRepository(
+            final Environment environment,
+            final Configuration config,
+            final MetricsFactory metricsFactory) throws Exception {
         this(
                 ConfigurationHelper.<AlertQueryGenerator>getType(
                         environment,
                         config,
                         "alertRepository.alertQueryGenerator.type")
-                        .newInstance());
+                        .newInstance(),
+                new DatabaseExecutor(
+                        "alert_repository",
+                        config.getInt("alertRepository.executor.poolSize", DEFAULT_POOL_SIZE),
+                        config.getInt("alertRepository.executor.queueSize", DEFAULT_QUEUE_SIZE),
+                        metricsFactory));
     }
 
     /**
@@ -77,7 +98,18 @@ public class DatabaseAlertRepository implements AlertRepository {
      * @param alertQueryGenerator Instance of <code>AlertQueryGenerator</code>.
      */
     public DatabaseAlertRepository(final AlertQueryGenerator alertQueryGenerator) {
+        this(alertQueryGenerator, new DatabaseExecutor("alert_repository", DEFAULT_POOL_SIZE, DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param alertQueryGenerator Instance of <code>AlertQueryGenerator</code>.
+     * @param executor The <code>DatabaseExecutor</code> for asynchronous calls; shut down on close.
+     */
+    public DatabaseAlertRepository(final AlertQueryGenerator alertQueryGenerator, final DatabaseExecutor executor) {
         _alertQueryGenerator = alertQueryGenerator;
+        _executor = executor;
     }
 
     /**
@@ -98,6 +130,7 @@ public class DatabaseAlertRepository implements AlertRepository {
         assertIsOpen();
         LOGGER.debug().setMessage("Closing alert repository").log();
         _isOpen.set(false);
+        _executor.shutdown();
     }
 
     /**
@@ -121,6 +154,14 @@ public class DatabaseAlertRepository implements AlertRepository {
         return Optional.of(convertFromEbeanAlert(ebeanAlert));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<Alert>> getAsync(final UUID identifier) {
+        return _executor.supply(() -> get(identifier));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -143,17 +184,47 @@ public class DatabaseAlertRepository implements AlertRepository {
                 .log();
 
         // Create the base query
-        final PagedList<models.ebean.Alert> pagedAlerts = _alertQueryGenerator.createAlertQuery(query);
+        final QueryResult<models.ebean.Alert> ebeanResult = _alertQueryGenerator.createAlertQuery(query);
 
         // Compute the etag
         // TODO(deepika): Obfuscate the etag [ISSUE-7]
         final Long etag = _alertQueryGenerator.getEtag();
 
         final List<Alert> values = new ArrayList<>();
-        pagedAlerts.getList().forEach(ebeanAlert -> values.add(convertFromEbeanAlert(ebeanAlert)));
+        ebeanResult.values().forEach(ebeanAlert -> values.add(convertFromEbeanAlert(ebeanAlert)));
 
         // Transform the results
-        return new DefaultQueryResult<>(values, pagedAlerts.getTotalRowCount(), etag.toString());
+        return new DefaultQueryResult<>(
+                values,
+                ebeanResult.total(),
+                ebeanResult.totalMode(),
+                Optional.of(etag.toString()),
+                Optional.empty());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<QueryResult<Alert>> queryAsync(final AlertQuery query) {
+        return _executor.supply(() -> query(query));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        return Optional.of(Long.toString(_alertQueryGenerator.getEtag()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<String>> getEtagAsync() {
+        return _executor.supply(this::getEtag);
     }
 
     /**
@@ -179,29 +250,7 @@ public class DatabaseAlertRepository implements AlertRepository {
 
 
         try (Transaction transaction = Ebean.beginTransaction()) {
-            models.ebean.Alert ebeanAlert = Ebean.find(models.ebean.Alert.class)
-                    .where()
-                    .eq("uuid", alert.getId())
-                    .findUnique();
-            boolean created = false;
-            if (ebeanAlert == null) {
-                ebeanAlert = new models.ebean.Alert();
-                created = true;
-            }
-
-            ebeanAlert.setCluster(alert.getCluster());
-            ebeanAlert.setUuid(alert.getId());
-            ebeanAlert.setMetric(alert.getMetric());
-            ebeanAlert.setContext(alert.getContext());
-            ebeanAlert.setNagiosExtension(convertToEbeanNagiosExtension(alert.getNagiosExtension()));
-            ebeanAlert.setName(alert.getName());
-            ebeanAlert.setOperator(alert.getOperator());
-            ebeanAlert.setPeriod(alert.getPeriod().toStandardSeconds().getSeconds());
-            ebeanAlert.setQuantityValue(alert.getValue().getValue());
-            ebeanAlert.setQuantityUnit(alert.getValue().getUnit().orNull());
-            ebeanAlert.setStatistic(alert.getStatistic());
-            ebeanAlert.setService(alert.getService());
-            _alertQueryGenerator.saveAlert(ebeanAlert);
+            final boolean created = _alertQueryGenerator.saveAlert(alert);
             transaction.commit();
 
             LOGGER.info()
@@ -221,6 +270,17 @@ public class DatabaseAlertRepository implements AlertRepository {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Void> addOrUpdateAlertAsync(final Alert alert) {
+        return _executor.supply(() -> {
+            addOrUpdateAlert(alert);
+            return null;
+        });
+    }
+
     private void assertIsOpen() {
         assertIsOpen(true);
     }
@@ -263,22 +323,13 @@ public class DatabaseAlertRepository implements AlertRepository {
                 .build();
     }
 
-    private NagiosExtension convertToEbeanNagiosExtension(final models.internal.NagiosExtension internalExtension) {
-        if (internalExtension == null) {
-            return null;
-        }
-        final NagiosExtension extension = new NagiosExtension();
-        extension.setSeverity(internalExtension.getSeverity());
-        extension.setNotify(internalExtension.getNotify());
-        extension.setMaxCheckAttempts(internalExtension.getMaxCheckAttempts());
-        extension.setFreshnessThreshold(internalExtension.getFreshnessThreshold().getStandardSeconds());
-        return extension;
-    }
-
     private final AtomicBoolean _isOpen = new AtomicBoolean(false);
     private final AlertQueryGenerator _alertQueryGenerator;
+    private final DatabaseExecutor _executor;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseAlertRepository.class);
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
 
     /**
      * Inteface for database query generation.
@@ -286,19 +337,23 @@ public class DatabaseAlertRepository implements AlertRepository {
     public interface AlertQueryGenerator {
 
         /**
-         * Translate the <code>AlertQuery</code> to an Ebean <code>Query</code>.
+         * Translate the <code>AlertQuery</code> to an Ebean <code>Query</code> and execute it. The total
+         * is computed as requested by the query's <code>CountMode</code>. The returned result carries no
+         * etag; this is computed by the repository.
          *
          * @param query The repository agnostic <code>AlertQuery</code>.
-         * @return The database specific <code>PagedList</code> query result.
+         * @return The database specific <code>QueryResult</code>.
          */
-        PagedList<models.ebean.Alert> createAlertQuery(AlertQuery query);
+        QueryResult<models.ebean.Alert> createAlertQuery(AlertQuery query);
 
         /**
-         * Save the <code>Alert</code> to the database. This needs to be executed in a transaction.
+         * Insert or update the <code>Alert</code> and its Nagios extension in the database without first
+         * reading it. This needs to be executed in a transaction.
          *
-         * @param alert The <code>Alert</code> model instance to save.
+         * @param alert The <code>Alert</code> instance to save.
+         * @return True if and only if the alert was created.
          */
-        void saveAlert(models.ebean.Alert alert);
+        boolean saveAlert(Alert alert);
 
         /**
          * Gets the etag for the alerts table.
@@ -313,11 +368,123 @@ public class DatabaseAlertRepository implements AlertRepository {
      */
     public static final class GenericQueryGenerator implements AlertQueryGenerator {
 
+        /**
+         * Public constructor.
+         */
+        public GenericQueryGenerator() {
+            this(GenericQueryGenerator::createExpressionList);
+        }
+
+        private GenericQueryGenerator(final Function<AlertQuery, ExpressionList<models.ebean.Alert>> expressionListFactory) {
+            _expressionListFactory = expressionListFactory;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public QueryResult<models.ebean.Alert> createAlertQuery(final AlertQuery query) {
+            // Retrieve the page
+            final List<models.ebean.Alert> alerts;
+            if (query.getLimit() == 0) {
+                alerts = Collections.emptyList();
+            } else {
+                final Query<models.ebean.Alert> ebeanQuery = _expressionListFactory.apply(query).query();
+                if (query.getOffset().isPresent()) {
+                    ebeanQuery.setFirstRow(query.getOffset().get());
+                }
+                alerts = ebeanQuery.setMaxRows(query.getLimit()).findList();
+            }
+
+            // Count the matching alerts
+            final long total;
+            switch (query.getCount()) {
+                case EXACT:
+                    total = _expressionListFactory.apply(query).findRowCount();
+                    break;
+                case ESTIMATE:
+                    total = _countCache.get(
+                            createCountKey(query),
+                            Long.toString(getEtag()),
+                            () -> (long) _expressionListFactory.apply(query).findRowCount());
+                    break;
+                default:
+                    total = 0;
+            }
+            return new DefaultQueryResult<>(alerts, total, query.getCount(), Optional.empty(), Optional.empty());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean saveAlert(final Alert alert) {
+            // Update the alert in place and only insert it if there was nothing to update
+            final Map<String, Object> parameters = createParameters(alert);
+            final boolean created = createSqlUpdate(UPDATE_ALERT_SQL, parameters).execute() == 0;
+            if (created) {
+                createSqlUpdate(INSERT_ALERT_SQL, parameters).execute();
+            } else {
+                createSqlUpdate(DELETE_NAGIOS_EXTENSION_SQL, parameters).execute();
+            }
+            if (alert.getNagiosExtension() != null) {
+                createSqlUpdate(INSERT_NAGIOS_EXTENSION_SQL, parameters).execute();
+            }
+            return created;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
-        public PagedList<models.ebean.Alert> createAlertQuery(final AlertQuery query) {
+        public long getEtag() {
+            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT CURRVAL('portal.alerts_etag_seq') AS etag;");
+            return sqlQuery.findUnique().getLong("etag");
+        }
+
+        private static List<Object> createCountKey(final AlertQuery query) {
+            return Arrays.asList(
+                    query.getCluster(),
+                    query.getContext(),
+                    query.getService(),
+                    query.getContains());
+        }
+
+        // NOTE: Package private for reuse by the database specific query generators
+        /* package private */ static Map<String, Object> createParameters(final Alert alert) {
+            final Map<String, Object> parameters = Maps.newHashMap();
+            parameters.put("uuid", alert.getId());
+            parameters.put("name", alert.getName());
+            parameters.put("cluster", alert.getCluster());
+            parameters.put("service", alert.getService());
+            parameters.put("context", alert.getContext().toString());
+            parameters.put("metric", alert.getMetric());
+            parameters.put("statistic", alert.getStatistic());
+            parameters.put("period", alert.getPeriod().toStandardSeconds().getSeconds());
+            parameters.put("operator", alert.getOperator().toString());
+            parameters.put("quantityValue", alert.getValue().getValue());
+            parameters.put("quantityUnit", alert.getValue().getUnit().orNull());
+            final models.internal.NagiosExtension extension = alert.getNagiosExtension();
+            if (extension != null) {
+                parameters.put("severity", extension.getSeverity());
+                parameters.put("notify", extension.getNotify());
+                parameters.put("maxCheckAttempts", extension.getMaxCheckAttempts());
+                parameters.put("freshnessThreshold", extension.getFreshnessThreshold().getStandardSeconds());
+            }
+            return parameters;
+        }
+
+        // NOTE: Package private for reuse by the database specific query generators
+        /* package private */ static SqlUpdate createSqlUpdate(final String sql, final Map<String, Object> parameters) {
+            final SqlUpdate sqlUpdate = Ebean.createSqlUpdate(sql);
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                sqlUpdate.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            return sqlUpdate;
+        }
+
+        // NOTE: Package private for reuse by the database specific query generators
+        /* package private */ static ExpressionList<models.ebean.Alert> createExpressionList(final AlertQuery query) {
             ExpressionList<models.ebean.Alert> ebeanExpressionList = Ebean.find(models.ebean.Alert.class).where();
             if (query.getCluster().isPresent()) {
                 ebeanExpressionList = ebeanExpressionList.eq("cluster", query.getCluster().get());
@@ -329,7 +496,7 @@ public class DatabaseAlertRepository implements AlertRepository {
                 ebeanExpressionList = ebeanExpressionList.eq("service", query.getService().get());
             }
 
-            //TODO(deepika): Add full text search [ISSUE-11]
+            // NOTE: The database specific query generators index these clauses
             if (query.getContains().isPresent()) {
                 final Junction<models.ebean.Alert> junction = ebeanExpressionList.disjunction();
                 ebeanExpressionList = junction.contains("name", query.getContains().get());
@@ -344,20 +511,122 @@ public class DatabaseAlertRepository implements AlertRepository {
                 ebeanExpressionList = junction.contains("operator", query.getContains().get());
                 ebeanExpressionList = ebeanExpressionList.endJunction();
             }
-            final Query<models.ebean.Alert> ebeanQuery = ebeanExpressionList.query();
-            int pageOffset = 0;
-            if (query.getOffset().isPresent()) {
-                pageOffset = query.getOffset().get() / query.getLimit();
+            return ebeanExpressionList;
+        }
+
+        private final Function<AlertQuery, ExpressionList<models.ebean.Alert>> _expressionListFactory;
+        private final EtagCache<List<Object>, Long> _countCache = new EtagCache<>(COUNT_CACHE_SIZE);
+
+        private static final long COUNT_CACHE_SIZE = 1000;
+        private static final String UPDATE_ALERT_SQL = "UPDATE portal.alerts SET "
+                + "name = :name, cluster = :cluster, service = :service, context = :context, metric = :metric, "
+                + "statistic = :statistic, period_in_seconds = :period, operator = :operator, "
+                + "quantity_value = :quantityValue, quantity_unit = :quantityUnit, "
+                + "version = version + 1, updated_at = CURRENT_TIMESTAMP "
+                + "WHERE uuid = :uuid";
+        private static final String INSERT_ALERT_SQL = "INSERT INTO portal.alerts "
+                + "(uuid, name, cluster, service, context, metric, statistic, period_in_seconds, operator, quantity_value, quantity_unit) "
+                + "VALUES (:uuid, :name, :cluster, :service, :context, :metric, :statistic, :period, :operator, "
+                + ":quantityValue, :quantityUnit)";
+        private static final String DELETE_NAGIOS_EXTENSION_SQL = "DELETE FROM portal.nagios_extensions "
+                + "WHERE alert_id = (SELECT id FROM portal.alerts WHERE uuid = :uuid)";
+        private static final String INSERT_NAGIOS_EXTENSION_SQL = "INSERT INTO portal.nagios_extensions "
+                + "(alert_id, severity, notify, max_check_attempts, freshness_threshold_in_seconds) "
+                + "SELECT id, :severity, :notify, :maxCheckAttempts, :freshnessThreshold FROM portal.alerts WHERE uuid = :uuid";
+    }
+
+    /**
+     * H2 specific query for alerts. Every inserted or updated alert is broken
+     * into the trigrams of its searchable columns by a trigger. A <code>contains</code>
+     * clause is narrowed to the alerts having every trigram of the term, using the
+     * index on the trigram table, before the exact <code>LIKE</code> clauses are
+     * applied. Terms shorter than a trigram are not narrowed.
+     */
+    public static final class H2QueryGenerator implements AlertQueryGenerator {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public QueryResult<models.ebean.Alert> createAlertQuery(final AlertQuery query) {
+            return _genericQueryGenerator.createAlertQuery(query);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean saveAlert(final Alert alert) {
+            return _genericQueryGenerator.saveAlert(alert);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getEtag() {
+            return _genericQueryGenerator.getEtag();
+        }
+
+        private static ExpressionList<models.ebean.Alert> createExpressionList(final AlertQuery query) {
+            final ExpressionList<models.ebean.Alert> ebeanExpressionList = GenericQueryGenerator.createExpressionList(query);
+            if (query.getContains().isPresent()) {
+                final Set<String> trigrams = Trigrams.of(query.getContains().get());
+                if (!trigrams.isEmpty()) {
+                    final StringBuilder sqlBuilder = new StringBuilder(
+                            "id in (select alert_id from portal.alert_trigrams where trigram in (");
+                    final Object[] parameters = new Object[trigrams.size() + 1];
+                    int i = 0;
+                    for (final String trigram : trigrams) {
+                        sqlBuilder.append(i == 0 ? "?" : ", ?");
+                        parameters[i++] = trigram;
+                    }
+                    sqlBuilder.append(") group by alert_id having count(*) = ?)");
+                    parameters[i] = trigrams.size();
+                    ebeanExpressionList.raw(sqlBuilder.toString(), parameters);
+                }
             }
-            return ebeanQuery.findPagedList(pageOffset, query.getLimit());
+            return ebeanExpressionList;
         }
 
+        private final GenericQueryGenerator _genericQueryGenerator = new GenericQueryGenerator(H2QueryGenerator::createExpressionList);
+    }
+
+    /**
+     * Postgresql specific query for alerts. The <code>contains</code> clauses are
+     * served by the <code>pg_trgm</code> indexes on the searchable columns.
+     */
+    public static final class PostgresqlQueryGenerator implements AlertQueryGenerator {
+
         /**
          * {@inheritDoc}
          */
         @Override
-        public void saveAlert(final models.ebean.Alert alert) {
-            Ebean.save(alert);
+        public QueryResult<models.ebean.Alert> createAlertQuery(final AlertQuery query) {
+            return _genericQueryGenerator.createAlertQuery(query);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean saveAlert(final Alert alert) {
+            // NOTE: The system column xmax is only set for a row version created by the conflict update
+            final Map<String, Object> parameters = GenericQueryGenerator.createParameters(alert);
+            final SqlQuery upsertQuery = Ebean.createSqlQuery(UPSERT_ALERT_SQL);
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                upsertQuery.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            final SqlRow row = upsertQuery.findUnique();
+            final boolean created = row.getBoolean("created");
+            parameters.put("id", row.getLong("id"));
+            if (!created) {
+                GenericQueryGenerator.createSqlUpdate(DELETE_NAGIOS_EXTENSION_SQL, parameters).execute();
+            }
+            if (alert.getNagiosExtension() != null) {
+                GenericQueryGenerator.createSqlUpdate(INSERT_NAGIOS_EXTENSION_SQL, parameters).execute();
+            }
+            return created;
         }
 
         /**
@@ -365,8 +634,26 @@ public class DatabaseAlertRepository implements AlertRepository {
          */
         @Override
         public long getEtag() {
-            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT CURRVAL('portal.alerts_etag_seq') AS etag;");
+            // NOTE: Unlike currval the last value does not require the sequence to have been used in this session
+            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT last_value AS etag FROM portal.alerts_etag_seq;");
             return sqlQuery.findUnique().getLong("etag");
         }
+
+        private final GenericQueryGenerator _genericQueryGenerator = new GenericQueryGenerator();
+
+        private static final String UPSERT_ALERT_SQL = "INSERT INTO portal.alerts "
+                + "(uuid, name, cluster, service, context, metric, statistic, period_in_seconds, operator, quantity_value, quantity_unit) "
+                + "VALUES (:uuid, :name, :cluster, :service, :context, :metric, :statistic, :period, :operator, "
+                + ":quantityValue, :quantityUnit) "
+                + "ON CONFLICT (uuid) DO UPDATE SET "
+                + "name = EXCLUDED.name, cluster = EXCLUDED.cluster, service = EXCLUDED.service, context = EXCLUDED.context, "
+                + "metric = EXCLUDED.metric, statistic = EXCLUDED.statistic, period_in_seconds = EXCLUDED.period_in_seconds, "
+                + "operator = EXCLUDED.operator, quantity_value = EXCLUDED.quantity_value, quantity_unit = EXCLUDED.quantity_unit, "
+                + "version = portal.alerts.version + 1, updated_at = now() "
+                + "RETURNING id, (xmax = 0) AS created";
+        private static final String DELETE_NAGIOS_EXTENSION_SQL = "DELETE FROM portal.nagios_extensions WHERE alert_id = :id";
+        private static final String INSERT_NAGIOS_EXTENSION_SQL = "INSERT INTO portal.nagios_extensions "
+                + "(alert_id, severity, notify, max_check_attempts, freshness_threshold_in_seconds) "
+                + "VALUES (:id, :severity, :notify, :maxCheckAttempts, :freshnessThreshold)";
     }
 }
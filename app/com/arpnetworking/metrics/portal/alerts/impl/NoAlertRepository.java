@@ -99,6 +99,15 @@ public final class NoAlertRepository extends ReadOnlyAbstractAlertRepository {
         return new DefaultQueryResult<>(Collections.<Alert>emptyList(), 0);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        return Optional.empty();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -21,9 +21,12 @@ import models.internal.QueryResult;
 
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
- * Interface for repository of expressions.
+ * Interface for repository of expressions. By default the asynchronous
+ * methods simply wrap their synchronous counterparts.
  *
  * @author Ville Koskela (vkoskela at groupon dot com)
  */
@@ -47,6 +50,16 @@ public interface ExpressionRepository {
      */
     Optional<Expression> get(final UUID identifier);
 
+    /**
+     * Asynchronously get the <code>Expression</code> by identifier.
+     *
+     * @param identifier The <code>Expression</code> identifier.
+     * @return <code>CompletionStage</code> completed with the matching <code>Expression</code> if found.
+     */
+    default CompletionStage<Optional<Expression>> getAsync(final UUID identifier) {
+        return CompletableFuture.supplyAsync(() -> get(identifier), Runnable::run);
+    }
+
     /**
      * Create a query against the expressions repository.
      *
@@ -62,6 +75,34 @@ public interface ExpressionRepository {
      */
     QueryResult<Expression> query(ExpressionQuery query);
 
+    /**
+     * Asynchronously query expressions.
+     *
+     * @param query Instance of <code>ExpressionQuery</code>.
+     * @return <code>CompletionStage</code> completed with the <code>QueryResult</code>.
+     */
+    default CompletionStage<QueryResult<Expression>> queryAsync(final ExpressionQuery query) {
+        return CompletableFuture.supplyAsync(() -> query(query), Runnable::run);
+    }
+
+    /**
+     * Retrieve the etag of the repository's contents without executing a
+     * query. While the contents are unchanged this matches the etag of any
+     * <code>QueryResult</code> returned by the repository.
+     *
+     * @return The current etag or <code>Optional.empty()</code> if it cannot be determined cheaply.
+     */
+    Optional<String> getEtag();
+
+    /**
+     * Asynchronously retrieve the etag of the repository's contents.
+     *
+     * @return <code>CompletionStage</code> completed with the current etag.
+     */
+    default CompletionStage<Optional<String>> getEtagAsync() {
+        return CompletableFuture.supplyAsync(this::getEtag, Runnable::run);
+    }
+
     /**
      * Retrieve the total number of expressions in the repository.
      *
@@ -75,4 +116,17 @@ public interface ExpressionRepository {
      * @param expression The expression to add to the repository.
      */
     void addOrUpdateExpression(Expression expression);
+
+    /**
+     * Asynchronously add a new expression or update an existing one in the repository.
+     *
+     * @param expression The expression to add to the repository.
+     * @return <code>CompletionStage</code> completed once the expression is written.
+     */
+    default CompletionStage<Void> addOrUpdateExpressionAsync(final Expression expression) {
+        return CompletableFuture.supplyAsync(() -> {
+            addOrUpdateExpression(expression);
+            return null;
+        }, Runnable::run);
+    }
 }
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.expressions.impl;
+
+import com.arpnetworking.database.EtagCache;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.portal.expressions.ExpressionRepository;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.inject.Inject;
+import models.internal.Expression;
+import models.internal.ExpressionQuery;
+import models.internal.QueryResult;
+import models.internal.impl.DefaultExpressionQuery;
+import play.Configuration;
+import play.Environment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Implementation of <code>ExpressionRepository</code> which caches query results
+ * of a <code>DatabaseExpressionRepository</code>. Cached results are keyed by the
+ * query and are valid only as long as the etag of the expressions table remains
+ * unchanged; so a repeated query costs a single sequence read.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class CachingExpressionRepository implements ExpressionRepository {
+
+    /**
+     * Public constructor.
+     *
+     * @param environment Play's <code>Environment</code> instance.
+     * @param config Play's <code>Configuration</code> instance.
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
+     * @throws Exception If the configuration is invalid.
+     */
+    @Inject
+    public CachingExpressionRepository(
+            final Environment environment,
+            final Configuration config,
+            final MetricsFactory metricsFactory) throws Exception {
+        this(
+                new DatabaseExpressionRepository(environment, config, metricsFactory),
+                config.getLong("expressionRepository.cache.maximumSize", DEFAULT_MAXIMUM_SIZE));
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param repository The <code>DatabaseExpressionRepository</code> to cache.
+     * @param maximumSize The maximum number of query results to cache.
+     */
+    public CachingExpressionRepository(final DatabaseExpressionRepository repository, final long maximumSize) {
+        _repository = repository;
+        _cache = new EtagCache<>(maximumSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void open() {
+        _repository.open();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        _repository.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<Expression> get(final UUID identifier) {
+        return _repository.get(identifier);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<Expression>> getAsync(final UUID identifier) {
+        return _repository.getAsync(identifier);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExpressionQuery createQuery() {
+        LOGGER.debug().setMessage("Preparing query").log();
+        return new DefaultExpressionQuery(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public QueryResult<Expression> query(final ExpressionQuery query) {
+        final Optional<String> etag = _repository.getEtag();
+        if (!etag.isPresent()) {
+            return _repository.query(query);
+        }
+        return _cache.get(createKey(query), etag.get(), () -> _repository.query(query));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<QueryResult<Expression>> queryAsync(final ExpressionQuery query) {
+        final List<Object> key = createKey(query);
+        return _repository.getEtagAsync().thenCompose(etag -> {
+            if (!etag.isPresent()) {
+                return _repository.queryAsync(query);
+            }
+            final Optional<QueryResult<Expression>> cached = _cache.getIfCurrent(key, etag.get());
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(cached.get());
+            }
+            return _repository.queryAsync(query).thenApply(result -> {
+                _cache.put(key, etag.get(), result);
+                return result;
+            });
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        return _repository.getEtag();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<String>> getEtagAsync() {
+        return _repository.getEtagAsync();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getExpressionCount() {
+        return _repository.getExpressionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOrUpdateExpression(final Expression expression) {
+        _repository.addOrUpdateExpression(expression);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Void> addOrUpdateExpressionAsync(final Expression expression) {
+        return _repository.addOrUpdateExpressionAsync(expression);
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("repository", _repository)
+                .put("cache", _cache)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private static List<Object> createKey(final ExpressionQuery query) {
+        return Arrays.asList(
+                query.getContains(),
+                query.getCluster(),
+                query.getService(),
+                query.getLimit(),
+                query.getOffset(),
+                query.getCount());
+    }
+
+    private final DatabaseExpressionRepository _repository;
+    private final EtagCache<List<Object>, QueryResult<Expression>> _cache;
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 1000;
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingExpressionRepository.class);
+}
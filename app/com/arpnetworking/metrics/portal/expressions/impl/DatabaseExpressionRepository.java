@@ -15,6 +15,10 @@
  */
 package com.arpnetworking.metrics.portal.expressions.impl;
 
+import com.arpnetworking.database.DatabaseExecutor;
+import com.arpnetworking.database.EtagCache;
+import com.arpnetworking.database.Trigrams;
+import com.arpnetworking.metrics.MetricsFactory;
 import com.arpnetworking.metrics.portal.expressions.ExpressionRepository;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
@@ -22,10 +26,11 @@ import com.arpnetworking.steno.LoggerFactory;
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.ExpressionList;
 import com.avaje.ebean.Junction;
-import com.avaje.ebean.PagedList;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlUpdate;
 import com.avaje.ebean.Transaction;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import models.internal.Expression;
 import models.internal.ExpressionQuery;
@@ -37,9 +42,16 @@ import play.Configuration;
 import play.Environment;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.persistence.PersistenceException;
 
@@ -55,16 +67,25 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
      *
      * @param environment Play's <code>Environment</code> instance.
      * @param config Play's <code>Configuration</code> instance.
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
      * @throws Exception If the configuration is invalid.
      */
     @Inject
-    public DatabaseExpressionRepository(final Environment environment, final Configuration config) throws Exception {
+    public DatabaseExpressionRepository(
+            final Environment environment,
+            final Configuration config,
+            final MetricsFactory metricsFactory) throws Exception {
         this(
                 ConfigurationHelper.<ExpressionQueryGenerator>getType(
                         environment,
                         config,
                         "expressionRepository.expressionQueryGenerator.type")
-                        .newInstance());
+                        .newInstance(),
+                new DatabaseExecutor(
+                        "expression_repository",
+                        config.getInt("expressionRepository.executor.poolSize", DEFAULT_POOL_SIZE),
+                        config.getInt("expressionRepository.executor.queueSize", DEFAULT_QUEUE_SIZE),
+                        metricsFactory));
     }
 
     /**
@@ -73,7 +94,18 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
      * @param expressionQueryGenerator Instance of <code>ExpressionQueryGenerator</code>.
      */
     public DatabaseExpressionRepository(final ExpressionQueryGenerator expressionQueryGenerator) {
+        this(expressionQueryGenerator, new DatabaseExecutor("expression_repository", DEFAULT_POOL_SIZE, DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param expressionQueryGenerator Instance of <code>ExpressionQueryGenerator</code>.
+     * @param executor The <code>DatabaseExecutor</code> for asynchronous calls; shut down on close.
+     */
+    public DatabaseExpressionRepository(final ExpressionQueryGenerator expressionQueryGenerator, final DatabaseExecutor executor) {
         _expressionQueryGenerator = expressionQueryGenerator;
+        _executor = executor;
     }
 
     /**
@@ -94,6 +126,7 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
         assertIsOpen();
         LOGGER.debug().setMessage("Closing expression repository").log();
         _isOpen.set(false);
+        _executor.shutdown();
     }
 
     /**
@@ -118,6 +151,14 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
         return Optional.of(convertFromEbeanExpression(ebeanExpression));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<Expression>> getAsync(final UUID identifier) {
+        return _executor.supply(() -> get(identifier));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -140,7 +181,7 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
                 .log();
 
         // Create the base query
-        final PagedList<models.ebean.Expression> pagedExpressions = _expressionQueryGenerator.createExpressionQuery(query);
+        final QueryResult<models.ebean.Expression> ebeanResult = _expressionQueryGenerator.createExpressionQuery(query);
 
         // Compute the etag
         // TODO(deepika): Obfuscate the etag [ISSUE-7]
@@ -148,12 +189,39 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
 
         // Transform the results
         return new DefaultQueryResult<>(
-                pagedExpressions.getList()
+                ebeanResult.values()
                         .stream()
                         .map(expression -> convertFromEbeanExpression(expression))
                         .collect(Collectors.toList()),
-                pagedExpressions.getTotalRowCount(),
-                etag.toString());
+                ebeanResult.total(),
+                ebeanResult.totalMode(),
+                Optional.of(etag.toString()),
+                Optional.empty());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<QueryResult<Expression>> queryAsync(final ExpressionQuery query) {
+        return _executor.supply(() -> query(query));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        return Optional.of(Long.toString(_expressionQueryGenerator.getEtag()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<String>> getEtagAsync() {
+        return _executor.supply(this::getEtag);
     }
 
     /**
@@ -178,22 +246,7 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
                 .log();
 
         try (Transaction transaction = Ebean.beginTransaction()) {
-            models.ebean.Expression ebeanExpression = Ebean.find(models.ebean.Expression.class)
-                    .where()
-                    .eq("uuid", expression.getId())
-                    .findUnique();
-            boolean created = false;
-            if (ebeanExpression == null) {
-                ebeanExpression = new models.ebean.Expression();
-                created = true;
-            }
-
-            ebeanExpression.setCluster(expression.getCluster());
-            ebeanExpression.setUuid(expression.getId());
-            ebeanExpression.setMetric(expression.getMetric());
-            ebeanExpression.setScript(expression.getScript());
-            ebeanExpression.setService(expression.getService());
-            _expressionQueryGenerator.saveExpression(ebeanExpression);
+            final boolean created = _expressionQueryGenerator.saveExpression(expression);
             transaction.commit();
 
             LOGGER.info()
@@ -213,6 +266,17 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Void> addOrUpdateExpressionAsync(final Expression expression) {
+        return _executor.supply(() -> {
+            addOrUpdateExpression(expression);
+            return null;
+        });
+    }
+
     private void assertIsOpen() {
         assertIsOpen(true);
     }
@@ -235,8 +299,11 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
 
     private final AtomicBoolean _isOpen = new AtomicBoolean(false);
     private final ExpressionQueryGenerator _expressionQueryGenerator;
+    private final DatabaseExecutor _executor;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseExpressionRepository.class);
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
 
     /**
      * Inteface for database query generation.
@@ -244,19 +311,23 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
     public interface ExpressionQueryGenerator {
 
         /**
-         * Translate the <code>ExpressionQuery</code> to an Ebean <code>Query</code>.
+         * Translate the <code>ExpressionQuery</code> to an Ebean <code>Query</code> and execute it. The total
+         * is computed as requested by the query's <code>CountMode</code>. The returned result carries no
+         * etag; this is computed by the repository.
          *
          * @param query The repository agnostic <code>ExpressionQuery</code>.
-         * @return The database specific <code>PagedList</code> query result.
+         * @return The database specific <code>QueryResult</code>.
          */
-        PagedList<models.ebean.Expression> createExpressionQuery(ExpressionQuery query);
+        QueryResult<models.ebean.Expression> createExpressionQuery(ExpressionQuery query);
 
         /**
-         * Save the <code>Expression</code> to the database. This needs to be executed in a transaction.
+         * Insert or update the <code>Expression</code> in the database without first reading it. This needs
+         * to be executed in a transaction.
          *
-         * @param expression The <code>Expression</code> model instance to save.
+         * @param expression The <code>Expression</code> instance to save.
+         * @return True if and only if the expression was created.
          */
-        void saveExpression(models.ebean.Expression expression);
+        boolean saveExpression(Expression expression);
 
         /**
          * Gets the etag for the alerts table.
@@ -271,11 +342,103 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
      */
     public static final class GenericQueryGenerator implements ExpressionQueryGenerator {
 
+        /**
+         * Public constructor.
+         */
+        public GenericQueryGenerator() {
+            this(GenericQueryGenerator::createExpressionList);
+        }
+
+        private GenericQueryGenerator(final Function<ExpressionQuery, ExpressionList<models.ebean.Expression>> expressionListFactory) {
+            _expressionListFactory = expressionListFactory;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public QueryResult<models.ebean.Expression> createExpressionQuery(final ExpressionQuery query) {
+            // Retrieve the page
+            final List<models.ebean.Expression> expressions;
+            if (query.getLimit() == 0) {
+                expressions = Collections.emptyList();
+            } else {
+                final Query<models.ebean.Expression> ebeanQuery = _expressionListFactory.apply(query).query();
+                if (query.getOffset().isPresent()) {
+                    ebeanQuery.setFirstRow(query.getOffset().get());
+                }
+                expressions = ebeanQuery.setMaxRows(query.getLimit()).findList();
+            }
+
+            // Count the matching expressions
+            final long total;
+            switch (query.getCount()) {
+                case EXACT:
+                    total = _expressionListFactory.apply(query).findRowCount();
+                    break;
+                case ESTIMATE:
+                    total = _countCache.get(
+                            createCountKey(query),
+                            Long.toString(getEtag()),
+                            () -> (long) _expressionListFactory.apply(query).findRowCount());
+                    break;
+                default:
+                    total = 0;
+            }
+            return new DefaultQueryResult<>(expressions, total, query.getCount(), Optional.empty(), Optional.empty());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean saveExpression(final Expression expression) {
+            // Update the expression in place and only insert it if there was nothing to update
+            final Map<String, Object> parameters = createParameters(expression);
+            if (createSqlUpdate(UPDATE_EXPRESSION_SQL, parameters).execute() > 0) {
+                return false;
+            }
+            createSqlUpdate(INSERT_EXPRESSION_SQL, parameters).execute();
+            return true;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
-        public PagedList<models.ebean.Expression> createExpressionQuery(final ExpressionQuery query) {
+        public long getEtag() {
+            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT CURRVAL('portal.expressions_etag_seq') AS etag;");
+            return sqlQuery.findUnique().getLong("etag");
+        }
+
+        private static List<Object> createCountKey(final ExpressionQuery query) {
+            return Arrays.asList(
+                    query.getCluster(),
+                    query.getService(),
+                    query.getContains());
+        }
+
+        // NOTE: Package private for reuse by the database specific query generators
+        /* package private */ static Map<String, Object> createParameters(final Expression expression) {
+            final Map<String, Object> parameters = Maps.newHashMap();
+            parameters.put("uuid", expression.getId());
+            parameters.put("cluster", expression.getCluster());
+            parameters.put("service", expression.getService());
+            parameters.put("metric", expression.getMetric());
+            parameters.put("script", expression.getScript());
+            return parameters;
+        }
+
+        private static SqlUpdate createSqlUpdate(final String sql, final Map<String, Object> parameters) {
+            final SqlUpdate sqlUpdate = Ebean.createSqlUpdate(sql);
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                sqlUpdate.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            return sqlUpdate;
+        }
+
+        // NOTE: Package private for reuse by the database specific query generators
+        /* package private */ static ExpressionList<models.ebean.Expression> createExpressionList(final ExpressionQuery query) {
             ExpressionList<models.ebean.Expression> ebeanExpressionList = Ebean.find(models.ebean.Expression.class).where();
             if (query.getCluster().isPresent()) {
                 ebeanExpressionList = ebeanExpressionList.eq("cluster", query.getCluster().get());
@@ -283,7 +446,7 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
             if (query.getService().isPresent()) {
                 ebeanExpressionList = ebeanExpressionList.eq("service", query.getService().get());
             }
-            //TODO(deepika): Add full text search [ISSUE-11]
+            // NOTE: The database specific query generators index these clauses
             if (query.getContains().isPresent()) {
                 final Junction<models.ebean.Expression> junction = ebeanExpressionList.disjunction();
                 if (!query.getCluster().isPresent()) {
@@ -296,21 +459,103 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
                 ebeanExpressionList = junction.contains("script", query.getContains().get());
                 ebeanExpressionList = ebeanExpressionList.endJunction();
             }
-            final Query<models.ebean.Expression> ebeanQuery = ebeanExpressionList.query();
+            return ebeanExpressionList;
+        }
+
+        private final Function<ExpressionQuery, ExpressionList<models.ebean.Expression>> _expressionListFactory;
+        private final EtagCache<List<Object>, Long> _countCache = new EtagCache<>(COUNT_CACHE_SIZE);
+
+        private static final long COUNT_CACHE_SIZE = 1000;
+        private static final String UPDATE_EXPRESSION_SQL = "UPDATE portal.expressions SET "
+                + "cluster = :cluster, service = :service, metric = :metric, script = :script, "
+                + "version = version + 1, updated_at = CURRENT_TIMESTAMP "
+                + "WHERE uuid = :uuid";
+        private static final String INSERT_EXPRESSION_SQL = "INSERT INTO portal.expressions (uuid, cluster, service, metric, script) "
+                + "VALUES (:uuid, :cluster, :service, :metric, :script)";
+    }
+
+    /**
+     * H2 specific query for expressions. Every inserted or updated expression is broken
+     * into the trigrams of its searchable columns by a trigger. A <code>contains</code>
+     * clause is narrowed to the expressions having every trigram of the term, using the
+     * index on the trigram table, before the exact <code>LIKE</code> clauses are
+     * applied. Terms shorter than a trigram are not narrowed.
+     */
+    public static final class H2QueryGenerator implements ExpressionQueryGenerator {
 
-            int pageOffset = 0;
-            if (query.getOffset().isPresent()) {
-                pageOffset = query.getOffset().get() / query.getLimit();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public QueryResult<models.ebean.Expression> createExpressionQuery(final ExpressionQuery query) {
+            return _genericQueryGenerator.createExpressionQuery(query);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean saveExpression(final Expression expression) {
+            return _genericQueryGenerator.saveExpression(expression);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getEtag() {
+            return _genericQueryGenerator.getEtag();
+        }
+
+        private static ExpressionList<models.ebean.Expression> createExpressionList(final ExpressionQuery query) {
+            final ExpressionList<models.ebean.Expression> ebeanExpressionList = GenericQueryGenerator.createExpressionList(query);
+            if (query.getContains().isPresent()) {
+                final Set<String> trigrams = Trigrams.of(query.getContains().get());
+                if (!trigrams.isEmpty()) {
+                    final StringBuilder sqlBuilder = new StringBuilder(
+                            "id in (select expression_id from portal.expression_trigrams where trigram in (");
+                    final Object[] parameters = new Object[trigrams.size() + 1];
+                    int i = 0;
+                    for (final String trigram : trigrams) {
+                        sqlBuilder.append(i == 0 ? "?" : ", ?");
+                        parameters[i++] = trigram;
+                    }
+                    sqlBuilder.append(") group by expression_id having count(*) = ?)");
+                    parameters[i] = trigrams.size();
+                    ebeanExpressionList.raw(sqlBuilder.toString(), parameters);
+                }
             }
-            return ebeanQuery.findPagedList(pageOffset, query.getLimit());
+            return ebeanExpressionList;
+        }
+
+        private final GenericQueryGenerator _genericQueryGenerator = new GenericQueryGenerator(H2QueryGenerator::createExpressionList);
+    }
+
+    /**
+     * Postgresql specific query for expressions. The <code>contains</code> clauses are
+     * served by the <code>pg_trgm</code> indexes on the searchable columns.
+     */
+    public static final class PostgresqlQueryGenerator implements ExpressionQueryGenerator {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public QueryResult<models.ebean.Expression> createExpressionQuery(final ExpressionQuery query) {
+            return _genericQueryGenerator.createExpressionQuery(query);
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void saveExpression(final models.ebean.Expression expression) {
-            Ebean.save(expression);
+        public boolean saveExpression(final Expression expression) {
+            // NOTE: The system column xmax is zero for a freshly inserted row but not for one written by the conflict update
+            final SqlQuery upsertQuery = Ebean.createSqlQuery(UPSERT_EXPRESSION_SQL);
+            for (final Map.Entry<String, Object> parameter : GenericQueryGenerator.createParameters(expression).entrySet()) {
+                upsertQuery.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            return upsertQuery.findUnique().getBoolean("created");
         }
 
         /**
@@ -318,8 +563,18 @@ public class DatabaseExpressionRepository implements ExpressionRepository {
          */
         @Override
         public long getEtag() {
-            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT CURRVAL('portal.expressions_etag_seq') AS etag;");
+            // NOTE: Unlike currval the last value does not require the sequence to have been used in this session
+            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT last_value AS etag FROM portal.expressions_etag_seq;");
             return sqlQuery.findUnique().getLong("etag");
         }
+
+        private final GenericQueryGenerator _genericQueryGenerator = new GenericQueryGenerator();
+
+        private static final String UPSERT_EXPRESSION_SQL = "INSERT INTO portal.expressions (uuid, cluster, service, metric, script) "
+                + "VALUES (:uuid, :cluster, :service, :metric, :script) "
+                + "ON CONFLICT (uuid) DO UPDATE SET "
+                + "cluster = EXCLUDED.cluster, service = EXCLUDED.service, metric = EXCLUDED.metric, script = EXCLUDED.script, "
+                + "version = portal.expressions.version + 1, updated_at = now() "
+                + "RETURNING (xmax = 0) AS created";
     }
 }
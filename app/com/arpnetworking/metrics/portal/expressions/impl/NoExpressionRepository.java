@@ -99,6 +99,15 @@ public final class NoExpressionRepository extends ReadOnlyAbstractExpressionRepo
         return new DefaultQueryResult<>(Collections.<Expression>emptyList(), 0);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        return Optional.empty();
+    }
+
     /**
      * {@inheritDoc}
      */
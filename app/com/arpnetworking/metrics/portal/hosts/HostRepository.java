@@ -20,10 +20,19 @@ import models.internal.HostQuery;
 import models.internal.MetricsSoftwareState;
 import models.internal.QueryResult;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * Interface for repository of hosts available for metrics. The repository is
  * designed around the host name as the primary key.
  *
+ * The asynchronous variants complete on the calling thread by default;
+ * implementations which block on I/O override them to avoid blocking the
+ * caller.
+ *
  * @author Ville Koskela (vkoskela at groupon dot com)
  * @author Ting Tu (tingtu at groupon dot com)
  */
@@ -46,6 +55,29 @@ public interface HostRepository extends AutoCloseable {
      */
     void addOrUpdateHost(Host host);
 
+    /**
+     * Asynchronously add a new host or update an existing host in the repository.
+     *
+     * @param host The host to add to the repository.
+     * @return <code>CompletionStage</code> completed once the host is written.
+     */
+    default CompletionStage<Void> addOrUpdateHostAsync(final Host host) {
+        return CompletableFuture.supplyAsync(() -> {
+            addOrUpdateHost(host);
+            return null;
+        }, Runnable::run);
+    }
+
+    /**
+     * Add new hosts or update existing hosts in the repository. This is
+     * equivalent to calling <code>addOrUpdateHost</code> for each host but
+     * allows the repository to write the hosts in batches. If the same host
+     * name occurs more than once the last occurrence is written.
+     *
+     * @param hosts The hosts to add to the repository.
+     */
+    void addOrUpdateHosts(Collection<Host> hosts);
+
     /**
      * Remove the host by hostname from the repository.
      *
@@ -68,6 +100,34 @@ public interface HostRepository extends AutoCloseable {
      */
     QueryResult<Host> query(final HostQuery query);
 
+    /**
+     * Asynchronously query hosts.
+     *
+     * @param query Instance of <code>HostQuery</code>.
+     * @return <code>CompletionStage</code> completed with the <code>QueryResult</code>.
+     */
+    default CompletionStage<QueryResult<Host>> queryAsync(final HostQuery query) {
+        return CompletableFuture.supplyAsync(() -> query(query), Runnable::run);
+    }
+
+    /**
+     * Retrieve the etag of the repository's contents without executing a
+     * query. While the contents are unchanged this matches the etag of any
+     * <code>QueryResult</code> returned by the repository.
+     *
+     * @return The current etag or <code>Optional.empty()</code> if it cannot be determined cheaply.
+     */
+    Optional<String> getEtag();
+
+    /**
+     * Asynchronously retrieve the etag of the repository's contents.
+     *
+     * @return <code>CompletionStage</code> completed with the current etag.
+     */
+    default CompletionStage<Optional<String>> getEtagAsync() {
+        return CompletableFuture.supplyAsync(this::getEtag, Runnable::run);
+    }
+
     /**
      * Retrieve the total number of hosts in the repository.
      *
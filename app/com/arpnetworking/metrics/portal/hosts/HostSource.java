@@ -0,0 +1,40 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts;
+
+import models.internal.Host;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+/**
+ * Interface for a source of discovered hosts. Each read produces a complete
+ * snapshot of the hosts known to the source; the snapshot is streamed so that
+ * sources with a large number of hosts need not be materialized in memory.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public interface HostSource {
+
+    /**
+     * Read the current snapshot of hosts. The returned <code>Stream</code>
+     * must be closed by the caller.
+     *
+     * @return <code>Stream</code> of the hosts currently known to the source.
+     * @throws IOException if the source could not be read.
+     */
+    Stream<Host> read() throws IOException;
+}
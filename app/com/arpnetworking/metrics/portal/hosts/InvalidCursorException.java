@@ -0,0 +1,48 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts;
+
+/**
+ * Thrown when a query's <code>after</code> cursor cannot be used to resume
+ * the query; either because it is malformed, because it was created for a
+ * different sort order, or because the query's ordering does not support
+ * cursors at all.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class InvalidCursorException extends IllegalArgumentException {
+
+    /**
+     * Public constructor.
+     *
+     * @param message The description of the failure.
+     */
+    public InvalidCursorException(final String message) {
+        super(message);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param message The description of the failure.
+     * @param cause The underlying failure.
+     */
+    public InvalidCursorException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -15,19 +15,31 @@
  */
 package com.arpnetworking.metrics.portal.hosts.impl;
 
+import com.arpnetworking.database.DatabaseExecutor;
+import com.arpnetworking.database.EtagCache;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Timer;
 import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Expr;
 import com.avaje.ebean.ExpressionList;
-import com.avaje.ebean.PagedList;
 import com.avaje.ebean.Query;
 import com.avaje.ebean.RawSql;
 import com.avaje.ebean.RawSqlBuilder;
+import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.SqlUpdate;
 import com.avaje.ebean.Transaction;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import models.internal.CountMode;
 import models.internal.Host;
 import models.internal.HostQuery;
 import models.internal.MetricsSoftwareState;
@@ -38,12 +50,22 @@ import models.internal.impl.DefaultQueryResult;
 import play.Configuration;
 import play.Environment;
 
-import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -58,25 +80,46 @@ public class DatabaseHostRepository implements HostRepository {
      *
      * @param environment Play's <code>Environment</code> instance.
      * @param config Play's <code>Configuration</code> instance.
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
      * @throws Exception If the configuration is invalid.
      */
     @Inject
-    public DatabaseHostRepository(final Environment environment, final Configuration config) throws Exception {
+    public DatabaseHostRepository(
+            final Environment environment,
+            final Configuration config,
+            final MetricsFactory metricsFactory) throws Exception {
         this(
                 ConfigurationHelper.<HostQueryGenerator>getType(
                         environment,
                         config,
                         "hostRepository.hostQueryGenerator.type")
-                .newInstance());
+                .newInstance(),
+                metricsFactory,
+                config.getInt("hostRepository.batchSize", DEFAULT_BATCH_SIZE),
+                new DatabaseExecutor(
+                        "host_repository",
+                        config.getInt("hostRepository.executor.poolSize", DEFAULT_POOL_SIZE),
+                        config.getInt("hostRepository.executor.queueSize", DEFAULT_QUEUE_SIZE),
+                        metricsFactory));
     }
 
     /**
      * Public constructor.
      *
      * @param hostQueryGenerator Instance of <code>HostQueryGenerator</code>.
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
+     * @param batchSize The maximum number of hosts to write in one batch.
+     * @param executor The <code>DatabaseExecutor</code> for asynchronous calls; shut down on close.
      */
-    public DatabaseHostRepository(final HostQueryGenerator hostQueryGenerator) {
+    public DatabaseHostRepository(
+            final HostQueryGenerator hostQueryGenerator,
+            final MetricsFactory metricsFactory,
+            final int batchSize,
+            final DatabaseExecutor executor) {
         _hostQueryGenerator = hostQueryGenerator;
+        _metricsFactory = metricsFactory;
+        _batchSize = batchSize;
+        _executor = executor;
     }
 
     /**
@@ -86,6 +129,7 @@ public class DatabaseHostRepository implements HostRepository {
     public void open() {
         assertIsOpen(false);
         LOGGER.debug().setMessage("Opening host repository").log();
+
         _isOpen.set(true);
     }
 
@@ -97,6 +141,7 @@ public class DatabaseHostRepository implements HostRepository {
         assertIsOpen();
         LOGGER.debug().setMessage("Closing host repository").log();
         _isOpen.set(false);
+        _executor.shutdown();
     }
 
     /**
@@ -112,31 +157,80 @@ public class DatabaseHostRepository implements HostRepository {
 
         final Transaction transaction = Ebean.beginTransaction();
         try {
-            models.ebean.Host ebeanHost = Ebean.find(models.ebean.Host.class)
-                    .where()
-                    .eq("name", host.getHostname())
-                    .findUnique();
-            boolean created = false;
-            if (ebeanHost == null) {
-                ebeanHost = new models.ebean.Host();
-                created = true;
-            }
-            ebeanHost.setCluster(host.getCluster().orNull());
-            ebeanHost.setMetricsSoftwareState(host.getMetricsSoftwareState().toString());
-            ebeanHost.setName(host.getHostname());
-            _hostQueryGenerator.saveHost(ebeanHost);
+            final SaveResult result = _hostQueryGenerator.saveHost(host);
             transaction.commit();
 
-            LOGGER.info()
-                    .setMessage("Upserted host")
-                    .addData("host", host)
-                    .addData("isCreated", created)
-                    .log();
+            if (SaveResult.UNCHANGED.equals(result)) {
+                recordSuppressedWrites(1);
+                LOGGER.debug()
+                        .setMessage("Host unchanged")
+                        .addData("host", host)
+                        .log();
+            } else {
+                LOGGER.info()
+                        .setMessage("Upserted host")
+                        .addData("host", host)
+                        .addData("isCreated", SaveResult.CREATED.equals(result))
+                        .log();
+            }
         } finally {
             transaction.end();
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Void> addOrUpdateHostAsync(final Host host) {
+        return _executor.supply(() -> {
+            addOrUpdateHost(host);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOrUpdateHosts(final Collection<Host> hosts) {
+        assertIsOpen();
+        LOGGER.debug()
+                .setMessage("Adding or updating hosts")
+                .addData("count", hosts.size())
+                .log();
+
+        // The last occurrence of each host name wins
+        final Map<String, Host> uniqueHosts = Maps.newLinkedHashMap();
+        for (final Host host : hosts) {
+            uniqueHosts.put(host.getHostname(), host);
+        }
+
+        for (final List<Host> batch : Lists.partition(new ArrayList<>(uniqueHosts.values()), _batchSize)) {
+            final Metrics metrics = _metricsFactory.create();
+            final Timer timer = metrics.createTimer(BATCH_LATENCY_METRIC);
+            final Transaction transaction = Ebean.beginTransaction();
+            try {
+                transaction.setBatchMode(true);
+                transaction.setBatchSize(batch.size());
+                final int written = _hostQueryGenerator.saveHosts(batch);
+                transaction.commit();
+                metrics.incrementCounter(BATCH_HOSTS_METRIC, written);
+                metrics.incrementCounter(SUPPRESSED_WRITES_METRIC, batch.size() - written);
+
+                LOGGER.info()
+                        .setMessage("Upserted hosts")
+                        .addData("count", written)
+                        .addData("unchanged", batch.size() - written)
+                        .log();
+            } finally {
+                transaction.end();
+                timer.stop();
+                metrics.close();
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -186,29 +280,59 @@ public class DatabaseHostRepository implements HostRepository {
                 .addData("query", query)
                 .log();
 
-        // Create the base query
-        final PagedList<models.ebean.Host> pagedHosts = _hostQueryGenerator.createHostQuery(query);
-
         // Compute the etag
-        // NOTE: Another way to do this would be to use the version field and hash those together.
-        final String etag = Long.toHexString(pagedHosts.getList().stream()
-                .map(host -> host.getUpdatedAt().after(host.getCreatedAt()) ? host.getUpdatedAt() : host.getCreatedAt())
-                .max(Timestamp::compareTo)
-                .orElse(new Timestamp(0))
-                .getTime());
+        // NOTE: The etag is read before the query so that a concurrent change results in a stale etag and not a stale result
+        final String etag = Long.toString(_hostQueryGenerator.getEtag());
+
+        // Create the base query
+        final QueryResult<models.ebean.Host> ebeanResult = _hostQueryGenerator.createHostQuery(query);
 
         // Transform the results
+        final List<Host> hosts = ebeanResult.values()
+                .stream()
+                .map(host -> new DefaultHost.Builder()
+                        .setCluster(host.getCluster())
+                        .setHostname(host.getName())
+                        .setMetricsSoftwareState(MetricsSoftwareState.valueOf(host.getMetricsSoftwareState()))
+                        .build())
+                .collect(Collectors.toList());
+
+        // Compute the cursor for the next page
+        final Optional<String> cursor = _hostQueryGenerator.isCursorSupported(query)
+                ? HostCursor.next(query, hosts)
+                : Optional.empty();
+
         return new DefaultQueryResult<>(
-                pagedHosts.getList()
-                        .stream()
-                        .map(host -> new DefaultHost.Builder()
-                                .setCluster(host.getCluster())
-                                .setHostname(host.getName())
-                                .setMetricsSoftwareState(MetricsSoftwareState.valueOf(host.getMetricsSoftwareState()))
-                                .build())
-                .collect(Collectors.toList()),
-                pagedHosts.getTotalRowCount(),
-                etag);
+                hosts,
+                ebeanResult.total(),
+                ebeanResult.totalMode(),
+                Optional.of(etag),
+                cursor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<QueryResult<Host>> queryAsync(final HostQuery query) {
+        return _executor.supply(() -> query(query));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        return Optional.of(Long.toString(_hostQueryGenerator.getEtag()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Optional<String>> getEtagAsync() {
+        return _executor.supply(this::getEtag);
     }
 
     /**
@@ -243,6 +367,12 @@ public class DatabaseHostRepository implements HostRepository {
         }
     }
 
+    private void recordSuppressedWrites(final int count) {
+        final Metrics metrics = _metricsFactory.create();
+        metrics.incrementCounter(SUPPRESSED_WRITES_METRIC, count);
+        metrics.close();
+    }
+
     private void assertIsOpen() {
         assertIsOpen(true);
     }
@@ -255,28 +385,87 @@ public class DatabaseHostRepository implements HostRepository {
 
     private final AtomicBoolean _isOpen = new AtomicBoolean(false);
     private final HostQueryGenerator _hostQueryGenerator;
+    private final MetricsFactory _metricsFactory;
+    private final int _batchSize;
+    private final DatabaseExecutor _executor;
 
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final String BATCH_LATENCY_METRIC = "host_repository/database/upsert_batch/latency";
+    private static final String BATCH_HOSTS_METRIC = "host_repository/database/upsert_batch/hosts";
+    private static final String SUPPRESSED_WRITES_METRIC = "host_repository/database/suppressed_writes";
     private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseHostRepository.class);
 
+    /**
+     * The outcome of saving a host.
+     */
+    public enum SaveResult {
+        /**
+         * The host did not exist and was inserted.
+         */
+        CREATED,
+        /**
+         * The host existed and its cluster or metrics software state was updated.
+         */
+        UPDATED,
+        /**
+         * The host existed with the same cluster and metrics software state and was not written.
+         */
+        UNCHANGED
+    }
+
     /**
      * Inteface for database query generation.
      */
     public interface HostQueryGenerator {
 
         /**
-         * Translate the <code>HostQuery</code> to an Ebean <code>Query</code>.
+         * Translate the <code>HostQuery</code> to an Ebean <code>Query</code> and execute it. The returned
+         * result carries neither an etag nor a cursor; these are computed by the repository.
          *
          * @param query The repository agnostic <code>HostQuery</code>.
-         * @return The database specific <code>PagedList</code> query result.
+         * @return The database specific <code>QueryResult</code>.
+         * @throws InvalidCursorException if the query's cursor is invalid or not supported.
+         */
+        QueryResult<models.ebean.Host> createHostQuery(HostQuery query);
+
+        /**
+         * Whether the results of the <code>HostQuery</code> are in a deterministic order that can be resumed
+         * from a <code>HostCursor</code>.
+         *
+         * @param query The repository agnostic <code>HostQuery</code>.
+         * @return True if and only if the query can be resumed from a cursor.
+         */
+        boolean isCursorSupported(HostQuery query);
+
+        /**
+         * Insert or update the <code>Host</code> in the database without first reading it. A stored host with
+         * the same cluster and metrics software state is not written; the comparison is made by the database
+         * so that it holds regardless of which instance last wrote the host. This needs to be executed in a
+         * transaction.
+         *
+         * @param host The <code>Host</code> instance to save.
+         * @return The <code>SaveResult</code>.
+         */
+        SaveResult saveHost(Host host);
+
+        /**
+         * Insert or update the <code>Host</code> instances in the database. The host names must be unique. As
+         * with <code>saveHost</code> stored hosts with the same cluster and metrics software state are not
+         * written. This needs to be executed in a transaction.
+         *
+         * @param hosts The <code>Host</code> instances to save.
+         * @return The number of hosts inserted or updated.
          */
-        PagedList<models.ebean.Host> createHostQuery(HostQuery query);
+        int saveHosts(List<Host> hosts);
 
         /**
-         * Save the <code>Host</code> to the database. This needs to be executed in a transaction.
+         * Gets the etag for the hosts table.
          *
-         * @param host The <code>Host</code> model instance to save.
+         * @return The etag for the table.
          */
-        void saveHost(models.ebean.Host host);
+        long getEtag();
     }
 
     /**
@@ -288,7 +477,137 @@ public class DatabaseHostRepository implements HostRepository {
          * {@inheritDoc}
          */
         @Override
-        public PagedList<models.ebean.Host> createHostQuery(final HostQuery query) {
+        public QueryResult<models.ebean.Host> createHostQuery(final HostQuery query) {
+            final Optional<HostCursor> cursor = HostCursor.decode(query);
+
+            // Retrieve the page; seek past the cursor instead of scanning and discarding the preceding rows
+            final List<models.ebean.Host> hosts;
+            if (query.getLimit() == 0) {
+                hosts = Collections.emptyList();
+            } else {
+                final ExpressionList<models.ebean.Host> ebeanExpressionList = createExpressionList(query);
+                if (cursor.isPresent()) {
+                    if (query.getSortBy().isPresent() && HostQuery.Field.METRICS_SOFTWARE_STATE.equals(query.getSortBy().get())) {
+                        ebeanExpressionList.or(
+                                Expr.gt("metrics_software_state", cursor.get().getSortKey()),
+                                Expr.and(
+                                        Expr.eq("metrics_software_state", cursor.get().getSortKey()),
+                                        Expr.gt("name", cursor.get().getHostname())));
+                    } else {
+                        ebeanExpressionList.gt("name", cursor.get().getHostname());
+                    }
+                }
+                final Query<models.ebean.Host> ebeanQuery = applySort(ebeanExpressionList.query(), query);
+                if (!cursor.isPresent() && query.getOffset().isPresent()) {
+                    ebeanQuery.setFirstRow(query.getOffset().get());
+                }
+                hosts = ebeanQuery.setMaxRows(query.getLimit()).findList();
+            }
+
+            // Count the matching hosts
+            final long total;
+            switch (query.getCount()) {
+                case EXACT:
+                    total = createExpressionList(query).findRowCount();
+                    break;
+                case ESTIMATE:
+                    total = _countCache.get(
+                            createCountKey(query),
+                            Long.toString(getEtag()),
+                            () -> (long) createExpressionList(query).findRowCount());
+                    break;
+                default:
+                    total = 0;
+            }
+            return new DefaultQueryResult<>(hosts, total, query.getCount(), Optional.empty(), Optional.empty());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCursorSupported(final HostQuery query) {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SaveResult saveHost(final Host host) {
+            // Insert the host unless it exists; the existence check is part of the statement
+            final int inserted = Ebean.createSqlUpdate(INSERT_HOST_SQL)
+                    .setParameter("name", host.getHostname())
+                    .setParameter("cluster", host.getCluster().orNull())
+                    .setParameter("state", host.getMetricsSoftwareState().toString())
+                    .execute();
+            if (inserted > 0) {
+                return SaveResult.CREATED;
+            }
+
+            // Update the existing host in place only if it changed; a null cluster cannot be compared with a parameter
+            final SqlUpdate update;
+            if (host.getCluster().isPresent()) {
+                update = Ebean.createSqlUpdate(UPDATE_HOST_SQL)
+                        .setParameter("cluster", host.getCluster().get());
+            } else {
+                update = Ebean.createSqlUpdate(UPDATE_HOST_WITHOUT_CLUSTER_SQL);
+            }
+            final int updated = update
+                    .setParameter("name", host.getHostname())
+                    .setParameter("state", host.getMetricsSoftwareState().toString())
+                    .execute();
+            return updated > 0 ? SaveResult.UPDATED : SaveResult.UNCHANGED;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int saveHosts(final List<Host> hosts) {
+            // Look up the existing hosts with one query; the saves are then batched by the transaction
+            final Map<String, models.ebean.Host> ebeanHosts = Ebean.find(models.ebean.Host.class)
+                    .where()
+                    .in("name", hosts.stream().map(Host::getHostname).collect(Collectors.toList()))
+                    .findList()
+                    .stream()
+                    .collect(Collectors.toMap(models.ebean.Host::getName, Function.identity()));
+            int written = 0;
+            for (final Host host : hosts) {
+                models.ebean.Host ebeanHost = ebeanHosts.get(host.getHostname());
+                if (ebeanHost == null) {
+                    ebeanHost = new models.ebean.Host();
+                } else if (Objects.equals(ebeanHost.getCluster(), host.getCluster().orNull())
+                        && host.getMetricsSoftwareState().toString().equals(ebeanHost.getMetricsSoftwareState())) {
+                    // The host was read in this transaction and is unchanged
+                    continue;
+                }
+                ebeanHost.setCluster(host.getCluster().orNull());
+                ebeanHost.setMetricsSoftwareState(host.getMetricsSoftwareState().toString());
+                ebeanHost.setName(host.getHostname());
+                Ebean.save(ebeanHost);
+                ++written;
+            }
+            return written;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getEtag() {
+            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT CURRVAL('portal.hosts_etag_seq') AS etag;");
+            return sqlQuery.findUnique().getLong("etag");
+        }
+
+        private static List<Object> createCountKey(final HostQuery query) {
+            return Arrays.asList(
+                    query.getCluster(),
+                    query.getMetricsSoftwareState(),
+                    query.getPartialHostname());
+        }
+
+        private static ExpressionList<models.ebean.Host> createExpressionList(final HostQuery query) {
             ExpressionList<models.ebean.Host> ebeanExpressionList = Ebean.find(models.ebean.Host.class).where();
             if (query.getCluster().isPresent()) {
                 ebeanExpressionList = ebeanExpressionList.eq("cluster", query.getCluster().get());
@@ -299,25 +618,205 @@ public class DatabaseHostRepository implements HostRepository {
             if (query.getPartialHostname().isPresent()) {
                 ebeanExpressionList = ebeanExpressionList.like("name", query.getPartialHostname().get() + "%");
             }
+            return ebeanExpressionList;
+        }
 
-            Query<models.ebean.Host> ebeanQuery = ebeanExpressionList.query();
-            if (query.getSortBy().isPresent()) {
-                ebeanQuery = ebeanQuery.orderBy().asc(mapField(query.getSortBy().get()));
+        private static Query<models.ebean.Host> applySort(final Query<models.ebean.Host> ebeanQuery, final HostQuery query) {
+            // The host name is unique and breaks any ties making the order deterministic
+            Query<models.ebean.Host> sortedQuery = ebeanQuery;
+            if (query.getSortBy().isPresent() && !HostQuery.Field.HOSTNAME.equals(query.getSortBy().get())) {
+                sortedQuery = sortedQuery.orderBy().asc(mapField(query.getSortBy().get()));
+            }
+            return sortedQuery.orderBy().asc("name");
+        }
+
+        private final EtagCache<List<Object>, Long> _countCache = new EtagCache<>(COUNT_CACHE_SIZE);
+
+        private static final long COUNT_CACHE_SIZE = 1000;
+        private static final String UPDATE_HOST_SQL = "UPDATE portal.hosts SET "
+                + "cluster = :cluster, metrics_software_state = :state, version = version + 1, updated_at = CURRENT_TIMESTAMP "
+                + "WHERE name = :name AND (cluster IS NULL OR cluster <> :cluster OR metrics_software_state <> :state)";
+        private static final String UPDATE_HOST_WITHOUT_CLUSTER_SQL = "UPDATE portal.hosts SET "
+                + "cluster = NULL, metrics_software_state = :state, version = version + 1, updated_at = CURRENT_TIMESTAMP "
+                + "WHERE name = :name AND (cluster IS NOT NULL OR metrics_software_state <> :state)";
+        private static final String INSERT_HOST_SQL = "INSERT INTO portal.hosts (name, cluster, metrics_software_state) "
+                + "SELECT :name, :cluster, :state WHERE NOT EXISTS (SELECT 1 FROM portal.hosts WHERE name = :name)";
+    }
+
+    /**
+     * H2 specific query for hosts using a token table. The table is maintained
+     * by a trigger on the hosts table and tokenized with the same rules as the
+     * Postgresql full text index. Matches are ranked in the manner of the
+     * Postgresql <code>ts_rank</code> ordering: the product of the number of
+     * tokens matched as a prefix and the number matched exactly, normalized by
+     * the length of the host name. Queries without a partial host name are
+     * delegated to the <code>GenericQueryGenerator</code>.
+     */
+    public static final class H2HostQueryGenerator implements HostQueryGenerator {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public QueryResult<models.ebean.Host> createHostQuery(final HostQuery query) {
+            final List<String> tokens = distinctTokens(query);
+            if (tokens.isEmpty()) {
+                return _genericQueryGenerator.createHostQuery(query);
+            }
+            if (query.getAfter().isPresent()) {
+                throw new InvalidCursorException("Cursor is not supported for relevance ordered queries");
             }
 
-            int pageOffset = 0;
-            if (query.getOffset().isPresent()) {
-                pageOffset = query.getOffset().get() / query.getLimit();
+            // Rank every matching host keeping only those up to the end of the requested page
+            final int offset = query.getOffset().orElse(0);
+            final HostnameScorer scorer = new HostnameScorer(query.getPartialHostname().get());
+            final RankedSelection<Candidate> selection = new RankedSelection<>(
+                    (int) Math.min(Integer.MAX_VALUE, (long) offset + query.getLimit()),
+                    Comparator.comparingDouble(Candidate::getNameScore)
+                            .reversed()
+                            .thenComparing(Candidate::getName));
+            // Stream the matches so that memory is bounded by the requested page and not by the number of matches
+            final AtomicLong matches = new AtomicLong();
+            createMatchQuery(query, tokens).findEach(row -> {
+                final String name = row.getString("name");
+                final double rank = row.getLong("prefix_matches") * row.getLong("term_matches") / (double) name.length();
+                selection.offer(
+                        rank,
+                        new Candidate(row.getLong("id"), name, scorer.score(HostnameScorer.normalize(name))));
+                matches.incrementAndGet();
+            });
+
+            // Load the hosts on the requested page
+            final List<Candidate> ranked = selection.drain();
+            final List<models.ebean.Host> hosts;
+            if (ranked.size() <= offset) {
+                hosts = Collections.emptyList();
+            } else {
+                final List<Candidate> page = ranked.subList(offset, ranked.size());
+                final Map<Long, models.ebean.Host> hostsById = Ebean.find(models.ebean.Host.class)
+                        .where()
+                        .idIn(page.stream().map(Candidate::getId).collect(Collectors.toList()))
+                        .findList()
+                        .stream()
+                        .collect(Collectors.toMap(models.ebean.Host::getId, Function.identity()));
+                hosts = page.stream()
+                        .map(candidate -> hostsById.get(candidate.getId()))
+                        .filter(host -> host != null)
+                        .collect(Collectors.toList());
             }
-            return ebeanQuery.findPagedList(pageOffset, query.getLimit());
+
+            // NOTE: Every match was read to rank it so the exact count is free
+            final long total = CountMode.NONE.equals(query.getCount()) ? 0 : matches.get();
+            return new DefaultQueryResult<>(hosts, total, query.getCount(), Optional.empty(), Optional.empty());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCursorSupported(final HostQuery query) {
+            // Relevance ordering is not a stable key and cannot be resumed
+            return distinctTokens(query).isEmpty();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SaveResult saveHost(final Host host) {
+            return _genericQueryGenerator.saveHost(host);
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void saveHost(final models.ebean.Host host) {
-            Ebean.save(host);
+        public int saveHosts(final List<Host> hosts) {
+            return _genericQueryGenerator.saveHosts(hosts);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getEtag() {
+            return _genericQueryGenerator.getEtag();
+        }
+
+        private static List<String> distinctTokens(final HostQuery query) {
+            if (!query.getPartialHostname().isPresent()) {
+                return Collections.emptyList();
+            }
+            return HostnameTokenizer.tokenize(query.getPartialHostname().get())
+                    .stream()
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+
+        private static SqlQuery createMatchQuery(final HostQuery query, final List<String> tokens) {
+            final StringBuilder prefixBuilder = new StringBuilder();
+            final StringBuilder termBuilder = new StringBuilder();
+            for (int i = 0; i < tokens.size(); ++i) {
+                if (i > 0) {
+                    prefixBuilder.append(" or ");
+                    termBuilder.append(", ");
+                }
+                prefixBuilder.append("k.token like :prefix").append(i);
+                termBuilder.append(":term").append(i);
+            }
+            final StringBuilder sqlBuilder = new StringBuilder(
+                    "select t0.id, t0.name, count(*) as prefix_matches, "
+                            + "sum(case when k.token in (" + termBuilder + ") then 1 else 0 end) as term_matches "
+                            + "from portal.hosts t0 join portal.host_tokens k on k.host_id = t0.id "
+                            + "where (" + prefixBuilder + ")");
+            if (query.getCluster().isPresent()) {
+                sqlBuilder.append(" and t0.cluster = :cluster");
+            }
+            if (query.getMetricsSoftwareState().isPresent()) {
+                sqlBuilder.append(" and t0.metrics_software_state = :metrics_software_state");
+            }
+            sqlBuilder.append(" group by t0.id, t0.name");
+
+            final SqlQuery sqlQuery = Ebean.createSqlQuery(sqlBuilder.toString());
+            for (int i = 0; i < tokens.size(); ++i) {
+                // NOTE: Tokens are alphanumeric so they never contain like wildcards
+                sqlQuery.setParameter("prefix" + i, tokens.get(i) + "%");
+                sqlQuery.setParameter("term" + i, tokens.get(i));
+            }
+            if (query.getCluster().isPresent()) {
+                sqlQuery.setParameter("cluster", query.getCluster().get());
+            }
+            if (query.getMetricsSoftwareState().isPresent()) {
+                sqlQuery.setParameter("metrics_software_state", query.getMetricsSoftwareState().get().toString());
+            }
+            return sqlQuery;
+        }
+
+        private final GenericQueryGenerator _genericQueryGenerator = new GenericQueryGenerator();
+
+        private static final class Candidate {
+
+            Candidate(final long id, final String name, final double nameScore) {
+                _id = id;
+                _name = name;
+                _nameScore = nameScore;
+            }
+
+            public long getId() {
+                return _id;
+            }
+
+            public String getName() {
+                return _name;
+            }
+
+            public double getNameScore() {
+                return _nameScore;
+            }
+
+            private final long _id;
+            private final String _name;
+            private final double _nameScore;
         }
     }
 
@@ -330,121 +829,283 @@ public class DatabaseHostRepository implements HostRepository {
          * {@inheritDoc}
          */
         @Override
-        public PagedList<models.ebean.Host> createHostQuery(final HostQuery query) {
+        public QueryResult<models.ebean.Host> createHostQuery(final HostQuery query) {
+            final Optional<HostCursor> cursor = HostCursor.decode(query);
+
+            // Tokenize the partial host name once; the tokens only ever bind parameters
+            final List<String> tokens = query.getPartialHostname()
+                    .map(PostgresqlHostQueryGenerator::tokenize)
+                    .orElse(Collections.emptyList());
+            final boolean isRanked = !tokens.isEmpty();
+            if (!isRanked && query.getPartialHostname().isPresent() && !query.getPartialHostname().get().isEmpty()) {
+                // The user enters only removable tokens (e.g. space, period, etc.)
+                LOGGER.debug()
+                        .setMessage("Skipping partial host name query clause")
+                        .addData("partialHostName", query.getPartialHostname().get())
+                        .log();
+            }
+            if (cursor.isPresent() && isRanked) {
+                throw new InvalidCursorException("Cursor is not supported for relevance ordered queries");
+            }
+            final Map<String, Object> parameters = createParameters(query, tokens);
+
+            // Retrieve the page; seek past the cursor instead of scanning and discarding the preceding rows
+            final List<models.ebean.Host> hosts;
+            if (query.getLimit() == 0) {
+                hosts = Collections.emptyList();
+            } else {
+                final Map<String, Object> pageParameters;
+                if (cursor.isPresent()) {
+                    pageParameters = Maps.newHashMap(parameters);
+                    if (query.getSortBy().isPresent() && HostQuery.Field.METRICS_SOFTWARE_STATE.equals(query.getSortBy().get())) {
+                        pageParameters.put("afterSortKey", cursor.get().getSortKey());
+                    }
+                    pageParameters.put("afterName", cursor.get().getHostname());
+                } else {
+                    pageParameters = parameters;
+                }
+                final Query<models.ebean.Host> ebeanQuery = createEbeanQuery(
+                        getQueryPlan(new QueryShape(query, isRanked, cursor.isPresent())),
+                        pageParameters);
+                if (!cursor.isPresent() && query.getOffset().isPresent()) {
+                    ebeanQuery.setFirstRow(query.getOffset().get());
+                }
+                hosts = ebeanQuery.setMaxRows(query.getLimit()).findList();
+            }
+
+            // Count the matching hosts
+            final long total;
+            switch (query.getCount()) {
+                case EXACT:
+                    total = createEbeanQuery(getQueryPlan(new QueryShape(query, isRanked, false)), parameters).findRowCount();
+                    break;
+                case ESTIMATE:
+                    total = estimateRowCount(getQueryPlan(new QueryShape(query, isRanked, false)).getSql(), parameters);
+                    break;
+                default:
+                    total = 0;
+            }
+            return new DefaultQueryResult<>(hosts, total, query.getCount(), Optional.empty(), Optional.empty());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean isCursorSupported(final HostQuery query) {
+            // Relevance ordering is not a stable key and cannot be resumed
+            return !query.getPartialHostname().isPresent()
+                    || !HostnameTokenizer.hasTokens(query.getPartialHostname().get());
+        }
+
+        private QueryPlan getQueryPlan(final QueryShape shape) {
+            // There are only a few dozen shapes so the cache is not bounded
+            return _queryPlans.computeIfAbsent(shape, PostgresqlHostQueryGenerator::createQueryPlan);
+        }
+
+        private static QueryPlan createQueryPlan(final QueryShape shape) {
             final StringBuilder selectBuilder = new StringBuilder(
                     "select t0.id, t0.version, t0.created_at, t0.updated_at, "
                             + "t0.name, t0.cluster, t0.metrics_software_state "
                             + "from portal.hosts t0");
             final StringBuilder whereBuilder = new StringBuilder();
             final StringBuilder orderBuilder = new StringBuilder();
-            final Map<String, Object> parameters = Maps.newHashMap();
 
             // Add the partial host name clause using the postgresql full text index
-            if (query.getPartialHostname().isPresent() && !query.getPartialHostname().get().isEmpty()) {
-                final List<String> tokens = tokenize(query.getPartialHostname().get());
-                final String prefixExpression = tokens
-                        .stream()
-                        .map(s -> s + ":*")
-                        .reduce((s1, s2) -> s1 + " | " + s2)
-                        .orElse(null);
-                final String termExpression = tokenize(query.getPartialHostname().get())
-                        .stream()
-                        .reduce((s1, s2) -> s1 + " | " + s2)
-                        .orElse(null);
-                if (prefixExpression != null && termExpression != null) {
-                    parameters.put("prefixQuery", prefixExpression);
-                    parameters.put("termQuery", termExpression);
-                    selectBuilder.append(", to_tsquery('simple',:prefixQuery) prefixQuery, to_tsquery('simple',:termQuery) termQuery");
-                    whereBuilder.append("where t0.name_idx_col @@ prefixQuery or t0.name_idx_col @@ termQuery");
-                    orderBuilder.append("order by ts_rank(t0.name_idx_col, prefixQuery) * ts_rank(t0.name_idx_col, termQuery) "
-                            + "/ char_length(t0.name) DESC, name ASC");
-                } else {
-                    // The user enters only removable tokens (e.g. space, period, etc.)
-                    LOGGER.debug()
-                            .setMessage("Skipping partial host name query clause")
-                            .addData("partialHostName", query.getPartialHostname().get())
-                            .addData("tokens", tokens)
-                            .addData("prefixExpression", prefixExpression)
-                            .addData("termExpression", termExpression)
-                            .log();
-                }
+            if (shape.isRanked()) {
+                selectBuilder.append(", to_tsquery('simple',:prefixQuery) prefixQuery, to_tsquery('simple',:termQuery) termQuery");
+                whereBuilder.append("where (t0.name_idx_col @@ prefixQuery or t0.name_idx_col @@ termQuery)");
+                orderBuilder.append("order by ts_rank(t0.name_idx_col, prefixQuery) * ts_rank(t0.name_idx_col, termQuery) "
+                        + "/ char_length(t0.name) DESC, name ASC");
             }
 
             // Add the cluster name clause
-            if (query.getCluster().isPresent()) {
+            if (shape.hasCluster()) {
                 beginOrExtend(whereBuilder, "where ", " and ");
                 whereBuilder.append("t0.cluster = :cluster");
-                parameters.put("cluster", query.getCluster().get());
             }
 
             // Add the metrics software state clause
-            if (query.getMetricsSoftwareState().isPresent()) {
+            if (shape.hasMetricsSoftwareState()) {
                 beginOrExtend(whereBuilder, "where ", " and ");
                 whereBuilder.append("t0.metrics_software_state = :metrics_software_state");
-                parameters.put("metrics_software_state", query.getMetricsSoftwareState().get().toString());
             }
 
-            // Add the sort order
-            if (query.getSortBy().isPresent()) {
+            // Add the keyset clause to seek past the cursor
+            final boolean isSortedByState = shape.getSortBy().isPresent()
+                    && HostQuery.Field.METRICS_SOFTWARE_STATE.equals(shape.getSortBy().get());
+            if (shape.hasCursor()) {
+                beginOrExtend(whereBuilder, "where ", " and ");
+                if (isSortedByState) {
+                    whereBuilder.append("(t0.metrics_software_state > :afterSortKey "
+                            + "or (t0.metrics_software_state = :afterSortKey and t0.name > :afterName))");
+                } else {
+                    whereBuilder.append("t0.name > :afterName");
+                }
+            }
+
+            // Add the sort order; the host name is unique and breaks any ties
+            if (shape.getSortBy().isPresent()) {
                 beginOrExtend(orderBuilder, "order by ", ", ");
-                orderBuilder.append(mapField(query.getSortBy().get()))
+                orderBuilder.append(mapField(shape.getSortBy().get()))
                         .append(" ASC");
             }
+            if (!shape.isRanked() && (orderBuilder.length() == 0 || isSortedByState)) {
+                beginOrExtend(orderBuilder, "order by ", ", ");
+                orderBuilder.append("name ASC");
+            }
+
+            final String sql = selectBuilder.toString() + " " + whereBuilder.toString() + " " + orderBuilder.toString();
+            LOGGER.debug()
+                    .setMessage("Created query plan")
+                    .addData("shape", shape)
+                    .addData("sql", sql)
+                    .log();
+            return new QueryPlan(
+                    sql,
+                    RawSqlBuilder.parse(sql)
+                            .columnMapping("t0.id", "_id")
+                            .columnMapping("t0.version", "_version")
+                            .columnMapping("t0.created_at", "_createdAt")
+                            .columnMapping("t0.updated_at", "_updatedAt")
+                            .columnMapping("t0.name", "_name")
+                            .columnMapping("t0.cluster", "_cluster")
+                            .columnMapping("t0.metrics_software_state", "_metricsSoftwareState")
+                            .create());
+        }
+
+        private static Map<String, Object> createParameters(final HostQuery query, final List<String> tokens) {
+            final Map<String, Object> parameters = Maps.newHashMap();
+            if (!tokens.isEmpty()) {
+                final StringBuilder prefixExpression = new StringBuilder();
+                final StringBuilder termExpression = new StringBuilder();
+                for (final String token : tokens) {
+                    if (termExpression.length() > 0) {
+                        prefixExpression.append(" | ");
+                        termExpression.append(" | ");
+                    }
+                    prefixExpression.append(token).append(":*");
+                    termExpression.append(token);
+                }
+                parameters.put("prefixQuery", prefixExpression.toString());
+                parameters.put("termQuery", termExpression.toString());
+            }
+            if (query.getCluster().isPresent()) {
+                parameters.put("cluster", query.getCluster().get());
+            }
+            if (query.getMetricsSoftwareState().isPresent()) {
+                parameters.put("metrics_software_state", query.getMetricsSoftwareState().get().toString());
+            }
+            return parameters;
+        }
 
-            // Compute the page offset
-            int pageOffset = 0;
-            if (query.getOffset().isPresent()) {
-                pageOffset = query.getOffset().get() / query.getLimit();
+        private static long estimateRowCount(final String sql, final Map<String, Object> parameters) {
+            if (parameters.isEmpty()) {
+                // Without any predicates the table statistics suffice
+                final SqlRow row = Ebean.createSqlQuery(
+                        "SELECT reltuples::bigint AS estimate FROM pg_class WHERE oid = 'portal.hosts'::regclass")
+                        .findUnique();
+                return row == null ? 0 : Math.max(0, row.getLong("estimate"));
             }
 
-            // Create and execute the raw parameterized query
-            return createParameterizedHostQueryFromRawSql(
-                    selectBuilder.toString() + " " + whereBuilder.toString() + " " + orderBuilder.toString(),
-                    parameters)
-                    .findPagedList(pageOffset, query.getLimit());
+            // Otherwise use the planner's row estimate for the query
+            final SqlQuery explainQuery = Ebean.createSqlQuery("EXPLAIN " + sql);
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                explainQuery.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            final List<SqlRow> plan = explainQuery.findList();
+            if (!plan.isEmpty()) {
+                final Matcher matcher = PLAN_ROWS_PATTERN.matcher(String.valueOf(plan.get(0).values().iterator().next()));
+                if (matcher.find()) {
+                    return Long.parseLong(matcher.group(1));
+                }
+            }
+            LOGGER.warn()
+                    .setMessage("Unable to estimate row count from plan")
+                    .addData("sql", sql)
+                    .addData("plan", plan)
+                    .log();
+            return 0;
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        public void saveHost(final models.ebean.Host host) {
-            Ebean.save(host);
-            Ebean.createSqlUpdate("UPDATE portal.hosts SET name_idx_col = to_tsvector('simple', coalesce(:tokens,'')) WHERE id = :id")
-                    .setParameter("id", host.getId())
-                    .setParameter(
-                            "tokens",
-                            tokenize(host.getName())
-                                    .stream()
-                                    .reduce((s1, s2) -> s1 + " " + s2)
-                                    .orElse(host.getName()))
-                    .execute();
+        public SaveResult saveHost(final Host host) {
+            // Write the host and its full text index column in one statement; the row is never written twice
+            // NOTE: The system column xmax is zero unless the row version was written by the conflict update
+            // NOTE: An unchanged host is skipped by the conflict clause and no row is returned
+            final SqlRow row = Ebean.createSqlQuery(UPSERT_HOST_SQL)
+                    .setParameter("name", host.getHostname())
+                    .setParameter("cluster", host.getCluster().orNull())
+                    .setParameter("state", host.getMetricsSoftwareState().toString())
+                    .setParameter("tokens", createDocument(host.getHostname(), new StringBuilder()))
+                    .findUnique();
+            if (row == null) {
+                return SaveResult.UNCHANGED;
+            }
+            return row.getBoolean("created") ? SaveResult.CREATED : SaveResult.UPDATED;
         }
 
-        // NOTE: Package private for testing
-        /* package private */ static List<String> tokenize(final String word) {
-            final List<String> tokens = new ArrayList<>();
-            for (final String token : word.split("([^\\p{Alnum}])|((?<=\\p{Alpha})(?=\\p{Digit})|(?<=\\p{Digit})(?=\\p{Alpha}))")) {
-                if (!token.isEmpty()) {
-                    tokens.add(token.toLowerCase(Locale.getDefault()));
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int saveHosts(final List<Host> hosts) {
+            // Upsert all hosts with one multi-row statement including the full text index column
+            final StringBuilder sqlBuilder = new StringBuilder(
+                    "INSERT INTO portal.hosts (name, cluster, metrics_software_state, name_idx_col) VALUES ");
+            final Map<String, Object> parameters = Maps.newHashMap();
+            final StringBuilder documentBuilder = new StringBuilder();
+            for (int i = 0; i < hosts.size(); ++i) {
+                final Host host = hosts.get(i);
+                if (i > 0) {
+                    sqlBuilder.append(", ");
                 }
+                sqlBuilder.append(String.format(
+                        "(:name%1$d, :cluster%1$d, :state%1$d, to_tsvector('simple', coalesce(:tokens%1$d,'')))",
+                        i));
+                parameters.put("name" + i, host.getHostname());
+                parameters.put("cluster" + i, host.getCluster().orNull());
+                parameters.put("state" + i, host.getMetricsSoftwareState().toString());
+                parameters.put("tokens" + i, createDocument(host.getHostname(), documentBuilder));
+            }
+            sqlBuilder.append(UPSERT_CONFLICT_CLAUSE);
+
+            final SqlUpdate sqlUpdate = Ebean.createSqlUpdate(sqlBuilder.toString());
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                sqlUpdate.setParameter(parameter.getKey(), parameter.getValue());
             }
-            return tokens;
+            // NOTE: The rows skipped by the conflict clause are not counted
+            return sqlUpdate.execute();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getEtag() {
+            // NOTE: Unlike currval the last value does not require the sequence to have been used in this session
+            final SqlQuery sqlQuery = Ebean.createSqlQuery("SELECT last_value AS etag FROM portal.hosts_etag_seq;");
+            return sqlQuery.findUnique().getLong("etag");
+        }
+
+        // NOTE: Package private for testing
+        /* package private */ static List<String> tokenize(final String word) {
+            return HostnameTokenizer.tokenize(word);
+        }
+
+        private static String createDocument(final String hostname, final StringBuilder builder) {
+            // The host name itself is indexed if it has no tokens
+            builder.setLength(0);
+            return HostnameTokenizer.appendTokens(hostname, builder) ? builder.toString() : hostname;
         }
 
-        private static Query<models.ebean.Host> createParameterizedHostQueryFromRawSql(
-                final String sql,
+        private static Query<models.ebean.Host> createEbeanQuery(
+                final QueryPlan plan,
                 final Map<String, Object> parameters) {
-            final RawSql rawSql = RawSqlBuilder.parse(sql)
-                    .columnMapping("t0.id", "_id")
-                    .columnMapping("t0.version", "_version")
-                    .columnMapping("t0.created_at", "_createdAt")
-                    .columnMapping("t0.updated_at", "_updatedAt")
-                    .columnMapping("t0.name", "_name")
-                    .columnMapping("t0.cluster", "_cluster")
-                    .columnMapping("t0.metrics_software_state", "_metricsSoftwareState")
-                    .create();
-            final Query<models.ebean.Host> ebeanQuery = Ebean.find(models.ebean.Host.class).setRawSql(rawSql);
+            final Query<models.ebean.Host> ebeanQuery = Ebean.find(models.ebean.Host.class).setRawSql(plan.getRawSql());
             for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
                 ebeanQuery.setParameter(parameter.getKey(), parameter.getValue());
             }
@@ -458,5 +1119,127 @@ public class DatabaseHostRepository implements HostRepository {
                 stringBuilder.append(continuation);
             }
         }
+
+        private final ConcurrentMap<QueryShape, QueryPlan> _queryPlans = Maps.newConcurrentMap();
+
+        private static final Pattern PLAN_ROWS_PATTERN = Pattern.compile("rows=(\\d+)");
+        private static final String UPSERT_CONFLICT_CLAUSE = " ON CONFLICT (name) DO UPDATE SET "
+                + "cluster = EXCLUDED.cluster, "
+                + "metrics_software_state = EXCLUDED.metrics_software_state, "
+                + "name_idx_col = EXCLUDED.name_idx_col, "
+                + "version = portal.hosts.version + 1, "
+                + "updated_at = now() "
+                + "WHERE portal.hosts.cluster IS DISTINCT FROM EXCLUDED.cluster "
+                + "OR portal.hosts.metrics_software_state <> EXCLUDED.metrics_software_state";
+        private static final String UPSERT_HOST_SQL = "INSERT INTO portal.hosts (name, cluster, metrics_software_state, name_idx_col) "
+                + "VALUES (:name, :cluster, :state, to_tsvector('simple', coalesce(:tokens,'')))"
+                + UPSERT_CONFLICT_CLAUSE
+                + " RETURNING (xmax = 0) AS created";
+
+        /**
+         * The clauses present in a host query. Queries of the same shape
+         * differ only in their parameter values and therefore share the same
+         * statement text, which lets the driver reuse a server side prepared
+         * statement across requests.
+         */
+        private static final class QueryShape {
+
+            QueryShape(final HostQuery query, final boolean isRanked, final boolean hasCursor) {
+                _isRanked = isRanked;
+                _hasCluster = query.getCluster().isPresent();
+                _hasMetricsSoftwareState = query.getMetricsSoftwareState().isPresent();
+                _hasCursor = hasCursor;
+                _sortBy = query.getSortBy();
+            }
+
+            public boolean isRanked() {
+                return _isRanked;
+            }
+
+            public boolean hasCluster() {
+                return _hasCluster;
+            }
+
+            public boolean hasMetricsSoftwareState() {
+                return _hasMetricsSoftwareState;
+            }
+
+            public boolean hasCursor() {
+                return _hasCursor;
+            }
+
+            public Optional<HostQuery.Field> getSortBy() {
+                return _sortBy;
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public boolean equals(final Object other) {
+                if (this == other) {
+                    return true;
+                }
+                if (!(other instanceof QueryShape)) {
+                    return false;
+                }
+                final QueryShape otherShape = (QueryShape) other;
+                return _isRanked == otherShape._isRanked
+                        && _hasCluster == otherShape._hasCluster
+                        && _hasMetricsSoftwareState == otherShape._hasMetricsSoftwareState
+                        && _hasCursor == otherShape._hasCursor
+                        && _sortBy.equals(otherShape._sortBy);
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public int hashCode() {
+                return Objects.hash(_isRanked, _hasCluster, _hasMetricsSoftwareState, _hasCursor, _sortBy);
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public String toString() {
+                return MoreObjects.toStringHelper(this)
+                        .add("IsRanked", _isRanked)
+                        .add("HasCluster", _hasCluster)
+                        .add("HasMetricsSoftwareState", _hasMetricsSoftwareState)
+                        .add("HasCursor", _hasCursor)
+                        .add("SortBy", _sortBy)
+                        .toString();
+            }
+
+            private final boolean _isRanked;
+            private final boolean _hasCluster;
+            private final boolean _hasMetricsSoftwareState;
+            private final boolean _hasCursor;
+            private final Optional<HostQuery.Field> _sortBy;
+        }
+
+        /**
+         * The statement text and parsed <code>RawSql</code> for a query shape.
+         */
+        private static final class QueryPlan {
+
+            QueryPlan(final String sql, final RawSql rawSql) {
+                _sql = sql;
+                _rawSql = rawSql;
+            }
+
+            public String getSql() {
+                return _sql;
+            }
+
+            public RawSql getRawSql() {
+                return _rawSql;
+            }
+
+            private final String _sql;
+            private final RawSql _rawSql;
+        }
     }
 }
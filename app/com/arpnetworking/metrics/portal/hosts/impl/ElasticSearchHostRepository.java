@@ -18,7 +18,11 @@ package com.arpnetworking.metrics.portal.hosts.impl;
 import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.jackson.BuilderDeserializer;
 import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Timer;
 import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
@@ -27,6 +31,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import models.internal.Host;
 import models.internal.HostQuery;
@@ -35,9 +40,15 @@ import models.internal.QueryResult;
 import models.internal.impl.DefaultHost;
 import models.internal.impl.DefaultHostQuery;
 import models.internal.impl.DefaultQueryResult;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.elasticsearch.action.admin.cluster.state.ClusterStateResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.count.CountResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
@@ -49,18 +60,34 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.client.Requests;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount;
 import org.elasticsearch.search.sort.ScoreSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import play.Application;
 import play.Configuration;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -77,9 +104,13 @@ public final class ElasticSearchHostRepository implements HostRepository {
      *
      * @param configuration Instance of Play's <code>Configuration</code>.
      * @param application Instance of Play <code>Application</code>.
+     * @param metricsFactory Instance of <code>MetricsFactory</code>.
      */
     @Inject
-    public ElasticSearchHostRepository(final Configuration configuration, final Application application) {
+    public ElasticSearchHostRepository(
+            final Configuration configuration,
+            final Application application,
+            final MetricsFactory metricsFactory) {
         // For more information about these settings please see:
         //
         // Elastic Search Configuration:
@@ -87,7 +118,15 @@ public final class ElasticSearchHostRepository implements HostRepository {
         //
         // Index Settings:
         // http://www.elasticsearch.org/guide/en/elasticsearch/reference/current/indices-update-settings.html
-        this(buildNodeSettings(configuration, application), buildIndexSettings(configuration));
+        this(
+                buildNodeSettings(configuration, application),
+                buildIndexSettings(configuration),
+                metricsFactory,
+                configuration.getInt("hostRepository.batchSize", DEFAULT_BATCH_SIZE),
+                ByteSizeValue.parseBytesSizeValue(configuration.getString("elasticSearch.bulk.size", DEFAULT_BULK_SIZE)),
+                TimeValue.parseTimeValue(configuration.getString("elasticSearch.bulk.flushInterval", DEFAULT_FLUSH_INTERVAL), null),
+                configuration.getInt("elasticSearch.bulk.concurrentRequests", DEFAULT_CONCURRENT_REQUESTS),
+                configuration.getInt("elasticSearch.bulk.suspendRefreshThreshold", DEFAULT_SUSPEND_REFRESH_THRESHOLD));
     }
 
     /**
@@ -107,6 +146,12 @@ public final class ElasticSearchHostRepository implements HostRepository {
 
         _client = _node.client();
         _client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+        _bulkProcessor = BulkProcessor.builder(_client, new BulkListener())
+                .setBulkActions(_batchSize)
+                .setBulkSize(_bulkSize)
+                .setFlushInterval(_flushInterval)
+                .setConcurrentRequests(_concurrentRequests)
+                .build();
 
         final ClusterStateResponse response = _client.admin().cluster().prepareState().execute().actionGet();
         final boolean hasIndex = response.getState().metaData().hasIndex(INDEX);
@@ -144,6 +189,7 @@ public final class ElasticSearchHostRepository implements HostRepository {
         }
 
         _isOpen.set(true);
+
         LOGGER.info().setMessage("ElasticSearchHostRepository up and healthy").log();
     }
 
@@ -156,7 +202,8 @@ public final class ElasticSearchHostRepository implements HostRepository {
         LOGGER.debug().setMessage("Closing host repository").log();
         _isOpen.set(false);
 
-        // Shutdown Elastic Search
+        // Shutdown Elastic Search; any buffered writes are sent before the client is closed
+        _bulkProcessor.close();
         _client.close();
         _node.close();
     }
@@ -172,26 +219,92 @@ public final class ElasticSearchHostRepository implements HostRepository {
                 .addData("host", host)
                 .log();
 
-        final String hostJson;
+        // Flush instead of waiting up to the flush interval for the host to be written
+        final CompletableFuture<Void> future = write(host);
+        _bulkProcessor.flush();
+        join(future);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Void> addOrUpdateHostAsync(final Host host) {
         try {
-            hostJson = OBJECT_MAPPER.writeValueAsString(host);
-        } catch (final JsonProcessingException e) {
-            throw new RuntimeException(String.format("Unable to serialize host; host=%s", host), e);
+            assertIsOpen();
+            LOGGER.debug()
+                    .setMessage("Adding or updating host asynchronously")
+                    .addData("host", host)
+                    .log();
+            return write(host);
+            // CHECKSTYLE.OFF: IllegalCatch - Failures must complete the future
+        } catch (final RuntimeException e) {
+            // CHECKSTYLE.ON: IllegalCatch
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
         }
+    }
 
-        final IndexRequest indexRequest = new IndexRequest(INDEX, TYPE, host.getHostname())
-                .source(hostJson);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOrUpdateHosts(final Collection<Host> hosts) {
+        assertIsOpen();
+        LOGGER.debug()
+                .setMessage("Adding or updating hosts")
+                .addData("count", hosts.size())
+                .log();
 
-        final UpdateRequest updateRequest = new UpdateRequest(INDEX, TYPE, host.getHostname())
-                .doc(hostJson)
-                .upsert(indexRequest);
+        // The last occurrence of each host name wins; concurrent bulks may be applied in any order
+        final Map<String, Host> uniqueHosts = Maps.newLinkedHashMap();
+        for (final Host host : hosts) {
+            uniqueHosts.put(host.getHostname(), host);
+        }
 
-        final UpdateResponse response = _client.update(updateRequest).actionGet();
-        LOGGER.info()
-                .setMessage("Upserted host")
-                .addData("host", host)
-                .addData("isCreated", response.isCreated())
-                .log();
+        final Collection<Host> hostsToWrite = uniqueHosts.values();
+
+        // Writing most of the fleet is a re-sync; refreshing the index during it only creates segments to merge
+        final boolean isResync = _suspendRefreshThreshold > 0 && hostsToWrite.size() >= _suspendRefreshThreshold;
+        final Metrics metrics = _metricsFactory.create();
+        final Timer timer = metrics.createTimer(BATCH_LATENCY_METRIC);
+        if (isResync) {
+            suspendRefresh();
+        }
+        try {
+            // The bulk processor blocks adding hosts while its concurrent bulks are in flight
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(hostsToWrite.size());
+            for (final Host host : hostsToWrite) {
+                futures.add(write(host));
+            }
+            _bulkProcessor.flush();
+
+            int failures = 0;
+            for (final CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                } catch (final CompletionException e) {
+                    ++failures;
+                }
+            }
+            metrics.incrementCounter(BATCH_HOSTS_METRIC, hostsToWrite.size() - failures);
+            metrics.incrementCounter(BATCH_FAILURES_METRIC, failures);
+            if (failures > 0) {
+                throw new RuntimeException(String.format("Unable to upsert hosts; failures=%d", failures));
+            }
+
+            LOGGER.info()
+                    .setMessage("Upserted hosts")
+                    .addData("count", hostsToWrite.size())
+                    .log();
+        } finally {
+            if (isResync) {
+                resumeRefresh();
+            }
+            timer.stop();
+            metrics.close();
+        }
     }
 
     /**
@@ -205,10 +318,11 @@ public final class ElasticSearchHostRepository implements HostRepository {
                 .addData("hostname", hostname)
                 .log();
 
-        final DeleteResponse response = _client.prepareDelete(INDEX, TYPE, hostname)
-                .setRefresh(true)
-                .execute()
-                .actionGet();
+        // The deletion is ordered with any buffered upsert of the host by sending it through the bulk processor
+        // NOTE: The deletion becomes visible with the next periodic refresh of the index
+        final CompletableFuture<BulkItemResponse> future = submit(new DeleteRequest(INDEX, TYPE, hostname));
+        _bulkProcessor.flush();
+        final DeleteResponse response = join(future).getResponse();
         if (response.isFound()) {
             LOGGER.info()
                     .setMessage("Deleted host")
@@ -243,37 +357,59 @@ public final class ElasticSearchHostRepository implements HostRepository {
                 .addData("query", query)
                 .log();
 
-        QueryBuilder esQuery = null;
-        if (query.getPartialHostname().isPresent()) {
-            esQuery = QueryBuilders.matchPhrasePrefixQuery("hostname", query.getPartialHostname().get()).maxExpansions(MAX_EXPANSIONS);
-        }
-        if (query.getMetricsSoftwareState().isPresent()) {
-            final QueryBuilder queryState = QueryBuilders.matchQuery("metricsSoftwareState", query.getMetricsSoftwareState().get());
-            esQuery = esQuery == null ? queryState : QueryBuilders.boolQuery().must(esQuery).must(queryState);
-        }
-        if (query.getCluster().isPresent()) {
-            final QueryBuilder queryState = QueryBuilders.matchQuery("cluster", query.getCluster().get());
-            esQuery = esQuery == null ? queryState : QueryBuilders.boolQuery().must(esQuery).must(queryState);
-        }
-
-        final SearchRequestBuilder request = _client.prepareSearch(INDEX)
-                .setTypes(TYPE)
-                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH);
+        final Optional<HostCursor> cursor = HostCursor.decode(query);
+        final SearchResponse response = createSearchRequest(query, cursor).execute().actionGet();
+        return createQueryResult(query, cursor, response);
+    }
 
-        if (esQuery != null) {
-            request.setQuery(esQuery);
-        }
-        if (query.getSortBy().isPresent()) {
-            request.addSort(mapField(query.getSortBy().get()), SortOrder.ASC);
-        } else {
-            request.addSort(new ScoreSortBuilder());
-        }
-        if (query.getOffset().isPresent()) {
-            request.setFrom(query.getOffset().get());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<QueryResult<Host>> queryAsync(final HostQuery query) {
+        final CompletableFuture<QueryResult<Host>> future = new CompletableFuture<>();
+        final Optional<HostCursor> cursor;
+        final SearchRequestBuilder request;
+        try {
+            assertIsOpen();
+            LOGGER.debug()
+                    .setMessage("Querying asynchronously")
+                    .addData("query", query)
+                    .log();
+            cursor = HostCursor.decode(query);
+            request = createSearchRequest(query, cursor);
+        } catch (final IllegalArgumentException | IllegalStateException e) {
+            future.completeExceptionally(e);
+            return future;
         }
-        request.setSize(query.getLimit());
+        request.execute(new ActionListener<SearchResponse>() {
+            @Override
+            public void onResponse(final SearchResponse response) {
+                try {
+                    future.complete(createQueryResult(query, cursor, response));
+                    // CHECKSTYLE.OFF: IllegalCatch - Failures must complete the future
+                } catch (final RuntimeException e) {
+                    // CHECKSTYLE.ON: IllegalCatch
+                    future.completeExceptionally(e);
+                }
+            }
 
-        return deserializeHits(request.execute().actionGet());
+            @Override
+            public void onFailure(final Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        // NOTE: Query results do not carry an etag
+        return Optional.empty();
     }
 
     /**
@@ -331,6 +467,104 @@ public final class ElasticSearchHostRepository implements HostRepository {
         return toLogValue().toString();
     }
 
+    private SearchRequestBuilder createSearchRequest(final HostQuery query, final Optional<HostCursor> cursor) {
+        QueryBuilder esQuery = null;
+        if (query.getPartialHostname().isPresent()) {
+            esQuery = QueryBuilders.matchPhrasePrefixQuery("hostname", query.getPartialHostname().get()).maxExpansions(MAX_EXPANSIONS);
+        }
+        if (query.getMetricsSoftwareState().isPresent()) {
+            final QueryBuilder queryState = QueryBuilders.matchQuery("metricsSoftwareState", query.getMetricsSoftwareState().get());
+            esQuery = esQuery == null ? queryState : QueryBuilders.boolQuery().must(esQuery).must(queryState);
+        }
+        if (query.getCluster().isPresent()) {
+            final QueryBuilder queryState = QueryBuilders.matchQuery("cluster", query.getCluster().get());
+            esQuery = esQuery == null ? queryState : QueryBuilders.boolQuery().must(esQuery).must(queryState);
+        }
+
+        final boolean isCursorSupported = isCursorSupported(query);
+        if (cursor.isPresent() && !isCursorSupported) {
+            throw new InvalidCursorException("Cursor is not supported for relevance ordered queries");
+        }
+        final boolean isSortedByState = query.getSortBy().isPresent()
+                && HostQuery.Field.METRICS_SOFTWARE_STATE.equals(query.getSortBy().get());
+
+        final SearchRequestBuilder request = _client.prepareSearch(INDEX)
+                .setTypes(TYPE)
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH);
+
+        if (esQuery != null) {
+            request.setQuery(esQuery);
+        }
+        if (query.getSortBy().isPresent()) {
+            request.addSort(mapField(query.getSortBy().get()), SortOrder.ASC);
+        } else if (!isCursorSupported) {
+            request.addSort(new ScoreSortBuilder());
+        }
+        if (isCursorSupported && (!query.getSortBy().isPresent() || isSortedByState)) {
+            // The host name is unique and breaks any ties making the order deterministic
+            request.addSort(mapField(HostQuery.Field.HOSTNAME), SortOrder.ASC);
+        }
+        if (cursor.isPresent()) {
+            // NOTE: Elastic Search 1.x does not support search_after; instead seek past the cursor with a range
+            // post filter on the sort keys. The total is taken from an aggregation since aggregations are computed
+            // before the post filter is applied.
+            final FilterBuilder afterHostname = FilterBuilders.rangeFilter(mapField(HostQuery.Field.HOSTNAME))
+                    .gt(cursor.get().getHostname());
+            if (isSortedByState) {
+                final String afterState = cursor.get().getSortKey().toLowerCase(Locale.getDefault());
+                request.setPostFilter(FilterBuilders.boolFilter()
+                        .should(FilterBuilders.rangeFilter(mapField(HostQuery.Field.METRICS_SOFTWARE_STATE)).gt(afterState))
+                        .should(FilterBuilders.boolFilter()
+                                .must(FilterBuilders.termFilter(mapField(HostQuery.Field.METRICS_SOFTWARE_STATE), afterState))
+                                .must(afterHostname)));
+            } else {
+                request.setPostFilter(afterHostname);
+            }
+            request.addAggregation(AggregationBuilders.count(TOTAL_AGGREGATION).field(mapField(HostQuery.Field.HOSTNAME)));
+        } else if (query.getOffset().isPresent()) {
+            request.setFrom(query.getOffset().get());
+        }
+        request.setSize(query.getLimit());
+        return request;
+    }
+
+    private QueryResult<Host> createQueryResult(
+            final HostQuery query,
+            final Optional<HostCursor> cursor,
+            final SearchResponse response) {
+        final List<Host> hosts = deserializeHits(response);
+        final long total;
+        if (cursor.isPresent()) {
+            final ValueCount count = response.getAggregations().get(TOTAL_AGGREGATION);
+            total = count.getValue();
+        } else {
+            total = response.getHits().getTotalHits();
+        }
+        return new DefaultQueryResult<>(
+                hosts,
+                total,
+                Optional.empty(),
+                isCursorSupported(query) ? HostCursor.next(query, hosts) : Optional.empty());
+    }
+
+    private UpdateRequest createUpdateRequest(final Host host) {
+        final String hostJson;
+        try {
+            hostJson = OBJECT_MAPPER.writeValueAsString(host);
+        } catch (final JsonProcessingException e) {
+            throw new RuntimeException(String.format("Unable to serialize host; host=%s", host), e);
+        }
+
+        final IndexRequest indexRequest = new IndexRequest(INDEX, TYPE, host.getHostname())
+                .source(hostJson);
+
+        // An unchanged host is detected by the shard and neither reindexed nor refreshed
+        return new UpdateRequest(INDEX, TYPE, host.getHostname())
+                .doc(hostJson)
+                .detectNoop(true)
+                .upsert(indexRequest);
+    }
+
     private String mapField(final HostQuery.Field field) {
         switch (field) {
             case HOSTNAME:
@@ -342,7 +576,12 @@ public final class ElasticSearchHostRepository implements HostRepository {
         }
     }
 
-    private QueryResult<Host> deserializeHits(final SearchResponse response) {
+    private boolean isCursorSupported(final HostQuery query) {
+        // Relevance ordering is not a stable key and cannot be resumed
+        return query.getSortBy().isPresent() || !query.getPartialHostname().isPresent();
+    }
+
+    private List<Host> deserializeHits(final SearchResponse response) {
         final List<Host> hosts = Lists.newArrayList();
         for (final SearchHit hit : response.getHits().hits()) {
             try {
@@ -357,10 +596,79 @@ public final class ElasticSearchHostRepository implements HostRepository {
                         .setMessage("Deleting malformed host")
                         .addData("id", hit.id())
                         .log();
-                deleteHost(hit.getId());
+                deleteMalformedHost(hit.getId());
+            }
+        }
+        return hosts;
+    }
+
+    private void deleteMalformedHost(final String id) {
+        // Hits may be deserialized on a transport thread which must not wait for a bulk; adding to the bulk
+        // processor can block while bulks are in flight so the delete is submitted from another thread and
+        // sent with the next bulk
+        CompletableFuture.runAsync(() -> submit(new DeleteRequest(INDEX, TYPE, id))
+                .whenComplete((item, failure) -> {
+                    if (failure != null) {
+                        LOGGER.warn()
+                                .setMessage("Unable to delete malformed host")
+                                .addData("id", id)
+                                .setThrowable(failure)
+                                .log();
+                    }
+                }));
+    }
+
+    private CompletableFuture<Void> write(final Host host) {
+        return submit(createUpdateRequest(host)).thenApply(item -> null);
+    }
+
+    private CompletableFuture<BulkItemResponse> submit(final UpdateRequest request) {
+        final CompletableFuture<BulkItemResponse> future = new CompletableFuture<>();
+        _pendingWrites.put(request, future);
+        _bulkProcessor.add(request);
+        return future;
+    }
+
+    private CompletableFuture<BulkItemResponse> submit(final DeleteRequest request) {
+        final CompletableFuture<BulkItemResponse> future = new CompletableFuture<>();
+        _pendingWrites.put(request, future);
+        _bulkProcessor.add(request);
+        return future;
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
+        }
+    }
+
+    private synchronized void suspendRefresh() {
+        if (_refreshSuspensions++ == 0) {
+            LOGGER.info().setMessage("Suspending index refresh").log();
+            updateRefreshInterval("-1");
         }
-        return new DefaultQueryResult<>(hosts, response.getHits().getTotalHits());
+    }
+
+    private synchronized void resumeRefresh() {
+        if (--_refreshSuspensions == 0) {
+            LOGGER.info().setMessage("Resuming index refresh").log();
+            updateRefreshInterval(_indexSettings.get("refresh_interval", DEFAULT_REFRESH_INTERVAL));
+            _client.admin().indices().prepareRefresh(INDEX).execute().actionGet();
+        }
+    }
+
+    private void updateRefreshInterval(final String refreshInterval) {
+        _client.admin().indices().prepareUpdateSettings(INDEX)
+                .setSettings(ImmutableSettings.settingsBuilder()
+                        .put("index.refresh_interval", refreshInterval)
+                        .build())
+                .execute()
+                .actionGet();
     }
 
     private void assertIsOpen() {
@@ -373,9 +681,39 @@ public final class ElasticSearchHostRepository implements HostRepository {
         }
     }
 
-    /*package private*/ ElasticSearchHostRepository(final Settings settings, final Settings indexSettings) {
+    /*package private*/ ElasticSearchHostRepository(
+            final Settings settings,
+            final Settings indexSettings,
+            final MetricsFactory metricsFactory,
+            final int batchSize) {
+        this(
+                settings,
+                indexSettings,
+                metricsFactory,
+                batchSize,
+                ByteSizeValue.parseBytesSizeValue(DEFAULT_BULK_SIZE),
+                TimeValue.parseTimeValue(DEFAULT_FLUSH_INTERVAL, null),
+                DEFAULT_CONCURRENT_REQUESTS,
+                DEFAULT_SUSPEND_REFRESH_THRESHOLD);
+    }
+
+    /*package private*/ ElasticSearchHostRepository(
+            final Settings settings,
+            final Settings indexSettings,
+            final MetricsFactory metricsFactory,
+            final int batchSize,
+            final ByteSizeValue bulkSize,
+            final TimeValue flushInterval,
+            final int concurrentRequests,
+            final int suspendRefreshThreshold) {
         _settings = settings;
         _indexSettings = indexSettings;
+        _metricsFactory = metricsFactory;
+        _batchSize = batchSize;
+        _bulkSize = bulkSize;
+        _flushInterval = flushInterval;
+        _concurrentRequests = concurrentRequests;
+        _suspendRefreshThreshold = suspendRefreshThreshold;
     }
 
     private static Settings buildIndexSettings(final Configuration configuration) {
@@ -401,14 +739,38 @@ public final class ElasticSearchHostRepository implements HostRepository {
     private final AtomicBoolean _isOpen = new AtomicBoolean(false);
     private final Settings _settings;
     private final Settings _indexSettings;
+    private final MetricsFactory _metricsFactory;
+    private final int _batchSize;
+    private final ByteSizeValue _bulkSize;
+    private final TimeValue _flushInterval;
+    private final int _concurrentRequests;
+    private final int _suspendRefreshThreshold;
+    private final ConcurrentMap<Object, CompletableFuture<BulkItemResponse>> _pendingWrites = Maps.newConcurrentMap();
+    // The version of each host last written by this instance; a noop update leaves the version unchanged
+    private final ConcurrentMap<String, Long> _writtenVersions = Maps.newConcurrentMap();
+    private int _refreshSuspensions = 0;
     private Client _client;
     private Node _node;
+    private BulkProcessor _bulkProcessor;
 
     private static final String INDEX = "hosts";
     private static final String TYPE = "host";
     private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.createInstance();
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchHostRepository.class);
     private static final int MAX_EXPANSIONS = 10000;
+    private static final String TOTAL_AGGREGATION = "total";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final String BATCH_LATENCY_METRIC = "host_repository/elasticsearch/upsert_batch/latency";
+    private static final String BATCH_HOSTS_METRIC = "host_repository/elasticsearch/upsert_batch/hosts";
+    private static final String BATCH_FAILURES_METRIC = "host_repository/elasticsearch/upsert_batch/failures";
+    private static final String BULK_LATENCY_METRIC = "host_repository/elasticsearch/bulk/latency";
+    private static final String BULK_FAILURES_METRIC = "host_repository/elasticsearch/bulk/failures";
+    private static final String SUPPRESSED_WRITES_METRIC = "host_repository/elasticsearch/suppressed_writes";
+    private static final String DEFAULT_BULK_SIZE = "5mb";
+    private static final String DEFAULT_FLUSH_INTERVAL = "1s";
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 1;
+    private static final int DEFAULT_SUSPEND_REFRESH_THRESHOLD = 10000;
+    private static final String DEFAULT_REFRESH_INTERVAL = "1s";
 
     static {
         final SimpleModule module = new SimpleModule("ElasticSearchHostRepository");
@@ -417,6 +779,97 @@ public final class ElasticSearchHostRepository implements HostRepository {
                 BuilderDeserializer.of(DefaultHost.Builder.class));
         OBJECT_MAPPER.registerModule(module);
     }
+
+    private final class BulkListener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(final long executionId, final BulkRequest request) {
+            LOGGER.debug()
+                    .setMessage("Writing bulk")
+                    .addData("executionId", executionId)
+                    .addData("actions", request.numberOfActions())
+                    .log();
+        }
+
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request, final BulkResponse response) {
+            // Items fail individually; the remaining items of the bulk are written
+            int failures = 0;
+            int suppressed = 0;
+            for (final BulkItemResponse item : response.getItems()) {
+                final CompletableFuture<BulkItemResponse> future = _pendingWrites.remove(request.requests().get(item.getItemId()));
+                if (item.isFailed()) {
+                    ++failures;
+                    LOGGER.error()
+                            .setMessage("Failed to write host")
+                            .addData("hostname", item.getId())
+                            .addData("opType", item.getOpType())
+                            .addData("failure", item.getFailureMessage())
+                            .log();
+                    if (future != null) {
+                        future.completeExceptionally(new RuntimeException(String.format(
+                                "Unable to write host; hostname=%s, opType=%s, failure=%s",
+                                item.getId(),
+                                item.getOpType(),
+                                item.getFailureMessage())));
+                    }
+                } else {
+                    if (isSuppressed(item)) {
+                        ++suppressed;
+                    }
+                    if (future != null) {
+                        future.complete(item);
+                    }
+                }
+            }
+
+            final Metrics metrics = _metricsFactory.create();
+            metrics.setTimer(BULK_LATENCY_METRIC, response.getTookInMillis(), TimeUnit.MILLISECONDS);
+            metrics.incrementCounter(BULK_FAILURES_METRIC, failures);
+            metrics.incrementCounter(SUPPRESSED_WRITES_METRIC, suppressed);
+            metrics.close();
+            LOGGER.debug()
+                    .setMessage("Wrote bulk")
+                    .addData("executionId", executionId)
+                    .addData("actions", request.numberOfActions())
+                    .addData("failures", failures)
+                    .log();
+        }
+
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request, final Throwable failure) {
+            LOGGER.error()
+                    .setMessage("Failed to write bulk")
+                    .addData("executionId", executionId)
+                    .addData("actions", request.numberOfActions())
+                    .setThrowable(failure)
+                    .log();
+            for (final Object action : request.requests()) {
+                final CompletableFuture<BulkItemResponse> future = _pendingWrites.remove(action);
+                if (future != null) {
+                    future.completeExceptionally(failure);
+                }
+            }
+
+            final Metrics metrics = _metricsFactory.create();
+            metrics.incrementCounter(BULK_FAILURES_METRIC, request.numberOfActions());
+            metrics.close();
+        }
+
+        private boolean isSuppressed(final BulkItemResponse item) {
+            // NOTE: Elasticsearch 1.7 does not flag noop updates; the shard returns the stored version instead
+            // of incrementing it. A host whose version this instance has not seen counts as written.
+            if (item.getResponse() instanceof UpdateResponse) {
+                final UpdateResponse updateResponse = item.getResponse();
+                final Long previousVersion = _writtenVersions.put(item.getId(), updateResponse.getVersion());
+                return !updateResponse.isCreated()
+                        && previousVersion != null
+                        && previousVersion == updateResponse.getVersion();
+            }
+            _writtenVersions.remove(item.getId());
+            return false;
+        }
+    }
 }
 
 
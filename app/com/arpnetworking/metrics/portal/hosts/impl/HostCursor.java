@@ -0,0 +1,177 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.MetricsSoftwareState;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Opaque keyset cursor for paginating through hosts. The cursor captures the
+ * sort key and the hostname of the last host on a page; since hostnames are
+ * unique the pair identifies a position in any deterministic host ordering.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+/* package private */ final class HostCursor {
+
+    /**
+     * Create the cursor for the page following the specified values. The
+     * cursor is only returned if the page is full; a partially filled page
+     * is by definition the last page.
+     *
+     * @param query The <code>HostQuery</code> that produced the values.
+     * @param values The values on the current page.
+     * @return The <code>Optional</code> encoded cursor.
+     */
+    public static Optional<String> next(final HostQuery query, final List<? extends Host> values) {
+        if (values.isEmpty() || values.size() < query.getLimit()) {
+            return Optional.empty();
+        }
+        final Host last = values.get(values.size() - 1);
+        return Optional.of(new HostCursor(
+                query.getSortBy(),
+                sortKey(query.getSortBy(), last),
+                last.getHostname())
+                .encode());
+    }
+
+    /**
+     * Decode the cursor for the specified query. The cursor must have been
+     * created for a query with the same sort order.
+     *
+     * @param query The <code>HostQuery</code> to resume.
+     * @return The <code>Optional</code> decoded cursor; empty if the query does not specify one.
+     * @throws InvalidCursorException if the cursor is malformed or does not match the query.
+     */
+    public static Optional<HostCursor> decode(final HostQuery query) {
+        if (!query.getAfter().isPresent()) {
+            return Optional.empty();
+        }
+        final Map<String, String> fields;
+        final Optional<HostQuery.Field> sortBy;
+        try {
+            fields = OBJECT_MAPPER.readValue(
+                    Base64.getUrlDecoder().decode(query.getAfter().get()),
+                    MAP_TYPE_REFERENCE);
+            sortBy = Optional.ofNullable(fields.get(SORT_BY_KEY)).map(HostQuery.Field::valueOf);
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new InvalidCursorException(String.format("Invalid cursor; cursor=%s", query.getAfter().get()), e);
+        }
+        final String sortKey = fields.get(SORT_KEY_KEY);
+        final String hostname = fields.get(HOSTNAME_KEY);
+        if (!sortBy.equals(query.getSortBy()) || sortKey == null || hostname == null) {
+            throw new InvalidCursorException(String.format("Cursor does not match query; cursor=%s", query.getAfter().get()));
+        }
+        if (sortBy.isPresent() && HostQuery.Field.METRICS_SOFTWARE_STATE.equals(sortBy.get())) {
+            try {
+                MetricsSoftwareState.valueOf(sortKey);
+            } catch (final IllegalArgumentException e) {
+                throw new InvalidCursorException(String.format("Invalid cursor; cursor=%s", query.getAfter().get()), e);
+            }
+        }
+        return Optional.of(new HostCursor(sortBy, sortKey, hostname));
+    }
+
+    /**
+     * Compute the sort key of a host for the specified sort field.
+     *
+     * @param sortBy The <code>Optional</code> field to sort by.
+     * @param host The <code>Host</code>.
+     * @return The sort key.
+     */
+    public static String sortKey(final Optional<HostQuery.Field> sortBy, final Host host) {
+        if (sortBy.isPresent() && HostQuery.Field.METRICS_SOFTWARE_STATE.equals(sortBy.get())) {
+            return host.getMetricsSoftwareState().toString();
+        }
+        return host.getHostname();
+    }
+
+    public Optional<HostQuery.Field> getSortBy() {
+        return _sortBy;
+    }
+
+    public String getSortKey() {
+        return _sortKey;
+    }
+
+    public String getHostname() {
+        return _hostname;
+    }
+
+    /**
+     * Encode the cursor as an opaque url safe string.
+     *
+     * @return The encoded cursor.
+     */
+    public String encode() {
+        final Map<String, String> fields = Maps.newHashMap();
+        if (_sortBy.isPresent()) {
+            fields.put(SORT_BY_KEY, _sortBy.get().toString());
+        }
+        fields.put(SORT_KEY_KEY, _sortKey);
+        fields.put(HOSTNAME_KEY, _hostname);
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    OBJECT_MAPPER.writeValueAsString(fields).getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to encode cursor", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", Integer.toHexString(System.identityHashCode(this)))
+                .add("class", this.getClass())
+                .add("SortBy", _sortBy)
+                .add("SortKey", _sortKey)
+                .add("Hostname", _hostname)
+                .toString();
+    }
+
+    private HostCursor(final Optional<HostQuery.Field> sortBy, final String sortKey, final String hostname) {
+        _sortBy = sortBy;
+        _sortKey = sortKey;
+        _hostname = hostname;
+    }
+
+    private final Optional<HostQuery.Field> _sortBy;
+    private final String _sortKey;
+    private final String _hostname;
+
+    private static final String SORT_BY_KEY = "f";
+    private static final String SORT_KEY_KEY = "k";
+    private static final String HOSTNAME_KEY = "h";
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getInstance();
+    private static final TypeReference<Map<String, String>> MAP_TYPE_REFERENCE = new TypeReference<Map<String, String>>() {};
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import akka.actor.Address;
+import akka.routing.ConsistentHash;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+/**
+ * Assigns hosts to the members of a cluster using consistent hashing of the
+ * hostname. Every member computes the same assignment from the same
+ * membership, so each host is indexed by exactly one member; when a member
+ * joins or leaves only the hosts hashed to that member move.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class HostPartitioner {
+
+    /**
+     * Public constructor.
+     *
+     * @param self The <code>Address</code> of the local member.
+     * @param virtualNodesFactor The number of virtual nodes per member on the hash ring.
+     */
+    public HostPartitioner(final Address self, final int virtualNodesFactor) {
+        _self = self;
+        _virtualNodesFactor = virtualNodesFactor;
+        _ring = ConsistentHash.create(_members, _virtualNodesFactor);
+    }
+
+    /**
+     * Add a member to the partitioning.
+     *
+     * @param member The <code>Address</code> of the member.
+     * @return True if and only if the partitioning changed.
+     */
+    public boolean addMember(final Address member) {
+        if (_members.add(member)) {
+            _ring = ConsistentHash.create(_members, _virtualNodesFactor);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove a member from the partitioning.
+     *
+     * @param member The <code>Address</code> of the member.
+     * @return True if and only if the partitioning changed.
+     */
+    public boolean removeMember(final Address member) {
+        if (_members.remove(member)) {
+            _ring = ConsistentHash.create(_members, _virtualNodesFactor);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether the local member is responsible for a host. No host
+     * is owned until the local member itself has been added.
+     *
+     * @param hostname The name of the host.
+     * @return True if and only if the local member owns the host.
+     */
+    public boolean owns(final String hostname) {
+        return !_ring.isEmpty() && _self.equals(_ring.nodeFor(hostname));
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("self", _self)
+                .put("members", _members)
+                .put("virtualNodesFactor", _virtualNodesFactor)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private final Address _self;
+    private final int _virtualNodesFactor;
+    private final Set<Address> _members = Sets.newHashSet();
+    private ConsistentHash<Address> _ring;
+}
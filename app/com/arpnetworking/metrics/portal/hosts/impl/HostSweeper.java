@@ -0,0 +1,279 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.HostSource;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import models.internal.CountMode;
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.QueryResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Incrementally applies snapshots from a <code>HostSource</code> to a
+ * <code>HostRepository</code>. The sweeper remembers the hosts written by the
+ * previous sweep and on each sweep writes only the hosts which were added or
+ * changed, and deletes only the hosts which disappeared from the source.
+ *
+ * Changed hosts are accumulated into batches of bounded size and each full
+ * batch is written before the source is read any further; thus a slow
+ * repository throttles reading the source rather than growing the backlog.
+ * Hosts are only remembered once their batch has been written and removals
+ * are only applied after the source was read completely, so a failed sweep
+ * is retried in its entirety by the next one.
+ *
+ * The first sweep, and the first sweep after <code>invalidate</code>, seeds
+ * the remembered hosts by scanning the repository. Hosts which disappeared
+ * from the source while no sweeper was running are thus still deleted, and
+ * hosts which are already current are not written again.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class HostSweeper {
+
+    /**
+     * Public constructor.
+     *
+     * @param hostRepository The <code>HostRepository</code> to write to.
+     * @param batchSize The maximum number of hosts written at once.
+     */
+    public HostSweeper(final HostRepository hostRepository, final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("Batch size must be positive; batchSize=%d", batchSize));
+        }
+        _hostRepository = hostRepository;
+        _batchSize = batchSize;
+    }
+
+    /**
+     * Apply the current snapshot of the specified source.
+     *
+     * @param source The <code>HostSource</code> to read.
+     * @return The <code>Result</code> of the sweep.
+     * @throws IOException if the source could not be read.
+     */
+    public Result sweep(final HostSource source) throws IOException {
+        return sweep(source, hostname -> true);
+    }
+
+    /**
+     * Apply the current snapshot of the specified source restricted to the
+     * hosts accepted by the ownership predicate. Hosts which are not owned are
+     * neither written nor deleted; if they were previously owned they are
+     * forgotten so that they are written again should ownership return. Only
+     * owned hosts are seeded from the repository; so the sweeper should be
+     * invalidated whenever ownership changes.
+     *
+     * @param source The <code>HostSource</code> to read.
+     * @param owns Predicate accepting the names of the hosts to apply.
+     * @return The <code>Result</code> of the sweep.
+     * @throws IOException if the source could not be read.
+     */
+    public Result sweep(final HostSource source, final Predicate<String> owns) throws IOException {
+        if (!_isSeeded) {
+            seed(owns);
+        }
+
+        final Set<String> seen = Sets.newHashSetWithExpectedSize(_known.size());
+        final List<Host> batch = new ArrayList<>(_batchSize);
+        final Result result = new Result();
+        try (Stream<Host> hosts = source.read()) {
+            final Iterator<Host> iterator = hosts.iterator();
+            while (iterator.hasNext()) {
+                final Host host = iterator.next();
+                seen.add(host.getHostname());
+                if (!owns.test(host.getHostname())) {
+                    _known.remove(host.getHostname());
+                    continue;
+                }
+                final Host previous = _known.get(host.getHostname());
+                if (previous == null) {
+                    ++result._added;
+                } else if (!previous.equals(host)) {
+                    ++result._updated;
+                } else {
+                    ++result._unchanged;
+                    continue;
+                }
+                batch.add(host);
+                if (batch.size() >= _batchSize) {
+                    flush(batch);
+                }
+            }
+        }
+        flush(batch);
+
+        final Iterator<String> known = _known.keySet().iterator();
+        while (known.hasNext()) {
+            final String hostname = known.next();
+            if (!seen.contains(hostname)) {
+                LOGGER.debug()
+                        .setMessage("Found host to delete")
+                        .addData("hostname", hostname)
+                        .log();
+                _hostRepository.deleteHost(hostname);
+                known.remove();
+                ++result._removed;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forget the remembered hosts. The next sweep seeds them again from the
+     * repository; for example, after the ownership of hosts changed.
+     */
+    public void invalidate() {
+        _known.clear();
+        _isSeeded = false;
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("hostRepository", _hostRepository)
+                .put("batchSize", _batchSize)
+                .put("knownHosts", _known.size())
+                .put("isSeeded", _isSeeded)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private void seed(final Predicate<String> owns) {
+        // Page through the repository in host name order resuming each page from the previous one's cursor
+        _known.clear();
+        final HostQuery query = _hostRepository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .count(CountMode.NONE)
+                .limit(_batchSize);
+        QueryResult<Host> page;
+        do {
+            page = query.execute();
+            for (final Host host : page.values()) {
+                if (owns.test(host.getHostname())) {
+                    _known.put(host.getHostname(), host);
+                }
+            }
+            query.after(page.cursor());
+        } while (page.cursor().isPresent());
+        _isSeeded = true;
+
+        LOGGER.debug()
+                .setMessage("Seeded known hosts from repository")
+                .addData("knownHosts", _known.size())
+                .log();
+    }
+
+    private void flush(final List<Host> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        _hostRepository.addOrUpdateHosts(batch);
+        for (final Host host : batch) {
+            _known.put(host.getHostname(), host);
+        }
+        batch.clear();
+    }
+
+    private final HostRepository _hostRepository;
+    private final int _batchSize;
+    private final Map<String, Host> _known = Maps.newHashMap();
+    private boolean _isSeeded = false;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostSweeper.class);
+
+    /**
+     * Counts of the changes applied by a sweep.
+     */
+    public static final class Result {
+
+        public long getAdded() {
+            return _added;
+        }
+
+        public long getUpdated() {
+            return _updated;
+        }
+
+        public long getRemoved() {
+            return _removed;
+        }
+
+        public long getUnchanged() {
+            return _unchanged;
+        }
+
+        /**
+         * Generate a Steno log compatible representation.
+         *
+         * @return Steno log compatible representation.
+         */
+        @LogValue
+        public Object toLogValue() {
+            return LogValueMapFactory.builder(this)
+                    .put("added", _added)
+                    .put("updated", _updated)
+                    .put("removed", _removed)
+                    .put("unchanged", _unchanged)
+                    .build();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return toLogValue().toString();
+        }
+
+        private Result() {}
+
+        private long _added;
+        private long _updated;
+        private long _removed;
+        private long _unchanged;
+    }
+}
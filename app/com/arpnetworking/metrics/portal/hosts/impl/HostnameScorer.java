@@ -0,0 +1,88 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import java.util.Locale;
+
+/**
+ * Scores the relevance of a hostname to a partial hostname. An exact match
+ * scores highest, followed by a prefix match and then an infix match; any
+ * other hostname scores zero. Hostnames must be normalized with
+ * <code>normalize</code> before scoring so that the scorer does not allocate.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+/* package private */ final class HostnameScorer {
+
+    /**
+     * Normalize a hostname or partial hostname for matching and scoring.
+     *
+     * @param hostname The hostname to normalize.
+     * @return The normalized hostname.
+     */
+    public static String normalize(final String hostname) {
+        return hostname.toLowerCase(Locale.getDefault());
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param partialHostname The partial hostname to score against; need not be normalized.
+     */
+    /* package private */ HostnameScorer(final String partialHostname) {
+        _partialHostname = normalize(partialHostname);
+        _prefixScore = (PREFIX_SCALE - _partialHostname.length()) / SCALE;
+        _infixScore = (INFIX_SCALE - _partialHostname.length()) / SCALE;
+    }
+
+    /**
+     * Score a normalized hostname.
+     *
+     * @param normalizedHostname The normalized hostname.
+     * @return The score; zero if the hostname does not contain the partial hostname.
+     */
+    public double score(final String normalizedHostname) {
+        if (normalizedHostname.startsWith(_partialHostname)) {
+            return normalizedHostname.length() == _partialHostname.length() ? EXACT_SCORE : _prefixScore;
+        } else if (normalizedHostname.contains(_partialHostname)) {
+            return _infixScore;
+        }
+        return 0.0;
+    }
+
+    /**
+     * Determine whether a normalized hostname matches.
+     *
+     * @param normalizedHostname The normalized hostname.
+     * @return True if and only if the hostname contains the partial hostname.
+     */
+    public boolean matches(final String normalizedHostname) {
+        return normalizedHostname.contains(_partialHostname);
+    }
+
+    public String getPartialHostname() {
+        return _partialHostname;
+    }
+
+    private final String _partialHostname;
+    private final double _prefixScore;
+    private final double _infixScore;
+
+    private static final double EXACT_SCORE = 1.0;
+    private static final double SCALE = 1000000.0;
+    private static final int PREFIX_SCALE = 1000000;
+    private static final int INFIX_SCALE = 1000;
+}
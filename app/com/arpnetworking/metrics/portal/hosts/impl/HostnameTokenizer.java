@@ -0,0 +1,145 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits hostnames into lowercase tokens for full text matching. Tokens are
+ * separated by any non-alphanumeric character and by any transition between
+ * letters and digits; for example, <code>test-app1.snc1</code> becomes
+ * <code>test</code>, <code>app</code>, <code>1</code>, <code>snc</code> and
+ * <code>1</code>. Only ASCII letters and digits form tokens. Every database
+ * query generator must apply the same rules to the hostnames it indexes and
+ * to the partial hostnames it queries.
+ *
+ * The hostname is scanned once without regular expressions and only tokens
+ * containing uppercase letters are lowercased.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class HostnameTokenizer {
+
+    /**
+     * Tokenize a hostname or partial hostname.
+     *
+     * @param hostname The hostname to tokenize.
+     * @return The <code>List</code> of tokens in order of appearance.
+     */
+    public static List<String> tokenize(final String hostname) {
+        final List<String> tokens = new ArrayList<>();
+        forEachToken(hostname, tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Tokenize a hostname or partial hostname passing each token to the
+     * consumer as it is found instead of collecting them.
+     *
+     * @param hostname The hostname to tokenize.
+     * @param consumer The <code>Consumer</code> of tokens in order of appearance.
+     */
+    public static void forEachToken(final String hostname, final Consumer<String> consumer) {
+        final int length = hostname.length();
+        int start = 0;
+        int startClass = SEPARATOR;
+        boolean hasUpperCase = false;
+        for (int i = 0; i < length; ++i) {
+            final char c = hostname.charAt(i);
+            final int charClass = classify(c);
+            if (charClass != startClass) {
+                if (startClass != SEPARATOR) {
+                    consumer.accept(createToken(hostname, start, i, hasUpperCase));
+                }
+                start = i;
+                startClass = charClass;
+                hasUpperCase = false;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                hasUpperCase = true;
+            }
+        }
+        if (startClass != SEPARATOR) {
+            consumer.accept(createToken(hostname, start, length, hasUpperCase));
+        }
+    }
+
+    /**
+     * Tokenize a hostname or partial hostname appending the tokens to a
+     * builder separated by a single space. This is the document form of the
+     * hostname for the full text index.
+     *
+     * @param hostname The hostname to tokenize.
+     * @param builder The <code>StringBuilder</code> to append to.
+     * @return True if and only if at least one token was appended.
+     */
+    public static boolean appendTokens(final String hostname, final StringBuilder builder) {
+        final int initialLength = builder.length();
+        forEachToken(hostname, token -> {
+            if (builder.length() > initialLength) {
+                builder.append(' ');
+            }
+            builder.append(token);
+        });
+        return builder.length() > initialLength;
+    }
+
+    /**
+     * Determine whether a hostname or partial hostname produces at least one
+     * token without tokenizing it.
+     *
+     * @param hostname The hostname to inspect.
+     * @return True if and only if <code>tokenize</code> returns a non-empty list.
+     */
+    public static boolean hasTokens(final String hostname) {
+        for (int i = 0; i < hostname.length(); ++i) {
+            if (classify(hostname.charAt(i)) != SEPARATOR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int classify(final char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return LETTER;
+        }
+        if (c >= '0' && c <= '9') {
+            return DIGIT;
+        }
+        return SEPARATOR;
+    }
+
+    private static String createToken(final String hostname, final int start, final int end, final boolean hasUpperCase) {
+        if (!hasUpperCase) {
+            return hostname.substring(start, end);
+        }
+        final char[] token = new char[end - start];
+        for (int i = start; i < end; ++i) {
+            final char c = hostname.charAt(i);
+            token[i - start] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return new String(token);
+    }
+
+    private HostnameTokenizer() {}
+
+    private static final int SEPARATOR = 0;
+    private static final int LETTER = 1;
+    private static final int DIGIT = 2;
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.arpnetworking.jackson.BuilderDeserializer;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.portal.hosts.HostSource;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.inject.Inject;
+import models.internal.Host;
+import models.internal.impl.DefaultHost;
+import play.Application;
+import play.Configuration;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of <code>HostSource</code> which reads hosts from a file
+ * containing one JSON object per line. For example:
+ *
+ * {"hostname":"app1.example.com","metricsSoftwareState":"NOT_INSTALLED","cluster":"app"}
+ *
+ * Blank lines are ignored and malformed lines are logged and skipped so that
+ * a single bad entry does not cause every other host to be reported as removed.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class JsonLinesHostSource implements HostSource {
+
+    /**
+     * Public constructor.
+     *
+     * @param configuration Play configuration.
+     * @param application Play application.
+     */
+    @Inject
+    public JsonLinesHostSource(final Configuration configuration, final Application application) {
+        this(ConfigurationHelper.getFile(configuration, "hostProvider.source.file", application));
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param file The <code>File</code> to read hosts from.
+     */
+    public JsonLinesHostSource(final File file) {
+        _file = file;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<Host> read() throws IOException {
+        final BufferedReader reader = Files.newBufferedReader(_file.toPath(), StandardCharsets.UTF_8);
+        return reader.lines()
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (final IOException e) {
+                        LOGGER.warn()
+                                .setMessage("Failed to close host source")
+                                .addData("file", _file)
+                                .setThrowable(e)
+                                .log();
+                    }
+                })
+                .map(this::parse)
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("file", _file)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private Optional<Host> parse(final String line) {
+        if (line.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Objects.requireNonNull(OBJECT_MAPPER.readValue(line, Host.class)));
+            // CHECKSTYLE.OFF: IllegalCatch - The builder throws unchecked exceptions on invalid hosts
+        } catch (final IOException | RuntimeException e) {
+            // CHECKSTYLE.ON: IllegalCatch
+            LOGGER.warn()
+                    .setMessage("Skipping malformed host entry")
+                    .addData("file", _file)
+                    .addData("line", line)
+                    .setThrowable(e)
+                    .log();
+            return Optional.empty();
+        }
+    }
+
+    private final File _file;
+
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.createInstance();
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonLinesHostSource.class);
+
+    static {
+        final SimpleModule module = new SimpleModule("JsonLinesHostSource");
+        module.addDeserializer(
+                Host.class,
+                BuilderDeserializer.of(DefaultHost.Builder.class));
+        OBJECT_MAPPER.registerModule(module);
+    }
+}
@@ -17,32 +17,49 @@ package com.arpnetworking.metrics.portal.hosts.impl;
 
 import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
 import com.arpnetworking.steno.LogValueMapFactory;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import models.internal.Host;
 import models.internal.HostQuery;
 import models.internal.MetricsSoftwareState;
 import models.internal.QueryResult;
+import models.internal.impl.DefaultHost;
 import models.internal.impl.DefaultHostQuery;
 import models.internal.impl.DefaultQueryResult;
 
-
-import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Implementation of <code>HostRepository</code> using a <code>Map</code>. This
- * is <b>not</b> intended for production usage.
+ * Implementation of <code>HostRepository</code> held in memory. Hostnames are
+ * normalized once on write and indexed by their unigrams, bigrams and
+ * trigrams, by cluster and by metrics software state. A query scans only the
+ * smallest applicable posting list. Since a prefix is also a substring the
+ * n-gram index serves prefix (typeahead) matches as well as infix matches;
+ * partial hostnames of one or two characters look up their own posting list
+ * and longer ones the shortest posting list of their trigrams. Each match
+ * is scored once by a <code>HostnameScorer</code> and ranked by a
+ * <code>RankedSelection</code>; so the memory used by a query is
+ * proportional to the requested page and not to the number of matches.
+ *
+ * Writes are serialized while reads are lock free. The indexes are updated
+ * before the host is replaced and pruned afterwards; so a posting list may
+ * briefly reference a host that no longer matches, but never misses one that
+ * does. Each candidate is therefore verified against the current host.
  *
  * @author Ville Koskela (vkoskela at groupon dot com)
  */
@@ -52,7 +69,11 @@ public final class LocalHostRepository implements HostRepository {
      * Public constructor.
      */
     @Inject
-    public LocalHostRepository() {}
+    public LocalHostRepository() {
+        for (final MetricsSoftwareState state : MetricsSoftwareState.values()) {
+            _hostnamesByState.put(state, Sets.newConcurrentHashSet());
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -84,7 +105,22 @@ public final class LocalHostRepository implements HostRepository {
                 .setMessage("Adding or updating host")
                 .addData("host", host)
                 .log();
-        _temporaryStorage.put(host.getHostname(), host);
+        put(host);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOrUpdateHosts(final Collection<Host> hosts) {
+        assertIsOpen();
+        LOGGER.debug()
+                .setMessage("Adding or updating hosts")
+                .addData("count", hosts.size())
+                .log();
+        for (final Host host : hosts) {
+            put(host);
+        }
     }
 
     /**
@@ -97,7 +133,12 @@ public final class LocalHostRepository implements HostRepository {
                 .setMessage("Deleting host")
                 .addData("hostname", hostname)
                 .log();
-        _temporaryStorage.remove(hostname);
+        synchronized (_writeLock) {
+            final IndexedHost previous = _hosts.remove(hostname);
+            if (previous != null) {
+                unindex(previous, Optional.empty());
+            }
+        }
     }
 
     /**
@@ -121,49 +162,64 @@ public final class LocalHostRepository implements HostRepository {
                 .addData("query", query)
                 .log();
 
-        // Find all matching hosts
-        final List<Host> hosts = Lists.newLinkedList();
-        for (final Map.Entry<String, Host> entry : _temporaryStorage.entrySet()) {
-            boolean matches = true;
-            if (query.getPartialHostname().isPresent()) {
-                final String queryName = query.getPartialHostname().get().toLowerCase();
-                final String hostName = entry.getKey().toLowerCase();
-                if (!hostName.equals(queryName) && !hostName.startsWith(queryName) && !hostName.contains(queryName)) {
-                    matches = false;
-                }
-            }
-            if (query.getMetricsSoftwareState().isPresent()) {
-                final MetricsSoftwareState metricsSoftwareState = entry.getValue().getMetricsSoftwareState();
-                if (!query.getMetricsSoftwareState().get().equals(metricsSoftwareState)) {
-                    matches = false;
-                }
-            }
-            if (query.getCluster().isPresent() && entry.getValue().getCluster().isPresent()) {
-                final String cluster = entry.getValue().getCluster().get();
-                if (!query.getCluster().get().equals(cluster)) {
-                    matches = false;
-                }
-            }
-            if (matches) {
-                hosts.add(entry.getValue());
-            }
+        // Resolve the position to resume from
+        final Optional<HostCursor> cursor = HostCursor.decode(query);
+        if (cursor.isPresent() && !query.getSortBy().isPresent()) {
+            throw new InvalidCursorException("Cursor is not supported for relevance ordered queries");
         }
+        final Optional<HostnameScorer> scorer = query.getPartialHostname().map(HostnameScorer::new);
+        final Comparator<IndexedHost> comparator = createComparator(query);
+        final Optional<IndexedHost> after = cursor.map(c -> new IndexedHost(new DefaultHost.Builder()
+                .setHostname(c.getHostname())
+                .setMetricsSoftwareState(
+                        HostQuery.Field.METRICS_SOFTWARE_STATE.equals(query.getSortBy().get())
+                                ? MetricsSoftwareState.valueOf(c.getSortKey())
+                                : MetricsSoftwareState.UNKNOWN)
+                .build()));
+        final int offset = cursor.isPresent() ? 0 : query.getOffset().orElse(0);
+        final int capacity = (int) Math.min(Integer.MAX_VALUE, (long) offset + query.getLimit());
 
-        // Apply sorting
-        Collections.sort(hosts, new HostComparator(query));
-
-        // Apply pagination
-        final long total = hosts.size();
-        if (query.getOffset().isPresent()) {
-            for (long i = 0; i < query.getOffset().get() && !hosts.isEmpty(); ++i) {
-                hosts.remove(0);
+        // Score each match once and retain only the best offset + limit matches
+        final RankedSelection<IndexedHost> selection = new RankedSelection<>(capacity, comparator);
+        long total = 0;
+        for (final String hostname : selectCandidates(query, scorer)) {
+            final IndexedHost indexedHost = _hosts.get(hostname);
+            if (indexedHost == null || !matches(query, scorer, indexedHost)) {
+                continue;
+            }
+            ++total;
+            // NOTE: Cursors are only supported for field ordered queries where every score is zero
+            final double score = scorer.isPresent() && !query.getSortBy().isPresent()
+                    ? scorer.get().score(indexedHost.getNormalizedHostname())
+                    : 0.0;
+            if (after.isPresent() && !selection.isAhead(0.0, after.get(), score, indexedHost)) {
+                continue;
             }
+            selection.offer(score, indexedHost);
         }
-        while (hosts.size() > query.getLimit() && !hosts.isEmpty()) {
-            hosts.remove(hosts.size() - 1);
+
+        // Drop the offset
+        final List<IndexedHost> ranked = selection.drain();
+        final List<Host> page = Lists.newArrayListWithCapacity(Math.max(0, ranked.size() - offset));
+        for (int i = offset; i < ranked.size(); ++i) {
+            page.add(ranked.get(i).getHost());
         }
 
-        return new DefaultQueryResult<>(hosts, total);
+        return new DefaultQueryResult<>(
+                page,
+                total,
+                Optional.empty(),
+                query.getSortBy().isPresent() ? HostCursor.next(query, page) : Optional.empty());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        // NOTE: Query results do not carry an etag
+        return Optional.empty();
     }
 
     /**
@@ -173,7 +229,7 @@ public final class LocalHostRepository implements HostRepository {
     public long getHostCount() {
         assertIsOpen();
         LOGGER.debug().setMessage("Getting host count").log();
-        return _temporaryStorage.size();
+        return _hosts.size();
     }
 
     /**
@@ -186,13 +242,7 @@ public final class LocalHostRepository implements HostRepository {
                 .setMessage("Getting host count in state")
                 .addData("state", metricsSoftwareState)
                 .log();
-        long count = 0;
-        for (final Host host : _temporaryStorage.values()) {
-            if (!metricsSoftwareState.equals(host.getMetricsSoftwareState())) {
-                ++count;
-            }
-        }
-        return count;
+        return _hostnamesByState.get(metricsSoftwareState).size();
     }
 
     /**
@@ -204,7 +254,9 @@ public final class LocalHostRepository implements HostRepository {
     public Object toLogValue() {
         return LogValueMapFactory.builder(this)
                 .put("isOpen", _isOpen)
-                .put("temporaryStorage", _temporaryStorage)
+                .put("hostCount", _hosts.size())
+                .put("gramCount", _hostnamesByGram.size())
+                .put("clusterCount", _hostnamesByCluster.size())
                 .build();
     }
 
@@ -216,6 +268,87 @@ public final class LocalHostRepository implements HostRepository {
         return toLogValue().toString();
     }
 
+    private void put(final Host host) {
+        final IndexedHost indexedHost = new IndexedHost(host);
+        synchronized (_writeLock) {
+            // Index before publishing and prune after so that readers never miss a matching host
+            index(indexedHost);
+            final IndexedHost previous = _hosts.put(host.getHostname(), indexedHost);
+            if (previous != null) {
+                unindex(previous, Optional.of(indexedHost));
+            }
+        }
+    }
+
+    private void index(final IndexedHost indexedHost) {
+        final String hostname = indexedHost.getHost().getHostname();
+        for (final String gram : grams(indexedHost.getNormalizedHostname())) {
+            _hostnamesByGram.computeIfAbsent(gram, k -> Sets.newConcurrentHashSet()).add(hostname);
+        }
+        if (indexedHost.getHost().getCluster().isPresent()) {
+            _hostnamesByCluster.computeIfAbsent(indexedHost.getHost().getCluster().get(), k -> Sets.newConcurrentHashSet())
+                    .add(hostname);
+        }
+        _hostnamesByState.get(indexedHost.getHost().getMetricsSoftwareState()).add(hostname);
+    }
+
+    private void unindex(final IndexedHost indexedHost, final Optional<IndexedHost> replacement) {
+        final String hostname = indexedHost.getHost().getHostname();
+        final Set<String> retainedGrams = replacement.isPresent()
+                ? grams(replacement.get().getNormalizedHostname())
+                : Collections.emptySet();
+        for (final String gram : grams(indexedHost.getNormalizedHostname())) {
+            if (!retainedGrams.contains(gram)) {
+                removePosting(_hostnamesByGram, gram, hostname);
+            }
+        }
+        final Host host = indexedHost.getHost();
+        if (host.getCluster().isPresent()
+                && !(replacement.isPresent() && host.getCluster().equals(replacement.get().getHost().getCluster()))) {
+            removePosting(_hostnamesByCluster, host.getCluster().get(), hostname);
+        }
+        final MetricsSoftwareState state = host.getMetricsSoftwareState();
+        if (!(replacement.isPresent() && state.equals(replacement.get().getHost().getMetricsSoftwareState()))) {
+            _hostnamesByState.get(state).remove(hostname);
+        }
+    }
+
+    private Collection<String> selectCandidates(final HostQuery query, final Optional<HostnameScorer> scorer) {
+        // Scan the smallest posting list which every match must appear in
+        Collection<String> candidates = _hosts.keySet();
+        if (scorer.isPresent() && !scorer.get().getPartialHostname().isEmpty()) {
+            final String partialHostname = scorer.get().getPartialHostname();
+            final Collection<String> grams = partialHostname.length() < MAX_GRAM_LENGTH
+                    ? Collections.singleton(partialHostname)
+                    : trigrams(partialHostname);
+            for (final String gram : grams) {
+                final Set<String> posting = _hostnamesByGram.get(gram);
+                if (posting == null) {
+                    return Collections.emptySet();
+                }
+                if (posting.size() < candidates.size()) {
+                    candidates = posting;
+                }
+            }
+        }
+        if (query.getCluster().isPresent()) {
+            final Set<String> posting = _hostnamesByCluster.get(query.getCluster().get());
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            if (posting.size() < candidates.size()) {
+                candidates = posting;
+            }
+        }
+        if (query.getMetricsSoftwareState().isPresent()) {
+            final Set<String> posting = _hostnamesByState.get(query.getMetricsSoftwareState().get());
+            if (posting.size() < candidates.size()) {
+                candidates = posting;
+            }
+        }
+        return candidates;
+    }
+
     private void assertIsOpen() {
         assertIsOpen(true);
     }
@@ -226,64 +359,104 @@ public final class LocalHostRepository implements HostRepository {
         }
     }
 
+    private static boolean matches(
+            final HostQuery query,
+            final Optional<HostnameScorer> scorer,
+            final IndexedHost indexedHost) {
+        final Host host = indexedHost.getHost();
+        if (scorer.isPresent() && !scorer.get().matches(indexedHost.getNormalizedHostname())) {
+            return false;
+        }
+        if (query.getMetricsSoftwareState().isPresent()
+                && !query.getMetricsSoftwareState().get().equals(host.getMetricsSoftwareState())) {
+            return false;
+        }
+        if (query.getCluster().isPresent()
+                && !(host.getCluster().isPresent() && query.getCluster().get().equals(host.getCluster().get()))) {
+            return false;
+        }
+        return true;
+    }
+
+    private static Comparator<IndexedHost> createComparator(final HostQuery query) {
+        // The host name is unique and breaks any ties making the order deterministic
+        final Comparator<IndexedHost> byHostname = Comparator
+                .comparing(IndexedHost::getNormalizedHostname)
+                .thenComparing(h -> h.getHost().getHostname());
+        if (query.getSortBy().isPresent()) {
+            if (HostQuery.Field.METRICS_SOFTWARE_STATE.equals(query.getSortBy().get())) {
+                return Comparator
+                        .comparing((IndexedHost h) -> h.getHost().getMetricsSoftwareState())
+                        .thenComparing(byHostname);
+            } else if (!HostQuery.Field.HOSTNAME.equals(query.getSortBy().get())) {
+                LOGGER.warn()
+                        .setMessage("Unsupported sort by field")
+                        .addData("field", query.getSortBy().get())
+                        .log();
+            }
+        }
+        // Relevance ordered queries rank by score first
+        return byHostname;
+    }
+
+    private static Set<String> grams(final String normalizedHostname) {
+        final Set<String> grams = Sets.newHashSet();
+        for (int length = 1; length <= MAX_GRAM_LENGTH; ++length) {
+            for (int i = 0; i + length <= normalizedHostname.length(); ++i) {
+                grams.add(normalizedHostname.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> trigrams(final String normalizedHostname) {
+        final Set<String> trigrams = Sets.newHashSet();
+        for (int i = 0; i + MAX_GRAM_LENGTH <= normalizedHostname.length(); ++i) {
+            trigrams.add(normalizedHostname.substring(i, i + MAX_GRAM_LENGTH));
+        }
+        return trigrams;
+    }
+
+    private static void removePosting(
+            final ConcurrentMap<String, Set<String>> index,
+            final String key,
+            final String hostname) {
+        final Set<String> posting = index.get(key);
+        if (posting != null) {
+            posting.remove(hostname);
+            // NOTE: Writers are serialized so the posting cannot be repopulated concurrently
+            if (posting.isEmpty()) {
+                index.remove(key, posting);
+            }
+        }
+    }
+
     private final AtomicBoolean _isOpen = new AtomicBoolean(false);
-    private final Map<String, Host> _temporaryStorage = Maps.newConcurrentMap();
+    private final Object _writeLock = new Object();
+    private final ConcurrentMap<String, IndexedHost> _hosts = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Set<String>> _hostnamesByGram = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Set<String>> _hostnamesByCluster = Maps.newConcurrentMap();
+    private final Map<MetricsSoftwareState, Set<String>> _hostnamesByState = new EnumMap<>(MetricsSoftwareState.class);
 
+    private static final int MAX_GRAM_LENGTH = 3;
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalHostRepository.class);
 
-    @SuppressFBWarnings("SE_BAD_FIELD")
-    private static class HostComparator implements Comparator<Host>, Serializable {
+    private static final class IndexedHost {
 
-        public HostComparator(final HostQuery query) {
-            _query = query;
+        IndexedHost(final Host host) {
+            _host = host;
+            _normalizedHostname = HostnameScorer.normalize(host.getHostname());
         }
 
-        @Override
-        public int compare(final Host h1, final Host h2) {
-            if (_query.getSortBy().isPresent()) {
-                if (HostQuery.Field.HOSTNAME.equals(_query.getSortBy().get())) {
-                    return String.CASE_INSENSITIVE_ORDER.compare(h1.getHostname(), h2.getHostname());
-                } else if (HostQuery.Field.METRICS_SOFTWARE_STATE.equals(_query.getSortBy().get())) {
-                    return h1.getMetricsSoftwareState().compareTo(h2.getMetricsSoftwareState());
-                } else {
-                    LOGGER.warn()
-                            .setMessage("Unsupported sort by field")
-                            .addData("field", _query.getSortBy().get())
-                            .log();
-                }
-            } else {
-                double s1 = 0.0;
-                double s2 = 0.0;
-                if (_query.getPartialHostname().isPresent()) {
-                    // All comparisons are case-insentive
-                    final String q = _query.getPartialHostname().get().toLowerCase(Locale.getDefault());
-                    final String n1 = h1.getHostname().toLowerCase(Locale.getDefault());
-                    final String n2 = h2.getHostname().toLowerCase(Locale.getDefault());
-
-                    // Compute score
-                    if (n1.equals(q)) {
-                        s1 = 1.0;
-                    } else if (n1.startsWith(q)) {
-                        s1 = (1000000 - _query.getPartialHostname().get().length()) / 1000000.0;
-                    } else if (n1.contains(q)) {
-                        s1 = (1000 - _query.getPartialHostname().get().length()) / 1000000.0;
-                    }
-                    if (n2.equals(q)) {
-                        s2 = 1.0;
-                    } else if (n2.startsWith(q)) {
-                        s2 = (1000000 - _query.getPartialHostname().get().length()) / 1000000.0;
-                    } else if (n2.contains(q)) {
-                        s2 = (1000 - _query.getPartialHostname().get().length()) / 1000000.0;
-                    }
-                }
-
-                return Double.compare(s1, s2);
-            }
-            return 0;
+        public Host getHost() {
+            return _host;
         }
 
-        private final HostQuery _query;
+        public String getNormalizedHostname() {
+            return _normalizedHostname;
+        }
 
-        private static final long serialVersionUID = 1L;
+        private final Host _host;
+        private final String _normalizedHostname;
     }
 }
@@ -28,7 +28,9 @@ import models.internal.QueryResult;
 import models.internal.impl.DefaultHostQuery;
 import models.internal.impl.DefaultQueryResult;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -78,6 +80,18 @@ public final class NoHostRepository implements HostRepository {
                 .log();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOrUpdateHosts(final Collection<Host> hosts) {
+        assertIsOpen();
+        LOGGER.debug()
+                .setMessage("Adding or updating hosts")
+                .addData("count", hosts.size())
+                .log();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -114,6 +128,15 @@ public final class NoHostRepository implements HostRepository {
         return new DefaultQueryResult<>(Collections.<Host>emptyList(), 0);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getEtag() {
+        assertIsOpen();
+        return Optional.empty();
+    }
+
     /**
      * {@inheritDoc}
      */
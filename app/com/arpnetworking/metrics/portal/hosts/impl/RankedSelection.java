@@ -0,0 +1,185 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selects the best values offered to it by score and then by a tie breaking
+ * <code>Comparator</code>. Higher scores rank first and ties rank in
+ * ascending comparator order. Only the best <code>capacity</code> values are
+ * retained in a binary heap, whose root is the worst retained value, backed
+ * by a primitive score array and a parallel value array. Offering a value
+ * does not allocate; so the memory used by a selection is proportional to
+ * the capacity and not to the number of values offered.
+ *
+ * This class is not thread safe.
+ *
+ * @param <T> The type of value selected.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+/* package private */ final class RankedSelection<T> {
+
+    /**
+     * Public constructor.
+     *
+     * @param capacity The maximum number of values to retain.
+     * @param tieBreaker The <code>Comparator</code> ordering values with equal scores.
+     */
+    /* package private */ RankedSelection(final int capacity, final Comparator<? super T> tieBreaker) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(String.format("Capacity must be non-negative; capacity=%d", capacity));
+        }
+        _capacity = capacity;
+        _tieBreaker = tieBreaker;
+        final int initialSize = Math.min(capacity, INITIAL_SIZE);
+        _scores = new double[initialSize];
+        _values = new Object[initialSize];
+    }
+
+    /**
+     * Offer a value for selection.
+     *
+     * @param score The score of the value.
+     * @param value The value.
+     * @return True if and only if the value is currently retained.
+     */
+    public boolean offer(final double score, final T value) {
+        if (_size < _capacity) {
+            if (_size == _scores.length) {
+                final int newSize = (int) Math.min(_capacity, Math.max(1L, 2L * _scores.length));
+                _scores = Arrays.copyOf(_scores, newSize);
+                _values = Arrays.copyOf(_values, newSize);
+            }
+            _scores[_size] = score;
+            _values[_size] = value;
+            siftUp(_size++);
+            return true;
+        }
+        if (_size == 0 || compare(score, value, _scores[0], valueAt(0)) <= 0) {
+            return false;
+        }
+        _scores[0] = score;
+        _values[0] = value;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * Determine whether a value would rank ahead of the specified position.
+     *
+     * @param score The score of the value.
+     * @param value The value.
+     * @param afterScore The score at the position.
+     * @param afterValue The value at the position.
+     * @return True if and only if the value ranks strictly ahead of the position.
+     */
+    public boolean isAhead(final double score, final T value, final double afterScore, final T afterValue) {
+        return compare(score, value, afterScore, afterValue) > 0;
+    }
+
+    /**
+     * Remove the retained values from the selection in rank order, best first.
+     * The selection is empty afterwards.
+     *
+     * @return The <code>List</code> of values.
+     */
+    public List<T> drain() {
+        if (_size == 0) {
+            return Collections.emptyList();
+        }
+        final Object[] ranked = new Object[_size];
+        while (_size > 0) {
+            ranked[_size - 1] = _values[0];
+            --_size;
+            _scores[0] = _scores[_size];
+            _values[0] = _values[_size];
+            _values[_size] = null;
+            siftDown(0);
+        }
+        @SuppressWarnings("unchecked")
+        final List<T> values = (List<T>) Arrays.asList(ranked);
+        return values;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    private void siftUp(final int index) {
+        int child = index;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (compare(_scores[child], valueAt(child), _scores[parent], valueAt(parent)) >= 0) {
+                break;
+            }
+            swap(child, parent);
+            child = parent;
+        }
+    }
+
+    private void siftDown(final int index) {
+        int parent = index;
+        while (true) {
+            final int left = 2 * parent + 1;
+            final int right = left + 1;
+            int worst = parent;
+            if (left < _size && compare(_scores[left], valueAt(left), _scores[worst], valueAt(worst)) < 0) {
+                worst = left;
+            }
+            if (right < _size && compare(_scores[right], valueAt(right), _scores[worst], valueAt(worst)) < 0) {
+                worst = right;
+            }
+            if (worst == parent) {
+                return;
+            }
+            swap(parent, worst);
+            parent = worst;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final double score = _scores[i];
+        _scores[i] = _scores[j];
+        _scores[j] = score;
+        final Object value = _values[i];
+        _values[i] = _values[j];
+        _values[j] = value;
+    }
+
+    // Positive if the first value ranks ahead of the second
+    private int compare(final double score1, final T value1, final double score2, final T value2) {
+        final int result = Double.compare(score1, score2);
+        return result != 0 ? result : _tieBreaker.compare(value2, value1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T valueAt(final int index) {
+        return (T) _values[index];
+    }
+
+    private final int _capacity;
+    private final Comparator<? super T> _tieBreaker;
+    private double[] _scores;
+    private Object[] _values;
+    private int _size = 0;
+
+    private static final int INITIAL_SIZE = 64;
+}
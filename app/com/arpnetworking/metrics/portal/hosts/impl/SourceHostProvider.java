@@ -0,0 +1,219 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import akka.actor.UntypedActor;
+import akka.cluster.Cluster;
+import akka.cluster.ClusterEvent;
+import akka.cluster.Member;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.HostSource;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.inject.Inject;
+import play.Configuration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * This is an actor that discovers hosts from a pluggable <code>HostSource</code>.
+ * Each sweep only writes the hosts that were added or changed since the
+ * previous sweep and deletes the hosts that disappeared from the source. The
+ * next sweep is scheduled once the current one completes so that sweeps never
+ * overlap or queue up behind a slow repository.
+ *
+ * If <code>hostProvider.partitioned</code> is set an instance runs on every
+ * member with the indexer role instead of as a cluster singleton. Each
+ * instance tracks the indexer members of the cluster and only applies the
+ * hosts assigned to its member by a <code>HostPartitioner</code>; as members
+ * join or leave the assignment is recomputed and the hosts rebalance.
+ *
+ * A sweep blocks on the source and the repository for its duration; the
+ * actor is created on the dedicated <code>akka.actor.host-provider-dispatcher</code>
+ * so that it does not hold a thread of the default dispatcher.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class SourceHostProvider extends UntypedActor {
+
+    /**
+     * Public constructor.
+     *
+     * @param hostRepository The <code>HostRepository</code> instance.
+     * @param hostSource The <code>HostSource</code> instance.
+     * @param configuration Play configuration.
+     */
+    @Inject
+    public SourceHostProvider(
+            final HostRepository hostRepository,
+            final HostSource hostSource,
+            final Configuration configuration) {
+        _hostSource = hostSource;
+        _sweeper = new HostSweeper(
+                hostRepository,
+                configuration.getInt("hostProvider.batchSize", DEFAULT_BATCH_SIZE));
+        _interval = ConfigurationHelper.getFiniteDuration(configuration, "hostProvider.interval");
+        if (configuration.getBoolean("hostProvider.partitioned", false)) {
+            _partitioner = Optional.of(new HostPartitioner(
+                    Cluster.get(getContext().system()).selfAddress(),
+                    configuration.getInt("hostProvider.virtualNodesFactor", DEFAULT_VIRTUAL_NODES_FACTOR)));
+        } else {
+            _partitioner = Optional.empty();
+        }
+        scheduleTick(ConfigurationHelper.getFiniteDuration(configuration, "hostProvider.initialDelay"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        if (_partitioner.isPresent()) {
+            Cluster.get(getContext().system()).subscribe(
+                    getSelf(),
+                    ClusterEvent.initialStateAsEvents(),
+                    ClusterEvent.MemberEvent.class);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postStop() throws Exception {
+        if (_partitioner.isPresent()) {
+            Cluster.get(getContext().system()).unsubscribe(getSelf());
+        }
+        super.postStop();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onReceive(final Object message) throws Exception {
+        if (message instanceof ClusterEvent.MemberEvent) {
+            onMemberEvent((ClusterEvent.MemberEvent) message);
+        } else if ("tick".equals(message)) {
+            LOGGER.trace()
+                    .setMessage("Searching for added/updated/deleted hosts")
+                    .addData("actor", self())
+                    .log();
+
+            final long startTime = System.currentTimeMillis();
+            try {
+                final HostSweeper.Result result;
+                if (_partitioner.isPresent()) {
+                    result = _sweeper.sweep(_hostSource, _partitioner.get()::owns);
+                } else {
+                    result = _sweeper.sweep(_hostSource);
+                }
+                LOGGER.debug()
+                        .setMessage("Host sweep complete")
+                        .addData("actor", self())
+                        .addData("result", result)
+                        .addData("elapsedMillis", System.currentTimeMillis() - startTime)
+                        .log();
+                // CHECKSTYLE.OFF: IllegalCatch - A failed sweep is retried by the next one
+            } catch (final IOException | RuntimeException e) {
+                // CHECKSTYLE.ON: IllegalCatch
+                LOGGER.warn()
+                        .setMessage("Host sweep failed")
+                        .addData("actor", self())
+                        .addData("source", _hostSource)
+                        .setThrowable(e)
+                        .log();
+            } finally {
+                scheduleTick(_interval);
+            }
+        } else {
+            unhandled(message);
+        }
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("hostSource", _hostSource)
+                .put("sweeper", _sweeper)
+                .put("interval", _interval)
+                .put("partitioner", _partitioner)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private void onMemberEvent(final ClusterEvent.MemberEvent event) {
+        final Member member = event.member();
+        if (!member.hasRole(INDEXER_ROLE)) {
+            return;
+        }
+        final boolean changed;
+        if (event instanceof ClusterEvent.MemberUp) {
+            changed = _partitioner.get().addMember(member.address());
+        } else if (event instanceof ClusterEvent.MemberExited || event instanceof ClusterEvent.MemberRemoved) {
+            changed = _partitioner.get().removeMember(member.address());
+        } else {
+            changed = false;
+        }
+        if (changed) {
+            // Hosts may have been handed over without being removed from the source
+            _sweeper.invalidate();
+            LOGGER.info()
+                    .setMessage("Host partitioning changed")
+                    .addData("actor", self())
+                    .addData("event", event)
+                    .addData("partitioner", _partitioner.get())
+                    .log();
+        }
+    }
+
+    private void scheduleTick(final FiniteDuration delay) {
+        getContext().system().scheduler().scheduleOnce(
+                delay,
+                getSelf(),
+                "tick",
+                getContext().dispatcher(),
+                getSelf());
+    }
+
+    private final HostSource _hostSource;
+    private final HostSweeper _sweeper;
+    private final FiniteDuration _interval;
+    private final Optional<HostPartitioner> _partitioner;
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_VIRTUAL_NODES_FACTOR = 10;
+    private static final String INDEXER_ROLE = "host_indexer";
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceHostProvider.class);
+}
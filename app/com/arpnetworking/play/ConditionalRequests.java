@@ -0,0 +1,113 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.play;
+
+import com.arpnetworking.play.metrics.MetricsActionWrapper;
+import com.google.common.net.HttpHeaders;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import java.util.Optional;
+
+/**
+ * Support for conditional requests using <code>If-None-Match</code>. The
+ * outcome of each conditional request is recorded as a hit or miss counter
+ * in the request's metrics.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class ConditionalRequests {
+
+    /**
+     * Determine whether the request is conditional.
+     *
+     * @param context Context of the HTTP request/response.
+     * @return True if and only if the request specifies <code>If-None-Match</code>.
+     */
+    public static boolean isConditional(final Http.Context context) {
+        return context.request().getHeader(HttpHeaders.IF_NONE_MATCH) != null;
+    }
+
+    /**
+     * Determine whether the client's representation is current. If it is the
+     * hit is recorded in the request's metrics.
+     *
+     * @param context Context of the HTTP request/response.
+     * @param etag The current etag of the requested resource; if empty the representation is assumed modified.
+     * @param name The name of the resource for metrics.
+     * @return True if and only if the request's <code>If-None-Match</code> matches the etag.
+     */
+    public static boolean isNotModified(final Http.Context context, final Optional<String> etag, final String name) {
+        if (!isConditional(context) || !etag.isPresent()) {
+            return false;
+        }
+        for (final String candidate : context.request().getHeader(HttpHeaders.IF_NONE_MATCH).split(",")) {
+            final String value = stripQuotes(stripWeak(candidate.trim()));
+            if ("*".equals(value) || etag.get().equals(value)) {
+                MetricsActionWrapper.getRequestMetrics(context)
+                        .ifPresent(m -> m.incrementCounter(createCounterName(name, "hit")));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that the client's representation was not current. Nothing is
+     * recorded if the request is not conditional.
+     *
+     * @param context Context of the HTTP request/response.
+     * @param name The name of the resource for metrics.
+     */
+    public static void recordModified(final Http.Context context, final String name) {
+        if (isConditional(context)) {
+            MetricsActionWrapper.getRequestMetrics(context)
+                    .ifPresent(m -> m.incrementCounter(createCounterName(name, "miss")));
+        }
+    }
+
+    /**
+     * Create a <code>304 Not Modified</code> response.
+     *
+     * @param context Context of the HTTP request/response.
+     * @param etag The current etag of the requested resource.
+     * @return The <code>Result</code>.
+     */
+    public static Result notModified(final Http.Context context, final String etag) {
+        context.response().setHeader(HttpHeaders.ETAG, etag);
+        return Results.status(Http.Status.NOT_MODIFIED);
+    }
+
+    private static String stripWeak(final String value) {
+        return value.startsWith(WEAK_PREFIX) ? value.substring(WEAK_PREFIX.length()) : value;
+    }
+
+    private static String stripQuotes(final String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static String createCounterName(final String name, final String outcome) {
+        return "conditional_request/" + name + "/" + outcome;
+    }
+
+    private ConditionalRequests() {}
+
+    private static final String WEAK_PREFIX = "W/";
+}
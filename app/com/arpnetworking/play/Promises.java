@@ -0,0 +1,67 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.play;
+
+import play.libs.F;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Conversions between <code>CompletionStage</code> and Play's
+ * <code>F.Promise</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class Promises {
+
+    /**
+     * Create a <code>F.Promise</code> redeemed by a <code>CompletionStage</code>.
+     * Failures are unwrapped from any <code>CompletionException</code> so that
+     * recovery functions observe the original exception.
+     *
+     * @param stage The <code>CompletionStage</code>.
+     * @param <T> The type of the result.
+     * @return <code>F.Promise</code> redeemed with the stage's result.
+     */
+    public static <T> F.Promise<T> fromCompletionStage(final CompletionStage<T> stage) {
+        final F.RedeemablePromise<T> promise = F.RedeemablePromise.empty();
+        stage.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                promise.failure(unwrap(throwable));
+            } else {
+                promise.success(value);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Remove any <code>CompletionException</code> wrappers from a failure.
+     *
+     * @param throwable The failure.
+     * @return The original failure.
+     */
+    public static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private Promises() {}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.play;
+
+import com.google.common.net.HttpHeaders;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Support for shedding load when a repository's executor is saturated. A
+ * rejected call is answered with <code>503 Service Unavailable</code> and a
+ * <code>Retry-After</code> header instead of waiting for capacity.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class Rejections {
+
+    /**
+     * Determine whether a failure was caused by a saturated executor.
+     *
+     * @param throwable The failure.
+     * @return True if and only if the call was rejected.
+     */
+    public static boolean isRejected(final Throwable throwable) {
+        return Promises.unwrap(throwable) instanceof RejectedExecutionException;
+    }
+
+    /**
+     * Create a <code>503 Service Unavailable</code> response.
+     *
+     * @param context Context of the HTTP request/response.
+     * @param retryAfter How long the client should wait before retrying.
+     * @return The <code>Result</code>.
+     */
+    public static Result serviceUnavailable(final Http.Context context, final FiniteDuration retryAfter) {
+        context.response().setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, retryAfter.toSeconds())));
+        return Results.status(Http.Status.SERVICE_UNAVAILABLE);
+    }
+
+    private Rejections() {}
+}
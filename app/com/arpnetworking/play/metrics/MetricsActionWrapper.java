@@ -26,6 +26,8 @@ import play.mvc.Action;
 import play.mvc.Http;
 import play.mvc.Result;
 
+import java.util.Optional;
+
 /**
  * Simple action wrapper that wraps each call in a metrics timer.
  *
@@ -60,6 +62,17 @@ public final class MetricsActionWrapper extends Action.Simple {
         // TODO(vkoskela): Add success/failure counter by mapping on return code. [MAI-279]
     }
 
+    /**
+     * Retrieve the <code>Metrics</code> instance of the request being
+     * processed. Controllers use this to record request specific metrics.
+     *
+     * @param context Context of the HTTP request/response.
+     * @return The <code>Metrics</code> instance or <code>Optional.empty()</code> if the request is not wrapped.
+     */
+    public static Optional<Metrics> getRequestMetrics(final Http.Context context) {
+        return Optional.ofNullable((Metrics) context.args.get(METRICS_KEY));
+    }
+
     /**
      * Create the name of the timer from a <code>Http.Context</code>.
      *
@@ -0,0 +1,385 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.websocket;
+
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpRequestEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseDecoder;
+import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketVersion;
+import org.jboss.netty.util.CharsetUtil;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Web Socket client which multiplexes every connection it opens over a fixed
+ * number of NIO worker threads; the number of threads does not grow with the
+ * number of connections. Only text frames are delivered to the listener and
+ * only the <code>ws</code> scheme is supported.
+ *
+ * Host names are resolved on a separate thread so that opening a connection
+ * never blocks the caller.
+ *
+ * Listener callbacks are invoked on the worker threads and must not block.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class NioWebSocketClient {
+
+    /**
+     * Public constructor.
+     *
+     * @param workerThreads The number of worker threads.
+     * @param connectTimeoutMillis The connection timeout in milliseconds.
+     */
+    public NioWebSocketClient(final int workerThreads, final int connectTimeoutMillis) {
+        _workerThreads = workerThreads;
+        _connectTimeoutMillis = connectTimeoutMillis;
+        _bossExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("websocket-client-boss-%d")
+                        .setDaemon(true)
+                        .build());
+        _workerExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("websocket-client-worker-%d")
+                        .setDaemon(true)
+                        .build());
+        _resolverExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("websocket-client-resolver-%d")
+                        .setDaemon(true)
+                        .build());
+        _channelFactory = new NioClientSocketChannelFactory(_bossExecutor, _workerExecutor, 1, workerThreads);
+    }
+
+    /**
+     * Open a connection. The listener is notified once the handshake
+     * completes and when the connection closes whether or not it opened.
+     *
+     * @param uri The uri to connect to.
+     * @param listener The <code>Listener</code> for the connection.
+     * @return The <code>Connection</code>.
+     */
+    public Connection connect(final URI uri, final Listener listener) {
+        if (!"ws".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException(String.format("Unsupported scheme; uri=%s", uri));
+        }
+        final WebSocketClientHandshaker handshaker = new WebSocketClientHandshakerFactory().newHandshaker(
+                uri,
+                WebSocketVersion.V13,
+                null,
+                false,
+                Collections.<String, String>emptyMap(),
+                MAX_FRAME_PAYLOAD_LENGTH);
+
+        // The bootstrap is only a configuration holder; all bootstraps share the channel factory
+        final ClientBootstrap bootstrap = new ClientBootstrap(_channelFactory);
+        bootstrap.setOption("connectTimeoutMillis", _connectTimeoutMillis);
+        bootstrap.setOption("tcpNoDelay", true);
+        bootstrap.setPipelineFactory(() -> {
+            final ChannelPipeline pipeline = Channels.pipeline();
+            pipeline.addLast("decoder", new HttpResponseDecoder());
+            pipeline.addLast("encoder", new HttpRequestEncoder());
+            pipeline.addLast("handler", new Handler(uri, handshaker, listener));
+            return pipeline;
+        });
+
+        // Resolving the host may block; the connection is returned immediately
+        // and its channel is attached once the connect is started
+        final Connection connection = new Connection(uri, handshaker);
+        _resolverExecutor.execute(() -> {
+            if (connection.isClosed()) {
+                listener.onClose();
+                return;
+            }
+            final InetSocketAddress address;
+            try {
+                address = new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? DEFAULT_PORT : uri.getPort());
+                if (address.isUnresolved()) {
+                    throw new UnknownHostException(uri.getHost());
+                }
+                // CHECKSTYLE.OFF: IllegalCatch - The listener must be notified of any failure
+            } catch (final Exception e) {
+                // CHECKSTYLE.ON: IllegalCatch
+                LOGGER.debug()
+                        .setMessage("Web socket connection failed")
+                        .addData("uri", uri)
+                        .setThrowable(e)
+                        .log();
+                listener.onError(e);
+                listener.onClose();
+                return;
+            }
+            final ChannelFuture connectFuture = bootstrap.connect(address);
+            connectFuture.addListener(future -> {
+                if (future.isSuccess()) {
+                    handshaker.handshake(future.getChannel());
+                }
+            });
+            connection.setChannel(connectFuture.getChannel());
+        });
+        return connection;
+    }
+
+    /**
+     * Close all connections and release the threads.
+     */
+    public void shutdown() {
+        _resolverExecutor.shutdownNow();
+        _channelFactory.releaseExternalResources();
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("workerThreads", _workerThreads)
+                .put("connectTimeoutMillis", _connectTimeoutMillis)
+                .build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private final int _workerThreads;
+    private final int _connectTimeoutMillis;
+    private final ExecutorService _bossExecutor;
+    private final ExecutorService _workerExecutor;
+    private final ExecutorService _resolverExecutor;
+    private final NioClientSocketChannelFactory _channelFactory;
+
+    private static final int DEFAULT_PORT = 80;
+    private static final long MAX_FRAME_PAYLOAD_LENGTH = 10 * 1024 * 1024;
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioWebSocketClient.class);
+
+    /**
+     * Receives the events of a <code>Connection</code>.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked once the handshake completes.
+         */
+        void onOpen();
+
+        /**
+         * Invoked for each text message received.
+         *
+         * @param message The message.
+         */
+        void onMessage(String message);
+
+        /**
+         * Invoked once when the connection closes for any reason.
+         */
+        void onClose();
+
+        /**
+         * Invoked when the connection fails; the connection is closed.
+         *
+         * @param cause The cause of the failure.
+         */
+        void onError(Throwable cause);
+    }
+
+    /**
+     * A single Web Socket connection. Thread safe.
+     */
+    public static final class Connection {
+
+        /**
+         * Send a text message. Messages sent before the handshake completes
+         * are discarded.
+         *
+         * @param message The message.
+         */
+        public void send(final String message) {
+            final Channel channel = _channel;
+            if (channel != null && _handshaker.isHandshakeComplete()) {
+                channel.write(new TextWebSocketFrame(message));
+            } else {
+                LOGGER.warn()
+                        .setMessage("Discarding message sent before handshake")
+                        .addData("uri", _uri)
+                        .log();
+            }
+        }
+
+        /**
+         * Close the connection.
+         */
+        public void close() {
+            _isClosed = true;
+            final Channel channel = _channel;
+            if (channel == null) {
+                // The channel is closed when it is attached
+                return;
+            }
+            if (_handshaker.isHandshakeComplete() && channel.isConnected()) {
+                channel.write(new CloseWebSocketFrame()).addListener(ChannelFutureListener.CLOSE);
+            } else {
+                channel.close();
+            }
+        }
+
+        public URI getUri() {
+            return _uri;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("Connection{Uri=%s, Channel=%s}", _uri, _channel);
+        }
+
+        private Connection(final URI uri, final WebSocketClientHandshaker handshaker) {
+            _uri = uri;
+            _handshaker = handshaker;
+        }
+
+        private boolean isClosed() {
+            return _isClosed;
+        }
+
+        private void setChannel(final Channel channel) {
+            _channel = channel;
+            // Either this or close observes both writes
+            if (_isClosed) {
+                channel.close();
+            }
+        }
+
+        private final URI _uri;
+        private final WebSocketClientHandshaker _handshaker;
+        private volatile Channel _channel;
+        private volatile boolean _isClosed = false;
+    }
+
+    private static final class Handler extends SimpleChannelUpstreamHandler {
+
+        Handler(final URI uri, final WebSocketClientHandshaker handshaker, final Listener listener) {
+            _uri = uri;
+            _handshaker = handshaker;
+            _listener = listener;
+        }
+
+        @Override
+        public void messageReceived(final ChannelHandlerContext context, final MessageEvent event) throws Exception {
+            final Channel channel = context.getChannel();
+            if (!_handshaker.isHandshakeComplete()) {
+                _handshaker.finishHandshake(channel, (HttpResponse) event.getMessage());
+                _listener.onOpen();
+                return;
+            }
+
+            final WebSocketFrame frame = (WebSocketFrame) event.getMessage();
+            if (frame instanceof TextWebSocketFrame) {
+                if (frame.isFinalFragment()) {
+                    _listener.onMessage(((TextWebSocketFrame) frame).getText());
+                } else {
+                    _fragments = Lists.newArrayList(frame.getBinaryData());
+                }
+            } else if (frame instanceof ContinuationWebSocketFrame) {
+                // Fragments of binary messages are ignored along with the messages
+                if (_fragments != null) {
+                    _fragments.add(frame.getBinaryData());
+                    if (frame.isFinalFragment()) {
+                        // A character may be split across fragments; the message is decoded as a whole
+                        final String message = ChannelBuffers.wrappedBuffer(
+                                _fragments.toArray(new ChannelBuffer[_fragments.size()]))
+                                .toString(CharsetUtil.UTF_8);
+                        _fragments = null;
+                        _listener.onMessage(message);
+                    }
+                }
+            } else if (frame instanceof PingWebSocketFrame) {
+                channel.write(new PongWebSocketFrame(frame.getBinaryData()));
+            } else if (frame instanceof CloseWebSocketFrame) {
+                channel.close();
+            }
+        }
+
+        @Override
+        public void channelClosed(final ChannelHandlerContext context, final ChannelStateEvent event) {
+            if (_isClosed.compareAndSet(false, true)) {
+                _listener.onClose();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext context, final ExceptionEvent event) {
+            LOGGER.debug()
+                    .setMessage("Web socket connection failed")
+                    .addData("uri", _uri)
+                    .setThrowable(event.getCause())
+                    .log();
+            _listener.onError(event.getCause());
+            context.getChannel().close();
+        }
+
+        private final URI _uri;
+        private final WebSocketClientHandshaker _handshaker;
+        private final Listener _listener;
+        private final AtomicBoolean _isClosed = new AtomicBoolean(false);
+        private List<ChannelBuffer> _fragments;
+    }
+}
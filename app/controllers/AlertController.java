@@ -16,6 +16,10 @@
 package controllers;
 
 import com.arpnetworking.metrics.portal.alerts.AlertRepository;
+import com.arpnetworking.play.ConditionalRequests;
+import com.arpnetworking.play.Promises;
+import com.arpnetworking.play.Rejections;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.google.common.base.MoreObjects;
@@ -25,16 +29,21 @@ import com.google.inject.Inject;
 import models.internal.Alert;
 import models.internal.AlertQuery;
 import models.internal.Context;
+import models.internal.CountMode;
 import models.internal.NagiosExtension;
 import models.internal.QueryResult;
 import models.view.PagedContainer;
 import models.view.Pagination;
 import play.Configuration;
+import play.libs.F;
 import play.libs.Json;
 import play.mvc.Controller;
+import play.mvc.Http;
 import play.mvc.Result;
+import scala.concurrent.duration.FiniteDuration;
 
 import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -57,7 +66,10 @@ public class AlertController extends Controller {
      */
     @Inject
     public AlertController(final Configuration configuration, final AlertRepository alertRepository) {
-        this(configuration.getInt("alerts.limit", DEFAULT_MAX_LIMIT), alertRepository);
+        this(
+                configuration.getInt("alerts.limit", DEFAULT_MAX_LIMIT),
+                ConfigurationHelper.getFiniteDuration(configuration, "bulkhead.retryAfter"),
+                alertRepository);
     }
 
     /**
@@ -69,16 +81,18 @@ public class AlertController extends Controller {
      * @param service The service of the statistic to evaluate as part of the alert. Optional.
      * @param limit The maximum number of results to return. Optional.
      * @param offset The number of results to skip. Optional.
-     * @return <code>Result</code> paginated matching alerts.
+     * @param count How to count the total number of results; one of exact, estimate or none. Optional.
+     * @return <code>F.Promise</code> of the <code>Result</code> with paginated matching alerts.
      */
     // CHECKSTYLE.OFF: ParameterNameCheck - Names must match query parameters.
-    public Result query(
+    public F.Promise<Result> query(
             final String contains,
             final String context,
             final String cluster,
             final String service,
             final Integer limit,
-            final Integer offset) {
+            final Integer offset,
+            final String count) {
         // CHECKSTYLE.ON: ParameterNameCheck
 
         // Convert and validate parameters
@@ -87,18 +101,24 @@ public class AlertController extends Controller {
         try {
             contextValue = context == null ? null : Context.valueOf(context);
         } catch (final IllegalArgumentException iae) {
-            return badRequest("Invalid context argument");
+            return F.Promise.pure(badRequest("Invalid context argument"));
         }
         final Optional<Context> argContext = Optional.ofNullable(contextValue);
         final Optional<String> argCluster = Optional.ofNullable(cluster);
         final Optional<String> argService = Optional.ofNullable(service);
+        final CountMode argCount;
+        try {
+            argCount = count == null ? CountMode.EXACT : CountMode.valueOf(count.toUpperCase(Locale.ENGLISH));
+        } catch (final IllegalArgumentException iae) {
+            return F.Promise.pure(badRequest("Invalid count argument"));
+        }
         final Optional<Integer> argOffset = Optional.ofNullable(offset);
         final int argLimit = Math.min(_maxLimit, Optional.of(MoreObjects.firstNonNull(limit, _maxLimit)).get());
         if (argLimit < 0) {
-            return badRequest("Invalid limit; must be greater than or equal to 0");
+            return F.Promise.pure(badRequest("Invalid limit; must be greater than or equal to 0"));
         }
         if (argOffset.isPresent() && argOffset.get() < 0) {
-            return badRequest("Invalid offset; must be greater than or equal to 0");
+            return F.Promise.pure(badRequest("Invalid offset; must be greater than or equal to 0"));
         }
 
         // Build conditions map
@@ -115,6 +135,9 @@ public class AlertController extends Controller {
         if (argService.isPresent()) {
             conditions.put("service", argService.get());
         }
+        if (count != null) {
+            conditions.put("count", argCount.toString().toLowerCase(Locale.ENGLISH));
+        }
 
         // Build a host repository query
         final AlertQuery query = _alertRepository.createQuery()
@@ -123,25 +146,54 @@ public class AlertController extends Controller {
                 .service(argService)
                 .cluster(argCluster)
                 .limit(argLimit)
-                .offset(argOffset);
+                .offset(argOffset)
+                .count(argCount);
 
-        // Execute the query
-        final QueryResult<Alert> result;
-        try {
-            result = query.execute();
-            // CHECKSTYLE.OFF: IllegalCatch - Convert any exception to 500
-        } catch (final Exception e) {
-            // CHECKSTYLE.ON: IllegalCatch
-            LOGGER.error()
-                    .setMessage("Alert query failed")
-                    .setThrowable(e)
-                    .log();
-            return internalServerError();
+        // Skip the query if the client's representation is current
+        final Http.Context httpContext = ctx();
+        final F.Promise<Optional<String>> currentEtag = ConditionalRequests.isConditional(httpContext)
+                ? Promises.fromCompletionStage(_alertRepository.getEtagAsync())
+                : F.Promise.pure(Optional.empty());
+        return currentEtag
+                .flatMap(etag -> {
+                    if (ConditionalRequests.isNotModified(httpContext, etag, "alerts")) {
+                        return F.Promise.pure(ConditionalRequests.notModified(httpContext, etag.get()));
+                    }
+                    // Execute the query
+                    return Promises.fromCompletionStage(_alertRepository.queryAsync(query))
+                            .map(result -> createResponse(httpContext, argOffset, argLimit, conditions, result));
+                })
+                .recover(throwable -> {
+                    if (Rejections.isRejected(throwable)) {
+                        LOGGER.warn()
+                                .setMessage("Alert query rejected; repository saturated")
+                                .log();
+                        return Rejections.serviceUnavailable(httpContext, _retryAfter);
+                    }
+                    LOGGER.error()
+                            .setMessage("Alert query failed")
+                            .setThrowable(throwable)
+                            .log();
+                    return internalServerError();
+                });
+    }
+
+    private Result createResponse(
+            final Http.Context httpContext,
+            final Optional<Integer> argOffset,
+            final int argLimit,
+            final Map<String, String> conditions,
+            final QueryResult<Alert> result) {
+
+        // Respond without a body if the client's representation is current
+        if (ConditionalRequests.isNotModified(httpContext, result.etag(), "alerts")) {
+            return ConditionalRequests.notModified(httpContext, result.etag().get());
         }
+        ConditionalRequests.recordModified(httpContext, "alerts");
 
         // Wrap the query results and return as JSON
         if (result.etag().isPresent()) {
-            response().setHeader(HttpHeaders.ETAG, result.etag().get());
+            httpContext.response().setHeader(HttpHeaders.ETAG, result.etag().get());
         }
         return ok(Json.toJson(new PagedContainer<>(
                 result.values()
@@ -149,11 +201,14 @@ public class AlertController extends Controller {
                         .map(this::internalModelToViewModel)
                         .collect(Collectors.toList()),
                 new Pagination(
-                        request().path(),
-                        result.total(),
+                        httpContext.request().path(),
+                        CountMode.NONE.equals(result.totalMode()) ? Optional.empty() : Optional.of(result.total()),
+                        CountMode.ESTIMATE.equals(result.totalMode()),
                         result.values().size(),
                         argLimit,
                         argOffset,
+                        Optional.empty(),
+                        Optional.empty(),
                         conditions))));
     }
 
@@ -194,24 +249,38 @@ public class AlertController extends Controller {
      * Get specific alert.
      *
      * @param id The identifier of the alert.
-     * @return Matching alert.
+     * @return <code>F.Promise</code> of the matching alert.
      */
-    public Result get(final String id) {
+    public F.Promise<Result> get(final String id) {
         final UUID identifier = UUID.fromString(id);
-        final Optional<Alert> result = _alertRepository.get(identifier);
-        if (!result.isPresent()) {
-            return notFound();
-        }
-        // Return as JSON
-        return ok(Json.toJson(result.get()));
+        final Http.Context httpContext = ctx();
+        return Promises.fromCompletionStage(_alertRepository.getAsync(identifier))
+                .<Result>map(result -> {
+                    if (!result.isPresent()) {
+                        return notFound();
+                    }
+                    // Return as JSON
+                    return ok(Json.toJson(result.get()));
+                })
+                .recover(throwable -> {
+                    if (Rejections.isRejected(throwable)) {
+                        return Rejections.serviceUnavailable(httpContext, _retryAfter);
+                    }
+                    throw throwable;
+                });
     }
 
-    private AlertController(final int maxLimit, final AlertRepository alertRepository) {
+    private AlertController(
+            final int maxLimit,
+            final FiniteDuration retryAfter,
+            final AlertRepository alertRepository) {
         _maxLimit = maxLimit;
+        _retryAfter = retryAfter;
         _alertRepository = alertRepository;
     }
 
     private final int _maxLimit;
+    private final FiniteDuration _retryAfter;
     private final AlertRepository _alertRepository;
 
     private static final int DEFAULT_MAX_LIMIT = 1000;
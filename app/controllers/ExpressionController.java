@@ -16,22 +16,31 @@
 package controllers;
 
 import com.arpnetworking.metrics.portal.expressions.ExpressionRepository;
+import com.arpnetworking.play.ConditionalRequests;
+import com.arpnetworking.play.Promises;
+import com.arpnetworking.play.Rejections;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.Maps;
 import com.google.common.net.HttpHeaders;
 import com.google.inject.Inject;
+import models.internal.CountMode;
 import models.internal.Expression;
 import models.internal.ExpressionQuery;
 import models.internal.QueryResult;
 import models.view.PagedContainer;
 import models.view.Pagination;
 import play.Configuration;
+import play.libs.F;
 import play.libs.Json;
 import play.mvc.Controller;
+import play.mvc.Http;
 import play.mvc.Result;
+import scala.concurrent.duration.FiniteDuration;
 
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -54,7 +63,10 @@ public class ExpressionController extends Controller {
      */
     @Inject
     public ExpressionController(final Configuration configuration, final ExpressionRepository expressionRepository) {
-        this(configuration.getInt("expression.limit", DEFAULT_MAX_LIMIT), expressionRepository);
+        this(
+                configuration.getInt("expression.limit", DEFAULT_MAX_LIMIT),
+                ConfigurationHelper.getFiniteDuration(configuration, "bulkhead.retryAfter"),
+                expressionRepository);
     }
 
     /**
@@ -65,28 +77,36 @@ public class ExpressionController extends Controller {
      * @param service The service of the statistic to evaluate as part of the expression. Optional.
      * @param limit The maximum number of results to return. Optional.
      * @param offset The number of results to skip. Optional.
-     * @return <code>Result</code> paginated matching expressions.
+     * @param count How to count the total number of results; one of exact, estimate or none. Optional.
+     * @return <code>F.Promise</code> of the <code>Result</code> with paginated matching expressions.
      */
     // CHECKSTYLE.OFF: ParameterNameCheck - Names must match query parameters.
-    public Result query(
+    public F.Promise<Result> query(
             final String contains,
             final String cluster,
             final String service,
             final Integer limit,
-            final Integer offset) {
+            final Integer offset,
+            final String count) {
         // CHECKSTYLE.ON: ParameterNameCheck
 
         // Convert and validate parameters
         final Optional<String> argContains = Optional.ofNullable(contains);
         final Optional<String> argCluster = Optional.ofNullable(cluster);
         final Optional<String> argService = Optional.ofNullable(service);
+        final CountMode argCount;
+        try {
+            argCount = count == null ? CountMode.EXACT : CountMode.valueOf(count.toUpperCase(Locale.ENGLISH));
+        } catch (final IllegalArgumentException iae) {
+            return F.Promise.pure(badRequest("Invalid count argument"));
+        }
         final Optional<Integer> argOffset = Optional.ofNullable(offset);
         final int argLimit = Math.min(_maxLimit, Optional.of(MoreObjects.firstNonNull(limit, _maxLimit)).get());
         if (argLimit < 0) {
-            return badRequest("Invalid limit; must be greater than or equal to 0");
+            return F.Promise.pure(badRequest("Invalid limit; must be greater than or equal to 0"));
         }
         if (argOffset.isPresent() && argOffset.get() < 0) {
-            return badRequest("Invalid offset; must be greater than or equal to 0");
+            return F.Promise.pure(badRequest("Invalid offset; must be greater than or equal to 0"));
         }
 
         // Build conditions map
@@ -100,6 +120,9 @@ public class ExpressionController extends Controller {
         if (argService.isPresent()) {
             conditions.put("service", argService.get());
         }
+        if (count != null) {
+            conditions.put("count", argCount.toString().toLowerCase(Locale.ENGLISH));
+        }
 
         // Build a host repository query
         final ExpressionQuery query = _expressionRepository.createQuery()
@@ -107,25 +130,54 @@ public class ExpressionController extends Controller {
                 .service(argService)
                 .cluster(argCluster)
                 .limit(argLimit)
-                .offset(argOffset);
+                .offset(argOffset)
+                .count(argCount);
 
-        // Execute the query
-        final QueryResult<Expression> result;
-        try {
-            result = query.execute();
-            // CHECKSTYLE.OFF: IllegalCatch - Convert any exception to 500
-        } catch (final Exception e) {
-            // CHECKSTYLE.ON: IllegalCatch
-            LOGGER.error()
-                    .setMessage("Expression query failed")
-                    .setThrowable(e)
-                    .log();
-            return internalServerError();
+        // Skip the query if the client's representation is current
+        final Http.Context httpContext = ctx();
+        final F.Promise<Optional<String>> currentEtag = ConditionalRequests.isConditional(httpContext)
+                ? Promises.fromCompletionStage(_expressionRepository.getEtagAsync())
+                : F.Promise.pure(Optional.empty());
+        return currentEtag
+                .flatMap(etag -> {
+                    if (ConditionalRequests.isNotModified(httpContext, etag, "expressions")) {
+                        return F.Promise.pure(ConditionalRequests.notModified(httpContext, etag.get()));
+                    }
+                    // Execute the query
+                    return Promises.fromCompletionStage(_expressionRepository.queryAsync(query))
+                            .map(result -> createResponse(httpContext, argOffset, argLimit, conditions, result));
+                })
+                .recover(throwable -> {
+                    if (Rejections.isRejected(throwable)) {
+                        LOGGER.warn()
+                                .setMessage("Expression query rejected; repository saturated")
+                                .log();
+                        return Rejections.serviceUnavailable(httpContext, _retryAfter);
+                    }
+                    LOGGER.error()
+                            .setMessage("Expression query failed")
+                            .setThrowable(throwable)
+                            .log();
+                    return internalServerError();
+                });
+    }
+
+    private Result createResponse(
+            final Http.Context httpContext,
+            final Optional<Integer> argOffset,
+            final int argLimit,
+            final Map<String, String> conditions,
+            final QueryResult<Expression> result) {
+
+        // Respond without a body if the client's representation is current
+        if (ConditionalRequests.isNotModified(httpContext, result.etag(), "expressions")) {
+            return ConditionalRequests.notModified(httpContext, result.etag().get());
         }
+        ConditionalRequests.recordModified(httpContext, "expressions");
 
         // Wrap the query results and return as JSON
         if (result.etag().isPresent()) {
-            response().setHeader(HttpHeaders.ETAG, result.etag().get());
+            httpContext.response().setHeader(HttpHeaders.ETAG, result.etag().get());
         }
         return ok(Json.toJson(new PagedContainer<>(
                 result.values()
@@ -133,11 +185,14 @@ public class ExpressionController extends Controller {
                         .map(this::internalModelToViewModel)
                         .collect(Collectors.toList()),
                 new Pagination(
-                        request().path(),
-                        result.total(),
+                        httpContext.request().path(),
+                        CountMode.NONE.equals(result.totalMode()) ? Optional.empty() : Optional.of(result.total()),
+                        CountMode.ESTIMATE.equals(result.totalMode()),
                         result.values().size(),
                         argLimit,
                         argOffset,
+                        Optional.empty(),
+                        Optional.empty(),
                         conditions))));
     }
 
@@ -155,24 +210,38 @@ public class ExpressionController extends Controller {
      * Get specific expression.
      *
      * @param id The identifier of the expression.
-     * @return Matching expression.
+     * @return <code>F.Promise</code> of the matching expression.
      */
-    public Result get(final String id) {
+    public F.Promise<Result> get(final String id) {
         final UUID identifier = UUID.fromString(id);
-        final Optional<Expression> result = _expressionRepository.get(identifier);
-        if (!result.isPresent()) {
-            return notFound();
-        }
-        // Return as JSON
-        return ok(Json.toJson(result.get()));
+        final Http.Context httpContext = ctx();
+        return Promises.fromCompletionStage(_expressionRepository.getAsync(identifier))
+                .<Result>map(result -> {
+                    if (!result.isPresent()) {
+                        return notFound();
+                    }
+                    // Return as JSON
+                    return ok(Json.toJson(result.get()));
+                })
+                .recover(throwable -> {
+                    if (Rejections.isRejected(throwable)) {
+                        return Rejections.serviceUnavailable(httpContext, _retryAfter);
+                    }
+                    throw throwable;
+                });
     }
 
-    private ExpressionController(final int maxLimit, final ExpressionRepository expressionRepository) {
+    private ExpressionController(
+            final int maxLimit,
+            final FiniteDuration retryAfter,
+            final ExpressionRepository expressionRepository) {
         _maxLimit = maxLimit;
+        _retryAfter = retryAfter;
         _expressionRepository = expressionRepository;
     }
 
     private final int _maxLimit;
+    private final FiniteDuration _retryAfter;
     private final ExpressionRepository _expressionRepository;
 
     private static final int DEFAULT_MAX_LIMIT = 1000;
@@ -17,12 +17,18 @@ package controllers;
 
 
 import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
+import com.arpnetworking.play.ConditionalRequests;
+import com.arpnetworking.play.Promises;
+import com.arpnetworking.play.Rejections;
+import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.Maps;
 import com.google.common.net.HttpHeaders;
 import com.google.inject.Inject;
+import models.internal.CountMode;
 import models.internal.Host;
 import models.internal.HostQuery;
 import models.internal.MetricsSoftwareState;
@@ -30,10 +36,14 @@ import models.internal.QueryResult;
 import models.view.PagedContainer;
 import models.view.Pagination;
 import play.Configuration;
+import play.libs.F;
 import play.libs.Json;
 import play.mvc.Controller;
+import play.mvc.Http;
 import play.mvc.Result;
+import scala.concurrent.duration.FiniteDuration;
 
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -55,7 +65,10 @@ public class HostController extends Controller {
      */
     @Inject
     public HostController(final Configuration configuration, final HostRepository hostRepository) {
-        this(configuration.getInt("hosts.limit", MAX_LIMIT), hostRepository);
+        this(
+                configuration.getInt("hosts.limit", MAX_LIMIT),
+                ConfigurationHelper.getFiniteDuration(configuration, "bulkhead.retryAfter"),
+                hostRepository);
     }
 
     /**
@@ -66,17 +79,21 @@ public class HostController extends Controller {
      * @param cluster The name of the cluster for the host. Optional.
      * @param limit The maximum number of results to return. Optional.
      * @param offset The number of results to skip. Optional.
+     * @param after The cursor after which to return results. Optional.
      * @param sort_by The field to sort results by. Optional.
-     * @return <code>Result</code> paginated matching hosts.
+     * @param count How to count the total number of results; one of exact, estimate or none. Optional.
+     * @return <code>F.Promise</code> of the <code>Result</code> with paginated matching hosts.
      */
     // CHECKSTYLE.OFF: ParameterNameCheck - Names must match query parameters.
-    public Result query(
+    public F.Promise<Result> query(
             final String name,
             final String state,
             final String cluster,
             final Integer limit,
             final Integer offset,
-            final String sort_by) {
+            final String after,
+            final String sort_by,
+            final String count) {
         // CHECKSTYLE.ON: ParameterNameCheck
 
         // Convert and validate parameters
@@ -84,25 +101,35 @@ public class HostController extends Controller {
         try {
             stateValue = state == null ? null : MetricsSoftwareState.valueOf(state);
         } catch (final IllegalArgumentException iae) {
-            return badRequest("Invalid state argument");
+            return F.Promise.pure(badRequest("Invalid state argument"));
         }
         final HostQuery.Field sortByValue;
         try {
             sortByValue = sort_by == null ? null : HostQuery.Field.valueOf(sort_by);
         } catch (final IllegalArgumentException iae) {
-            return badRequest("Invalid sort_by argument");
+            return F.Promise.pure(badRequest("Invalid sort_by argument"));
         }
         final Optional<String> argName = Optional.ofNullable(name);
         final Optional<MetricsSoftwareState> argState = Optional.ofNullable(stateValue);
         final Optional<String> argCluster = Optional.ofNullable(cluster);
+        final CountMode argCount;
+        try {
+            argCount = count == null ? CountMode.EXACT : CountMode.valueOf(count.toUpperCase(Locale.ENGLISH));
+        } catch (final IllegalArgumentException iae) {
+            return F.Promise.pure(badRequest("Invalid count argument"));
+        }
         final Optional<Integer> argOffset = Optional.ofNullable(offset);
+        final Optional<String> argAfter = Optional.ofNullable(after);
         final Optional<HostQuery.Field> argSortBy = Optional.ofNullable(sortByValue);
         final int argLimit = Math.min(_maxLimit, Optional.of(MoreObjects.firstNonNull(limit, _maxLimit)).get());
         if (argLimit < 0) {
-            return badRequest("Invalid limit; must be greater than or equal to 0");
+            return F.Promise.pure(badRequest("Invalid limit; must be greater than or equal to 0"));
         }
         if (argOffset.isPresent() && argOffset.get() < 0) {
-            return badRequest("Invalid offset; must be greater than or equal to 0");
+            return F.Promise.pure(badRequest("Invalid offset; must be greater than or equal to 0"));
+        }
+        if (argOffset.isPresent() && argAfter.isPresent()) {
+            return F.Promise.pure(badRequest("Invalid offset; cannot be combined with after"));
         }
 
         // Build conditions map
@@ -119,6 +146,9 @@ public class HostController extends Controller {
         if (argSortBy.isPresent()) {
             conditions.put("sort_by", argSortBy.get().toString());
         }
+        if (count != null) {
+            conditions.put("count", argCount.toString().toLowerCase(Locale.ENGLISH));
+        }
 
         // Build a host repository query
         final HostQuery query = _hostRepository.createQuery()
@@ -127,34 +157,64 @@ public class HostController extends Controller {
                 .cluster(argCluster)
                 .limit(argLimit)
                 .offset(argOffset)
+                .count(argCount)
+                .after(argAfter)
                 .sortBy(argSortBy);
 
-        // Execute the query
-        return executeQuery(argOffset, argLimit, conditions, query);
+        // Skip the query if the client's representation is current
+        final Http.Context context = ctx();
+        final F.Promise<Optional<String>> currentEtag = ConditionalRequests.isConditional(context)
+                ? Promises.fromCompletionStage(_hostRepository.getEtagAsync())
+                : F.Promise.pure(Optional.empty());
+        return currentEtag
+                .flatMap(etag -> {
+                    if (ConditionalRequests.isNotModified(context, etag, "hosts")) {
+                        return F.Promise.pure(ConditionalRequests.notModified(context, etag.get()));
+                    }
+                    // Execute the query
+                    return Promises.fromCompletionStage(_hostRepository.queryAsync(query))
+                            .map(result -> createResponse(context, argOffset, argAfter, argLimit, conditions, result));
+                })
+                .recover(throwable -> {
+                    if (Rejections.isRejected(throwable)) {
+                        LOGGER.warn()
+                                .setMessage("Host query rejected; repository saturated")
+                                .log();
+                        return Rejections.serviceUnavailable(context, _retryAfter);
+                    }
+                    if (Promises.unwrap(throwable) instanceof InvalidCursorException) {
+                        LOGGER.warn()
+                                .setMessage("Host query rejected")
+                                .addData("query", query)
+                                .setThrowable(throwable)
+                                .log();
+                        return badRequest("Invalid after argument");
+                    }
+                    LOGGER.error()
+                            .setMessage("Host query failed")
+                            .setThrowable(throwable)
+                            .log();
+                    return internalServerError();
+                });
     }
 
-    private Result executeQuery(
+    private Result createResponse(
+            final Http.Context context,
             final Optional<Integer> argOffset,
+            final Optional<String> argAfter,
             final int argLimit,
             final Map<String, String> conditions,
-            final HostQuery query) {
+            final QueryResult<Host> result) {
 
-        final QueryResult<Host> result;
-        try {
-            result = query.execute();
-            // CHECKSTYLE.OFF: IllegalCatch - Convert any exception to 500
-        } catch (final Exception e) {
-            // CHECKSTYLE.ON: IllegalCatch
-            LOGGER.error()
-                    .setMessage("Host query failed")
-                    .setThrowable(e)
-                    .log();
-            return internalServerError();
+        // Respond without a body if the client's representation is current
+        if (ConditionalRequests.isNotModified(context, result.etag(), "hosts")) {
+            return ConditionalRequests.notModified(context, result.etag().get());
         }
+        ConditionalRequests.recordModified(context, "hosts");
 
         // Wrap the query results and return as JSON
         if (result.etag().isPresent()) {
-            response().setHeader(HttpHeaders.ETAG, result.etag().get());
+            context.response().setHeader(HttpHeaders.ETAG, result.etag().get());
         }
         return ok(Json.toJson(new PagedContainer<>(
                 result.values()
@@ -162,11 +222,14 @@ public class HostController extends Controller {
                         .map(this::internalModelToViewModel)
                         .collect(Collectors.toList()),
                 new Pagination(
-                        request().path(),
-                        result.total(),
+                        context.request().path(),
+                        CountMode.NONE.equals(result.totalMode()) ? Optional.empty() : Optional.of(result.total()),
+                        CountMode.ESTIMATE.equals(result.totalMode()),
                         result.values().size(),
                         argLimit,
                         argOffset,
+                        argAfter,
+                        result.cursor(),
                         conditions))));
     }
 
@@ -178,12 +241,17 @@ public class HostController extends Controller {
         return viewHost;
     }
 
-    private HostController(final int maxLimit, final HostRepository hostRepository) {
+    private HostController(
+            final int maxLimit,
+            final FiniteDuration retryAfter,
+            final HostRepository hostRepository) {
         _maxLimit = maxLimit;
+        _retryAfter = retryAfter;
         _hostRepository = hostRepository;
     }
 
     private final int _maxLimit;
+    private final FiniteDuration _retryAfter;
     private final HostRepository _hostRepository;
 
     private static final int MAX_LIMIT = 1000;
@@ -22,8 +22,10 @@ import com.arpnetworking.metrics.MetricsFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import models.messages.ProxyConnectDestination;
 import models.messages.ProxyConnectOriginator;
+import play.Configuration;
 import play.mvc.Controller;
 import play.mvc.WebSocket;
 
@@ -41,13 +43,21 @@ public class ProxyController extends Controller {
     /**
      * Public constructor.
      *
+     * @param configuration Play app configuration.
      * @param metricsFactory The <code>MetricsFactory</code> instance.
      * @param system The <code>ActorSystem</code> instance.
+     * @param hubManager The <code>ProxyHubManager</code> actor.
      */
     @Inject
-    public ProxyController(final MetricsFactory metricsFactory, final ActorSystem system) {
+    public ProxyController(
+            final Configuration configuration,
+            final MetricsFactory metricsFactory,
+            final ActorSystem system,
+            @Named("ProxyHubManager") final ActorRef hubManager) {
+        _configuration = configuration;
         _metricsFactory = metricsFactory;
         _system = system;
+        _hubManager = hubManager;
     }
 
     /**
@@ -58,9 +68,9 @@ public class ProxyController extends Controller {
      * @throws URISyntaxException if supplied uri is invalid.
      */
     public WebSocket<String> stream(final String uri) throws URISyntaxException {
-        final ActorRef proxyActor = _system.actorOf(ProxyConnection.props(_metricsFactory));
+        final ActorRef proxyActor = _system.actorOf(ProxyConnection.props(_configuration, _metricsFactory, _hubManager));
 
-        // Initiate web socket connection to proxy destination
+        // Attach to the shared web socket connection to proxy destination
         proxyActor.tell(new ProxyConnectDestination(new URI(uri)), ActorRef.noSender());
 
         // Accept web socket connection from proxy originator
@@ -73,7 +83,9 @@ public class ProxyController extends Controller {
         };
     }
 
+    private final Configuration _configuration;
     private final MetricsFactory _metricsFactory;
     private final ActorSystem _system;
+    private final ActorRef _hubManager;
     private final Map<WebSocket.Out<JsonNode>, ActorRef> _connections = Maps.newHashMap();
 }
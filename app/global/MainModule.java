@@ -16,6 +16,7 @@
 package global;
 
 import actors.JvmMetricsCollector;
+import actors.ProxyHubManager;
 import akka.actor.Actor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
@@ -31,7 +32,9 @@ import com.arpnetworking.metrics.impl.TsdMetricsFactory;
 import com.arpnetworking.metrics.portal.alerts.AlertRepository;
 import com.arpnetworking.metrics.portal.expressions.ExpressionRepository;
 import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.HostSource;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
+import com.arpnetworking.websocket.NioWebSocketClient;
 import com.google.inject.AbstractModule;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
@@ -78,6 +81,13 @@ public class MainModule extends AbstractModule {
                 .annotatedWith(Names.named("HostProviderScheduler"))
                 .toProvider(HostProviderProvider.class)
                 .asEagerSingleton();
+        bind(NioWebSocketClient.class)
+                .toProvider(NioWebSocketClientProvider.class)
+                .in(Singleton.class);
+        bind(ActorRef.class)
+                .annotatedWith(Names.named("ProxyHubManager"))
+                .toProvider(ProxyHubManagerProvider.class)
+                .asEagerSingleton();
     }
 
     @Singleton
@@ -85,10 +95,20 @@ public class MainModule extends AbstractModule {
     @Provides
     @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
     private Props getHostProviderProps(final Injector injector, final Environment environment, final Configuration config) {
+        // Host providers block on their source and the repository; they run on their own thread
         return
                 GuiceActorCreator.props(
                         injector,
-                        ConfigurationHelper.<Actor>getType(environment, config, "hostProvider.type"));
+                        ConfigurationHelper.<Actor>getType(environment, config, "hostProvider.type"))
+                        .withDispatcher(HOST_PROVIDER_DISPATCHER);
+    }
+
+    @Provides
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private HostSource getHostSource(final Injector injector, final Environment environment, final Configuration config) {
+        // Not a singleton; only host providers that sweep a source require it
+        return injector.getInstance(
+                ConfigurationHelper.<HostSource>getType(environment, config, "hostProvider.source.type"));
     }
 
     @Provides
@@ -107,6 +127,8 @@ public class MainModule extends AbstractModule {
                 .build();
     }
 
+    private static final String HOST_PROVIDER_DISPATCHER = "akka.actor.host-provider-dispatcher";
+
     private static final class HostRepositoryProvider implements Provider<HostRepository> {
 
         @Inject
@@ -210,17 +232,23 @@ public class MainModule extends AbstractModule {
         @Inject
         public HostProviderProvider(
                 final ActorSystem system,
+                final Configuration configuration,
                 @Named("HostProviderProps")
                 final Props hostProviderProps) {
             _system = system;
+            _partitioned = configuration.getBoolean("hostProvider.partitioned", false);
             _hostProviderProps = hostProviderProps;
         }
 
         @Override
         public ActorRef get() {
             final Cluster cluster = Cluster.get(_system);
-            // Start a singleton instance of the scheduler on a "host_indexer" node in the cluster.
             if (cluster.selfRoles().contains(INDEXER_ROLE)) {
+                if (_partitioned) {
+                    // Start an instance on every "host_indexer" node; the instances partition the hosts.
+                    return _system.actorOf(_hostProviderProps, "host-provider");
+                }
+                // Start a singleton instance of the scheduler on a "host_indexer" node in the cluster.
                 return _system.actorOf(ClusterSingletonManager.props(
                                 _hostProviderProps,
                                 PoisonPill.getInstance(),
@@ -231,6 +259,7 @@ public class MainModule extends AbstractModule {
         }
 
         private final ActorSystem _system;
+        private final boolean _partitioned;
         private final Props _hostProviderProps;
 
         private static final String INDEXER_ROLE = "host_indexer";
@@ -251,4 +280,45 @@ public class MainModule extends AbstractModule {
         private final Injector _injector;
         private final ActorSystem _system;
     }
+
+    private static final class NioWebSocketClientProvider implements Provider<NioWebSocketClient> {
+        @Inject
+        public NioWebSocketClientProvider(final Configuration configuration, final ApplicationLifecycle lifecycle) {
+            _configuration = configuration;
+            _lifecycle = lifecycle;
+        }
+
+        @Override
+        public NioWebSocketClient get() {
+            final int workerThreads = _configuration.getInt("proxy.upstream.workerThreads", 0);
+            final NioWebSocketClient client = new NioWebSocketClient(
+                    workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors() * 2,
+                    (int) ConfigurationHelper.getFiniteDuration(_configuration, "proxy.upstream.connectTimeout").toMillis());
+            _lifecycle.addStopHook(
+                    () -> {
+                        client.shutdown();
+                        return F.Promise.pure(null);
+                    });
+            return client;
+        }
+
+        private final Configuration _configuration;
+        private final ApplicationLifecycle _lifecycle;
+    }
+
+    private static final class ProxyHubManagerProvider implements Provider<ActorRef> {
+        @Inject
+        public ProxyHubManagerProvider(final Injector injector, final ActorSystem system) {
+            _injector = injector;
+            _system = system;
+        }
+
+        @Override
+        public ActorRef get() {
+            return _system.actorOf(GuiceActorCreator.props(_injector, ProxyHubManager.class), "proxy-hubs");
+        }
+
+        private final Injector _injector;
+        private final ActorSystem _system;
+    }
 }
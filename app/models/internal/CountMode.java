@@ -0,0 +1,40 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package models.internal;
+
+/**
+ * How the total number of matching records of a query is computed.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public enum CountMode {
+
+    /**
+     * The total is counted exactly.
+     */
+    EXACT,
+
+    /**
+     * The total is approximated; for example from planner statistics or
+     * from a previously computed count.
+     */
+    ESTIMATE,
+
+    /**
+     * The total is not computed.
+     */
+    NONE;
+}
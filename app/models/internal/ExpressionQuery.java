@@ -64,6 +64,15 @@ public interface ExpressionQuery {
      */
     ExpressionQuery offset(final Optional<Integer> offset);
 
+    /**
+     * How to compute the total number of matching records. Optional. Default is <code>EXACT</code>. Callers that
+     * do not present the total (e.g. typeahead) should specify <code>NONE</code>.
+     *
+     * @param count The <code>CountMode</code>.
+     * @return This instance of <code>ExpressionQuery</code>.
+     */
+    ExpressionQuery count(final CountMode count);
+
     /**
      * Execute the query and return the results.
      *
@@ -105,4 +114,11 @@ public interface ExpressionQuery {
      * @return The offset.
      */
     Optional<Integer> getOffset();
+
+    /**
+     * Accessor for the count mode.
+     *
+     * @return The count mode.
+     */
+    CountMode getCount();
 }
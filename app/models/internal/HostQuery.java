@@ -65,6 +65,16 @@ public interface HostQuery {
      */
     HostQuery offset(final Optional<Integer> offset);
 
+    /**
+     * The cursor after which the result set should begin. Optional. Default is not set. The cursor is an opaque
+     * value obtained from <code>QueryResult.cursor()</code> of a previous query with the same conditions and sort.
+     * Unlike <code>offset</code> the cost of resuming from a cursor does not grow with the depth of the page.
+     *
+     * @param after The cursor after which to begin the result set.
+     * @return This instance of <code>HostQuery</code>.
+     */
+    HostQuery after(final Optional<String> after);
+
     /**
      * Sort the results by the specified field. Optional. Default sorting is defined by the underlying repository
      * implementation but it is strongly recommended that the repository make some attempt to sort by score or relevance
@@ -75,6 +85,15 @@ public interface HostQuery {
      */
     HostQuery sortBy(final Optional<Field> field);
 
+    /**
+     * How to compute the total number of matching records. Optional. Default is <code>EXACT</code>. Callers that
+     * do not present the total (e.g. typeahead) should specify <code>NONE</code>.
+     *
+     * @param count The <code>CountMode</code>.
+     * @return This instance of <code>HostQuery</code>.
+     */
+    HostQuery count(final CountMode count);
+
     /**
      * Execute the query and return the results.
      *
@@ -117,6 +136,20 @@ public interface HostQuery {
      */
     Optional<Integer> getOffset();
 
+    /**
+     * Accessor for the count mode.
+     *
+     * @return The count mode.
+     */
+    CountMode getCount();
+
+    /**
+     * Accessor for the cursor after which to begin.
+     *
+     * @return The cursor after which to begin.
+     */
+    Optional<String> getAfter();
+
     /**
      * Accessor for the field to sort by.
      * @return The field to sort by.
@@ -36,12 +36,20 @@ public interface QueryResult<T> {
 
     /**
      * The total number of matching instances of {@code <T>}. This may be greater than the number of instances of
-     * {@code <T>} returned.
+     * {@code <T>} returned. The accuracy of the total is defined by <code>totalMode()</code>.
      *
      * @return The total number of matching hosts.
      */
     long total();
 
+    /**
+     * How the total was computed. If <code>ESTIMATE</code> the total is approximate and if <code>NONE</code> the
+     * total was not computed and should be ignored.
+     *
+     * @return The <code>CountMode</code> of the total.
+     */
+    CountMode totalMode();
+
     /**
      * The etag representing the current state of the repository for this query. This should always exclude the
      * pagination. Otherwise, the etag may be specific to the query or general to the data store.
@@ -49,4 +57,13 @@ public interface QueryResult<T> {
      * @return The <code>Optional</code> etag.
      */
     Optional<String> etag();
+
+    /**
+     * The opaque cursor positioned after the last value in this result. Supplying it as the <code>after</code> of
+     * an otherwise identical query returns the next page. This is absent when the repository cannot resume from a
+     * cursor for this query (e.g. relevance ordering) or when the result is known to be the last page.
+     *
+     * @return The <code>Optional</code> cursor.
+     */
+    Optional<String> cursor();
 }
@@ -21,6 +21,7 @@ import com.google.common.base.MoreObjects;
 import models.internal.Alert;
 import models.internal.AlertQuery;
 import models.internal.Context;
+import models.internal.CountMode;
 import models.internal.QueryResult;
 
 import java.util.Optional;
@@ -96,6 +97,15 @@ public final class DefaultAlertQuery implements AlertQuery {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AlertQuery count(final CountMode count) {
+        _count = count;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -152,6 +162,14 @@ public final class DefaultAlertQuery implements AlertQuery {
         return _offset;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CountMode getCount() {
+        return _count;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -167,6 +185,7 @@ public final class DefaultAlertQuery implements AlertQuery {
                 .add("Service", _service)
                 .add("Limit", _limit)
                 .add("Offset", _offset)
+                .add("Count", _count)
                 .toString();
     }
 
@@ -177,6 +196,7 @@ public final class DefaultAlertQuery implements AlertQuery {
     private Optional<String> _service = Optional.empty();
     private int _limit = DEFAULT_LIMIT;
     private Optional<Integer> _offset = Optional.empty();
+    private CountMode _count = CountMode.EXACT;
 
     private static final int DEFAULT_LIMIT = 1000;
 }
@@ -18,6 +18,7 @@ package models.internal.impl;
 import com.arpnetworking.logback.annotations.Loggable;
 import com.arpnetworking.metrics.portal.expressions.ExpressionRepository;
 import com.google.common.base.MoreObjects;
+import models.internal.CountMode;
 import models.internal.Expression;
 import models.internal.ExpressionQuery;
 import models.internal.QueryResult;
@@ -86,6 +87,15 @@ public final class DefaultExpressionQuery implements ExpressionQuery {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExpressionQuery count(final CountMode count) {
+        _count = count;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -134,6 +144,14 @@ public final class DefaultExpressionQuery implements ExpressionQuery {
         return _offset;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CountMode getCount() {
+        return _count;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -148,6 +166,7 @@ public final class DefaultExpressionQuery implements ExpressionQuery {
                 .add("Service", _service)
                 .add("Limit", _limit)
                 .add("Offset", _offset)
+                .add("Count", _count)
                 .toString();
     }
 
@@ -157,6 +176,7 @@ public final class DefaultExpressionQuery implements ExpressionQuery {
     private Optional<String> _service = Optional.empty();
     private int _limit = DEFAULT_LIMIT;
     private Optional<Integer> _offset = Optional.empty();
+    private CountMode _count = CountMode.EXACT;
 
     private static final int DEFAULT_LIMIT = 1000;
 }
@@ -18,6 +18,7 @@ package models.internal.impl;
 import com.arpnetworking.logback.annotations.Loggable;
 import com.arpnetworking.metrics.portal.hosts.HostRepository;
 import com.google.common.base.MoreObjects;
+import models.internal.CountMode;
 import models.internal.Host;
 import models.internal.HostQuery;
 import models.internal.MetricsSoftwareState;
@@ -87,6 +88,15 @@ public final class DefaultHostQuery implements HostQuery {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HostQuery after(final Optional<String> after) {
+        _after = after;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -96,6 +106,15 @@ public final class DefaultHostQuery implements HostQuery {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HostQuery count(final CountMode count) {
+        _count = count;
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -144,6 +163,22 @@ public final class DefaultHostQuery implements HostQuery {
         return _offset;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CountMode getCount() {
+        return _count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> getAfter() {
+        return _after;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -165,6 +200,8 @@ public final class DefaultHostQuery implements HostQuery {
                 .add("MetricsSoftwareState", _metricsSoftwareState)
                 .add("Limit", _limit)
                 .add("Offset", _offset)
+                .add("Count", _count)
+                .add("After", _after)
                 .add("SortBy", _sortBy)
                 .toString();
     }
@@ -176,6 +213,8 @@ public final class DefaultHostQuery implements HostQuery {
     private Optional<String> _cluster = Optional.empty();
     private int _limit = DEFAULT_LIMIT;
     private Optional<Integer> _offset = Optional.empty();
+    private CountMode _count = CountMode.EXACT;
+    private Optional<String> _after = Optional.empty();
     private Optional<Field> _sortBy = Optional.empty();
 
     private static final int DEFAULT_LIMIT = 1000;
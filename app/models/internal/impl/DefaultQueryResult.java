@@ -17,6 +17,7 @@ package models.internal.impl;
 
 import com.arpnetworking.logback.annotations.LogValue;
 import com.arpnetworking.steno.LogValueMapFactory;
+import models.internal.CountMode;
 import models.internal.QueryResult;
 
 import java.util.List;
@@ -38,9 +39,7 @@ public final class DefaultQueryResult<T> implements QueryResult<T> {
      * @param total The total number of matching <code>Host</code> instances.
      */
     public DefaultQueryResult(final List<? extends T> values, final long total) {
-        _values = values;
-        _total = total;
-        _etag = Optional.empty();
+        this(values, total, CountMode.EXACT, Optional.empty(), Optional.empty());
     }
 
     /**
@@ -51,9 +50,45 @@ public final class DefaultQueryResult<T> implements QueryResult<T> {
      * @param etag The etag.
      */
     public DefaultQueryResult(final List<? extends T> values, final long total, final String etag) {
+        this(values, total, CountMode.EXACT, Optional.of(etag), Optional.empty());
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param values The <code>List</code> of <code>Host</code> instances.
+     * @param total The total number of matching <code>Host</code> instances.
+     * @param etag The <code>Optional</code> etag.
+     * @param cursor The <code>Optional</code> cursor positioned after the last value.
+     */
+    public DefaultQueryResult(
+            final List<? extends T> values,
+            final long total,
+            final Optional<String> etag,
+            final Optional<String> cursor) {
+        this(values, total, CountMode.EXACT, etag, cursor);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param values The <code>List</code> of <code>Host</code> instances.
+     * @param total The total number of matching <code>Host</code> instances.
+     * @param totalMode The <code>CountMode</code> used to compute the total.
+     * @param etag The <code>Optional</code> etag.
+     * @param cursor The <code>Optional</code> cursor positioned after the last value.
+     */
+    public DefaultQueryResult(
+            final List<? extends T> values,
+            final long total,
+            final CountMode totalMode,
+            final Optional<String> etag,
+            final Optional<String> cursor) {
         _values = values;
         _total = total;
-        _etag = Optional.of(etag);
+        _totalMode = totalMode;
+        _etag = etag;
+        _cursor = cursor;
     }
 
     /**
@@ -72,6 +107,14 @@ public final class DefaultQueryResult<T> implements QueryResult<T> {
         return _total;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CountMode totalMode() {
+        return _totalMode;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -80,6 +123,14 @@ public final class DefaultQueryResult<T> implements QueryResult<T> {
         return _etag;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Optional<String> cursor() {
+        return _cursor;
+    }
+
     /**
      * Generate a Steno log compatible representation.
      *
@@ -90,7 +141,9 @@ public final class DefaultQueryResult<T> implements QueryResult<T> {
         return LogValueMapFactory.builder(this)
                 .put("values", _values)
                 .put("total", _total)
+                .put("totalMode", _totalMode)
                 .put("etag", _etag)
+                .put("cursor", _cursor)
                 .build();
     }
 
@@ -104,5 +157,7 @@ public final class DefaultQueryResult<T> implements QueryResult<T> {
 
     private final List<? extends T> _values;
     private final long _total;
+    private final CountMode _totalMode;
     private final Optional<String> _etag;
+    private final Optional<String> _cursor;
 }
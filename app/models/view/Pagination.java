@@ -49,18 +49,49 @@ public class Pagination {
             final int limit,
             final Optional<Integer> offset,
             final Map<String, String> conditions) {
+        this(path, Optional.of(total), false, size, limit, offset, Optional.empty(), Optional.empty(), conditions);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param path The base path for the query that produced the results.
+     * @param total The total number of matching records available; empty if not counted.
+     * @param totalEstimated Whether the total is an estimate.
+     * @param size The number of records returned in this page.
+     * @param limit The maximum number of records to return in one page.
+     * @param offset The offset, in records, of the first record in this page.
+     * @param after The cursor after which this page begins.
+     * @param cursor The cursor after which the next page begins.
+     * @param conditions The <code>Map</code> of query parameter key-value pairs.
+     */
+    public Pagination(
+            final String path,
+            final Optional<Long> total,
+            final boolean totalEstimated,
+            final int size,
+            final int limit,
+            final Optional<Integer> offset,
+            final Optional<String> after,
+            final Optional<String> cursor,
+            final Map<String, String> conditions) {
         _total = total;
+        _totalEstimated = totalEstimated;
         _size = size;
         _offset = offset.isPresent() ? offset.get() : 0;
 
         Optional<URI> previous = Optional.empty();
         Optional<URI> next = Optional.empty();
-        if (_offset + _size < _total) {
+        if (cursor.isPresent()) {
+            // Prefer the cursor since resuming from it does not depend on the depth of the page
+            next = Optional.of(createReference(path, limit, cursor.get(), conditions));
+        } else if (!after.isPresent() && hasNext(total, totalEstimated, size, limit)) {
             final int newOffset = _offset + _size;
             final int newLimit = limit;
             next = Optional.of(createReference(path, newLimit, newOffset, conditions));
         }
-        if (_offset > 0) {
+        // NOTE: The previous page of a cursor based page is not known
+        if (!after.isPresent() && _offset > 0) {
             final int newOffset = Math.max(_offset - limit, 0);
             final int newLimit = Math.min(_offset - newOffset, limit);
             previous = Optional.of(createReference(path, newLimit, newOffset, conditions));
@@ -69,10 +100,14 @@ public class Pagination {
         _previous = previous;
     }
 
-    public long getTotal() {
+    public Optional<Long> getTotal() {
         return _total;
     }
 
+    public boolean isTotalEstimated() {
+        return _totalEstimated;
+    }
+
     public int getSize() {
         return _size;
     }
@@ -98,6 +133,7 @@ public class Pagination {
                 .add("id", Integer.toHexString(System.identityHashCode(this)))
                 .add("class", this.getClass())
                 .add("Total", _total)
+                .add("TotalEstimated", _totalEstimated)
                 .add("Size", _size)
                 .add("Offset", _offset)
                 .add("Next", _next)
@@ -105,6 +141,14 @@ public class Pagination {
                 .toString();
     }
 
+    private boolean hasNext(final Optional<Long> total, final boolean totalEstimated, final int size, final int limit) {
+        if (total.isPresent() && !totalEstimated) {
+            return _offset + size < total.get();
+        }
+        // Without an exact total assume there are more records if the page is full
+        return size > 0 && size == limit;
+    }
+
     private URI createReference(
             final String path,
             final int limit,
@@ -116,6 +160,24 @@ public class Pagination {
         }
         queryStringEncoder.addParam("limit", String.valueOf(limit));
         queryStringEncoder.addParam("offset", String.valueOf(offset));
+        return toUri(queryStringEncoder);
+    }
+
+    private URI createReference(
+            final String path,
+            final int limit,
+            final String after,
+            final Map<String, String> conditions) {
+        final QueryStringEncoder queryStringEncoder = new QueryStringEncoder(path);
+        for (Map.Entry<String, String> entry : conditions.entrySet()) {
+            queryStringEncoder.addParam(entry.getKey(), entry.getValue());
+        }
+        queryStringEncoder.addParam("limit", String.valueOf(limit));
+        queryStringEncoder.addParam("after", after);
+        return toUri(queryStringEncoder);
+    }
+
+    private URI toUri(final QueryStringEncoder queryStringEncoder) {
         try {
             return new URI(queryStringEncoder.toString());
         } catch (final URISyntaxException e) {
@@ -123,7 +185,8 @@ public class Pagination {
         }
     }
 
-    private final long _total;
+    private final Optional<Long> _total;
+    private final boolean _totalEstimated;
     private final int _size;
     private final int _offset;
     private final Optional<URI> _next;
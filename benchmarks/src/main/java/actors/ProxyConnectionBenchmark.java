@@ -0,0 +1,223 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.websocket.NioWebSocketClient;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.ConfigFactory;
+import models.messages.ProxyConnectDestination;
+import models.messages.ProxyConnectOriginator;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import play.Configuration;
+import play.libs.F;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for relaying messages through a <code>ProxyConnection</code>.
+ * The destination is an echo server on the loopback interface so each
+ * message crosses the proxy twice: originator to destination and back,
+ * through the connection's hub and the shared client.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ProxyConnectionBenchmark {
+
+    /**
+     * Start the echo server and establish the proxy connection.
+     *
+     * @throws Throwable If the proxy connection cannot be established.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        _server = new EchoServer(new InetSocketAddress("localhost", PORT));
+        _server.start();
+
+        final MetricsFactory metricsFactory = createMetricsFactory("ProxyConnectionBenchmark");
+        _client = new NioWebSocketClient(WORKER_THREADS, CONNECT_TIMEOUT_IN_MILLIS);
+        _system = ActorSystem.create("ProxyConnectionBenchmark");
+        final Configuration configuration = createConfiguration();
+        _connection = _system.actorOf(ProxyConnection.props(
+                configuration,
+                metricsFactory,
+                _system.actorOf(Props.create(ProxyHubManager.class, configuration, metricsFactory, _client))));
+        _connection.tell(
+                new ProxyConnectOriginator(
+                        _in,
+                        new play.mvc.WebSocket.Out<String>() {
+                            @Override
+                            public void write(final String frame) {
+                                _received.release();
+                            }
+
+                            @Override
+                            public void close() {
+                                // Nothing to close
+                            }
+                        }),
+                ActorRef.noSender());
+        _connection.tell(new ProxyConnectDestination(new URI("ws://localhost:" + PORT + "/")), ActorRef.noSender());
+
+        // Messages are buffered until the proxy is established; so one echo proves the connection
+        send(1);
+        if (!_received.tryAcquire(1, CONNECT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Proxy connection not established");
+        }
+    }
+
+    /**
+     * Close the proxy connection and stop the echo server.
+     *
+     * @throws Throwable If shutdown fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        for (final F.Callback0 callback : _in.closeCallbacks) {
+            callback.invoke();
+        }
+        _system.terminate();
+        _client.shutdown();
+        _server.stop();
+    }
+
+    /**
+     * Relay a batch of messages from the originator and wait for their echoes.
+     *
+     * @throws Throwable If relaying fails.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void relay() throws Throwable {
+        send(BATCH_SIZE);
+        _received.acquire(BATCH_SIZE);
+    }
+
+    private void send(final int count) throws Throwable {
+        for (int i = 0; i < count; ++i) {
+            for (final F.Callback<String> callback : _in.callbacks) {
+                callback.invoke(MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Create the proxy configuration. Writes to the originator are not paced
+     * so that the relay itself is measured.
+     *
+     * @return The <code>Configuration</code>.
+     */
+    static Configuration createConfiguration() {
+        return new Configuration(ConfigFactory.parseMap(ImmutableMap.<String, Object>builder()
+                .put("proxy.connection.bufferSize", 1000)
+                .put("proxy.connection.flushInterval", "100 millis")
+                .put("proxy.connection.maxFramesPerFlush", Integer.MAX_VALUE)
+                .put("proxy.connection.slowConsumerTimeout", "10 seconds")
+                .put("proxy.connection.coalesce.enabled", false)
+                .put("proxy.hub.bufferSize", 1000)
+                .put("proxy.metricsInterval", "1 second")
+                .build()));
+    }
+
+    /**
+     * Create a <code>MetricsFactory</code> which discards all metrics.
+     *
+     * @param name The service and cluster name.
+     * @return The <code>MetricsFactory</code>.
+     */
+    static MetricsFactory createMetricsFactory(final String name) {
+        return new TsdMetricsFactory.Builder()
+                .setServiceName(name)
+                .setClusterName(name)
+                .setSinks(Collections.emptyList())
+                .build();
+    }
+
+    private EchoServer _server;
+    private NioWebSocketClient _client;
+    private ActorSystem _system;
+    private ActorRef _connection;
+    private final play.mvc.WebSocket.In<String> _in = new play.mvc.WebSocket.In<>();
+    private final Semaphore _received = new Semaphore(0);
+
+    private static final int PORT = 18095;
+    private static final int BATCH_SIZE = 1000;
+    private static final long CONNECT_TIMEOUT_IN_SECONDS = 10;
+    private static final int CONNECT_TIMEOUT_IN_MILLIS = 10000;
+    private static final int WORKER_THREADS = 2;
+    private static final String MESSAGE =
+            "{\"command\":\"metricReport\",\"data\":{\"service\":\"benchmark\",\"metric\":\"latency\","
+                    + "\"statistic\":\"tp99\",\"timestamp\":1451606400000,\"data\":12.5,\"server\":\"app1.example.com\"}}";
+
+    /**
+     * Web Socket server which echoes every message to its sender.
+     */
+    static final class EchoServer extends WebSocketServer {
+
+        EchoServer(final InetSocketAddress address) {
+            super(address);
+        }
+
+        @Override
+        public void onOpen(final WebSocket conn, final ClientHandshake handshake) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onClose(final WebSocket conn, final int code, final String reason, final boolean remote) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onMessage(final WebSocket conn, final String message) {
+            conn.send(message);
+        }
+
+        @Override
+        public void onError(final WebSocket conn, final Exception ex) {
+            // Nothing to do
+        }
+    }
+}
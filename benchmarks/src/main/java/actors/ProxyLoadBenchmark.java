@@ -0,0 +1,193 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.websocket.NioWebSocketClient;
+import models.messages.ProxyConnectDestination;
+import models.messages.ProxyConnectOriginator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import play.Configuration;
+import play.libs.F;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test for the proxy. Each invocation opens the given number of
+ * concurrent proxied connections, each to its own destination so that every
+ * connection has its own upstream Web Socket, and relays one message through
+ * each of them. The destinations are a single echo server on the loopback
+ * interface. The largest number of live threads with all connections
+ * established is printed at the end of the trial, outside of the measured
+ * code; it does not grow with the number of connections.
+ *
+ * Every connection uses two sockets on this node; the open file limit must
+ * allow for at least twice the number of connections (e.g. ulimit -n 32768).
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ProxyLoadBenchmark {
+
+    /**
+     * Start the echo server and the proxy.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        _server = new ProxyConnectionBenchmark.EchoServer(new InetSocketAddress("localhost", PORT));
+        _server.start();
+
+        final MetricsFactory metricsFactory = ProxyConnectionBenchmark.createMetricsFactory("ProxyLoadBenchmark");
+        _configuration = ProxyConnectionBenchmark.createConfiguration();
+        _metricsFactory = metricsFactory;
+        _client = new NioWebSocketClient(WORKER_THREADS, CONNECT_TIMEOUT_IN_MILLIS);
+        _system = ActorSystem.create("ProxyLoadBenchmark");
+        _hubManager = _system.actorOf(Props.create(ProxyHubManager.class, _configuration, metricsFactory, _client));
+    }
+
+    /**
+     * Stop the proxy and the echo server.
+     *
+     * @throws Throwable If shutdown fails.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        System.out.printf(
+                "Established %d proxied connections with at most %d live threads%n",
+                connections,
+                _maxLiveThreads);
+        _system.terminate();
+        _client.shutdown();
+        _server.stop();
+    }
+
+    /**
+     * Close the connections opened by the invocation.
+     *
+     * @throws Throwable If closing fails.
+     */
+    @TearDown(Level.Invocation)
+    public void closeConnections() throws Throwable {
+        // Sampled before closing while every connection of the invocation is established
+        _maxLiveThreads = Math.max(_maxLiveThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+        for (final play.mvc.WebSocket.In<String> in : _ins) {
+            for (final F.Callback0 callback : in.closeCallbacks) {
+                callback.invoke();
+            }
+        }
+        _ins.clear();
+    }
+
+    /**
+     * Open the connections and relay one message through each.
+     *
+     * @throws Throwable If not all connections relay their message in time.
+     */
+    @Benchmark
+    public void connect() throws Throwable {
+        final CountDownLatch relayed = new CountDownLatch(connections);
+        for (int i = 0; i < connections; ++i) {
+            final play.mvc.WebSocket.In<String> in = new play.mvc.WebSocket.In<>();
+            final ActorRef connection = _system.actorOf(ProxyConnection.props(_configuration, _metricsFactory, _hubManager));
+            connection.tell(new ProxyConnectOriginator(in, new CountingOut(relayed)), ActorRef.noSender());
+            connection.tell(
+                    new ProxyConnectDestination(new URI("ws://localhost:" + PORT + "/?connection=" + i)),
+                    ActorRef.noSender());
+            _ins.add(in);
+        }
+
+        // Messages are buffered until each proxy is established
+        for (final play.mvc.WebSocket.In<String> in : _ins) {
+            for (final F.Callback<String> callback : in.callbacks) {
+                callback.invoke(MESSAGE);
+            }
+        }
+        if (!relayed.await(RELAY_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(String.format(
+                    "Connections not established; connections=%d, pending=%d",
+                    connections,
+                    relayed.getCount()));
+        }
+    }
+
+    @Param({"10000"})
+    public int connections;
+
+    private ProxyConnectionBenchmark.EchoServer _server;
+    private Configuration _configuration;
+    private MetricsFactory _metricsFactory;
+    private NioWebSocketClient _client;
+    private ActorSystem _system;
+    private ActorRef _hubManager;
+    private int _maxLiveThreads = 0;
+    private final List<play.mvc.WebSocket.In<String>> _ins = new ArrayList<>();
+
+    private static final int PORT = 18096;
+    private static final int WORKER_THREADS = 4;
+    private static final int CONNECT_TIMEOUT_IN_MILLIS = 30000;
+    private static final long RELAY_TIMEOUT_IN_SECONDS = 120;
+    private static final String MESSAGE = "{\"command\":\"heartbeat\"}";
+
+    private static final class CountingOut implements play.mvc.WebSocket.Out<String> {
+
+        CountingOut(final CountDownLatch relayed) {
+            _relayed = relayed;
+        }
+
+        @Override
+        public void write(final String frame) {
+            // Only the first message through each connection is counted
+            if (!_isRelayed) {
+                _isRelayed = true;
+                _relayed.countDown();
+            }
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+
+        private volatile boolean _isRelayed = false;
+        private final CountDownLatch _relayed;
+    }
+}
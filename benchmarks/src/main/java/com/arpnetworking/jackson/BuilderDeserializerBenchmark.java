@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.jackson;
+
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import models.internal.Host;
+import models.internal.MetricsSoftwareState;
+import models.internal.impl.DefaultHost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for serializing a <code>Host</code> and deserializing it again
+ * through a <code>BuilderDeserializer</code>; this is the path taken by hosts
+ * stored in Elasticsearch and read from host sources.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BuilderDeserializerBenchmark {
+
+    /**
+     * Serialize the host used by the deserialization benchmark.
+     *
+     * @throws IOException If serialization fails.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        _host = new DefaultHost.Builder()
+                .setHostname("test-app1.snc1.example.com")
+                .setCluster("test-app")
+                .setMetricsSoftwareState(MetricsSoftwareState.LATEST_VERSION_INSTALLED)
+                .build();
+        _json = OBJECT_MAPPER.writeValueAsBytes(_host);
+    }
+
+    /**
+     * Deserialize a host.
+     *
+     * @return The deserialized host.
+     * @throws IOException If deserialization fails.
+     */
+    @Benchmark
+    public Host deserialize() throws IOException {
+        return OBJECT_MAPPER.readValue(_json, Host.class);
+    }
+
+    /**
+     * Serialize and deserialize a host.
+     *
+     * @return The deserialized host.
+     * @throws IOException If serialization or deserialization fails.
+     */
+    @Benchmark
+    public Host roundTrip() throws IOException {
+        return OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsBytes(_host), Host.class);
+    }
+
+    private Host _host;
+    private byte[] _json;
+
+    private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.createInstance();
+
+    static {
+        final SimpleModule module = new SimpleModule("BuilderDeserializerBenchmark");
+        module.addDeserializer(
+                Host.class,
+                BuilderDeserializer.of(DefaultHost.Builder.class));
+        OBJECT_MAPPER.registerModule(module);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.database.DatabaseExecutor;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.portal.H2ConnectionStringFactory;
+import com.google.common.collect.ImmutableMap;
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.QueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import play.test.FakeApplication;
+import play.test.Helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for <code>DatabaseHostRepository</code> against an embedded H2
+ * database using the generic query generator. The schema is created by the
+ * application's migrations when the fake application starts.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dconfig.file=conf/portal.application.conf")
+public class DatabaseHostRepositoryBenchmark {
+
+    /**
+     * Start the application and populate the repository.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final String jdbcUrl = H2ConnectionStringFactory.generateJdbcUrl();
+        _application = Helpers.fakeApplication(
+                ImmutableMap.of("db.metrics_portal_ddl.url", jdbcUrl, "db.default.url", jdbcUrl));
+        Helpers.start(_application);
+
+        _repository = new DatabaseHostRepository(
+                new DatabaseHostRepository.GenericQueryGenerator(),
+                new TsdMetricsFactory.Builder()
+                        .setServiceName("DatabaseHostRepositoryBenchmark")
+                        .setClusterName("DatabaseHostRepositoryBenchmark")
+                        .setSinks(Collections.emptyList())
+                        .build(),
+                BATCH_SIZE,
+                new DatabaseExecutor("host_repository", 1, 1));
+        _repository.open();
+
+        final List<Host> hosts = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < hostCount; ++i) {
+            hosts.add(LocalHostRepositoryBenchmark.createHost(i));
+            if (hosts.size() == BATCH_SIZE) {
+                _repository.addOrUpdateHosts(hosts);
+                hosts.clear();
+            }
+        }
+        _repository.addOrUpdateHosts(hosts);
+    }
+
+    /**
+     * Release the repository and stop the application.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _repository.close();
+        Helpers.stop(_application);
+    }
+
+    /**
+     * Query by a partial hostname.
+     *
+     * @return The query result.
+     */
+    @Benchmark
+    public QueryResult<Host> queryPartialHostname() {
+        return _repository.createQuery()
+                .partialHostname(Optional.of("app42"))
+                .limit(PAGE_SIZE)
+                .execute();
+    }
+
+    /**
+     * Query the first page of all hosts ordered by hostname.
+     *
+     * @return The query result.
+     */
+    @Benchmark
+    public QueryResult<Host> querySortedByHostname() {
+        return _repository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .limit(PAGE_SIZE)
+                .execute();
+    }
+
+    /**
+     * Update an existing host.
+     */
+    @Benchmark
+    public void addOrUpdateHost() {
+        _repository.addOrUpdateHost(LocalHostRepositoryBenchmark.createHost(_next++ % hostCount));
+    }
+
+    // NOTE: Parameters are injected by the generated harness and must be public
+    @Param({"1000", "10000", "100000"})
+    public int hostCount;
+
+    private FakeApplication _application;
+    private DatabaseHostRepository _repository;
+    private int _next = 0;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 100;
+}
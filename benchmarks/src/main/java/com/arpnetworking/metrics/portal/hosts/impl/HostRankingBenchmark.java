@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for ranking hostnames by relevance with a
+ * <code>HostnameScorer</code> and a <code>RankedSelection</code>. Execute
+ * with the gc profiler (<code>-prof gc</code>) and compare the normalized
+ * allocation rate (<code>gc.alloc.rate.norm</code>) across parameters; it
+ * should grow with the limit and stay flat as the number of candidates grows.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HostRankingBenchmark {
+
+    /**
+     * Create the normalized candidate hostnames.
+     */
+    @Setup
+    public void setUp() {
+        _hostnames = new String[candidateCount];
+        for (int i = 0; i < candidateCount; ++i) {
+            _hostnames[i] = HostnameScorer.normalize(LocalHostRepositoryBenchmark.createHost(i).getHostname());
+        }
+        _scorer = new HostnameScorer("app1");
+    }
+
+    /**
+     * Score every candidate and select the best <code>limit</code>.
+     *
+     * @return The selected hostnames.
+     */
+    @Benchmark
+    public List<String> rank() {
+        final RankedSelection<String> selection = new RankedSelection<>(limit, Comparator.<String>naturalOrder());
+        for (final String hostname : _hostnames) {
+            if (_scorer.matches(hostname)) {
+                selection.offer(_scorer.score(hostname), hostname);
+            }
+        }
+        return selection.drain();
+    }
+
+    // NOTE: Parameters are injected by the generated harness and must be public
+    @Param({"10000", "100000"})
+    public int candidateCount;
+
+    // NOTE: Parameters are injected by the generated harness and must be public
+    @Param({"10", "100", "1000"})
+    public int limit;
+
+    private String[] _hostnames;
+    private HostnameScorer _scorer;
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the <code>HostnameTokenizer</code> against the regular
+ * expression split it replaced. Run with <code>-prof gc</code> to compare the
+ * allocation rates.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HostnameTokenizerBenchmark {
+
+    /**
+     * Tokenize the hostname with the regular expression split.
+     *
+     * @return The tokens.
+     */
+    @Benchmark
+    public List<String> regex() {
+        final List<String> tokens = new ArrayList<>();
+        for (final String token : hostname.split("([^\\p{Alnum}])|((?<=\\p{Alpha})(?=\\p{Digit})|(?<=\\p{Digit})(?=\\p{Alpha}))")) {
+            if (!token.isEmpty()) {
+                tokens.add(token.toLowerCase(Locale.getDefault()));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Tokenize the hostname into a list.
+     *
+     * @return The tokens.
+     */
+    @Benchmark
+    public List<String> tokenize() {
+        return HostnameTokenizer.tokenize(hostname);
+    }
+
+    /**
+     * Stream the tokens of the hostname without collecting them.
+     *
+     * @param blackhole The <code>Blackhole</code> consuming the tokens.
+     */
+    @Benchmark
+    public void forEachToken(final Blackhole blackhole) {
+        HostnameTokenizer.forEachToken(hostname, blackhole::consume);
+    }
+
+    /**
+     * Build the full text index document of the hostname into a reused builder.
+     *
+     * @return The builder.
+     */
+    @Benchmark
+    public StringBuilder appendTokens() {
+        _builder.setLength(0);
+        HostnameTokenizer.appendTokens(hostname, _builder);
+        return _builder;
+    }
+
+    // NOTE: Parameters are injected by the generated harness and must be public
+    @Param({
+            "app1",
+            "test-app1.snc1",
+            "kafka-broker-0042.us-west-2.compute.internal",
+            "WEB-Frontend-07.Prod.SEA1.example.com"})
+    public String hostname;
+
+    private final StringBuilder _builder = new StringBuilder();
+}
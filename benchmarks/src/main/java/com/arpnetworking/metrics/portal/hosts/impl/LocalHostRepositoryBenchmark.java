@@ -0,0 +1,140 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.MetricsSoftwareState;
+import models.internal.QueryResult;
+import models.internal.impl.DefaultHost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for <code>LocalHostRepository</code> queries as the number of
+ * hosts grows.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LocalHostRepositoryBenchmark {
+
+    /**
+     * Populate the repository.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        _repository = new LocalHostRepository();
+        _repository.open();
+        final List<Host> hosts = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < hostCount; ++i) {
+            hosts.add(createHost(i));
+            if (hosts.size() == BATCH_SIZE) {
+                _repository.addOrUpdateHosts(hosts);
+                hosts.clear();
+            }
+        }
+        _repository.addOrUpdateHosts(hosts);
+    }
+
+    /**
+     * Release the repository.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _repository.close();
+    }
+
+    /**
+     * Query by a partial hostname matching a small fraction of the hosts.
+     *
+     * @return The query result.
+     */
+    @Benchmark
+    public QueryResult<Host> queryPartialHostname() {
+        return _repository.createQuery()
+                .partialHostname(Optional.of("app42"))
+                .limit(PAGE_SIZE)
+                .execute();
+    }
+
+    /**
+     * Query by cluster and metrics software state.
+     *
+     * @return The query result.
+     */
+    @Benchmark
+    public QueryResult<Host> queryClusterAndState() {
+        return _repository.createQuery()
+                .cluster(Optional.of("cluster7"))
+                .metricsSoftwareState(Optional.of(STATES[7 % STATES.length]))
+                .limit(PAGE_SIZE)
+                .execute();
+    }
+
+    /**
+     * Query the first page of all hosts ordered by hostname.
+     *
+     * @return The query result.
+     */
+    @Benchmark
+    public QueryResult<Host> querySortedByHostname() {
+        return _repository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .limit(PAGE_SIZE)
+                .execute();
+    }
+
+    /* package private */ static Host createHost(final int index) {
+        return new DefaultHost.Builder()
+                .setHostname(String.format("app%d.cluster%d.example.com", index, index % CLUSTER_COUNT))
+                .setCluster("cluster" + (index % CLUSTER_COUNT))
+                .setMetricsSoftwareState(STATES[index % STATES.length])
+                .build();
+    }
+
+    // NOTE: Parameters are injected by the generated harness and must be public
+    @Param({"10000", "100000", "1000000"})
+    public int hostCount;
+
+    private LocalHostRepository _repository;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 100;
+    private static final int CLUSTER_COUNT = 100;
+    private static final MetricsSoftwareState[] STATES = MetricsSoftwareState.values();
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package models.view;
+
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import play.libs.Json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for rendering a page of hosts as JSON the way the host
+ * controller does.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PagedContainerBenchmark {
+
+    /**
+     * Create the page of hosts.
+     */
+    @Setup
+    public void setUp() {
+        Json.setObjectMapper(ObjectMapperFactory.getInstance());
+        _hosts = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; ++i) {
+            final Host host = new Host();
+            host.setHostname(String.format("app%d.cluster%d.example.com", i, i % 10));
+            host.setCluster("cluster" + (i % 10));
+            host.setMetricsSoftwareState("LATEST_VERSION_INSTALLED");
+            _hosts.add(host);
+        }
+    }
+
+    /**
+     * Wrap the page and convert it to a JSON tree.
+     *
+     * @return The JSON tree.
+     */
+    @Benchmark
+    public JsonNode toJson() {
+        return Json.toJson(createContainer());
+    }
+
+    /**
+     * Wrap the page and render it as a JSON string.
+     *
+     * @return The JSON string.
+     */
+    @Benchmark
+    public String stringify() {
+        return Json.stringify(Json.toJson(createContainer()));
+    }
+
+    private PagedContainer<Host> createContainer() {
+        return new PagedContainer<>(
+                _hosts,
+                new Pagination(
+                        "/v1/hosts/query",
+                        Optional.of(TOTAL),
+                        false,
+                        _hosts.size(),
+                        pageSize,
+                        Optional.of(pageSize),
+                        Optional.empty(),
+                        Optional.empty(),
+                        ImmutableMap.of("name", "app", "cluster", "cluster1")));
+    }
+
+    // NOTE: Parameters are injected by the generated harness and must be public
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    private List<Host> _hosts;
+
+    private static final long TOTAL = 100000;
+}
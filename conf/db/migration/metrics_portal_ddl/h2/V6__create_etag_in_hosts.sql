@@ -0,0 +1,23 @@
+/**
+ * Copyright 2016 Groupon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- Hosts etag --
+CREATE SEQUENCE portal.hosts_etag_seq START WITH 1 INCREMENT BY 1 NO MINVALUE NO MAXVALUE;
+-- Trigger to be executed after each insert, update and delete statement --
+CREATE TRIGGER update_hosts_etag
+AFTER INSERT, DELETE, UPDATE ON portal.hosts
+FOR EACH ROW
+CALL "com.arpnetworking.database.h2.triggers.HostsUpdateEtagTrigger";
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2016 Groupon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+CREATE TABLE portal.host_tokens (
+    host_id INTEGER NOT NULL REFERENCES portal.hosts (id) ON DELETE CASCADE,
+    token VARCHAR(255) NOT NULL,
+    PRIMARY KEY (host_id, token)
+);
+
+CREATE INDEX host_tokens_token_idx ON portal.host_tokens (token);
+
+CREATE TRIGGER update_hosts_tokens
+AFTER INSERT, UPDATE ON portal.hosts
+FOR EACH ROW
+CALL "com.arpnetworking.database.h2.triggers.HostsUpdateTokensTrigger";
+
+/* Tokenize the existing hosts */
+UPDATE portal.hosts SET name = name;
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2016 Groupon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+CREATE TABLE portal.alert_trigrams (
+    alert_id INTEGER NOT NULL REFERENCES portal.alerts (id) ON DELETE CASCADE,
+    trigram VARCHAR(3) NOT NULL,
+    PRIMARY KEY (alert_id, trigram)
+);
+
+CREATE INDEX alert_trigrams_trigram_idx ON portal.alert_trigrams (trigram, alert_id);
+
+CREATE TRIGGER update_alerts_trigrams
+AFTER INSERT, UPDATE ON portal.alerts
+FOR EACH ROW
+CALL "com.arpnetworking.database.h2.triggers.AlertsUpdateTrigramsTrigger";
+
+CREATE TABLE portal.expression_trigrams (
+    expression_id INTEGER NOT NULL REFERENCES portal.expressions (id) ON DELETE CASCADE,
+    trigram VARCHAR(3) NOT NULL,
+    PRIMARY KEY (expression_id, trigram)
+);
+
+CREATE INDEX expression_trigrams_trigram_idx ON portal.expression_trigrams (trigram, expression_id);
+
+CREATE TRIGGER update_expressions_trigrams
+AFTER INSERT, UPDATE ON portal.expressions
+FOR EACH ROW
+CALL "com.arpnetworking.database.h2.triggers.ExpressionsUpdateTrigramsTrigger";
+
+/* Index the existing alerts and expressions */
+UPDATE portal.alerts SET name = name;
+UPDATE portal.expressions SET cluster = cluster;
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2016 Groupon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- Hosts etag --
+CREATE SEQUENCE portal.hosts_etag_seq;
+
+CREATE OR REPLACE FUNCTION update_hosts_etag() RETURNS TRIGGER AS $update_hosts_etag$
+BEGIN
+    PERFORM NEXTVAL('portal.hosts_etag_seq');
+    -- The result of an after trigger is ignored; a before trigger returning
+    -- NEW would cancel every delete since NEW is null for deletes
+    RETURN NULL;
+END;
+$update_hosts_etag$ LANGUAGE 'plpgsql';
+-- Trigger to be executed after each insert, update and delete statement --
+CREATE TRIGGER update_hosts_etag
+AFTER INSERT OR DELETE OR UPDATE ON portal.hosts
+FOR EACH ROW
+EXECUTE PROCEDURE update_hosts_etag();
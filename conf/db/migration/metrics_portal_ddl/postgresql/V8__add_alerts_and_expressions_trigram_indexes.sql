@@ -0,0 +1,30 @@
+/**
+ * Copyright 2016 Groupon
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* Trigram indexes serve the LIKE '%term%' clauses of alert and expression queries */
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX alerts_name_trgm_idx ON portal.alerts USING gin (name gin_trgm_ops);
+CREATE INDEX alerts_cluster_trgm_idx ON portal.alerts USING gin (cluster gin_trgm_ops);
+CREATE INDEX alerts_service_trgm_idx ON portal.alerts USING gin (service gin_trgm_ops);
+CREATE INDEX alerts_metric_trgm_idx ON portal.alerts USING gin (metric gin_trgm_ops);
+CREATE INDEX alerts_statistic_trgm_idx ON portal.alerts USING gin (statistic gin_trgm_ops);
+CREATE INDEX alerts_operator_trgm_idx ON portal.alerts USING gin (operator gin_trgm_ops);
+
+CREATE INDEX expressions_cluster_trgm_idx ON portal.expressions USING gin (cluster gin_trgm_ops);
+CREATE INDEX expressions_service_trgm_idx ON portal.expressions USING gin (service gin_trgm_ops);
+CREATE INDEX expressions_metric_trgm_idx ON portal.expressions USING gin (metric gin_trgm_ops);
+CREATE INDEX expressions_script_trgm_idx ON portal.expressions USING gin (script gin_trgm_ops);
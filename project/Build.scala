@@ -26,6 +26,7 @@ import com.typesafe.sbt.web.Import._
 import com.typesafe.sbt.web.js.JS
 import de.johoop.findbugs4sbt.FindBugs._
 import de.johoop.findbugs4sbt.{Effort, Priority, ReportType}
+import pl.project13.scala.sbt.JmhPlugin
 import play.routes.compiler.InjectedRoutesGenerator
 import play.sbt.PlayImport.PlayKeys._
 import play.sbt.routes.RoutesKeys.routesGenerator
@@ -65,11 +66,12 @@ object ApplicationBuild extends Build {
       "com.typesafe.akka" %% "akka-cluster" % akkaVersion,
       "com.typesafe.akka" %% "akka-cluster-tools" % akkaVersion,
       "com.typesafe.akka" %% "akka-slf4j" % akkaVersion,
+      "com.typesafe.akka" %% "akka-testkit" % akkaVersion % "test",
       "com.typesafe.play" %% "play-ebean" % "1.0.0",
+      "io.netty" % "netty" % "3.10.4.Final",
       "net.sf.oval" % "oval" % "1.82",
       "org.elasticsearch" % "elasticsearch" % "1.7.2",
       "org.flywaydb" % "flyway-play_2.11" % "2.2.1",
-      "org.java-websocket" % "Java-WebSocket" % "1.3.0",
       "org.postgresql" % "postgresql" % "9.4-1202-jdbc42",
       "org.webjars" % "bean" % "1.0.14",
       "org.webjars" % "bootstrap" % "3.2.0",
@@ -204,6 +206,8 @@ object ApplicationBuild extends Build {
 
       devSettings := Seq(("config.resource", "portal.application.conf")),
       javaOptions in Test += "-Dconfig.file=conf/portal.application.conf",
+      // Forward the optional Postgresql test database (e.g. sbt -Dpostgresql.url=...) to the forked tests
+      javaOptions in Test ++= sys.props.toSeq.collect({ case (k, v) if k.startsWith("postgresql.") => s"-D$k=$v" }),
 
       JsEngineKeys.engineType := JsEngineKeys.EngineType.Node,
       routesGenerator := InjectedRoutesGenerator,
@@ -280,4 +284,22 @@ object ApplicationBuild extends Build {
         </FindBugsFilter>
       )
     )
+
+    // Microbenchmarks; execute with: ./activator "project metrics-portal-benchmarks" "jmh:run"
+    val benchmarks = Project(appName + "-benchmarks", file("benchmarks")).enablePlugins(JmhPlugin).dependsOn(main % "compile->test").settings(
+      scalaVersion := "2.11.6",
+      resolvers += Resolver.mavenLocal,
+      publishArtifact := false,
+      publish := {},
+      publishLocal := {},
+
+      // Web Socket server for the proxy benchmarks
+      libraryDependencies += "org.java-websocket" % "Java-WebSocket" % "1.3.0",
+
+      javacOptions ++= Seq(
+        "-Xlint:all",
+        "-Xlint:-path",
+        "-Xlint:-processing"
+      )
+    )
 }
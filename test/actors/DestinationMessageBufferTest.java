@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>DestinationMessageBuffer</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class DestinationMessageBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new DestinationMessageBuffer(0);
+    }
+
+    @Test
+    public void testFifo() {
+        final DestinationMessageBuffer buffer = new DestinationMessageBuffer(3);
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertNull(buffer.poll());
+        Assert.assertTrue(buffer.offer(createMessage("a")));
+        Assert.assertTrue(buffer.offer(createReport("b")));
+        Assert.assertEquals(2, buffer.size());
+        Assert.assertFalse(buffer.isFull());
+        Assert.assertEquals("a", buffer.poll().getMessage());
+        Assert.assertEquals("b", buffer.poll().getMessage());
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertEquals(0, buffer.drainDropped());
+    }
+
+    @Test
+    public void testFullDropsOldestReport() {
+        final DestinationMessageBuffer buffer = new DestinationMessageBuffer(3);
+        Assert.assertTrue(buffer.offer(createMessage("a")));
+        Assert.assertTrue(buffer.offer(createReport("b")));
+        Assert.assertTrue(buffer.offer(createReport("c")));
+        Assert.assertTrue(buffer.isFull());
+
+        Assert.assertTrue(buffer.offer(createMessage("d")));
+        Assert.assertEquals(3, buffer.size());
+        Assert.assertEquals(1, buffer.drainDropped());
+        Assert.assertEquals(0, buffer.drainDropped());
+
+        // The order of the remaining messages is preserved
+        Assert.assertEquals("a", buffer.poll().getMessage());
+        Assert.assertEquals("c", buffer.poll().getMessage());
+        Assert.assertEquals("d", buffer.poll().getMessage());
+    }
+
+    @Test
+    public void testFullWithoutReportsRefuses() {
+        final DestinationMessageBuffer buffer = new DestinationMessageBuffer(2);
+        Assert.assertTrue(buffer.offer(createMessage("a")));
+        Assert.assertTrue(buffer.offer(createMessage("b")));
+
+        Assert.assertFalse(buffer.offer(createReport("c")));
+        Assert.assertFalse(buffer.offer(createMessage("d")));
+        Assert.assertEquals(2, buffer.size());
+        Assert.assertEquals(0, buffer.drainDropped());
+        Assert.assertEquals("a", buffer.poll().getMessage());
+        Assert.assertEquals("b", buffer.poll().getMessage());
+    }
+
+    @Test
+    public void testReportsReplaceReports() {
+        final DestinationMessageBuffer buffer = new DestinationMessageBuffer(2);
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(buffer.offer(createReport(Integer.toString(i))));
+        }
+        Assert.assertEquals(3, buffer.drainDropped());
+        Assert.assertEquals("3", buffer.poll().getMessage());
+        Assert.assertEquals("4", buffer.poll().getMessage());
+    }
+
+    private static ProxyHub.DestinationMessage createMessage(final String message) {
+        return new ProxyHub.DestinationMessage(message);
+    }
+
+    private static ProxyHub.DestinationMessage createReport(final String message) {
+        return new ProxyHub.DestinationMessage(message, JsonNodeFactory.instance.objectNode(), System.nanoTime());
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.JavaTestKit;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.ConfigFactory;
+import models.messages.ProxyConnectDestination;
+import models.messages.ProxyConnectOriginator;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Configuration;
+import play.mvc.WebSocket;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for <code>ProxyConnection</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class ProxyConnectionTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        _system = ActorSystem.create("ProxyConnectionTest");
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        JavaTestKit.shutdownActorSystem(_system);
+    }
+
+    @Test
+    public void testWritesPaced() {
+        final RecordingOut out = new RecordingOut();
+        final JavaTestKit hub = new JavaTestKit(_system);
+        final ActorRef connection = connect(hub, out, createConfiguration(2, "1 hour", 1, "1 hour"));
+
+        connection.tell(new ProxyHub.DestinationMessage("a"), hub.getRef());
+        connection.tell(new ProxyHub.DestinationMessage("b"), hub.getRef());
+        hub.expectNoMsg(QUIET);
+
+        // Only the first frame is written before the next flush
+        Assert.assertEquals(Collections.singletonList("a"), out.getWrites());
+    }
+
+    @Test
+    public void testReportsDroppedWhenFull() {
+        final RecordingOut out = new RecordingOut();
+        final JavaTestKit hub = new JavaTestKit(_system);
+        final ActorRef connection = connect(hub, out, createConfiguration(2, "1 hour", 1, "1 hour"));
+        hub.watch(connection);
+
+        connection.tell(new ProxyHub.DestinationMessage("a"), hub.getRef());
+        for (int i = 0; i < 5; ++i) {
+            connection.tell(createReport(), hub.getRef());
+        }
+        // A command displaces the oldest report instead of disconnecting
+        connection.tell(new ProxyHub.DestinationMessage("b"), hub.getRef());
+        hub.expectNoMsg(QUIET);
+    }
+
+    @Test
+    public void testOverflowDisconnects() {
+        final RecordingOut out = new RecordingOut();
+        final JavaTestKit hub = new JavaTestKit(_system);
+        final ActorRef connection = connect(hub, out, createConfiguration(2, "1 hour", 1, "1 hour"));
+        hub.watch(connection);
+
+        // One frame is written and the buffer holds two more
+        for (int i = 0; i < 3; ++i) {
+            connection.tell(new ProxyHub.DestinationMessage(Integer.toString(i)), hub.getRef());
+        }
+        hub.expectNoMsg(QUIET);
+
+        // Commands are never dropped so the next one cannot be accepted
+        connection.tell(new ProxyHub.DestinationMessage("3"), hub.getRef());
+        hub.expectTerminated(connection);
+        Assert.assertTrue(out.isClosed());
+    }
+
+    @Test
+    public void testSlowConsumerDisconnected() {
+        final RecordingOut out = new RecordingOut();
+        final JavaTestKit hub = new JavaTestKit(_system);
+        final ActorRef connection = connect(hub, out, createConfiguration(2, "100 milliseconds", 0, "300 milliseconds"));
+        hub.watch(connection);
+
+        // Reports never overflow the buffer but it stays full
+        for (int i = 0; i < 3; ++i) {
+            connection.tell(createReport(), hub.getRef());
+        }
+        hub.expectTerminated(connection);
+        Assert.assertTrue(out.getWrites().isEmpty());
+        Assert.assertTrue(out.isClosed());
+    }
+
+    private static ActorRef connect(final JavaTestKit hub, final RecordingOut out, final Configuration configuration) {
+        final ActorRef connection = _system.actorOf(ProxyConnection.props(configuration, METRICS_FACTORY, hub.getRef()));
+        connection.tell(new ProxyConnectOriginator(new WebSocket.In<>(), out), hub.getRef());
+        connection.tell(new ProxyConnectDestination(DESTINATION), hub.getRef());
+
+        // The probe stands in for both the hub manager and the hub
+        Assert.assertEquals(DESTINATION, hub.expectMsgClass(ProxyHub.Attach.class).getUri());
+        hub.reply(new ProxyHub.Attached(DESTINATION));
+        return connection;
+    }
+
+    private static Configuration createConfiguration(
+            final int bufferSize,
+            final String flushInterval,
+            final int maxFramesPerFlush,
+            final String slowConsumerTimeout) {
+        return new Configuration(ConfigFactory.parseMap(ImmutableMap.<String, Object>builder()
+                .put("proxy.metricsInterval", "1 second")
+                .put("proxy.connection.bufferSize", bufferSize)
+                .put("proxy.connection.flushInterval", flushInterval)
+                .put("proxy.connection.maxFramesPerFlush", maxFramesPerFlush)
+                .put("proxy.connection.slowConsumerTimeout", slowConsumerTimeout)
+                .put("proxy.connection.coalesce.enabled", false)
+                .build()));
+    }
+
+    private static ProxyHub.DestinationMessage createReport() {
+        return new ProxyHub.DestinationMessage("report", JsonNodeFactory.instance.objectNode(), System.nanoTime());
+    }
+
+    private static ActorSystem _system;
+
+    private static final URI DESTINATION = URI.create("ws://localhost:7090/");
+    private static final FiniteDuration QUIET = Duration.create(500, TimeUnit.MILLISECONDS);
+    private static final TsdMetricsFactory METRICS_FACTORY = new TsdMetricsFactory.Builder()
+            .setServiceName("ProxyConnectionTest")
+            .setClusterName("ProxyConnectionTest")
+            .setSinks(Collections.emptyList())
+            .build();
+
+    private static final class RecordingOut implements WebSocket.Out<String> {
+
+        @Override
+        public void write(final String frame) {
+            _writes.add(frame);
+        }
+
+        @Override
+        public void close() {
+            _isClosed = true;
+        }
+
+        public List<String> getWrites() {
+            return _writes;
+        }
+
+        public boolean isClosed() {
+            return _isClosed;
+        }
+
+        private final List<String> _writes = new CopyOnWriteArrayList<>();
+        private volatile boolean _isClosed = false;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.websocket.NioWebSocketClient;
+import com.arpnetworking.websocket.WebSocketTestServer;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.ConfigFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Configuration;
+
+import java.util.Collections;
+
+/**
+ * Tests for <code>ProxyHubManager</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class ProxyHubManagerTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        _system = ActorSystem.create("ProxyHubManagerTest");
+        _client = new NioWebSocketClient(1, 1000);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        _client.shutdown();
+        JavaTestKit.shutdownActorSystem(_system);
+    }
+
+    @Before
+    public void setUp() {
+        _server = new WebSocketTestServer();
+        _manager = _system.actorOf(Props.create(
+                ProxyHubManager.class,
+                new Configuration(ConfigFactory.parseMap(ImmutableMap.<String, Object>of(
+                        "proxy.metricsInterval", "1 second",
+                        "proxy.hub.bufferSize", 10))),
+                new TsdMetricsFactory.Builder()
+                        .setServiceName("ProxyHubManagerTest")
+                        .setClusterName("ProxyHubManagerTest")
+                        .setSinks(Collections.emptyList())
+                        .build(),
+                _client));
+    }
+
+    @After
+    public void tearDown() {
+        _system.stop(_manager);
+        _server.close();
+    }
+
+    @Test
+    public void testAttachSharesHub() throws InterruptedException {
+        final ActorRef hub1 = attach(new JavaTestKit(_system));
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+        final ActorRef hub2 = attach(new JavaTestKit(_system));
+        Assert.assertEquals(hub1, hub2);
+        Assert.assertFalse(_server.awaitConnection(NO_CONNECTION_MILLIS));
+    }
+
+    @Test
+    public void testIdleHubStopped() throws InterruptedException {
+        final JavaTestKit connection = new JavaTestKit(_system);
+        final ActorRef hub = attach(connection);
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+
+        final JavaTestKit watcher = new JavaTestKit(_system);
+        watcher.watch(hub);
+        _system.stop(connection.getRef());
+        watcher.expectTerminated(hub);
+        Assert.assertTrue(_server.awaitClose(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void testClosedHubReplaced() throws InterruptedException {
+        final JavaTestKit connection1 = new JavaTestKit(_system);
+        final ActorRef hub1 = attach(connection1);
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+        connection1.watch(hub1);
+
+        // The attached connections observe the hub stop with its destination
+        _server.closeConnections();
+        connection1.expectTerminated(hub1);
+
+        // Later attaches are not sent to the closed hub
+        final ActorRef hub2 = attach(new JavaTestKit(_system));
+        Assert.assertNotEquals(hub1, hub2);
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+    }
+
+    private ActorRef attach(final JavaTestKit connection) {
+        _manager.tell(new ProxyHub.Attach(_server.getUri()), connection.getRef());
+        connection.expectMsgClass(ProxyHub.Attached.class);
+        return connection.getLastSender();
+    }
+
+    private WebSocketTestServer _server;
+    private ActorRef _manager;
+
+    private static ActorSystem _system;
+    private static NioWebSocketClient _client;
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long NO_CONNECTION_MILLIS = 500;
+}
@@ -0,0 +1,349 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.testkit.JavaTestKit;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.websocket.NioWebSocketClient;
+import com.arpnetworking.websocket.WebSocketTestServer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for <code>ProxyHub</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class ProxyHubTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        _system = ActorSystem.create("ProxyHubTest");
+        _client = new NioWebSocketClient(1, 1000);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        _client.shutdown();
+        JavaTestKit.shutdownActorSystem(_system);
+    }
+
+    @Before
+    public void setUp() throws InterruptedException {
+        _server = new WebSocketTestServer();
+        _parentProbe = new JavaTestKit(_system);
+        _hub = _system.actorOf(Props.create(
+                Parent.class,
+                ProxyHub.props(METRICS_FACTORY, _client, _server.getUri(), METRICS_INTERVAL, BUFFER_SIZE),
+                _parentProbe.getRef()));
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+    }
+
+    @After
+    public void tearDown() {
+        _system.stop(_hub);
+        _server.close();
+    }
+
+    @Test
+    public void testSubscriptionsAreUnioned() throws InterruptedException {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+
+        // Only the first subscriber to a metric subscribes upstream
+        send(connection1, subscribe("m1"));
+        Assert.assertEquals(subscribe("m1"), _server.pollMessage(TIMEOUT_MILLIS));
+        send(connection2, subscribe("m1"));
+        send(connection2, subscribe("m2"));
+        Assert.assertEquals(subscribe("m2"), _server.pollMessage(TIMEOUT_MILLIS));
+
+        // Reports are delivered only to the subscribers of their metric
+        _server.send(report("m1"));
+        Assert.assertEquals(report("m1"), expectDestinationMessage(connection1).getMessage());
+        Assert.assertEquals(report("m1"), expectDestinationMessage(connection2).getMessage());
+        _server.send(report("m2"));
+        Assert.assertEquals(report("m2"), expectDestinationMessage(connection2).getMessage());
+        connection1.expectNoMsg(NO_MESSAGE_DURATION);
+
+        // Only the last subscriber to a metric unsubscribes upstream
+        send(connection1, unsubscribe("m1"));
+        send(connection2, unsubscribe("m1"));
+        Assert.assertEquals(unsubscribe("m1"), _server.pollMessage(TIMEOUT_MILLIS));
+        Assert.assertNull(_server.pollMessage(NO_MESSAGE_MILLIS));
+    }
+
+    @Test
+    public void testDetachReleasesSubscriptions() throws InterruptedException {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+        send(connection1, subscribe("m1"));
+        send(connection1, subscribe("m2"));
+        send(connection2, subscribe("m2"));
+        Assert.assertEquals(subscribe("m1"), _server.pollMessage(TIMEOUT_MILLIS));
+        Assert.assertEquals(subscribe("m2"), _server.pollMessage(TIMEOUT_MILLIS));
+
+        _system.stop(connection1.getRef());
+        Assert.assertEquals(unsubscribe("m1"), _server.pollMessage(TIMEOUT_MILLIS));
+        Assert.assertNull(_server.pollMessage(NO_MESSAGE_MILLIS));
+        Assert.assertEquals(1, _parentProbe.expectMsgClass(ProxyHub.Connections.class).getCount());
+
+        // The remaining subscriber still receives its reports
+        _server.send(report("m2"));
+        Assert.assertEquals(report("m2"), expectDestinationMessage(connection2).getMessage());
+    }
+
+    @Test
+    public void testIdleAfterLastDetach() {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+
+        _system.stop(connection1.getRef());
+        Assert.assertEquals(1, _parentProbe.expectMsgClass(ProxyHub.Connections.class).getCount());
+        _parentProbe.expectNoMsg(NO_MESSAGE_DURATION);
+
+        _system.stop(connection2.getRef());
+        Assert.assertEquals(0, _parentProbe.expectMsgClass(ProxyHub.Connections.class).getCount());
+        Assert.assertEquals(2, _parentProbe.expectMsgClass(ProxyHub.Idle.class).getAttaches());
+    }
+
+    @Test
+    public void testReplyDeliveredToRequester() throws InterruptedException {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+
+        send(connection2, GET_METRICS);
+        Assert.assertEquals(GET_METRICS, _server.pollMessage(TIMEOUT_MILLIS));
+        _server.send(METRICS_LIST);
+        Assert.assertEquals(METRICS_LIST, expectDestinationMessage(connection2).getMessage());
+        connection1.expectNoMsg(NO_MESSAGE_DURATION);
+
+        // Other messages are delivered to every connection
+        _server.send(NEW_METRIC);
+        Assert.assertEquals(NEW_METRIC, expectDestinationMessage(connection1).getMessage());
+        Assert.assertEquals(NEW_METRIC, expectDestinationMessage(connection2).getMessage());
+    }
+
+    @Test
+    public void testHeartbeatDeliveredToRequester() throws InterruptedException {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+
+        // Each heartbeat is answered once and only to the connection which sent it
+        send(connection1, HEARTBEAT);
+        send(connection2, HEARTBEAT);
+        Assert.assertEquals(HEARTBEAT, _server.pollMessage(TIMEOUT_MILLIS));
+        Assert.assertEquals(HEARTBEAT, _server.pollMessage(TIMEOUT_MILLIS));
+        _server.send(HEARTBEAT_RESPONSE);
+        _server.send(HEARTBEAT_RESPONSE);
+        Assert.assertEquals(HEARTBEAT_RESPONSE, expectDestinationMessage(connection1).getMessage());
+        Assert.assertEquals(HEARTBEAT_RESPONSE, expectDestinationMessage(connection2).getMessage());
+        connection1.expectNoMsg(NO_MESSAGE_DURATION);
+        connection2.expectNoMsg(NO_MESSAGE_DURATION);
+    }
+
+    @Test
+    public void testV1SubscriptionsAreUnioned() throws InterruptedException {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+
+        send(connection1, subscribeV1("m1"));
+        send(connection2, subscribeV1("m1"));
+        Assert.assertEquals(subscribeV1("m1"), _server.pollMessage(TIMEOUT_MILLIS));
+        Assert.assertNull(_server.pollMessage(NO_MESSAGE_MILLIS));
+
+        // An unsubscribe does not end the subscription of the other connection
+        send(connection1, unsubscribeV1("m1"));
+        Assert.assertNull(_server.pollMessage(NO_MESSAGE_MILLIS));
+        _server.send(reportV1("m1"));
+        Assert.assertEquals(reportV1("m1"), expectDestinationMessage(connection2).getMessage());
+        connection1.expectNoMsg(NO_MESSAGE_DURATION);
+
+        // The last subscriber releases the subscription when it detaches
+        _system.stop(connection2.getRef());
+        Assert.assertEquals(unsubscribeV1("m1"), _server.pollMessage(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void testLogSubscriptionsAreUnioned() throws InterruptedException {
+        final JavaTestKit connection1 = attach();
+        final JavaTestKit connection2 = attach();
+
+        send(connection1, String.format(LOG_FORMAT, "subscribeLog"));
+        send(connection2, String.format(LOG_FORMAT, "subscribeLog"));
+        Assert.assertEquals(String.format(LOG_FORMAT, "subscribeLog"), _server.pollMessage(TIMEOUT_MILLIS));
+        Assert.assertNull(_server.pollMessage(NO_MESSAGE_MILLIS));
+
+        send(connection1, String.format(LOG_FORMAT, "unsubscribeLog"));
+        Assert.assertNull(_server.pollMessage(NO_MESSAGE_MILLIS));
+
+        _system.stop(connection2.getRef());
+        Assert.assertEquals(String.format(LOG_FORMAT, "unsubscribeLog"), _server.pollMessage(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void testDestinationClosed() throws InterruptedException {
+        attach();
+        _server.closeConnections();
+        _parentProbe.expectMsgClass(ProxyHub.Closed.class);
+    }
+
+    @Test
+    public void testDestinationQueueOverflow() throws IOException {
+        // The server accepts the connection but never answers the handshake so the destination never connects
+        try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final URI uri = URI.create("ws://localhost:" + serverSocket.getLocalPort() + "/");
+            final JavaTestKit parentProbe = new JavaTestKit(_system);
+            final ActorRef hub = _system.actorOf(Props.create(
+                    Parent.class,
+                    ProxyHub.props(METRICS_FACTORY, _client, uri, METRICS_INTERVAL, BUFFER_SIZE),
+                    parentProbe.getRef()));
+            try {
+                final JavaTestKit connection = new JavaTestKit(_system);
+                hub.tell(new ProxyHub.Attach(uri), connection.getRef());
+                connection.expectMsgClass(ProxyHub.Attached.class);
+                parentProbe.expectMsgClass(ProxyHub.Connections.class);
+
+                // Commands are queued up to the buffer size and never dropped
+                for (int i = 0; i < BUFFER_SIZE; ++i) {
+                    hub.tell(new ProxyHub.OriginatorMessage(subscribe("m" + i)), connection.getRef());
+                }
+                parentProbe.expectNoMsg(NO_MESSAGE_DURATION);
+                hub.tell(new ProxyHub.OriginatorMessage(subscribe("m" + BUFFER_SIZE)), connection.getRef());
+                parentProbe.expectMsgClass(ProxyHub.Closed.class);
+            } finally {
+                _system.stop(hub);
+            }
+        }
+    }
+
+    private JavaTestKit attach() {
+        final JavaTestKit connection = new JavaTestKit(_system);
+        _hub.tell(new ProxyHub.Attach(_server.getUri()), connection.getRef());
+        Assert.assertEquals(_server.getUri(), connection.expectMsgClass(ProxyHub.Attached.class).getUri());
+        _parentProbe.expectMsgClass(ProxyHub.Connections.class);
+        return connection;
+    }
+
+    private void send(final JavaTestKit connection, final String message) {
+        _hub.tell(new ProxyHub.OriginatorMessage(message), connection.getRef());
+    }
+
+    private static ProxyHub.DestinationMessage expectDestinationMessage(final JavaTestKit connection) {
+        return connection.expectMsgClass(ProxyHub.DestinationMessage.class);
+    }
+
+    private static String subscribe(final String metric) {
+        return String.format(SUBSCRIBE_FORMAT, "subscribeMetric", metric);
+    }
+
+    private static String unsubscribe(final String metric) {
+        return String.format(SUBSCRIBE_FORMAT, "unsubscribeMetric", metric);
+    }
+
+    private static String subscribeV1(final String metric) {
+        return String.format(SUBSCRIBE_FORMAT, "subscribe", metric);
+    }
+
+    private static String unsubscribeV1(final String metric) {
+        return String.format(SUBSCRIBE_FORMAT, "unsubscribe", metric);
+    }
+
+    private static String reportV1(final String metric) {
+        return String.format(
+                "{\"command\":\"report\",\"data\":{\"service\":\"s\",\"metric\":\"%s\",\"statistic\":\"mean\",\"data\":1}}",
+                metric);
+    }
+
+    private static String report(final String metric) {
+        return String.format(
+                "{\"command\":\"reportMetric\",\"data\":{\"service\":\"s\",\"metric\":\"%s\",\"statistic\":\"mean\",\"data\":1}}",
+                metric);
+    }
+
+    private WebSocketTestServer _server;
+    private JavaTestKit _parentProbe;
+    private ActorRef _hub;
+
+    private static ActorSystem _system;
+    private static NioWebSocketClient _client;
+
+    private static final int BUFFER_SIZE = 3;
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long NO_MESSAGE_MILLIS = 500;
+    private static final FiniteDuration NO_MESSAGE_DURATION = Duration.create(NO_MESSAGE_MILLIS, TimeUnit.MILLISECONDS);
+    private static final FiniteDuration METRICS_INTERVAL = Duration.create(1, TimeUnit.SECONDS);
+    // NOTE: The unsubscribe messages created by the hub serialize the fields in this order
+    private static final String SUBSCRIBE_FORMAT = "{\"command\":\"%s\",\"service\":\"s\",\"metric\":\"%s\",\"statistic\":\"mean\"}";
+    private static final String GET_METRICS = "{\"command\":\"getMetrics\"}";
+    private static final String HEARTBEAT = "{\"command\":\"heartbeat\"}";
+    private static final String HEARTBEAT_RESPONSE = "{\"response\":\"ok\"}";
+    private static final String LOG_FORMAT = "{\"command\":\"%s\",\"log\":\"/var/log/app.log\",\"regexes\":[\".*\"]}";
+    private static final String METRICS_LIST = "{\"command\":\"metricsList\",\"data\":[]}";
+    private static final String NEW_METRIC = "{\"command\":\"newMetric\",\"data\":{\"service\":\"s\",\"metric\":\"m3\"}}";
+    private static final MetricsFactory METRICS_FACTORY = new TsdMetricsFactory.Builder()
+            .setServiceName("ProxyHubTest")
+            .setClusterName("ProxyHubTest")
+            .setSinks(Collections.emptyList())
+            .build();
+
+    /**
+     * Parent of the hub under test. Forwards messages from the hub to the
+     * probe and all other messages to the hub.
+     */
+    public static final class Parent extends UntypedActor {
+
+        /**
+         * Public constructor.
+         *
+         * @param childProps The <code>Props</code> of the hub.
+         * @param probe The probe to forward the hub's messages to.
+         */
+        public Parent(final Props childProps, final ActorRef probe) {
+            _child = context().actorOf(childProps);
+            _probe = probe;
+        }
+
+        @Override
+        public void onReceive(final Object message) {
+            if (_child.equals(sender())) {
+                _probe.forward(message, context());
+            } else {
+                _child.forward(message, context());
+            }
+        }
+
+        private final ActorRef _child;
+        private final ActorRef _probe;
+    }
+}
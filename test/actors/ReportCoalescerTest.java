@@ -0,0 +1,84 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package actors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>ReportCoalescer</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class ReportCoalescerTest {
+
+    @Test
+    public void testDrainEmpty() {
+        final ReportCoalescer coalescer = new ReportCoalescer(ReportCoalescer.Mode.LAST);
+        Assert.assertNull(coalescer.drain());
+        Assert.assertEquals(0, coalescer.drainCoalesced());
+    }
+
+    @Test
+    public void testLast() {
+        final ReportCoalescer coalescer = new ReportCoalescer(ReportCoalescer.Mode.LAST);
+        coalescer.add(createReport("latency", "app1", 3), RECEIVED_AT + 1);
+        coalescer.add(createReport("errors", "app1", 5), RECEIVED_AT);
+        coalescer.add(createReport("latency", "app1", 1), RECEIVED_AT + 2);
+        coalescer.add(createReport("latency", "app2", 2), RECEIVED_AT);
+
+        final ProxyHub.DestinationMessage message = coalescer.drain();
+        Assert.assertTrue(message.isReport());
+        final JsonNode reports = message.getReport();
+        Assert.assertEquals(3, reports.size());
+        Assert.assertEquals("latency", reports.get(0).path("metric").asText());
+        Assert.assertEquals(1, reports.get(0).path("data").asInt());
+        Assert.assertEquals("errors", reports.get(1).path("metric").asText());
+        Assert.assertEquals("app2", reports.get(2).path("server").asText());
+        Assert.assertEquals(RECEIVED_AT, message.getReceivedAtNanos());
+        Assert.assertEquals(1, coalescer.drainCoalesced());
+        Assert.assertEquals(0, coalescer.drainCoalesced());
+        Assert.assertNull(coalescer.drain());
+    }
+
+    @Test
+    public void testMinAndMax() {
+        final ReportCoalescer min = new ReportCoalescer(ReportCoalescer.Mode.MIN);
+        final ReportCoalescer max = new ReportCoalescer(ReportCoalescer.Mode.MAX);
+        for (final int value : new int[] {4, 2, 7, 3}) {
+            min.add(createReport("latency", "app1", value), RECEIVED_AT);
+            max.add(createReport("latency", "app1", value), RECEIVED_AT);
+        }
+        Assert.assertEquals(2, min.drain().getReport().get(0).path("data").asInt());
+        Assert.assertEquals(7, max.drain().getReport().get(0).path("data").asInt());
+    }
+
+    private static ObjectNode createReport(final String metric, final String server, final int value) {
+        final ObjectNode report = JsonNodeFactory.instance.objectNode();
+        report.put("service", "app");
+        report.put("metric", metric);
+        report.put("statistic", "tp99");
+        report.put("server", server);
+        report.put("timestamp", 1456000000000L);
+        report.put("data", value);
+        return report;
+    }
+
+    private static final long RECEIVED_AT = 123456789L;
+}
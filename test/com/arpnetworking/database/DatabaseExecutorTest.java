@@ -0,0 +1,96 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for <code>DatabaseExecutor</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class DatabaseExecutorTest {
+
+    @Test
+    public void testSupply() throws Exception {
+        final DatabaseExecutor executor = new DatabaseExecutor("test", 1, 1);
+        Assert.assertEquals("value", executor.supply(() -> "value").toCompletableFuture().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectsWhenSaturated() throws Exception {
+        final DatabaseExecutor executor = new DatabaseExecutor("test", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletionStage<Boolean> running = executor.supply(() -> {
+            started.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        final CompletionStage<String> queued = executor.supply(() -> "queued");
+        final CompletionStage<String> rejected = executor.supply(() -> "rejected");
+        try {
+            rejected.toCompletableFuture().get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected exception");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        Assert.assertTrue(running.toCompletableFuture().get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("queued", queued.toCompletableFuture().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final DatabaseExecutor executor = new DatabaseExecutor("test", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletionStage<Boolean> running = executor.supply(() -> {
+            started.countDown();
+            try {
+                return new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        final CompletionStage<String> queued = executor.supply(() -> "queued");
+
+        executor.shutdown();
+        assertFailure(running, IllegalStateException.class);
+        assertFailure(queued, RejectedExecutionException.class);
+        assertFailure(executor.supply(() -> "later"), RejectedExecutionException.class);
+    }
+
+    private static void assertFailure(final CompletionStage<?> stage, final Class<? extends Throwable> expected) throws Exception {
+        try {
+            stage.toCompletableFuture().get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected exception");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue("Actual = " + e.getCause(), expected.isInstance(e.getCause()));
+        }
+    }
+}
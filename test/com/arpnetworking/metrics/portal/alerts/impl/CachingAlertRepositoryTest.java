@@ -0,0 +1,166 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.alerts.impl;
+
+import com.arpnetworking.metrics.portal.H2ConnectionStringFactory;
+import com.arpnetworking.metrics.portal.TestBeanFactory;
+import com.google.common.collect.ImmutableMap;
+import models.internal.Alert;
+import models.internal.AlertQuery;
+import models.internal.QueryResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import play.test.FakeApplication;
+import play.test.Helpers;
+import play.test.WithApplication;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests class <code>CachingAlertRepository</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class CachingAlertRepositoryTest extends WithApplication {
+
+    @Override
+    protected FakeApplication provideFakeApplication() {
+        final String jdbcUrl = H2ConnectionStringFactory.generateJdbcUrl();
+        return new FakeApplication(
+                new java.io.File("."),
+                Helpers.class.getClassLoader(),
+                ImmutableMap.of("db.metrics_portal_ddl.url", jdbcUrl, "db.default.url", jdbcUrl),
+                new ArrayList<String>(),
+                null);
+    }
+
+    @Before
+    public void setup() {
+        _queryGenerator = new CountingQueryGenerator(new DatabaseAlertRepository.H2QueryGenerator());
+        _repository = new CachingAlertRepository(new DatabaseAlertRepository(_queryGenerator), 100);
+        _repository.open();
+    }
+
+    @After
+    public void teardown() {
+        _repository.close();
+    }
+
+    @Test
+    public void testQueryHit() {
+        _repository.addOrUpdateAlert(TestBeanFactory.createAlert());
+        final QueryResult<Alert> first = _repository.createQuery().limit(10).execute();
+        final QueryResult<Alert> second = _repository.createQuery().limit(10).execute();
+        Assert.assertEquals(1, _queryGenerator.getQueries());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, second.values().size());
+    }
+
+    @Test
+    public void testQueryAsyncHit() throws Exception {
+        _repository.addOrUpdateAlert(TestBeanFactory.createAlert());
+        final QueryResult<Alert> first = _repository.queryAsync(_repository.createQuery().limit(10))
+                .toCompletableFuture()
+                .get();
+        final QueryResult<Alert> second = _repository.queryAsync(_repository.createQuery().limit(10))
+                .toCompletableFuture()
+                .get();
+        Assert.assertEquals(1, _queryGenerator.getQueries());
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void testQueryMiss() {
+        _repository.createQuery().limit(10).execute();
+        _repository.createQuery().limit(5).execute();
+        _repository.createQuery().limit(10).offset(Optional.of(1)).execute();
+        Assert.assertEquals(3, _queryGenerator.getQueries());
+    }
+
+    @Test
+    public void testQueryInvalidatedByWrite() {
+        final QueryResult<Alert> before = _repository.createQuery().limit(10).execute();
+        Assert.assertEquals(0, before.values().size());
+
+        _repository.addOrUpdateAlert(TestBeanFactory.createAlert());
+        final QueryResult<Alert> after = _repository.createQuery().limit(10).execute();
+        Assert.assertEquals(2, _queryGenerator.getQueries());
+        Assert.assertEquals(1, after.values().size());
+        Assert.assertNotEquals(before.etag(), after.etag());
+    }
+
+    @Test
+    public void testQueryKeysAreDistinct() {
+        // These queries render identically if the key is built by concatenating the fields
+        final Alert alert = TestBeanFactory.createAlertBuilder()
+                .setCluster("c")
+                .setService("s]&service=Optional[t")
+                .build();
+        _repository.addOrUpdateAlert(alert);
+
+        final QueryResult<Alert> first = _repository.createQuery()
+                .cluster(Optional.of("c]&service=Optional[s"))
+                .service(Optional.of("t"))
+                .limit(10)
+                .execute();
+        final QueryResult<Alert> second = _repository.createQuery()
+                .cluster(Optional.of("c"))
+                .service(Optional.of("s]&service=Optional[t"))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(2, _queryGenerator.getQueries());
+        Assert.assertTrue(first.values().isEmpty());
+        Assert.assertEquals(1, second.values().size());
+        Assert.assertEquals(alert.getId(), second.values().get(0).getId());
+    }
+
+    private CountingQueryGenerator _queryGenerator;
+    private CachingAlertRepository _repository;
+
+    private static final class CountingQueryGenerator implements DatabaseAlertRepository.AlertQueryGenerator {
+
+        CountingQueryGenerator(final DatabaseAlertRepository.AlertQueryGenerator queryGenerator) {
+            _queryGenerator = queryGenerator;
+        }
+
+        @Override
+        public QueryResult<models.ebean.Alert> createAlertQuery(final AlertQuery query) {
+            _queries.incrementAndGet();
+            return _queryGenerator.createAlertQuery(query);
+        }
+
+        @Override
+        public boolean saveAlert(final Alert alert) {
+            return _queryGenerator.saveAlert(alert);
+        }
+
+        @Override
+        public long getEtag() {
+            return _queryGenerator.getEtag();
+        }
+
+        public int getQueries() {
+            return _queries.get();
+        }
+
+        private final DatabaseAlertRepository.AlertQueryGenerator _queryGenerator;
+        private final AtomicInteger _queries = new AtomicInteger();
+    }
+}
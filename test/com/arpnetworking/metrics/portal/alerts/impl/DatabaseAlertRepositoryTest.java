@@ -42,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.PersistenceException;
 
 /**
@@ -126,6 +127,37 @@ public class DatabaseAlertRepositoryTest extends WithApplication {
         Assert.assertEquals(expected.get(), actualAlert);
     }
 
+    @Test
+    public void testAddOrUpdateAlertUpdateCase() {
+        final UUID uuid = UUID.randomUUID();
+        alertRepo.addOrUpdateAlert(TestBeanFactory.createAlertBuilder().setId(uuid).build());
+        final Alert updatedAlert = TestBeanFactory.createAlertBuilder().setId(uuid).build();
+        alertRepo.addOrUpdateAlert(updatedAlert);
+        Assert.assertEquals(1, alertRepo.getAlertCount());
+        Assert.assertEquals(updatedAlert, alertRepo.get(uuid).get());
+
+        final Alert removedExtensionAlert = TestBeanFactory.createAlertBuilder()
+                .setId(uuid)
+                .setNagiosExtension(null)
+                .build();
+        alertRepo.addOrUpdateAlert(removedExtensionAlert);
+        Assert.assertNull(alertRepo.get(uuid).get().getNagiosExtension());
+    }
+
+    @Test
+    public void testAsyncAddAndGet() throws Exception {
+        final UUID uuid = UUID.randomUUID();
+        final Alert actualAlert = TestBeanFactory.createAlertBuilder().setId(uuid).build();
+        alertRepo.addOrUpdateAlertAsync(actualAlert).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        final Optional<Alert> expected = alertRepo.getAsync(uuid).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(expected.isPresent());
+        Assert.assertEquals(expected.get(), actualAlert);
+        final QueryResult<Alert> result = alertRepo.queryAsync(alertRepo.createQuery())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, result.values().size());
+    }
+
     @Test
     public void testAddAlertWithNoExtension() {
         final UUID uuid = UUID.randomUUID();
@@ -366,6 +398,80 @@ public class DatabaseAlertRepositoryTest extends WithApplication {
         Assert.assertEquals(alert2.getId(), result.values().get(1).getId());
     }
 
+    @Test
+    public void testQueryContainsShortTerm() {
+        final Alert alert1 = TestBeanFactory.createAlertBuilder()
+                .setId(UUID.randomUUID())
+                .setMetric("my-zq-metric")
+                .build();
+        final Alert alert2 = TestBeanFactory.createAlertBuilder()
+                .setId(UUID.randomUUID())
+                .build();
+        alertRepo.addOrUpdateAlert(alert1);
+        alertRepo.addOrUpdateAlert(alert2);
+        final AlertQuery query = new DefaultAlertQuery(alertRepo);
+        query.contains(Optional.of("zq"));
+        final QueryResult<Alert> result = alertRepo.query(query);
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals(alert1.getId(), result.values().get(0).getId());
+    }
+
+    @Test
+    public void testQueryContainsRequiresContiguousTerm() {
+        // Every trigram of the term is present but the term itself is not
+        final Alert alert1 = TestBeanFactory.createAlertBuilder()
+                .setId(UUID.randomUUID())
+                .setMetric("abcd-bcde")
+                .build();
+        final Alert alert2 = TestBeanFactory.createAlertBuilder()
+                .setId(UUID.randomUUID())
+                .setMetric("xabcdex")
+                .build();
+        alertRepo.addOrUpdateAlert(alert1);
+        alertRepo.addOrUpdateAlert(alert2);
+        final AlertQuery query = new DefaultAlertQuery(alertRepo);
+        query.contains(Optional.of("abcde"));
+        final QueryResult<Alert> result = alertRepo.query(query);
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals(alert2.getId(), result.values().get(0).getId());
+    }
+
+    @Test
+    public void testQueryContainsAfterUpdate() {
+        final UUID uuid = UUID.randomUUID();
+        alertRepo.addOrUpdateAlert(TestBeanFactory.createAlertBuilder().setId(uuid).setMetric("before-metric").build());
+        alertRepo.addOrUpdateAlert(TestBeanFactory.createAlertBuilder().setId(uuid).setMetric("after-metric").build());
+
+        final AlertQuery beforeQuery = new DefaultAlertQuery(alertRepo);
+        beforeQuery.contains(Optional.of("before"));
+        Assert.assertEquals(0, alertRepo.query(beforeQuery).total());
+
+        final AlertQuery afterQuery = new DefaultAlertQuery(alertRepo);
+        afterQuery.contains(Optional.of("after"));
+        final QueryResult<Alert> result = alertRepo.query(afterQuery);
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals(uuid, result.values().get(0).getId());
+    }
+
+    @Test
+    public void testQueryContainsTrigramsBackfilled() {
+        alertRepo.addOrUpdateAlert(TestBeanFactory.createAlertBuilder()
+                .setId(UUID.randomUUID())
+                .setMetric("my-contained-metric")
+                .build());
+        final AlertQuery query = new DefaultAlertQuery(alertRepo);
+        query.contains(Optional.of("contained"));
+        Assert.assertEquals(1, alertRepo.query(query).total());
+
+        // The trigrams narrow the query so without them nothing matches
+        Ebean.createSqlUpdate("DELETE FROM portal.alert_trigrams").execute();
+        Assert.assertEquals(0, alertRepo.query(query).total());
+
+        // The migration indexes existing alerts by updating each alert in place
+        Ebean.createSqlUpdate("UPDATE portal.alerts SET name = name").execute();
+        Assert.assertEquals(1, alertRepo.query(query).total());
+    }
+
     private boolean isAlertEbeanEquivalent(final Alert alert, final models.ebean.Alert ebeanAlert) {
         return Objects.equals(alert.getId(), ebeanAlert.getUuid())
                 && Objects.equals(alert.getCluster(), ebeanAlert.getCluster())
@@ -390,6 +496,6 @@ public class DatabaseAlertRepositoryTest extends WithApplication {
                 && extension.getFreshnessThreshold().getStandardSeconds() == ebeanExtension.getFreshnessThreshold();
     }
 
-    private final DatabaseAlertRepository.AlertQueryGenerator queryGenerator = new DatabaseAlertRepository.GenericQueryGenerator();
+    private final DatabaseAlertRepository.AlertQueryGenerator queryGenerator = new DatabaseAlertRepository.H2QueryGenerator();
     private final DatabaseAlertRepository alertRepo = new DatabaseAlertRepository(queryGenerator);
 }
@@ -20,6 +20,7 @@ import com.arpnetworking.metrics.portal.TestBeanFactory;
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Transaction;
 import com.google.common.collect.ImmutableMap;
+import models.internal.CountMode;
 import models.internal.Expression;
 import models.internal.ExpressionQuery;
 import models.internal.QueryResult;
@@ -349,6 +350,115 @@ public class DatabaseExpressionRepositoryTest extends WithApplication {
         Assert.assertEquals(expr2.getId(), result.values().get(1).getId());
     }
 
+    @Test
+    public void testQueryWithCountModes() {
+        final Expression expr1 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setService("my-count-service")
+                .build();
+        final Expression expr2 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setService("my-count-service")
+                .build();
+        exprRepo.addOrUpdateExpression(expr1);
+        exprRepo.addOrUpdateExpression(expr2);
+        final ExpressionQuery query = new DefaultExpressionQuery(exprRepo);
+        query.service(Optional.of("my-count-service"));
+        query.limit(1);
+
+        query.count(CountMode.NONE);
+        final QueryResult<Expression> noneResult = exprRepo.query(query);
+        Assert.assertEquals(1, noneResult.values().size());
+        Assert.assertEquals(CountMode.NONE, noneResult.totalMode());
+
+        query.count(CountMode.ESTIMATE);
+        final QueryResult<Expression> estimateResult = exprRepo.query(query);
+        Assert.assertEquals(1, estimateResult.values().size());
+        Assert.assertEquals(CountMode.ESTIMATE, estimateResult.totalMode());
+        Assert.assertEquals(2, estimateResult.total());
+
+        final Expression expr3 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setService("my-count-service")
+                .build();
+        exprRepo.addOrUpdateExpression(expr3);
+        Assert.assertEquals(3, exprRepo.query(query).total());
+    }
+
+    @Test
+    public void testQueryContainsShortTerm() {
+        final Expression expr1 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setMetric("my-zq-metric")
+                .build();
+        final Expression expr2 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .build();
+        exprRepo.addOrUpdateExpression(expr1);
+        exprRepo.addOrUpdateExpression(expr2);
+        final ExpressionQuery query = new DefaultExpressionQuery(exprRepo);
+        query.contains(Optional.of("zq"));
+        final QueryResult<Expression> result = exprRepo.query(query);
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals(expr1.getId(), result.values().get(0).getId());
+    }
+
+    @Test
+    public void testQueryContainsRequiresContiguousTerm() {
+        // Every trigram of the term is present but the term itself is not
+        final Expression expr1 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setScript("abcd-bcde")
+                .build();
+        final Expression expr2 = TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setScript("xabcdex")
+                .build();
+        exprRepo.addOrUpdateExpression(expr1);
+        exprRepo.addOrUpdateExpression(expr2);
+        final ExpressionQuery query = new DefaultExpressionQuery(exprRepo);
+        query.contains(Optional.of("abcde"));
+        final QueryResult<Expression> result = exprRepo.query(query);
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals(expr2.getId(), result.values().get(0).getId());
+    }
+
+    @Test
+    public void testQueryContainsAfterUpdate() {
+        final UUID uuid = UUID.randomUUID();
+        exprRepo.addOrUpdateExpression(TestBeanFactory.createExpressionBuilder().setId(uuid).setScript("before-script").build());
+        exprRepo.addOrUpdateExpression(TestBeanFactory.createExpressionBuilder().setId(uuid).setScript("after-script").build());
+
+        final ExpressionQuery beforeQuery = new DefaultExpressionQuery(exprRepo);
+        beforeQuery.contains(Optional.of("before"));
+        Assert.assertEquals(0, exprRepo.query(beforeQuery).total());
+
+        final ExpressionQuery afterQuery = new DefaultExpressionQuery(exprRepo);
+        afterQuery.contains(Optional.of("after"));
+        final QueryResult<Expression> result = exprRepo.query(afterQuery);
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals(uuid, result.values().get(0).getId());
+    }
+
+    @Test
+    public void testQueryContainsTrigramsBackfilled() {
+        exprRepo.addOrUpdateExpression(TestBeanFactory.createExpressionBuilder()
+                .setId(UUID.randomUUID())
+                .setMetric("my-contained-metric")
+                .build());
+        final ExpressionQuery query = new DefaultExpressionQuery(exprRepo);
+        query.contains(Optional.of("contained"));
+        Assert.assertEquals(1, exprRepo.query(query).total());
+
+        // The trigrams narrow the query so without them nothing matches
+        Ebean.createSqlUpdate("DELETE FROM portal.expression_trigrams").execute();
+        Assert.assertEquals(0, exprRepo.query(query).total());
+
+        // The migration indexes existing expressions by updating each expression in place
+        Ebean.createSqlUpdate("UPDATE portal.expressions SET cluster = cluster").execute();
+        Assert.assertEquals(1, exprRepo.query(query).total());
+    }
+
     private boolean isExpressionEbeanEquivalent(
             final Expression expression,
             final models.ebean.Expression ebeanExpression) {
@@ -359,6 +469,6 @@ public class DatabaseExpressionRepositoryTest extends WithApplication {
                 && Objects.equals(expression.getService(), ebeanExpression.getService());
     }
 
-    private final DatabaseExpressionRepository.ExpressionQueryGenerator queryGenerator = new DatabaseExpressionRepository.GenericQueryGenerator();
+    private final DatabaseExpressionRepository.ExpressionQueryGenerator queryGenerator = new DatabaseExpressionRepository.H2QueryGenerator();
     private final DatabaseExpressionRepository exprRepo = new DatabaseExpressionRepository(queryGenerator);
 }
@@ -15,17 +15,67 @@
  */
 package com.arpnetworking.metrics.portal.hosts.impl;
 
+import com.arpnetworking.database.DatabaseExecutor;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.portal.H2ConnectionStringFactory;
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
+import com.google.common.collect.ImmutableMap;
+import models.internal.CountMode;
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.MetricsSoftwareState;
+import models.internal.QueryResult;
+import models.internal.impl.DefaultHost;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
+import play.test.FakeApplication;
+import play.test.Helpers;
+import play.test.WithApplication;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Tests for <code>DatabaseHostRepository</code>.
  *
  * @author Ville Koskela (vkoskela at groupon dot com)
  */
-public class DatabaseHostRepositoryTest {
+public class DatabaseHostRepositoryTest extends WithApplication {
+
+    @Override
+    protected FakeApplication provideFakeApplication() {
+        final String jdbcUrl = H2ConnectionStringFactory.generateJdbcUrl();
+        return new FakeApplication(
+                new java.io.File("."),
+                Helpers.class.getClassLoader(),
+                ImmutableMap.of(
+                        "db.metrics_portal_ddl.url", jdbcUrl,
+                        "db.default.url", jdbcUrl,
+                        "hostProvider.initialDelay", "1 hour"),
+                new ArrayList<String>(),
+                null);
+    }
+
+    @Before
+    public void setUp() {
+        _queryGenerator = new RecordingQueryGenerator(new DatabaseHostRepository.H2HostQueryGenerator());
+        _repository = createRepository(_queryGenerator, BATCH_SIZE);
+        _repository.open();
+    }
+
+    @After
+    public void tearDown() {
+        _repository.close();
+    }
 
     @Test
     public void testPostgresqlHostQueryGeneratorTokenize() {
@@ -43,4 +93,349 @@ public class DatabaseHostRepositoryTest {
         tokens = DatabaseHostRepository.PostgresqlHostQueryGenerator.tokenize("  ");
         Assert.assertArrayEquals("Actual = " + tokens, new String[]{}, tokens.toArray());
     }
+
+    @Test
+    public void testAddOrUpdateHostsInsertsAndUpdates() {
+        _repository.addOrUpdateHost(createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED));
+
+        _repository.addOrUpdateHosts(Arrays.asList(
+                createHost("web1.example.com", "web", MetricsSoftwareState.LATEST_VERSION_INSTALLED),
+                createHost("web2.example.com", "web", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("db1.example.com", null, MetricsSoftwareState.OLD_VERSION_INSTALLED)));
+
+        Assert.assertEquals(3, _repository.getHostCount());
+        assertStored("web1.example.com", "web", MetricsSoftwareState.LATEST_VERSION_INSTALLED);
+        assertStored("web2.example.com", "web", MetricsSoftwareState.NOT_INSTALLED);
+        assertStored("db1.example.com", null, MetricsSoftwareState.OLD_VERSION_INSTALLED);
+    }
+
+    @Test
+    public void testAddOrUpdateHostsDuplicateNames() {
+        _repository.addOrUpdateHosts(Arrays.asList(
+                createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("web2.example.com", "web", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("web1.example.com", "api", MetricsSoftwareState.LATEST_VERSION_INSTALLED)));
+
+        // The last occurrence wins and each name is written once
+        Assert.assertEquals(Collections.singletonList(2), _queryGenerator.getBatchSizes());
+        Assert.assertEquals(2, _repository.getHostCount());
+        assertStored("web1.example.com", "api", MetricsSoftwareState.LATEST_VERSION_INSTALLED);
+    }
+
+    @Test
+    public void testAddOrUpdateHostsPartitionsBatches() {
+        final List<Host> hosts = new ArrayList<>();
+        for (int i = 0; i < 2 * BATCH_SIZE + 1; ++i) {
+            hosts.add(createHost("host" + i + ".example.com", "cluster", MetricsSoftwareState.NOT_INSTALLED));
+        }
+        _repository.addOrUpdateHosts(hosts);
+
+        Assert.assertEquals(Arrays.asList(BATCH_SIZE, BATCH_SIZE, 1), _queryGenerator.getBatchSizes());
+        Assert.assertEquals(hosts.size(), _repository.getHostCount());
+        for (final Host host : hosts) {
+            assertStored(host.getHostname(), "cluster", MetricsSoftwareState.NOT_INSTALLED);
+        }
+    }
+
+    @Test
+    public void testAddOrUpdateHostsSkipsUnchanged() {
+        final List<Host> hosts = Arrays.asList(
+                createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("web2.example.com", null, MetricsSoftwareState.NOT_INSTALLED));
+        _repository.addOrUpdateHosts(hosts);
+        final long etag = _queryGenerator.getEtag();
+        final long version1 = getVersion("web1.example.com");
+        final long version2 = getVersion("web2.example.com");
+
+        _repository.addOrUpdateHosts(hosts);
+        Assert.assertEquals(Arrays.asList(2, 0), _queryGenerator.getWrittenCounts());
+        Assert.assertEquals(etag, _queryGenerator.getEtag());
+        Assert.assertEquals(version1, getVersion("web1.example.com"));
+        Assert.assertEquals(version2, getVersion("web2.example.com"));
+
+        _repository.addOrUpdateHosts(Arrays.asList(
+                createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("web2.example.com", null, MetricsSoftwareState.OLD_VERSION_INSTALLED)));
+        Assert.assertEquals(Arrays.asList(2, 0, 1), _queryGenerator.getWrittenCounts());
+        Assert.assertEquals(version1, getVersion("web1.example.com"));
+        Assert.assertTrue(getVersion("web2.example.com") > version2);
+        assertStored("web2.example.com", null, MetricsSoftwareState.OLD_VERSION_INSTALLED);
+    }
+
+    @Test
+    public void testAddOrUpdateHostSkipsUnchanged() {
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.CREATED,
+                saveHost(createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.UNCHANGED,
+                saveHost(createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.UPDATED,
+                saveHost(createHost("web1.example.com", null, MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.UNCHANGED,
+                saveHost(createHost("web1.example.com", null, MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.UPDATED,
+                saveHost(createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED)));
+        assertStored("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED);
+    }
+
+    @Test
+    public void testAddOrUpdateHostCreatesWithoutCluster() {
+        saveHost(createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED));
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.CREATED,
+                saveHost(createHost("web2.example.com", null, MetricsSoftwareState.LATEST_VERSION_INSTALLED)));
+        Assert.assertEquals(
+                DatabaseHostRepository.SaveResult.UNCHANGED,
+                saveHost(createHost("web2.example.com", null, MetricsSoftwareState.LATEST_VERSION_INSTALLED)));
+        assertStored("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED);
+        assertStored("web2.example.com", null, MetricsSoftwareState.LATEST_VERSION_INSTALLED);
+        Assert.assertEquals(1, getVersion("web2.example.com"));
+    }
+
+    @Test
+    public void testAddOrUpdateHostsAfterSecondWriter() {
+        final Host host = createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED);
+        _repository.addOrUpdateHosts(Collections.singletonList(host));
+
+        // Another instance, for example the previous owner of the host's partition, writes the host
+        final DatabaseHostRepository otherRepository = createRepository(
+                new DatabaseHostRepository.H2HostQueryGenerator(),
+                BATCH_SIZE);
+        otherRepository.open();
+        try {
+            otherRepository.addOrUpdateHost(createHost("web1.example.com", "api", MetricsSoftwareState.OLD_VERSION_INSTALLED));
+        } finally {
+            otherRepository.close();
+        }
+        assertStored("web1.example.com", "api", MetricsSoftwareState.OLD_VERSION_INSTALLED);
+
+        // Writing the same host again must restore it
+        _repository.addOrUpdateHosts(Collections.singletonList(host));
+        assertStored("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED);
+
+        Ebean.createSqlUpdate("UPDATE portal.hosts SET metrics_software_state = :state WHERE name = :name")
+                .setParameter("state", MetricsSoftwareState.LATEST_VERSION_INSTALLED.toString())
+                .setParameter("name", "web1.example.com")
+                .execute();
+        _repository.addOrUpdateHost(host);
+        assertStored("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED);
+    }
+
+    @Test
+    public void testH2QueryMatchesTokenPrefixes() {
+        addTokenizedHosts();
+
+        final QueryResult<Host> result = _repository.createQuery()
+                .partialHostname(Optional.of("app"))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(4, result.total());
+        // Exact token matches rank by length; a token with the prefix (apple) ranks last
+        Assert.assertEquals(
+                Arrays.asList("db-app2.snc1", "test-app1.snc1", "app1.example.com", "apple.example.com"),
+                hostnames(result.values()));
+        Assert.assertFalse(result.cursor().isPresent());
+    }
+
+    @Test
+    public void testH2QueryRanksByMatchedTokens() {
+        addTokenizedHosts();
+
+        final QueryResult<Host> result = _repository.createQuery()
+                .partialHostname(Optional.of("APP.snc"))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(5, result.total());
+        Assert.assertEquals(
+                Arrays.asList("db-app2.snc1", "test-app1.snc1", "web1.snc1", "app1.example.com", "apple.example.com"),
+                hostnames(result.values()));
+
+        final QueryResult<Host> page = _repository.createQuery()
+                .partialHostname(Optional.of("APP.snc"))
+                .offset(Optional.of(1))
+                .limit(2)
+                .execute();
+        Assert.assertEquals(5, page.total());
+        Assert.assertEquals(Arrays.asList("test-app1.snc1", "web1.snc1"), hostnames(page.values()));
+
+        final QueryResult<Host> filtered = _repository.createQuery()
+                .partialHostname(Optional.of("app"))
+                .cluster(Optional.of("db"))
+                .count(CountMode.NONE)
+                .limit(10)
+                .execute();
+        Assert.assertEquals(Collections.singletonList("db-app2.snc1"), hostnames(filtered.values()));
+        Assert.assertEquals(0, filtered.total());
+    }
+
+    @Test
+    public void testH2TokensFollowRenameAndDelete() {
+        addTokenizedHosts();
+
+        Ebean.createSqlUpdate("UPDATE portal.hosts SET name = 'cache9.snc1' WHERE name = 'web1.snc1'").execute();
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("web")).execute().total());
+        Assert.assertEquals(
+                Collections.singletonList("cache9.snc1"),
+                hostnames(_repository.createQuery().partialHostname(Optional.of("cache")).execute().values()));
+
+        final long tokens = countTokens();
+        _repository.deleteHost("cache9.snc1");
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("cache")).execute().total());
+        // The tokens of cache9.snc1 are cache, 9, snc and 1
+        Assert.assertEquals(tokens - 4, countTokens());
+    }
+
+    @Test
+    public void testH2TokensBackfilled() {
+        addTokenizedHosts();
+        final long tokens = countTokens();
+
+        // The migration tokenizes existing hosts by updating each host name in place
+        Ebean.createSqlUpdate("DELETE FROM portal.host_tokens").execute();
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("app")).execute().total());
+        Ebean.createSqlUpdate("UPDATE portal.hosts SET name = name").execute();
+        Assert.assertEquals(tokens, countTokens());
+        Assert.assertEquals(4, _repository.createQuery().partialHostname(Optional.of("app")).execute().total());
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testH2QueryRejectsCursor() {
+        addTokenizedHosts();
+        final QueryResult<Host> first = _repository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .limit(1)
+                .execute();
+        Assert.assertTrue(first.cursor().isPresent());
+        _repository.createQuery()
+                .partialHostname(Optional.of("app"))
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .after(first.cursor())
+                .limit(1)
+                .execute();
+    }
+
+    private void addTokenizedHosts() {
+        _repository.addOrUpdateHosts(Arrays.asList(
+                createHost("app1.example.com", "app", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("test-app1.snc1", "app", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("db-app2.snc1", "db", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("apple.example.com", "app", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("web1.snc1", "web", MetricsSoftwareState.NOT_INSTALLED)));
+    }
+
+    private static long countTokens() {
+        return Ebean.createSqlQuery("SELECT COUNT(*) AS tokens FROM portal.host_tokens").findUnique().getLong("tokens");
+    }
+
+    private static List<String> hostnames(final List<? extends Host> hosts) {
+        return hosts.stream().map(Host::getHostname).collect(Collectors.toList());
+    }
+
+    private static DatabaseHostRepository createRepository(
+            final DatabaseHostRepository.HostQueryGenerator queryGenerator,
+            final int batchSize) {
+        return new DatabaseHostRepository(
+                queryGenerator,
+                METRICS_FACTORY,
+                batchSize,
+                new DatabaseExecutor("test", 1, 10));
+    }
+
+    private static Host createHost(final String hostname, final String cluster, final MetricsSoftwareState state) {
+        return new DefaultHost.Builder()
+                .setHostname(hostname)
+                .setCluster(cluster)
+                .setMetricsSoftwareState(state)
+                .build();
+    }
+
+    private DatabaseHostRepository.SaveResult saveHost(final Host host) {
+        final Transaction transaction = Ebean.beginTransaction();
+        try {
+            final DatabaseHostRepository.SaveResult result = _queryGenerator.saveHost(host);
+            transaction.commit();
+            return result;
+        } finally {
+            transaction.end();
+        }
+    }
+
+    private static long getVersion(final String hostname) {
+        return Ebean.find(models.ebean.Host.class)
+                .where()
+                .eq("name", hostname)
+                .findUnique()
+                .getVersion();
+    }
+
+    private static void assertStored(final String hostname, final String cluster, final MetricsSoftwareState state) {
+        final models.ebean.Host host = Ebean.find(models.ebean.Host.class)
+                .where()
+                .eq("name", hostname)
+                .findUnique();
+        Assert.assertNotNull("Host not found; hostname=" + hostname, host);
+        Assert.assertEquals(cluster, host.getCluster());
+        Assert.assertEquals(state.toString(), host.getMetricsSoftwareState());
+    }
+
+    private RecordingQueryGenerator _queryGenerator;
+    private DatabaseHostRepository _repository;
+
+    private static final int BATCH_SIZE = 2;
+    private static final MetricsFactory METRICS_FACTORY = new TsdMetricsFactory.Builder()
+            .setServiceName("DatabaseHostRepositoryTest")
+            .setClusterName("DatabaseHostRepositoryTest")
+            .setSinks(Collections.emptyList())
+            .build();
+
+    private static final class RecordingQueryGenerator implements DatabaseHostRepository.HostQueryGenerator {
+
+        RecordingQueryGenerator(final DatabaseHostRepository.HostQueryGenerator queryGenerator) {
+            _queryGenerator = queryGenerator;
+        }
+
+        @Override
+        public QueryResult<models.ebean.Host> createHostQuery(final HostQuery query) {
+            return _queryGenerator.createHostQuery(query);
+        }
+
+        @Override
+        public boolean isCursorSupported(final HostQuery query) {
+            return _queryGenerator.isCursorSupported(query);
+        }
+
+        @Override
+        public DatabaseHostRepository.SaveResult saveHost(final Host host) {
+            return _queryGenerator.saveHost(host);
+        }
+
+        @Override
+        public int saveHosts(final List<Host> hosts) {
+            _batchSizes.add(hosts.size());
+            final int written = _queryGenerator.saveHosts(hosts);
+            _writtenCounts.add(written);
+            return written;
+        }
+
+        @Override
+        public long getEtag() {
+            return _queryGenerator.getEtag();
+        }
+
+        public List<Integer> getBatchSizes() {
+            return _batchSizes;
+        }
+
+        public List<Integer> getWrittenCounts() {
+            return _writtenCounts;
+        }
+
+        private final DatabaseHostRepository.HostQueryGenerator _queryGenerator;
+        private final List<Integer> _batchSizes = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> _writtenCounts = Collections.synchronizedList(new ArrayList<>());
+    }
 }
@@ -16,6 +16,7 @@
 
 package com.arpnetworking.metrics.portal.hosts.impl;
 
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
 import models.internal.QueryResult;
 import models.internal.Host;
 import models.internal.HostQuery;
@@ -24,7 +25,12 @@ import com.google.common.collect.Iterables;
 import com.google.common.io.Files;
 import models.internal.impl.DefaultHost;
 import org.apache.commons.io.FileUtils;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthRequest;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -32,8 +38,12 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Tests for <code>ElasticSearchHostRegistry</code>.
@@ -50,19 +60,7 @@ public class ElasticSearchHostRegistryTest {
         } catch (final IOException ioe) {
             // Do nothing
         }
-        _repository = new ElasticSearchHostRepository(
-                ImmutableSettings.settingsBuilder()
-                        .put("cluster.name", "ElasticSearchHostRegistryTest")
-                        .put("node.local", "true")
-                        .put("node.data", "true")
-                        .put("path.logs", _tempDirectory.getAbsolutePath() + "/logs")
-                        .put("path.data", _tempDirectory.getAbsolutePath() + "/data")
-                        .build(),
-                ImmutableSettings.settingsBuilder()
-                        .put("number_of_shards", "1")
-                        .put("number_of_replicas", "0")
-                        .put("refresh_interval", "1s")
-                        .build());
+        _repository = createRepository(1000, 10000);
         _repository.open();
     }
 
@@ -103,6 +101,30 @@ public class ElasticSearchHostRegistryTest {
         Assert.assertEquals(1, result.total());
     }
 
+    @Test
+    public void testAddOrUpdateHosts() throws InterruptedException {
+        final Host host1 = new DefaultHost.Builder()
+                .setHostname("testAddOrUpdateHosts-host1")
+                .setMetricsSoftwareState(MetricsSoftwareState.LATEST_VERSION_INSTALLED)
+                .build();
+        final Host host2 = new DefaultHost.Builder()
+                .setHostname("testAddOrUpdateHosts-host2")
+                .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                .build();
+        final Host updatedHost2 = new DefaultHost.Builder()
+                .setHostname("testAddOrUpdateHosts-host2")
+                .setMetricsSoftwareState(MetricsSoftwareState.OLD_VERSION_INSTALLED)
+                .build();
+        _repository.addOrUpdateHosts(Arrays.asList(host1, host2, updatedHost2));
+
+        // Indexing is asynchronous at an interval of 1 second (see @Before)
+        Thread.sleep(2000);
+
+        Assert.assertEquals(2, _repository.getHostCount());
+        Assert.assertEquals(1, _repository.getHostCount(MetricsSoftwareState.LATEST_VERSION_INSTALLED));
+        Assert.assertEquals(1, _repository.getHostCount(MetricsSoftwareState.OLD_VERSION_INSTALLED));
+    }
+
     @Test
     public void testDeleteHost() throws InterruptedException {
         final Host deletedHost = addOrUpdateHost("testDeleteHost-host1", MetricsSoftwareState.LATEST_VERSION_INSTALLED, null);
@@ -298,6 +320,146 @@ public class ElasticSearchHostRegistryTest {
         Assert.assertEquals(0, _repository.getHostCount(MetricsSoftwareState.NOT_INSTALLED));
     }
 
+    @Test
+    public void testDeleteHostAfterBufferedUpsert() throws InterruptedException {
+        final Host host = new DefaultHost.Builder()
+                .setHostname("testDeleteHostAfterBufferedUpsert-host1")
+                .setMetricsSoftwareState(MetricsSoftwareState.LATEST_VERSION_INSTALLED)
+                .build();
+
+        // The upsert is buffered by the bulk processor; the delete must not overtake it
+        final CompletableFuture<Void> future = _repository.addOrUpdateHostAsync(host).toCompletableFuture();
+        _repository.deleteHost(host.getHostname());
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isCompletedExceptionally());
+
+        // Indexing is asynchronous at an interval of 1 second (see @Before)
+        Thread.sleep(2000);
+
+        final QueryResult<Host> result = _repository.createQuery().partialHostname(Optional.of(host.getHostname())).execute();
+        Assert.assertTrue(result.values().isEmpty());
+        Assert.assertEquals(0, result.total());
+    }
+
+    @Test
+    public void testAddOrUpdateHostsAcrossBulks() throws InterruptedException {
+        _repository.close();
+        _repository = createRepository(2, 0);
+        _repository.open();
+
+        final List<Host> hosts = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            hosts.add(new DefaultHost.Builder()
+                    .setHostname("testAddOrUpdateHostsAcrossBulks-host" + i)
+                    .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                    .build());
+        }
+        _repository.addOrUpdateHosts(hosts);
+
+        // Indexing is asynchronous at an interval of 1 second (see @Before)
+        Thread.sleep(2000);
+
+        Assert.assertEquals(5, _repository.getHostCount());
+        Assert.assertEquals(5, _repository.getHostCount(MetricsSoftwareState.NOT_INSTALLED));
+    }
+
+    @Test
+    public void testAddOrUpdateHostsSuspendsRefresh() throws InterruptedException {
+        _repository.close();
+        _repository = createRepository(1000, 2);
+        _repository.open();
+
+        _repository.addOrUpdateHosts(Arrays.asList(
+                new DefaultHost.Builder()
+                        .setHostname("testAddOrUpdateHostsSuspendsRefresh-host1")
+                        .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                        .build(),
+                new DefaultHost.Builder()
+                        .setHostname("testAddOrUpdateHostsSuspendsRefresh-host2")
+                        .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                        .build()));
+
+        // Resuming the refresh after the re-sync refreshes the index so the hosts are visible without waiting
+        Assert.assertEquals(2, _repository.getHostCount());
+
+        // The periodic refresh is restored for smaller writes
+        addOrUpdateHost("testAddOrUpdateHostsSuspendsRefresh-host3", MetricsSoftwareState.NOT_INSTALLED, null);
+        Thread.sleep(2000);
+        Assert.assertEquals(3, _repository.getHostCount());
+    }
+
+    @Test
+    public void testAddOrUpdateHostsFailure() throws InterruptedException {
+        addOrUpdateHost("testAddOrUpdateHostsFailure-host1", MetricsSoftwareState.NOT_INSTALLED, null);
+
+        // Close the index from another node in the cluster so that every write to it fails
+        final Node clientNode = NodeBuilder.nodeBuilder()
+                .settings(ImmutableSettings.settingsBuilder()
+                        .put("path.logs", _tempDirectory.getAbsolutePath() + "/client/logs")
+                        .put("path.data", _tempDirectory.getAbsolutePath() + "/client/data")
+                        .build())
+                .clusterName("ElasticSearchHostRegistryTest")
+                .local(true)
+                .client(true)
+                .node();
+        try {
+            clientNode.client().admin().indices().prepareClose("hosts").execute().actionGet();
+            try {
+                _repository.addOrUpdateHosts(Collections.singletonList(new DefaultHost.Builder()
+                        .setHostname("testAddOrUpdateHostsFailure-host2")
+                        .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                        .build()));
+                Assert.fail("Expected exception not thrown");
+            } catch (final RuntimeException e) {
+                // Expected exception
+            }
+            try {
+                addOrUpdateHost("testAddOrUpdateHostsFailure-host3", MetricsSoftwareState.NOT_INSTALLED, null);
+                Assert.fail("Expected exception not thrown");
+            } catch (final RuntimeException e) {
+                // Expected exception
+            }
+
+            // The repository recovers once the index is writable again
+            clientNode.client().admin().indices().prepareOpen("hosts").execute().actionGet();
+            clientNode.client().admin().cluster().health(new ClusterHealthRequest("hosts").waitForGreenStatus()).actionGet();
+            addOrUpdateHost("testAddOrUpdateHostsFailure-host4", MetricsSoftwareState.NOT_INSTALLED, null);
+        } finally {
+            clientNode.close();
+        }
+
+        // Indexing is asynchronous at an interval of 1 second (see @Before)
+        Thread.sleep(2000);
+
+        Assert.assertEquals(2, _repository.getHostCount());
+    }
+
+    private ElasticSearchHostRepository createRepository(final int batchSize, final int suspendRefreshThreshold) {
+        return new ElasticSearchHostRepository(
+                ImmutableSettings.settingsBuilder()
+                        .put("cluster.name", "ElasticSearchHostRegistryTest")
+                        .put("node.local", "true")
+                        .put("node.data", "true")
+                        .put("path.logs", _tempDirectory.getAbsolutePath() + "/logs")
+                        .put("path.data", _tempDirectory.getAbsolutePath() + "/data")
+                        .build(),
+                ImmutableSettings.settingsBuilder()
+                        .put("number_of_shards", "1")
+                        .put("number_of_replicas", "0")
+                        .put("refresh_interval", "1s")
+                        .build(),
+                new TsdMetricsFactory.Builder()
+                        .setServiceName("ElasticSearchHostRegistryTest")
+                        .setClusterName("ElasticSearchHostRegistryTest")
+                        .setSinks(Collections.emptyList())
+                        .build(),
+                batchSize,
+                ByteSizeValue.parseBytesSizeValue("5mb"),
+                TimeValue.timeValueSeconds(1),
+                1,
+                suspendRefreshThreshold);
+    }
+
     private Host addOrUpdateHost(final String name, final MetricsSoftwareState state, final String cluster) {
         final Host host = new DefaultHost.Builder()
                 .setHostname(name)
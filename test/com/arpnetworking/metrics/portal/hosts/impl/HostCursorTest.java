@@ -0,0 +1,102 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.MetricsSoftwareState;
+import models.internal.impl.DefaultHost;
+import models.internal.impl.DefaultHostQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tests for <code>HostCursor</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class HostCursorTest {
+
+    @Test
+    public void testRoundTrip() {
+        final HostQuery query = new DefaultHostQuery(new NoHostRepository())
+                .sortBy(Optional.of(HostQuery.Field.METRICS_SOFTWARE_STATE))
+                .limit(2);
+        final List<Host> hosts = Arrays.asList(
+                createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app2.example.com", MetricsSoftwareState.OLD_VERSION_INSTALLED));
+
+        final Optional<String> next = HostCursor.next(query, hosts);
+        Assert.assertTrue(next.isPresent());
+
+        final Optional<HostCursor> cursor = HostCursor.decode(query.after(next));
+        Assert.assertTrue(cursor.isPresent());
+        Assert.assertEquals(Optional.of(HostQuery.Field.METRICS_SOFTWARE_STATE), cursor.get().getSortBy());
+        Assert.assertEquals(MetricsSoftwareState.OLD_VERSION_INSTALLED.toString(), cursor.get().getSortKey());
+        Assert.assertEquals("app2.example.com", cursor.get().getHostname());
+    }
+
+    @Test
+    public void testNoCursorForPartialPage() {
+        final HostQuery query = new DefaultHostQuery(new NoHostRepository()).limit(2);
+        Assert.assertFalse(HostCursor.next(query, Collections.<Host>emptyList()).isPresent());
+        Assert.assertFalse(HostCursor.next(
+                query,
+                Collections.singletonList(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED)))
+                .isPresent());
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testDecodeSortMismatch() {
+        final HostQuery query = new DefaultHostQuery(new NoHostRepository())
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .limit(1);
+        final Optional<String> next = HostCursor.next(
+                query,
+                Collections.singletonList(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        HostCursor.decode(query.sortBy(Optional.empty()).after(next));
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testDecodeMalformed() {
+        HostCursor.decode(new DefaultHostQuery(new NoHostRepository()).after(Optional.of("not-a-cursor")));
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testDecodeUnknownState() {
+        final String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "{\"f\":\"METRICS_SOFTWARE_STATE\",\"k\":\"NOT_A_STATE\",\"h\":\"app1.example.com\"}"
+                        .getBytes(StandardCharsets.UTF_8));
+        HostCursor.decode(new DefaultHostQuery(new NoHostRepository())
+                .sortBy(Optional.of(HostQuery.Field.METRICS_SOFTWARE_STATE))
+                .after(Optional.of(cursor)));
+    }
+
+    private static Host createHost(final String hostname, final MetricsSoftwareState state) {
+        return new DefaultHost.Builder()
+                .setHostname(hostname)
+                .setMetricsSoftwareState(state)
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import akka.actor.Address;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>HostPartitioner</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class HostPartitionerTest {
+
+    @Test
+    public void testEachHostHasOneOwner() {
+        final HostPartitioner first = createPartitioner(FIRST);
+        final HostPartitioner second = createPartitioner(SECOND);
+        int firstOwned = 0;
+        for (int i = 0; i < 1000; ++i) {
+            final String hostname = "app" + i + ".example.com";
+            Assert.assertNotEquals(first.owns(hostname), second.owns(hostname));
+            if (first.owns(hostname)) {
+                ++firstOwned;
+            }
+        }
+        Assert.assertTrue(firstOwned > 0);
+        Assert.assertTrue(firstOwned < 1000);
+    }
+
+    @Test
+    public void testRebalanceOnRemoval() {
+        final HostPartitioner first = createPartitioner(FIRST);
+        Assert.assertTrue(first.removeMember(SECOND));
+        Assert.assertFalse(first.removeMember(SECOND));
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(first.owns("app" + i + ".example.com"));
+        }
+    }
+
+    @Test
+    public void testNothingOwnedBeforeSelfJoins() {
+        final HostPartitioner partitioner = new HostPartitioner(FIRST, 10);
+        Assert.assertFalse(partitioner.owns("app1.example.com"));
+        partitioner.addMember(FIRST);
+        Assert.assertTrue(partitioner.owns("app1.example.com"));
+    }
+
+    private static HostPartitioner createPartitioner(final Address self) {
+        final HostPartitioner partitioner = new HostPartitioner(self, 10);
+        partitioner.addMember(FIRST);
+        partitioner.addMember(SECOND);
+        return partitioner;
+    }
+
+    private static final Address FIRST = new Address("akka.tcp", "mportal", "10.0.0.1", 2551);
+    private static final Address SECOND = new Address("akka.tcp", "mportal", "10.0.0.2", 2551);
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.metrics.portal.hosts.HostSource;
+import models.internal.Host;
+import models.internal.MetricsSoftwareState;
+import models.internal.impl.DefaultHost;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for <code>HostSweeper</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class HostSweeperTest {
+
+    @Before
+    public void setUp() {
+        _repository = new LocalHostRepository();
+        _repository.open();
+        _sweeper = new HostSweeper(_repository, 2);
+    }
+
+    @After
+    public void tearDown() {
+        _repository.close();
+    }
+
+    @Test
+    public void testIncrementalSweeps() throws IOException {
+        final HostSweeper.Result first = _sweeper.sweep(source(
+                createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app2.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app3.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(3, first.getAdded());
+        Assert.assertEquals(3, _repository.getHostCount());
+
+        final HostSweeper.Result second = _sweeper.sweep(source(
+                createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app2.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app3.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(0, second.getAdded());
+        Assert.assertEquals(0, second.getUpdated());
+        Assert.assertEquals(0, second.getRemoved());
+        Assert.assertEquals(3, second.getUnchanged());
+
+        final HostSweeper.Result third = _sweeper.sweep(source(
+                createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app2.example.com", MetricsSoftwareState.LATEST_VERSION_INSTALLED),
+                createHost("app4.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(1, third.getAdded());
+        Assert.assertEquals(1, third.getUpdated());
+        Assert.assertEquals(1, third.getRemoved());
+        Assert.assertEquals(1, third.getUnchanged());
+        Assert.assertEquals(3, _repository.getHostCount());
+        Assert.assertEquals(1, _repository.getHostCount(MetricsSoftwareState.LATEST_VERSION_INSTALLED));
+    }
+
+    @Test
+    public void testFailedSweepRemovesNothing() throws IOException {
+        _sweeper.sweep(source(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        try {
+            _sweeper.sweep(() -> {
+                throw new IOException("Unavailable");
+            });
+            Assert.fail("Expected exception");
+        } catch (final IOException e) {
+            // Expected
+        }
+        Assert.assertEquals(1, _repository.getHostCount());
+    }
+
+    @Test
+    public void testFirstSweepSeedsFromRepository() throws IOException {
+        // Hosts written before this sweeper existed; more than one page of them
+        for (int i = 1; i <= 5; ++i) {
+            _repository.addOrUpdateHost(createHost("app" + i + ".example.com", MetricsSoftwareState.NOT_INSTALLED));
+        }
+
+        final HostSweeper.Result result = _sweeper.sweep(source(
+                createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED),
+                createHost("app2.example.com", MetricsSoftwareState.LATEST_VERSION_INSTALLED),
+                createHost("app6.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(1, result.getAdded());
+        Assert.assertEquals(1, result.getUpdated());
+        Assert.assertEquals(3, result.getRemoved());
+        Assert.assertEquals(1, result.getUnchanged());
+        Assert.assertEquals(3, _repository.getHostCount());
+        Assert.assertEquals(1, _repository.getHostCount(MetricsSoftwareState.LATEST_VERSION_INSTALLED));
+    }
+
+    @Test
+    public void testSeedsOnlyOwnedHosts() throws IOException {
+        _repository.addOrUpdateHost(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED));
+        _repository.addOrUpdateHost(createHost("app2.example.com", MetricsSoftwareState.NOT_INSTALLED));
+
+        final HostSweeper.Result result = _sweeper.sweep(source(), "app1.example.com"::equals);
+        Assert.assertEquals(1, result.getRemoved());
+        Assert.assertEquals(1, _repository.getHostCount());
+        Assert.assertEquals(
+                "app2.example.com",
+                _repository.createQuery().limit(1).execute().values().get(0).getHostname());
+    }
+
+    @Test
+    public void testInvalidateSeedsAgain() throws IOException {
+        _sweeper.sweep(source(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED)), "app1.example.com"::equals);
+
+        // Another owner wrote a host which has since disappeared from the source
+        _repository.addOrUpdateHost(createHost("app2.example.com", MetricsSoftwareState.NOT_INSTALLED));
+        final HostSweeper.Result unchanged = _sweeper.sweep(source(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(0, unchanged.getRemoved());
+        Assert.assertEquals(2, _repository.getHostCount());
+
+        // Once ownership changes the sweeper learns of the host and deletes it
+        _sweeper.invalidate();
+        final HostSweeper.Result result = _sweeper.sweep(source(createHost("app1.example.com", MetricsSoftwareState.NOT_INSTALLED)));
+        Assert.assertEquals(1, result.getRemoved());
+        Assert.assertEquals(1, result.getUnchanged());
+        Assert.assertEquals(1, _repository.getHostCount());
+    }
+
+    @Test
+    public void testJsonLinesSource() throws IOException {
+        final File file = File.createTempFile("hosts", ".jsonl");
+        file.deleteOnExit();
+        final List<String> lines = Arrays.asList(
+                "{\"hostname\":\"app1.example.com\",\"metricsSoftwareState\":\"NOT_INSTALLED\",\"cluster\":\"app\"}",
+                "",
+                "not json",
+                "{\"hostname\":\"app2.example.com\",\"metricsSoftwareState\":\"OLD_VERSION_INSTALLED\"}");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+        final HostSweeper.Result result = _sweeper.sweep(new JsonLinesHostSource(file));
+        Assert.assertEquals(2, result.getAdded());
+        Assert.assertEquals(2, _repository.getHostCount());
+        Assert.assertEquals(1, _repository.getHostCount(MetricsSoftwareState.OLD_VERSION_INSTALLED));
+    }
+
+    private static HostSource source(final Host... hosts) {
+        return () -> Stream.of(hosts);
+    }
+
+    private static Host createHost(final String hostname, final MetricsSoftwareState state) {
+        return new DefaultHost.Builder()
+                .setHostname(hostname)
+                .setMetricsSoftwareState(state)
+                .build();
+    }
+
+    private LocalHostRepository _repository;
+    private HostSweeper _sweeper;
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for <code>HostnameTokenizer</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class HostnameTokenizerTest {
+
+    @Test
+    public void testTokenize() {
+        Assert.assertEquals(Arrays.asList("test", "app", "1", "snc", "1"), HostnameTokenizer.tokenize("test-app1.snc1"));
+        Assert.assertEquals(Arrays.asList("web", "42", "prod"), HostnameTokenizer.tokenize("WEB42.Prod"));
+        Assert.assertEquals(Arrays.asList("caf", "host"), HostnameTokenizer.tokenize("caf\u00e9-host"));
+        Assert.assertEquals(Collections.emptyList(), HostnameTokenizer.tokenize("-. \u00e9"));
+    }
+
+    @Test
+    public void testForEachToken() {
+        final List<String> tokens = new ArrayList<>();
+        HostnameTokenizer.forEachToken("a1--b2  c3- d4..host1234app", tokens::add);
+        Assert.assertEquals(
+                Arrays.asList("a", "1", "b", "2", "c", "3", "d", "4", "host", "1234", "app"),
+                tokens);
+    }
+
+    @Test
+    public void testAppendTokens() {
+        final StringBuilder builder = new StringBuilder("x:");
+        Assert.assertTrue(HostnameTokenizer.appendTokens("App1.snc1", builder));
+        Assert.assertEquals("x:app 1 snc 1", builder.toString());
+        Assert.assertFalse(HostnameTokenizer.appendTokens("..", builder));
+        Assert.assertEquals("x:app 1 snc 1", builder.toString());
+    }
+
+    @Test
+    public void testHasTokens() {
+        Assert.assertTrue(HostnameTokenizer.hasTokens(" a"));
+        Assert.assertTrue(HostnameTokenizer.hasTokens("-7"));
+        Assert.assertFalse(HostnameTokenizer.hasTokens(""));
+        Assert.assertFalse(HostnameTokenizer.hasTokens(" .\u00e9"));
+    }
+}
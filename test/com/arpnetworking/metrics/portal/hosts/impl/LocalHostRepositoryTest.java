@@ -0,0 +1,182 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.metrics.portal.hosts.InvalidCursorException;
+import models.internal.Host;
+import models.internal.HostQuery;
+import models.internal.MetricsSoftwareState;
+import models.internal.QueryResult;
+import models.internal.impl.DefaultHost;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for <code>LocalHostRepository</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class LocalHostRepositoryTest {
+
+    @Before
+    public void setUp() {
+        _repository = new LocalHostRepository();
+        _repository.open();
+        _repository.addOrUpdateHost(createHost("web1.example.com", "web", MetricsSoftwareState.NOT_INSTALLED));
+        _repository.addOrUpdateHost(createHost("web2.example.com", "web", MetricsSoftwareState.LATEST_VERSION_INSTALLED));
+        _repository.addOrUpdateHost(createHost("db1.example.com", "db", MetricsSoftwareState.NOT_INSTALLED));
+        _repository.addOrUpdateHost(createHost("Api-web1.example.com", "api", MetricsSoftwareState.OLD_VERSION_INSTALLED));
+    }
+
+    @After
+    public void tearDown() {
+        _repository.close();
+    }
+
+    @Test
+    public void testQueryPartialHostnameRanksPrefixFirst() {
+        final QueryResult<Host> result = _repository.createQuery()
+                .partialHostname(Optional.of("WEB1"))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(2, result.total());
+        Assert.assertArrayEquals(
+                new String[] {"web1.example.com", "Api-web1.example.com"},
+                hostnames(result.values()).toArray());
+    }
+
+    @Test
+    public void testQueryShortPartialHostname() {
+        final QueryResult<Host> result = _repository.createQuery()
+                .partialHostname(Optional.of("b2"))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals("web2.example.com", result.values().get(0).getHostname());
+    }
+
+    @Test
+    public void testQueryUnigramAndBigram() {
+        Assert.assertEquals(3, _repository.createQuery().partialHostname(Optional.of("1")).limit(10).execute().total());
+        Assert.assertEquals(1, _repository.createQuery().partialHostname(Optional.of("2")).limit(10).execute().total());
+        final QueryResult<Host> result = _repository.createQuery()
+                .partialHostname(Optional.of("AP"))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals("Api-web1.example.com", result.values().get(0).getHostname());
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("zq")).limit(10).execute().total());
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("q")).limit(10).execute().total());
+    }
+
+    @Test
+    public void testShortPartialHostnameIndexMaintained() {
+        _repository.addOrUpdateHost(createHost("qz1.example.com", "qz", MetricsSoftwareState.NOT_INSTALLED));
+        Assert.assertEquals(1, _repository.createQuery().partialHostname(Optional.of("qz")).limit(10).execute().total());
+        Assert.assertEquals(1, _repository.createQuery().partialHostname(Optional.of("q")).limit(10).execute().total());
+
+        _repository.addOrUpdateHost(createHost("qz1.example.com", "db", MetricsSoftwareState.NOT_INSTALLED));
+        Assert.assertEquals(1, _repository.createQuery().partialHostname(Optional.of("qz")).limit(10).execute().total());
+
+        _repository.deleteHost("qz1.example.com");
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("qz")).limit(10).execute().total());
+        Assert.assertEquals(0, _repository.createQuery().partialHostname(Optional.of("q")).limit(10).execute().total());
+        Assert.assertEquals(3, _repository.createQuery().partialHostname(Optional.of("1")).limit(10).execute().total());
+    }
+
+    @Test
+    public void testQueryClusterAndState() {
+        final QueryResult<Host> result = _repository.createQuery()
+                .cluster(Optional.of("web"))
+                .metricsSoftwareState(Optional.of(MetricsSoftwareState.NOT_INSTALLED))
+                .limit(10)
+                .execute();
+        Assert.assertEquals(1, result.total());
+        Assert.assertEquals("web1.example.com", result.values().get(0).getHostname());
+    }
+
+    @Test
+    public void testQuerySortedPages() {
+        final HostQuery query = _repository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .limit(2);
+        final QueryResult<Host> first = query.execute();
+        Assert.assertEquals(4, first.total());
+        Assert.assertArrayEquals(
+                new String[] {"Api-web1.example.com", "db1.example.com"},
+                hostnames(first.values()).toArray());
+
+        final QueryResult<Host> second = query.after(first.cursor()).execute();
+        Assert.assertArrayEquals(
+                new String[] {"web1.example.com", "web2.example.com"},
+                hostnames(second.values()).toArray());
+
+        final QueryResult<Host> offset = _repository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .offset(Optional.of(3))
+                .limit(2)
+                .execute();
+        Assert.assertArrayEquals(new String[] {"web2.example.com"}, hostnames(offset.values()).toArray());
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void testQueryRankedRejectsCursor() {
+        final QueryResult<Host> first = _repository.createQuery()
+                .sortBy(Optional.of(HostQuery.Field.HOSTNAME))
+                .limit(1)
+                .execute();
+        _repository.createQuery()
+                .partialHostname(Optional.of("web"))
+                .after(first.cursor())
+                .limit(1)
+                .execute();
+    }
+
+    @Test
+    public void testUpdateAndDeleteMaintainIndexes() {
+        _repository.addOrUpdateHost(createHost("web1.example.com", "db", MetricsSoftwareState.LATEST_VERSION_INSTALLED));
+        Assert.assertEquals(4, _repository.getHostCount());
+        Assert.assertEquals(2, _repository.getHostCount(MetricsSoftwareState.LATEST_VERSION_INSTALLED));
+        Assert.assertEquals(1, _repository.getHostCount(MetricsSoftwareState.NOT_INSTALLED));
+        Assert.assertEquals(2, _repository.createQuery().cluster(Optional.of("db")).execute().total());
+        Assert.assertEquals(1, _repository.createQuery().cluster(Optional.of("web")).execute().total());
+
+        _repository.deleteHost("web1.example.com");
+        Assert.assertEquals(3, _repository.getHostCount());
+        Assert.assertEquals(1, _repository.createQuery().partialHostname(Optional.of("web1")).execute().total());
+        Assert.assertEquals(1, _repository.createQuery().cluster(Optional.of("db")).execute().total());
+    }
+
+    private static List<String> hostnames(final List<? extends Host> hosts) {
+        return hosts.stream().map(Host::getHostname).collect(Collectors.toList());
+    }
+
+    private static Host createHost(final String hostname, final String cluster, final MetricsSoftwareState state) {
+        return new DefaultHost.Builder()
+                .setHostname(hostname)
+                .setCluster(cluster)
+                .setMetricsSoftwareState(state)
+                .build();
+    }
+
+    private LocalHostRepository _repository;
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import com.arpnetworking.database.DatabaseExecutor;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.portal.H2ConnectionStringFactory;
+import com.avaje.ebean.Ebean;
+import com.google.common.collect.ImmutableMap;
+import models.internal.MetricsSoftwareState;
+import models.internal.impl.DefaultHost;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import play.test.FakeApplication;
+import play.test.Helpers;
+import play.test.WithApplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for <code>DatabaseHostRepository</code> with the Postgresql
+ * migrations and query generator. Postgresql cannot be embedded, so these
+ * tests are skipped unless the <code>postgresql.url</code> system property
+ * names a database to migrate (e.g.
+ * <code>jdbc:postgresql://localhost:5432/postgres?currentSchema=portal</code>);
+ * the credentials are read from <code>postgresql.username</code> and
+ * <code>postgresql.password</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class PostgresqlHostRepositoryTest extends WithApplication {
+
+    @Override
+    protected FakeApplication provideFakeApplication() {
+        if (JDBC_URL == null) {
+            final String jdbcUrl = H2ConnectionStringFactory.generateJdbcUrl();
+            return new FakeApplication(
+                    new java.io.File("."),
+                    Helpers.class.getClassLoader(),
+                    ImmutableMap.of(
+                            "db.metrics_portal_ddl.url", jdbcUrl,
+                            "db.default.url", jdbcUrl,
+                            "hostProvider.initialDelay", "1 hour"),
+                    new ArrayList<String>(),
+                    null);
+        }
+        return new FakeApplication(
+                new java.io.File("."),
+                Helpers.class.getClassLoader(),
+                ImmutableMap.<String, Object>builder()
+                        .put("db.default.url", JDBC_URL)
+                        .put("db.default.driver", "org.postgresql.Driver")
+                        .put("db.default.username", USERNAME)
+                        .put("db.default.password", PASSWORD)
+                        .put("db.metrics_portal_ddl.url", JDBC_URL)
+                        .put("db.metrics_portal_ddl.driver", "org.postgresql.Driver")
+                        .put("db.metrics_portal_ddl.username", USERNAME)
+                        .put("db.metrics_portal_ddl.password", PASSWORD)
+                        .put("db.metrics_portal_ddl.migration.locations", Arrays.asList("common", "postgresql"))
+                        .put("hostProvider.initialDelay", "1 hour")
+                        .build(),
+                new ArrayList<String>(),
+                null);
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(JDBC_URL);
+        Ebean.createSqlUpdate("DELETE FROM portal.hosts").execute();
+        _repository = new DatabaseHostRepository(
+                new DatabaseHostRepository.PostgresqlHostQueryGenerator(),
+                new TsdMetricsFactory.Builder()
+                        .setServiceName("PostgresqlHostRepositoryTest")
+                        .setClusterName("PostgresqlHostRepositoryTest")
+                        .setSinks(Collections.emptyList())
+                        .build(),
+                2,
+                new DatabaseExecutor("test", 1, 10));
+        _repository.open();
+    }
+
+    @After
+    public void tearDown() {
+        if (_repository != null) {
+            _repository.close();
+        }
+    }
+
+    @Test
+    public void testDeleteHost() {
+        _repository.addOrUpdateHost(createHost("web1.example.com"));
+        _repository.addOrUpdateHost(createHost("web2.example.com"));
+        Assert.assertEquals(2, _repository.getHostCount());
+        final String etag = _repository.getEtag().get();
+
+        _repository.deleteHost("web1.example.com");
+        Assert.assertEquals(1, _repository.getHostCount());
+        Assert.assertEquals(0, Ebean.find(models.ebean.Host.class).where().eq("name", "web1.example.com").findRowCount());
+        Assert.assertNotEquals(etag, _repository.getEtag().get());
+    }
+
+    private static DefaultHost createHost(final String hostname) {
+        return new DefaultHost.Builder()
+                .setHostname(hostname)
+                .setCluster("web")
+                .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                .build();
+    }
+
+    private DatabaseHostRepository _repository;
+
+    private static final String JDBC_URL = System.getProperty("postgresql.url");
+    private static final String USERNAME = System.getProperty("postgresql.username", "postgres");
+    private static final String PASSWORD = System.getProperty("postgresql.password", "");
+}
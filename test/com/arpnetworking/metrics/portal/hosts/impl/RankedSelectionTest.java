@@ -0,0 +1,78 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.portal.hosts.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tests for <code>RankedSelection</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class RankedSelectionTest {
+
+    @Test
+    public void testSelectsBestByScoreThenTieBreaker() {
+        final RankedSelection<String> selection = new RankedSelection<>(3, Comparator.<String>naturalOrder());
+        selection.offer(0.1, "e");
+        selection.offer(0.5, "d");
+        selection.offer(0.5, "b");
+        selection.offer(0.0, "a");
+        selection.offer(1.0, "f");
+        selection.offer(0.5, "c");
+        Assert.assertEquals(3, selection.size());
+        final List<String> values = selection.drain();
+        Assert.assertArrayEquals(new String[] {"f", "b", "c"}, values.toArray());
+        Assert.assertEquals(0, selection.size());
+    }
+
+    @Test
+    public void testGrowsToCapacity() {
+        final RankedSelection<Integer> selection = new RankedSelection<>(1000, Comparator.<Integer>naturalOrder());
+        for (int i = 0; i < 5000; ++i) {
+            selection.offer(0.0, (i * 7919) % 5000);
+        }
+        final List<Integer> values = selection.drain();
+        Assert.assertEquals(1000, values.size());
+        for (int i = 0; i < values.size(); ++i) {
+            Assert.assertEquals(Integer.valueOf(i), values.get(i));
+        }
+    }
+
+    @Test
+    public void testZeroCapacity() {
+        final RankedSelection<String> selection = new RankedSelection<>(0, Comparator.<String>naturalOrder());
+        Assert.assertFalse(selection.offer(1.0, "a"));
+        Assert.assertTrue(selection.drain().isEmpty());
+    }
+
+    @Test
+    public void testHostnameScorer() {
+        final HostnameScorer scorer = new HostnameScorer("App1");
+        final double exact = scorer.score("app1");
+        final double prefix = scorer.score("app1.example.com");
+        final double infix = scorer.score("web-app1.example.com");
+        Assert.assertTrue(exact > prefix);
+        Assert.assertTrue(prefix > infix);
+        Assert.assertTrue(infix > 0.0);
+        Assert.assertEquals(0.0, scorer.score("web1.example.com"), 0.0);
+        Assert.assertFalse(scorer.matches("web1.example.com"));
+    }
+}
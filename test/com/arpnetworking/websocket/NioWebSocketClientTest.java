@@ -0,0 +1,210 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.websocket;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for <code>NioWebSocketClient</code> against a loopback server.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class NioWebSocketClientTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        _client = new NioWebSocketClient(1, 1000);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        _client.shutdown();
+    }
+
+    @Before
+    public void setUp() {
+        _server = new WebSocketTestServer();
+        _listener = new RecordingListener();
+    }
+
+    @After
+    public void tearDown() {
+        _server.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedScheme() {
+        _client.connect(URI.create("wss://localhost/"), _listener);
+    }
+
+    @Test
+    public void testHandshake() throws InterruptedException {
+        _client.connect(_server.getUri(), _listener);
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+        Assert.assertTrue(_listener.awaitOpen());
+    }
+
+    @Test
+    public void testSendAndReceive() throws InterruptedException {
+        final NioWebSocketClient.Connection connection = open();
+        connection.send("to server");
+        Assert.assertEquals("to server", _server.pollMessage(TIMEOUT_MILLIS));
+        _server.send("to client");
+        Assert.assertEquals("to client", _listener.pollMessage());
+    }
+
+    @Test
+    public void testFragmentedMessage() throws InterruptedException {
+        open();
+        _server.sendFragmented("frag", "men", "ted");
+        _server.send("whole");
+        Assert.assertEquals("fragmented", _listener.pollMessage());
+        Assert.assertEquals("whole", _listener.pollMessage());
+    }
+
+    @Test
+    public void testFragmentedMultiByteCharacter() throws InterruptedException {
+        open();
+        final byte[] encoded = "caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        _server.sendFragmented(
+                Arrays.copyOfRange(encoded, 0, encoded.length - 1),
+                Arrays.copyOfRange(encoded, encoded.length - 1, encoded.length));
+        Assert.assertEquals("caf\u00e9", _listener.pollMessage());
+    }
+
+    @Test
+    public void testPing() throws InterruptedException {
+        open();
+        _server.ping("payload");
+        Assert.assertEquals("payload", _server.pollPong(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    public void testCloseFromClient() throws InterruptedException {
+        final NioWebSocketClient.Connection connection = open();
+        connection.close();
+        Assert.assertTrue(_server.awaitClose(TIMEOUT_MILLIS));
+        Assert.assertTrue(_listener.awaitClose());
+        connection.close();
+        assertClosedOnce();
+    }
+
+    @Test
+    public void testCloseFromServer() throws InterruptedException {
+        open();
+        _server.closeConnections();
+        Assert.assertTrue(_listener.awaitClose());
+        assertClosedOnce();
+    }
+
+    @Test
+    public void testCloseBeforeConnect() throws InterruptedException {
+        _client.connect(_server.getUri(), _listener).close();
+        Assert.assertTrue(_listener.awaitClose());
+        assertClosedOnce();
+        Assert.assertEquals(0, _listener._opens.get());
+    }
+
+    @Test
+    public void testUnknownHost() throws InterruptedException {
+        // The connect returns before the host is resolved
+        final NioWebSocketClient.Connection connection = _client.connect(URI.create("ws://unknown-host.invalid/"), _listener);
+        connection.send("discarded");
+        Assert.assertTrue(_listener.awaitClose());
+        Assert.assertTrue(_listener._errors.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) instanceof UnknownHostException);
+        connection.close();
+        assertClosedOnce();
+    }
+
+    private NioWebSocketClient.Connection open() throws InterruptedException {
+        final NioWebSocketClient.Connection connection = _client.connect(_server.getUri(), _listener);
+        Assert.assertTrue(_listener.awaitOpen());
+        Assert.assertTrue(_server.awaitConnection(TIMEOUT_MILLIS));
+        return connection;
+    }
+
+    private void assertClosedOnce() throws InterruptedException {
+        Thread.sleep(QUIET_MILLIS);
+        Assert.assertEquals(1, _listener._closes.get());
+    }
+
+    private WebSocketTestServer _server;
+    private RecordingListener _listener;
+
+    private static NioWebSocketClient _client;
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long QUIET_MILLIS = 500;
+
+    private static final class RecordingListener implements NioWebSocketClient.Listener {
+
+        @Override
+        public void onOpen() {
+            _opens.incrementAndGet();
+            _opened.countDown();
+        }
+
+        @Override
+        public void onMessage(final String message) {
+            _messages.add(message);
+        }
+
+        @Override
+        public void onClose() {
+            _closes.incrementAndGet();
+            _closed.countDown();
+        }
+
+        @Override
+        public void onError(final Throwable cause) {
+            _errors.add(cause);
+        }
+
+        public boolean awaitOpen() throws InterruptedException {
+            return _opened.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        public boolean awaitClose() throws InterruptedException {
+            return _closed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        public String pollMessage() throws InterruptedException {
+            return _messages.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private final AtomicInteger _opens = new AtomicInteger();
+        private final AtomicInteger _closes = new AtomicInteger();
+        private final CountDownLatch _opened = new CountDownLatch(1);
+        private final CountDownLatch _closed = new CountDownLatch(1);
+        private final BlockingQueue<String> _messages = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Throwable> _errors = new LinkedBlockingQueue<>();
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.websocket;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import org.jboss.netty.util.CharsetUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback Web Socket server for tests. Records the text messages, pongs
+ * and closes it receives and sends frames to every open connection.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public final class WebSocketTestServer implements AutoCloseable {
+
+    /**
+     * Public constructor. The server listens on an ephemeral loopback port.
+     */
+    public WebSocketTestServer() {
+        _channelFactory = new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("websocket-server-boss-%d").build()),
+                Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("websocket-server-worker-%d").build()),
+                1);
+        final ServerBootstrap bootstrap = new ServerBootstrap(_channelFactory);
+        bootstrap.setPipelineFactory(() -> {
+            final ChannelPipeline pipeline = Channels.pipeline();
+            pipeline.addLast("decoder", new HttpRequestDecoder());
+            pipeline.addLast("aggregator", new HttpChunkAggregator(MAX_CONTENT_LENGTH));
+            pipeline.addLast("encoder", new HttpResponseEncoder());
+            pipeline.addLast("handler", new Handler());
+            return pipeline;
+        });
+        _serverChannel = bootstrap.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        _uri = URI.create(String.format(
+                "ws://localhost:%d/",
+                ((InetSocketAddress) _serverChannel.getLocalAddress()).getPort()));
+    }
+
+    public URI getUri() {
+        return _uri;
+    }
+
+    /**
+     * Wait for the next text message received on any connection.
+     *
+     * @param timeoutMillis The maximum time to wait.
+     * @return The message or <code>null</code> if none was received in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public String pollMessage(final long timeoutMillis) throws InterruptedException {
+        return _messages.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for the next pong received on any connection.
+     *
+     * @param timeoutMillis The maximum time to wait.
+     * @return The pong's payload or <code>null</code> if none was received in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public String pollPong(final long timeoutMillis) throws InterruptedException {
+        return _pongs.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for a connection to complete its handshake.
+     *
+     * @param timeoutMillis The maximum time to wait.
+     * @return True if and only if a connection completed its handshake in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitConnection(final long timeoutMillis) throws InterruptedException {
+        return _connections.poll(timeoutMillis, TimeUnit.MILLISECONDS) != null;
+    }
+
+    /**
+     * Wait for a connection to close.
+     *
+     * @param timeoutMillis The maximum time to wait.
+     * @return True if and only if a connection closed in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitClose(final long timeoutMillis) throws InterruptedException {
+        return _closes.poll(timeoutMillis, TimeUnit.MILLISECONDS) != null;
+    }
+
+    /**
+     * Send a text message to every open connection.
+     *
+     * @param message The message.
+     */
+    public void send(final String message) {
+        for (final Channel channel : _channels) {
+            channel.write(new TextWebSocketFrame(message));
+        }
+    }
+
+    /**
+     * Send a text message to every open connection as one frame per fragment.
+     *
+     * @param fragments The fragments of the message.
+     */
+    public void sendFragmented(final String... fragments) {
+        for (final Channel channel : _channels) {
+            for (int i = 0; i < fragments.length; ++i) {
+                final boolean isFinal = i == fragments.length - 1;
+                if (i == 0) {
+                    channel.write(new TextWebSocketFrame(isFinal, 0, fragments[i]));
+                } else {
+                    channel.write(new ContinuationWebSocketFrame(isFinal, 0, fragments[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a text message to every open connection as one frame per fragment of encoded bytes.
+     *
+     * @param fragments The UTF-8 encoded fragments of the message.
+     */
+    public void sendFragmented(final byte[]... fragments) {
+        for (final Channel channel : _channels) {
+            for (int i = 0; i < fragments.length; ++i) {
+                final boolean isFinal = i == fragments.length - 1;
+                final ChannelBuffer data = ChannelBuffers.wrappedBuffer(fragments[i]);
+                if (i == 0) {
+                    channel.write(new TextWebSocketFrame(isFinal, 0, data));
+                } else {
+                    channel.write(new ContinuationWebSocketFrame(isFinal, 0, data));
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a ping to every open connection.
+     *
+     * @param payload The ping's payload.
+     */
+    public void ping(final String payload) {
+        for (final Channel channel : _channels) {
+            channel.write(new PingWebSocketFrame(ChannelBuffers.copiedBuffer(payload, CharsetUtil.UTF_8)));
+        }
+    }
+
+    /**
+     * Close every open connection with a close frame.
+     */
+    public void closeConnections() {
+        for (final Channel channel : _channels) {
+            channel.write(new CloseWebSocketFrame()).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        for (final Channel channel : _channels) {
+            channel.close().awaitUninterruptibly();
+        }
+        _serverChannel.close().awaitUninterruptibly();
+        _channelFactory.releaseExternalResources();
+    }
+
+    private final NioServerSocketChannelFactory _channelFactory;
+    private final Channel _serverChannel;
+    private final URI _uri;
+    private final Set<Channel> _channels = Sets.newConcurrentHashSet();
+    private final BlockingQueue<String> _messages = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> _pongs = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Channel> _connections = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Channel> _closes = new LinkedBlockingQueue<>();
+
+    private static final int MAX_CONTENT_LENGTH = 65536;
+
+    private final class Handler extends SimpleChannelUpstreamHandler {
+
+        @Override
+        public void messageReceived(final ChannelHandlerContext context, final MessageEvent event) {
+            final Channel channel = context.getChannel();
+            final Object message = event.getMessage();
+            if (message instanceof HttpRequest) {
+                _handshaker = new WebSocketServerHandshakerFactory(_uri.toString(), null, false)
+                        .newHandshaker((HttpRequest) message);
+                _handshaker.handshake(channel, (HttpRequest) message).addListener(future -> {
+                    if (future.isSuccess()) {
+                        _channels.add(channel);
+                        _connections.add(channel);
+                    }
+                });
+            } else if (message instanceof TextWebSocketFrame) {
+                _messages.add(((TextWebSocketFrame) message).getText());
+            } else if (message instanceof PongWebSocketFrame) {
+                final ChannelBuffer payload = ((PongWebSocketFrame) message).getBinaryData();
+                _pongs.add(payload.toString(CharsetUtil.UTF_8));
+            } else if (message instanceof CloseWebSocketFrame) {
+                _handshaker.close(channel, (CloseWebSocketFrame) message);
+            }
+        }
+
+        @Override
+        public void channelClosed(final ChannelHandlerContext context, final ChannelStateEvent event) {
+            if (_channels.remove(context.getChannel())) {
+                _closes.add(context.getChannel());
+            }
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext context, final ExceptionEvent event) {
+            context.getChannel().close();
+        }
+
+        private WebSocketServerHandshaker _handshaker;
+    }
+}
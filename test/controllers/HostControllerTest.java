@@ -0,0 +1,140 @@
+/**
+ * Copyright 2016 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package controllers;
+
+import com.arpnetworking.metrics.portal.H2ConnectionStringFactory;
+import com.arpnetworking.metrics.portal.hosts.HostRepository;
+import com.arpnetworking.metrics.portal.hosts.impl.LocalHostRepository;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import models.internal.Host;
+import models.internal.MetricsSoftwareState;
+import models.internal.impl.DefaultHost;
+import org.junit.Assert;
+import org.junit.Test;
+import play.Application;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.FakeApplication;
+import play.test.Helpers;
+import play.test.WithApplication;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Tests conditional requests to <code>HostController</code>.
+ *
+ * @author Ville Koskela (vkoskela at groupon dot com)
+ */
+public class HostControllerTest extends WithApplication {
+
+    @Override
+    protected FakeApplication provideFakeApplication() {
+        return createApplication(ImmutableMap.of());
+    }
+
+    @Test
+    public void testQueryReturnsEtag() {
+        addHost(app, "web1.example.com");
+        final Result result = Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH));
+        Assert.assertEquals(Http.Status.OK, Helpers.status(result));
+        Assert.assertNotNull(Helpers.header(HttpHeaders.ETAG, result));
+        Assert.assertTrue(Helpers.contentAsString(result).contains("web1.example.com"));
+    }
+
+    @Test
+    public void testQueryMatchingEtag() {
+        addHost(app, "web1.example.com");
+        final String etag = Helpers.header(HttpHeaders.ETAG, Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)));
+
+        final Result result = Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"" + etag + "\""));
+        Assert.assertEquals(Http.Status.NOT_MODIFIED, Helpers.status(result));
+        Assert.assertEquals(etag, Helpers.header(HttpHeaders.ETAG, result));
+        Assert.assertEquals("", Helpers.contentAsString(result));
+    }
+
+    @Test
+    public void testQueryMatchingWeakEtagInList() {
+        addHost(app, "web1.example.com");
+        final String etag = Helpers.header(HttpHeaders.ETAG, Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)));
+
+        final Result result = Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/\"" + etag + "\""));
+        Assert.assertEquals(Http.Status.NOT_MODIFIED, Helpers.status(result));
+    }
+
+    @Test
+    public void testQueryStaleEtag() {
+        addHost(app, "web1.example.com");
+        final String etag = Helpers.header(HttpHeaders.ETAG, Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)));
+        addHost(app, "web2.example.com");
+
+        final Result result = Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"" + etag + "\""));
+        Assert.assertEquals(Http.Status.OK, Helpers.status(result));
+        Assert.assertNotNull(Helpers.header(HttpHeaders.ETAG, result));
+        Assert.assertNotEquals(etag, Helpers.header(HttpHeaders.ETAG, result));
+        Assert.assertTrue(Helpers.contentAsString(result).contains("web2.example.com"));
+    }
+
+    @Test
+    public void testQueryWithoutRepositoryEtag() {
+        final FakeApplication application = createApplication(
+                ImmutableMap.of("hostRepository.type", LocalHostRepository.class.getName()));
+        Helpers.running(application, () -> {
+            addHost(application.getWrappedApplication().injector().instanceOf(HostRepository.class), "web1.example.com");
+
+            // Even a wildcard cannot match if the repository cannot provide an etag
+            final Result result = Helpers.route(Helpers.fakeRequest(Helpers.GET, QUERY_PATH)
+                    .header(HttpHeaders.IF_NONE_MATCH, "*"));
+            Assert.assertEquals(Http.Status.OK, Helpers.status(result));
+            Assert.assertNull(Helpers.header(HttpHeaders.ETAG, result));
+            Assert.assertTrue(Helpers.contentAsString(result).contains("web1.example.com"));
+        });
+    }
+
+    private static FakeApplication createApplication(final Map<String, String> configuration) {
+        final String jdbcUrl = H2ConnectionStringFactory.generateJdbcUrl();
+        return new FakeApplication(
+                new java.io.File("."),
+                Helpers.class.getClassLoader(),
+                ImmutableMap.<String, Object>builder()
+                        .put("db.metrics_portal_ddl.url", jdbcUrl)
+                        .put("db.default.url", jdbcUrl)
+                        .put("hostProvider.initialDelay", "1 hour")
+                        .putAll(configuration)
+                        .build(),
+                new ArrayList<String>(),
+                null);
+    }
+
+    private static void addHost(final Application application, final String hostname) {
+        addHost(application.injector().instanceOf(HostRepository.class), hostname);
+    }
+
+    private static void addHost(final HostRepository repository, final String hostname) {
+        final Host host = new DefaultHost.Builder()
+                .setHostname(hostname)
+                .setCluster("cluster")
+                .setMetricsSoftwareState(MetricsSoftwareState.NOT_INSTALLED)
+                .build();
+        repository.addOrUpdateHost(host);
+    }
+
+    private static final String QUERY_PATH = "/v1/hosts/query";
+}